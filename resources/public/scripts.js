@@ -66,6 +66,14 @@ function stopAgent() {
   $.post("stopAgent.html", function(data) {alert(data)} )
 }
 
+function pauseAgents() {
+  $.post("pauseAgents.html", function(data) {alert(data)} )
+}
+
+function resumeAgents() {
+  $.post("resumeAgents.html", function(data) {alert(data)} )
+}
+
 function saveResults() {
   $.post("saveResults.html", function(data) {alert(data)} )
 }
@@ -0,0 +1,472 @@
+/**
+ * Copyright 2019 Tobias Baum
+ *
+ * This file is part of GIMO-m.
+ *
+ * GIMO-m is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * GIMO-m is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ */
+package de.unihannover.gimo_m.mining.agents;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.OperatingSystemMXBean;
+import java.lang.management.ThreadInfo;
+import java.lang.management.ThreadMXBean;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import de.unihannover.gimo_m.mining.common.Blackboard;
+import de.unihannover.gimo_m.util.EventLog.Level;
+import de.unihannover.gimo_m.util.VirtualThreads;
+
+/**
+ * The workers that run the iterations of the mining agents.
+ *
+ * <p>When started, the pool is sized to the number of available cores. Afterwards, the size is adjusted
+ * regularly based on the measured load: When the workers spend much time blocked or waiting on locks,
+ * or when the machine is saturated by other processes, a worker is removed. When the workers are busy
+ * and there are idle cores, a worker is added. Between two iterations, the workers pause while the pool
+ * is paused and yield for a short time while interactive requests are handled.
+ * When the blackboard has islands, the agents are spread over them. All agents share the statistics
+ * on the productivity of the exploration operators.
+ */
+public class AgentPool {
+
+    private static final long SCALING_INTERVAL_MS = 5_000;
+    private static final long MAX_YIELD_MS = 200;
+
+    /**
+     * Share of the active time the workers spend on the CPU, below which the pool shrinks. The active time is the
+     * wall clock time without pauses and yielding, and the CPU time includes the helpers of parallel evaluations.
+     */
+    private static final double LOW_UTILIZATION = 0.5;
+    /**
+     * Share of the active time the workers spend on the CPU, above which the pool may grow.
+     */
+    private static final double HIGH_UTILIZATION = 0.8;
+    /**
+     * Share of the active time the workers spend blocked or waiting on locks, above which the pool shrinks.
+     */
+    private static final double MAX_CONTENTION = 0.2;
+    /**
+     * Minimal share of the wall clock time the workers have to be active for the load to be judged.
+     */
+    private static final double MIN_ACTIVE_SHARE = 0.25;
+    /**
+     * System CPU load above which the machine is considered saturated.
+     */
+    private static final double SATURATED_LOAD = 0.95;
+
+    /**
+     * Creates the agent for a new worker.
+     */
+    interface AgentFactory {
+        MiningAgent create(Blackboard blackboard, OperatorSelector operatorSelector, WorkerLoad load);
+    }
+
+    private final class Worker implements Runnable {
+        private final WorkerLoad load = new WorkerLoad();
+        private final MiningAgent agent;
+        private Thread thread;
+        private long lastCpuTime = -1;
+        private long lastWaitTime = -1;
+        private long lastIdleTime;
+        private long lastHelperCpuTime;
+
+        public Worker(Blackboard agentBlackboard) {
+            this.agent = AgentPool.this.agentFactory.create(agentBlackboard, AgentPool.this.operatorSelector, this.load);
+        }
+
+        @Override
+        public void run() {
+            try {
+                while (this.awaitTurn()) {
+                    try {
+                        this.agent.runIteration();
+                    } catch (final RuntimeException e) {
+                        AgentPool.this.blackboard.log("error in " + this.agent.getName() + ": " + e);
+                    }
+                }
+            } catch (final InterruptedException e) {
+                AgentPool.this.retire();
+            } finally {
+                AgentPool.this.workers.remove(this);
+            }
+            AgentPool.this.blackboard.log("agent worker ended");
+        }
+
+        private boolean awaitTurn() throws InterruptedException {
+            this.load.beginIdle();
+            try {
+                return AgentPool.this.awaitTurn();
+            } finally {
+                this.load.endIdle();
+            }
+        }
+
+        /**
+         * Returns the total time the worker's thread was blocked or waiting, but not on purpose or for helpers.
+         * Waiting for a {@link ReentrantLock} is not counted as blocked by the JVM, therefore the waiting time is needed.
+         */
+        private long determineUnexpectedWaitTime(long totalWaitTime) {
+            return totalWaitTime - this.load.getIdleNanos() - this.load.getHelperWaitNanos();
+        }
+    }
+
+    private final Blackboard blackboard;
+    private final int defaultSize;
+    private final int maxSize;
+    private final AgentFactory agentFactory;
+
+    private final OperatorSelector operatorSelector = new OperatorSelector();
+    private final List<Worker> workers = new CopyOnWriteArrayList<>();
+    private final ThreadFactory threadFactory = VirtualThreads.createThreadFactory("mining-");
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition stateChanged = this.lock.newCondition();
+    private int targetSize;
+    private int workerCount;
+    private int pausedWorkerCount;
+    private int islandCounter;
+    private boolean paused;
+    private int interactiveRequests;
+
+    private final ScheduledExecutorService scalingTimer;
+    private ScheduledFuture<?> scalingTask;
+    private final ThreadMXBean threadBean = ManagementFactory.getThreadMXBean();
+    private final OperatingSystemMXBean osBean = ManagementFactory.getOperatingSystemMXBean();
+    private long lastMeasurementTime;
+
+    public AgentPool(Blackboard blackboard) {
+        this(blackboard, Runtime.getRuntime().availableProcessors());
+    }
+
+    public AgentPool(Blackboard blackboard, int defaultSize) {
+        this(blackboard, defaultSize, MiningAgent::new);
+    }
+
+    AgentPool(Blackboard blackboard, int defaultSize, AgentFactory agentFactory) {
+        this.blackboard = blackboard;
+        this.agentFactory = agentFactory;
+        this.defaultSize = Math.max(1, defaultSize);
+        this.maxSize = 2 * this.defaultSize;
+        this.scalingTimer = Executors.newSingleThreadScheduledExecutor((Runnable r) -> {
+            final Thread t = new Thread(r, "agent-pool-scaling");
+            t.setDaemon(true);
+            return t;
+        });
+        if (this.threadBean.isThreadContentionMonitoringSupported()) {
+            this.threadBean.setThreadContentionMonitoringEnabled(true);
+        }
+    }
+
+    /**
+     * Starts the pool with the default size. When it is already running, one worker is added.
+     * @return The number of workers after the change.
+     */
+    public int start() {
+        this.lock.lock();
+        try {
+            if (this.scalingTask == null) {
+                this.scalingTask = this.scalingTimer.scheduleWithFixedDelay(
+                        this::rescale, SCALING_INTERVAL_MS, SCALING_INTERVAL_MS, TimeUnit.MILLISECONDS);
+                this.setTargetSize(this.defaultSize);
+            } else {
+                this.setTargetSize(this.targetSize + 1);
+            }
+            return this.targetSize;
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    /**
+     * Removes one worker. It ends after its current iteration. When the last worker is removed,
+     * automatic scaling stops, too.
+     * @return The number of workers after the change.
+     */
+    public int stopOne() {
+        this.lock.lock();
+        try {
+            this.setTargetSize(this.targetSize - 1);
+            if (this.targetSize == 0) {
+                this.stopScaling();
+            }
+            return this.targetSize;
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    /**
+     * Removes all workers. They end after their current iteration.
+     */
+    public void stopAll() {
+        this.lock.lock();
+        try {
+            this.setTargetSize(0);
+            this.stopScaling();
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    private void stopScaling() {
+        if (this.scalingTask != null) {
+            this.scalingTask.cancel(false);
+            this.scalingTask = null;
+        }
+    }
+
+    /**
+     * Lets all workers wait after their current iteration until {@link #resume()} is called.
+     */
+    public void pause() {
+        this.lock.lock();
+        try {
+            this.paused = true;
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    public void resume() {
+        this.lock.lock();
+        try {
+            this.paused = false;
+            this.stateChanged.signalAll();
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    public boolean isPaused() {
+        this.lock.lock();
+        try {
+            return this.paused;
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    /**
+     * Returns the number of workers, not counting workers that are going to end after their current iteration.
+     */
+    public int getWorkerCount() {
+        this.lock.lock();
+        try {
+            return this.targetSize;
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    /**
+     * Returns the number of worker threads that have not ended yet, including the ones that are going to end.
+     */
+    int getRunningWorkerCount() {
+        return this.workers.size();
+    }
+
+    /**
+     * Returns the number of workers that finished their iteration and wait because the pool is paused.
+     */
+    int getPausedWorkerCount() {
+        this.lock.lock();
+        try {
+            return this.pausedWorkerCount;
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    /**
+     * Returns the selector for the exploration operators, which is shared by all agents of the pool.
+     */
+    public OperatorSelector getOperatorSelector() {
+        return this.operatorSelector;
+    }
+
+    /**
+     * Shall be called when handling of an interactive request starts. Until the matching call to
+     * {@link #endInteractiveRequest()}, workers do not start new iterations for a short time.
+     */
+    public void beginInteractiveRequest() {
+        this.lock.lock();
+        try {
+            this.interactiveRequests++;
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    public void endInteractiveRequest() {
+        this.lock.lock();
+        try {
+            this.interactiveRequests--;
+            if (this.interactiveRequests == 0) {
+                this.stateChanged.signalAll();
+            }
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    private void setTargetSize(int newSize) {
+        assert this.lock.isHeldByCurrentThread();
+        this.targetSize = Math.max(0, Math.min(this.maxSize, newSize));
+        while (this.workerCount < this.targetSize) {
+            final Worker w = new Worker(this.nextAgentBlackboard());
+            w.thread = this.threadFactory.newThread(w);
+            //interactive requests shall win when there are more threads than cores (ignored for virtual threads)
+            w.thread.setPriority(Thread.NORM_PRIORITY - 1);
+            this.workers.add(w);
+            this.workerCount++;
+            w.thread.start();
+        }
+        //wake paused workers that have to end
+        this.stateChanged.signalAll();
+    }
+
+    /**
+     * In island mode, the new agents are distributed round robin to the islands.
+     */
+    private Blackboard nextAgentBlackboard() {
+        final List<Blackboard> islands = this.blackboard.getIslands();
+        if (islands.isEmpty()) {
+            return this.blackboard;
+        }
+        return islands.get(this.islandCounter++ % islands.size());
+    }
+
+    /**
+     * Waits until the calling worker may perform its next iteration.
+     * @return false iff the worker shall end.
+     */
+    private boolean awaitTurn() throws InterruptedException {
+        this.lock.lock();
+        try {
+            long remainingYield = TimeUnit.MILLISECONDS.toNanos(MAX_YIELD_MS);
+            while (true) {
+                if (this.workerCount > this.targetSize) {
+                    this.workerCount--;
+                    return false;
+                }
+                if (this.paused) {
+                    this.pausedWorkerCount++;
+                    try {
+                        this.stateChanged.await();
+                    } finally {
+                        this.pausedWorkerCount--;
+                    }
+                } else if (this.interactiveRequests > 0 && remainingYield > 0) {
+                    remainingYield = this.stateChanged.awaitNanos(remainingYield);
+                } else {
+                    return true;
+                }
+            }
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    private void retire() {
+        this.lock.lock();
+        try {
+            this.workerCount--;
+            this.targetSize = Math.min(this.targetSize, this.workerCount);
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    /**
+     * Measures the load since the last call and adds or removes a worker if needed.
+     * The load of virtual threads cannot be measured, so the size stays unchanged when they are used.
+     */
+    private void rescale() {
+        final long now = System.nanoTime();
+        final long elapsed = now - this.lastMeasurementTime;
+        this.lastMeasurementTime = now;
+
+        long cpuTime = 0;
+        long contendedTime = 0;
+        long activeTime = 0;
+        int measuredWorkers = 0;
+        for (final Worker w : this.workers) {
+            final long cpu = this.threadBean.isThreadCpuTimeSupported() ? this.threadBean.getThreadCpuTime(w.thread.getId()) : -1;
+            final ThreadInfo info = this.threadBean.getThreadInfo(w.thread.getId());
+            final long wait = info == null || info.getBlockedTime() < 0 || info.getWaitedTime() < 0
+                    ? -1 : w.determineUnexpectedWaitTime(TimeUnit.MILLISECONDS.toNanos(info.getBlockedTime() + info.getWaitedTime()));
+            final long idle = w.load.getIdleNanos();
+            final long helperCpu = w.load.getHelperCpuNanos();
+            if (cpu >= 0 && w.lastCpuTime >= 0) {
+                cpuTime += cpu - w.lastCpuTime + helperCpu - w.lastHelperCpuTime;
+                contendedTime += wait >= 0 && w.lastWaitTime >= 0 ? Math.max(0, wait - w.lastWaitTime) : 0;
+                activeTime += Math.max(0, elapsed - (idle - w.lastIdleTime));
+                measuredWorkers++;
+            }
+            w.lastCpuTime = cpu;
+            w.lastWaitTime = wait;
+            w.lastIdleTime = idle;
+            w.lastHelperCpuTime = helperCpu;
+        }
+
+        this.lock.lock();
+        try {
+            if (measuredWorkers == 0 || this.paused || this.workerCount != this.targetSize
+                    || activeTime < MIN_ACTIVE_SHARE * elapsed * measuredWorkers) {
+                return;
+            }
+            final double utilization = ((double) cpuTime) / activeTime;
+            final double contention = ((double) contendedTime) / activeTime;
+            final double systemLoad = this.determineSystemLoad();
+            final int cores = this.osBean.getAvailableProcessors();
+            final boolean saturated = systemLoad > SATURATED_LOAD;
+            final boolean idleCores = systemLoad < 0
+                    ? this.workerCount < cores : systemLoad < 1.0 - 1.0 / cores;
+
+            final int oldSize = this.targetSize;
+            if (contention > MAX_CONTENTION || utilization < LOW_UTILIZATION
+                    || (saturated && this.workerCount > cores)) {
+                this.setTargetSize(Math.max(1, oldSize - 1));
+            } else if (utilization > HIGH_UTILIZATION && idleCores) {
+                this.setTargetSize(oldSize + 1);
+            }
+            if (oldSize != this.targetSize) {
+                final int newSize = this.targetSize;
+                this.blackboard.log(Level.DEBUG, () -> String.format(
+                        "scaled agent pool from %d to %d (utilization %.2f, contention %.2f, system load %.2f)",
+                        oldSize, newSize, utilization, contention, systemLoad));
+            }
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    /**
+     * Returns the recent CPU load of the whole system between 0 and 1, or a negative value if it is not available.
+     */
+    private double determineSystemLoad() {
+        if (this.osBean instanceof com.sun.management.OperatingSystemMXBean) {
+            return ((com.sun.management.OperatingSystemMXBean) this.osBean).getSystemCpuLoad();
+        }
+        final double loadAverage = this.osBean.getSystemLoadAverage();
+        return loadAverage < 0 ? -1.0 : loadAverage / this.osBean.getAvailableProcessors();
+    }
+
+}
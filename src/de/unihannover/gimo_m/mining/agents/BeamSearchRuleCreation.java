@@ -0,0 +1,462 @@
+/**
+ * Copyright 2019 Tobias Baum
+ *
+ * This file is part of GIMO-m.
+ *
+ * GIMO-m is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * GIMO-m is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ */
+package de.unihannover.gimo_m.mining.agents;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.function.ToDoubleFunction;
+
+import de.unihannover.gimo_m.mining.agents.GreedyRuleCreation.RuleQuality;
+import de.unihannover.gimo_m.mining.common.And;
+import de.unihannover.gimo_m.mining.common.Blackboard;
+import de.unihannover.gimo_m.mining.common.Blackboard.RecordsAndRemarks;
+import de.unihannover.gimo_m.mining.common.Blackboard.RuleRestrictions;
+import de.unihannover.gimo_m.mining.common.Equals;
+import de.unihannover.gimo_m.mining.common.Geq;
+import de.unihannover.gimo_m.mining.common.Leq;
+import de.unihannover.gimo_m.mining.common.NotEquals;
+import de.unihannover.gimo_m.mining.common.Or;
+import de.unihannover.gimo_m.mining.common.Record;
+import de.unihannover.gimo_m.mining.common.RecordScheme;
+import de.unihannover.gimo_m.mining.common.RecordSet;
+import de.unihannover.gimo_m.mining.common.Rule;
+import de.unihannover.gimo_m.mining.common.RuleCreationRestriction;
+import de.unihannover.gimo_m.mining.common.RuleSet;
+import de.unihannover.gimo_m.mining.common.SimpleRule;
+import de.unihannover.gimo_m.util.Multiset;
+
+/**
+ * Creates rule sets with a beam search for rules. In contrast to {@link GreedyRuleCreation}, the search
+ * keeps the best few partial rules in each step instead of committing to the best condition, so that it
+ * does not end in the same local optimum as often. All rules found on the way are candidates for the
+ * result, and several rules that cover different records are chosen from them.
+ *
+ * <p>The candidate conditions and their coverage of a sample of the records are determined once per run.
+ * The coverage is stored as bit sets over the sample, so that extending a partial rule with a condition
+ * is a bitwise "and".
+ */
+public class BeamSearchRuleCreation {
+
+    private static final int BEAM_WIDTH = 8;
+    private static final int MAX_CONDITIONS = 5;
+    private static final int MAX_CONDITIONS_PER_COLUMN = 16;
+    private static final int MAX_SAMPLE_SIZE_PER_CLASS = 2000;
+    /**
+     * Share of the records that are sampled (at most). Each run sees different records, which makes the results more diverse.
+     */
+    private static final double SAMPLE_SHARE = 0.5;
+    /**
+     * Maximal share of the records covered by a rule that may already be covered by the rules chosen before.
+     */
+    static final double MAX_OVERLAP = 0.5;
+
+    /**
+     * A condition with its coverage of the positive (target class) and negative records in the sample.
+     */
+    private static final class Condition {
+        private final SimpleRule rule;
+        private final long[] positives;
+        private final long[] negatives;
+
+        public Condition(SimpleRule rule, long[] positives, long[] negatives) {
+            this.rule = rule;
+            this.positives = positives;
+            this.negatives = negatives;
+        }
+    }
+
+    /**
+     * A rule in the beam, with its coverage of the sample.
+     */
+    static final class PartialRule {
+        private final And rule;
+        private final long[] positives;
+        private final long[] negatives;
+        private final RuleQuality quality;
+
+        public PartialRule(And rule, long[] positives, long[] negatives, RuleQuality quality) {
+            this.rule = rule;
+            this.positives = positives;
+            this.negatives = negatives;
+            this.quality = quality;
+        }
+
+        And getRule() {
+            return this.rule;
+        }
+
+        RuleQuality getQuality() {
+            return this.quality;
+        }
+
+        private boolean sameCoverage(long[] otherPositives, long[] otherNegatives) {
+            return Arrays.equals(this.positives, otherPositives) && Arrays.equals(this.negatives, otherNegatives);
+        }
+    }
+
+    private final Random random;
+    private final Blackboard blackboard;
+
+    public BeamSearchRuleCreation(Blackboard blackboard, Random random) {
+        this.random = random;
+        this.blackboard = blackboard;
+    }
+
+    /**
+     * Creates a new rule set by adding an exception with up to "limit" rules to the given basis (or to a rule set
+     * with a random default when it is null). When the deadline is reached, the rules found so far are used.
+     */
+    public RuleSet createRuleSet(int limit, RuleSet basis, Deadline deadline) {
+        final RecordsAndRemarks rr = this.blackboard.getRecords();
+        final RecordSet records = rr.getRecords();
+        if (basis == null) {
+            basis = RuleSet.create(GreedyRuleCreation.getRandomClass(this.random, rr, ""));
+        }
+        final String targetClass = GreedyRuleCreation.getRandomClass(this.random, rr, basis.getDefault());
+        final RuleRestrictions restrictions = this.blackboard.restrictionsFor(targetClass);
+
+        Or ret = new Or();
+        for (final And accepted : restrictions.getAccepted()) {
+            ret = ret.or(accepted);
+        }
+        final int[][] sample = this.sampleUncoveredRows(records, targetClass, records.getCoverage(ret));
+        final int[] positiveRows = sample[0];
+        final int[] negativeRows = sample[1];
+        if (positiveRows.length == 0) {
+            return basis.addException(targetClass, ret);
+        }
+
+        final Set<String> selectedFeatures = GreedyRuleCreation.sampleFeatureSubset(
+                this.random, records.getScheme(), this.blackboard.getRejectedColumns(), positiveRows.length + negativeRows.length);
+        final ToDoubleFunction<RuleQuality> qualityFunction = GreedyRuleCreation.getRandomQualityFunction(this.random);
+        final List<PartialRule> found = this.findRules(
+                restrictions, records, selectedFeatures, positiveRows, negativeRows, qualityFunction, deadline);
+
+        for (final And rule : selectDiverseRules(found, this.random.nextInt(limit) + 1, qualityFunction)) {
+            ret = ret.or(rule);
+        }
+        return basis.addException(targetClass, ret);
+    }
+
+    /**
+     * Determines the candidate conditions for the sample and performs the beam search with them.
+     * @see #beamSearch
+     */
+    List<PartialRule> findRules(
+            RuleRestrictions restrictions,
+            RecordSet records,
+            Set<String> selectedFeatures,
+            int[] positiveRows,
+            int[] negativeRows,
+            ToDoubleFunction<RuleQuality> qualityFunction,
+            Deadline deadline) {
+        final RuleQuality totalCounts = new RuleQuality(negativeRows.length, positiveRows.length,
+                new RuleQuality(negativeRows.length, positiveRows.length, null));
+        final List<Condition> conditions = this.determineConditions(records, selectedFeatures, positiveRows, negativeRows, deadline);
+        return this.beamSearch(
+                restrictions, conditions, positiveRows.length, negativeRows.length, totalCounts, qualityFunction, deadline);
+    }
+
+    /**
+     * Returns a sample of the rows of the target class ([0]) and of the other rows ([1]) that are not covered
+     * by the given coverage yet. Each row is contained at most once.
+     */
+    private int[][] sampleUncoveredRows(RecordSet records, String targetClass, BitSet alreadyCovered) {
+        final Record[] recs = records.getRecords();
+        int positiveCount = 0;
+        for (final Record r : recs) {
+            if (r.getCorrectClass().equals(targetClass)) {
+                positiveCount++;
+            }
+        }
+        final double positiveProbability = Math.min(SAMPLE_SHARE, ((double) MAX_SAMPLE_SIZE_PER_CLASS) / positiveCount);
+        final double negativeProbability = Math.min(SAMPLE_SHARE, ((double) MAX_SAMPLE_SIZE_PER_CLASS) / (recs.length - positiveCount));
+        final int[] positives = new int[recs.length];
+        final int[] negatives = new int[recs.length];
+        int posSize = 0;
+        int negSize = 0;
+        for (int row = 0; row < recs.length; row++) {
+            if (alreadyCovered.get(row)) {
+                continue;
+            }
+            if (recs[row].getCorrectClass().equals(targetClass)) {
+                if (this.random.nextDouble() < positiveProbability) {
+                    positives[posSize++] = row;
+                }
+            } else {
+                if (this.random.nextDouble() < negativeProbability) {
+                    negatives[negSize++] = row;
+                }
+            }
+        }
+        return new int[][] {Arrays.copyOf(positives, posSize), Arrays.copyOf(negatives, negSize)};
+    }
+
+    /**
+     * Determines the candidate conditions for the selected columns, together with their coverage of the sample.
+     * For numeric columns, the split points are taken at quantiles of the sample. For string columns, the most
+     * frequent values of the target class are used for equality and the most frequent other values for inequality.
+     */
+    private List<Condition> determineConditions(
+            RecordSet records, Set<String> selectedFeatures, int[] positiveRows, int[] negativeRows, Deadline deadline) {
+        final RecordScheme scheme = records.getScheme();
+        final List<SimpleRule> rules = new ArrayList<>();
+        for (int column = 0; column < scheme.getNumericColumnCount(); column++) {
+            if (selectedFeatures.contains(scheme.getNumName(column))) {
+                this.addNumericConditions(rules, records, column, positiveRows, negativeRows);
+            }
+        }
+        for (int column = 0; column < scheme.getStringColumnCount(); column++) {
+            if (selectedFeatures.contains(scheme.getStrName(column))) {
+                final int absColumn = scheme.getAbsIndexFromStr(column);
+                for (final String value : mostFrequentValues(records, column, positiveRows)) {
+                    rules.add(new Equals(scheme, absColumn, value));
+                }
+                for (final String value : mostFrequentValues(records, column, negativeRows)) {
+                    rules.add(new NotEquals(scheme, absColumn, value));
+                }
+            }
+        }
+
+        final List<Condition> ret = new ArrayList<>();
+        for (final SimpleRule rule : new HashSet<>(rules)) {
+            if (deadline.isReached()) {
+                break;
+            }
+            final BitSet coverage = records.getCoverage(rule);
+            final long[] positives = restrictToSample(coverage, positiveRows);
+            if (cardinality(positives) > 0) {
+                ret.add(new Condition(rule, positives, restrictToSample(coverage, negativeRows)));
+            }
+        }
+        return ret;
+    }
+
+    private void addNumericConditions(
+            List<SimpleRule> rules, RecordSet records, int column, int[] positiveRows, int[] negativeRows) {
+        final int[] ranks = new int[positiveRows.length + negativeRows.length];
+        int count = 0;
+        for (final int[] rows : new int[][] {positiveRows, negativeRows}) {
+            for (final int row : rows) {
+                final int rank = records.getValueRankOfRow(column, row);
+                if (rank >= 0) {
+                    ranks[count++] = rank;
+                }
+            }
+        }
+        if (count == 0) {
+            return;
+        }
+        Arrays.sort(ranks, 0, count);
+        final RecordScheme scheme = records.getScheme();
+        final int absColumn = scheme.getAbsIndexFromNum(column);
+        final int splitCount = MAX_CONDITIONS_PER_COLUMN / 2;
+        for (int i = 1; i <= splitCount; i++) {
+            final int rank = ranks[(int) (((long) count) * i / (splitCount + 1))];
+            if (rank > 0) {
+                final double splitPoint = records.getSplitPointBelowRank(column, rank);
+                rules.add(new Leq(scheme, absColumn, splitPoint));
+                rules.add(new Geq(scheme, absColumn, splitPoint));
+            }
+        }
+    }
+
+    private static List<String> mostFrequentValues(RecordSet records, int column, int[] rows) {
+        final Multiset<String> counts = new Multiset<>();
+        final Record[] recs = records.getRecords();
+        for (final int row : rows) {
+            final String value = recs[row].getValueStr(column);
+            if (value != null) {
+                counts.add(value);
+            }
+        }
+        return counts.getPrefixOfMostCommon(MAX_CONDITIONS_PER_COLUMN / 2);
+    }
+
+    /**
+     * Performs the beam search and returns all rules that were in one of the beams and cover more
+     * positive than negative records of the sample, in no particular order.
+     */
+    private List<PartialRule> beamSearch(
+            RuleRestrictions restrictions,
+            List<Condition> conditions,
+            int positiveCount,
+            int negativeCount,
+            RuleQuality totalCounts,
+            ToDoubleFunction<RuleQuality> qualityFunction,
+            Deadline deadline) {
+        final List<PartialRule> found = new ArrayList<>();
+        final long[] allPositives = allSet(positiveCount);
+        final long[] allNegatives = allSet(negativeCount);
+        List<PartialRule> beam = Collections.singletonList(new PartialRule(new And(), allPositives, allNegatives,
+                new RuleQuality(negativeCount, positiveCount, totalCounts)));
+        for (int step = 0; step < MAX_CONDITIONS && !beam.isEmpty(); step++) {
+            //the next beam, best first
+            final List<PartialRule> next = new ArrayList<>(BEAM_WIDTH + 1);
+            for (final PartialRule prior : beam) {
+                final RuleCreationRestriction creationRestriction = restrictions.toCreationRestrictions(prior.rule);
+                for (final Condition c : conditions) {
+                    if (deadline.isReached()) {
+                        return found;
+                    }
+                    if (!isUsable(prior.rule, c.rule) || !creationRestriction.canBeValid(c.rule)) {
+                        continue;
+                    }
+                    //count first, most extensions are not good enough for the beam and need no bit sets of their own
+                    final int positives = cardinalityOfAnd(prior.positives, c.positives);
+                    if (positives == 0) {
+                        continue;
+                    }
+                    final RuleQuality quality = new RuleQuality(
+                            cardinalityOfAnd(prior.negatives, c.negatives), positives, totalCounts);
+                    int insertAt = next.size();
+                    while (insertAt > 0
+                            && GreedyRuleCreation.compare(quality, next.get(insertAt - 1).quality, qualityFunction) > 0) {
+                        insertAt--;
+                    }
+                    if (insertAt >= BEAM_WIDTH) {
+                        continue;
+                    }
+                    final long[] extPositives = and(prior.positives, c.positives);
+                    final long[] extNegatives = and(prior.negatives, c.negatives);
+                    if (prior.sameCoverage(extPositives, extNegatives) || this.containsCoverage(next, extPositives, extNegatives)) {
+                        //rules with the same coverage are interchangeable, keeping only one makes room for different ones
+                        continue;
+                    }
+                    next.add(insertAt, new PartialRule(prior.rule.and(c.rule), extPositives, extNegatives, quality));
+                    if (next.size() > BEAM_WIDTH) {
+                        next.remove(BEAM_WIDTH);
+                    }
+                }
+            }
+            for (final PartialRule r : next) {
+                if (!r.quality.isProMust()) {
+                    found.add(r);
+                }
+            }
+            beam = next;
+        }
+        return found;
+    }
+
+    private boolean containsCoverage(List<PartialRule> rules, long[] positives, long[] negatives) {
+        for (final PartialRule r : rules) {
+            if (r.sameCoverage(positives, negatives)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * String columns can be used once per rule, numeric columns once per direction to allow ranges.
+     */
+    private static boolean isUsable(And prior, SimpleRule condition) {
+        for (final Rule child : prior.getChildren()) {
+            final SimpleRule existing = (SimpleRule) child;
+            if (existing.getColumn() == condition.getColumn()
+                    && (existing.getClass() == condition.getClass()
+                        || existing instanceof Equals || existing instanceof NotEquals)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Chooses up to the given number of rules, best first, skipping rules that mostly cover the same
+     * positive records as the rules chosen before.
+     */
+    static List<And> selectDiverseRules(
+            List<PartialRule> found, int maxCount, ToDoubleFunction<RuleQuality> qualityFunction) {
+        found.sort((PartialRule r1, PartialRule r2) ->
+            GreedyRuleCreation.compare(r2.quality, r1.quality, qualityFunction));
+        final List<And> ret = new ArrayList<>();
+        long[] covered = null;
+        for (final PartialRule r : found) {
+            if (ret.size() >= maxCount) {
+                break;
+            }
+            if (covered != null
+                    && cardinality(and(r.positives, covered)) > MAX_OVERLAP * cardinality(r.positives)) {
+                continue;
+            }
+            ret.add(r.rule);
+            covered = covered == null ? r.positives.clone() : or(covered, r.positives);
+        }
+        return ret;
+    }
+
+    /**
+     * Returns the bits for the given rows, numbered by their position in the array.
+     */
+    private static long[] restrictToSample(BitSet coverage, int[] rows) {
+        final long[] ret = new long[(rows.length + 63) / 64];
+        for (int i = 0; i < rows.length; i++) {
+            if (coverage.get(rows[i])) {
+                ret[i >> 6] |= 1L << i;
+            }
+        }
+        return ret;
+    }
+
+    private static long[] allSet(int count) {
+        final long[] ret = new long[(count + 63) / 64];
+        for (int i = 0; i < count; i++) {
+            ret[i >> 6] |= 1L << i;
+        }
+        return ret;
+    }
+
+    private static long[] and(long[] a, long[] b) {
+        final long[] ret = new long[a.length];
+        for (int i = 0; i < a.length; i++) {
+            ret[i] = a[i] & b[i];
+        }
+        return ret;
+    }
+
+    private static long[] or(long[] a, long[] b) {
+        final long[] ret = new long[a.length];
+        for (int i = 0; i < a.length; i++) {
+            ret[i] = a[i] | b[i];
+        }
+        return ret;
+    }
+
+    private static int cardinalityOfAnd(long[] a, long[] b) {
+        int ret = 0;
+        for (int i = 0; i < a.length; i++) {
+            ret += Long.bitCount(a[i] & b[i]);
+        }
+        return ret;
+    }
+
+    private static int cardinality(long[] bits) {
+        int ret = 0;
+        for (final long l : bits) {
+            ret += Long.bitCount(l);
+        }
+        return ret;
+    }
+
+}
@@ -0,0 +1,96 @@
+/**
+ * Copyright 2019 Tobias Baum
+ *
+ * This file is part of GIMO-m.
+ *
+ * GIMO-m is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * GIMO-m is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ */
+package de.unihannover.gimo_m.mining.agents;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+/**
+ * The time budget for a single operation of an agent. The search operators check it cooperatively and return their
+ * best partial result when it is reached. Besides the time, the deadline can also be reached early when more urgent
+ * work arrives, or when the thread is interrupted. Once reached, a deadline stays reached.
+ *
+ * <p>A deadline is only used by a single thread, apart from parallel evaluations inside an operation.
+ */
+public final class Deadline {
+
+    /**
+     * Minimal time between two checks of the preemption condition, as it can be costly.
+     */
+    private static final long PREEMPTION_CHECK_INTERVAL_NANOS = TimeUnit.MILLISECONDS.toNanos(50);
+
+    private final long endNanos;
+    private final BooleanSupplier preemptionCondition;
+    private final long earliestPreemptionNanos;
+    private volatile long nextPreemptionCheck;
+    private volatile boolean reached;
+
+    private Deadline(long endNanos, BooleanSupplier preemptionCondition, long earliestPreemptionNanos) {
+        this.endNanos = endNanos;
+        this.preemptionCondition = preemptionCondition;
+        this.earliestPreemptionNanos = earliestPreemptionNanos;
+        this.nextPreemptionCheck = earliestPreemptionNanos;
+    }
+
+    /**
+     * Returns a deadline that is only reached when the thread is interrupted.
+     */
+    public static Deadline none() {
+        return new Deadline(Long.MAX_VALUE, null, Long.MAX_VALUE);
+    }
+
+    /**
+     * Returns a deadline that is reached after the given time.
+     */
+    public static Deadline in(long millis) {
+        return new Deadline(System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(millis), null, Long.MAX_VALUE);
+    }
+
+    /**
+     * Returns a deadline that is additionally reached as soon as the given condition is true, but not earlier
+     * than the given time from now.
+     */
+    public Deadline orWhen(BooleanSupplier condition, long minMillis) {
+        return new Deadline(this.endNanos, condition, System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(minMillis));
+    }
+
+    /**
+     * Returns true iff the operation shall stop. Cheap enough to be called in inner loops.
+     */
+    public boolean isReached() {
+        if (this.reached) {
+            return true;
+        }
+        final long now = System.nanoTime();
+        if (now - this.endNanos >= 0 && this.endNanos != Long.MAX_VALUE) {
+            this.reached = true;
+        } else if (Thread.currentThread().isInterrupted()) {
+            this.reached = true;
+        } else if (this.preemptionCondition != null && now - this.nextPreemptionCheck >= 0) {
+            this.nextPreemptionCheck = now + PREEMPTION_CHECK_INTERVAL_NANOS;
+            this.reached = this.preemptionCondition.getAsBoolean();
+        }
+        return this.reached;
+    }
+
+    /**
+     * Returns true iff the deadline was reached in one of the previous checks, i.e. iff an operation was cut short.
+     */
+    public boolean wasReached() {
+        return this.reached;
+    }
+
+}
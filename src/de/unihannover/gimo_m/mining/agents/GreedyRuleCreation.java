@@ -17,16 +17,15 @@ package de.unihannover.gimo_m.mining.agents;
 
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Collection;
 import java.util.Collections;
 import java.util.HashSet;
-import java.util.Iterator;
 import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Random;
 import java.util.Set;
-import java.util.TreeSet;
+import java.util.function.IntFunction;
 import java.util.function.ToDoubleFunction;
+import java.util.stream.IntStream;
 
 import de.unihannover.gimo_m.mining.common.And;
 import de.unihannover.gimo_m.mining.common.Blackboard;
@@ -39,9 +38,11 @@ import de.unihannover.gimo_m.mining.common.NotEquals;
 import de.unihannover.gimo_m.mining.common.Or;
 import de.unihannover.gimo_m.mining.common.Record;
 import de.unihannover.gimo_m.mining.common.RecordScheme;
+import de.unihannover.gimo_m.mining.common.RecordSet;
 import de.unihannover.gimo_m.mining.common.RuleCreationRestriction;
 import de.unihannover.gimo_m.mining.common.RuleSet;
 import de.unihannover.gimo_m.mining.common.SimpleRule;
+import de.unihannover.gimo_m.util.EventLog.Level;
 import de.unihannover.gimo_m.util.Multiset;
 import de.unihannover.gimo_m.util.Util;
 
@@ -110,7 +111,7 @@ public class GreedyRuleCreation {
 
     }
 
-    private static final class ConditionResults {
+    static final class ConditionResults {
         private final SimpleRule condition;
         private final RuleQuality quality;
 
@@ -119,6 +120,10 @@ public class GreedyRuleCreation {
             this.quality = quality;
         }
 
+        public SimpleRule getCondition() {
+            return this.condition;
+        }
+
         public RuleQuality getQuality() {
             return this.quality;
         }
@@ -144,6 +149,11 @@ public class GreedyRuleCreation {
         }
     }
 
+    /**
+     * Minimal number of selected features for which the columns are searched in parallel.
+     */
+    private static final int PARALLEL_SEARCH_MIN_FEATURES = 32;
+
     private final Random random;
     private final Blackboard blackboard;
 
@@ -153,25 +163,30 @@ public class GreedyRuleCreation {
     }
 
     public RuleSet createRuleSet(int limit) throws InterruptedException {
-        return this.createRuleSet(limit, null);
+        return this.createRuleSet(limit, null, Deadline.none());
     }
 
-    public RuleSet createRuleSet(int limit, RuleSet basis) throws InterruptedException {
+    /**
+     * Creates a new rule set by adding an exception with greedily created rules to the given basis.
+     * When the deadline is reached, the rules found so far are used.
+     */
+    public RuleSet createRuleSet(int limit, RuleSet basis, Deadline deadline) throws InterruptedException {
     	final RecordsAndRemarks rr = this.blackboard.getRecords();
         if (basis == null) {
-            basis = RuleSet.create(this.getRandomClass(rr, ""));
+            basis = RuleSet.create(getRandomClass(this.random, rr, ""));
         }
-    	final String targetClass = this.getRandomClass(rr, basis.getDefault());
+    	final String targetClass = getRandomClass(this.random, rr, basis.getDefault());
     	final RuleRestrictions restrictions = this.blackboard.restrictionsFor(targetClass);
         final RecordSubset withoutCan = this.makeBinary(rr, targetClass);
-        this.blackboard.log(String.format(
+        this.blackboard.log(Level.DEBUG, () -> String.format(
         		"%d must and %d other records after binarization",
         		withoutCan.getMustRecordCount(),
         		withoutCan.getNoRecordCount()));
 
         final RecordScheme scheme = rr.getRecords().getScheme();
 
-        final Set<String> selectedFeatures = this.sampleFeatureSubset(scheme, rr.getRecords().getRecords().length);
+        final Set<String> selectedFeatures = sampleFeatureSubset(
+                this.random, scheme, this.blackboard.getRejectedColumns(), rr.getRecords().getRecords().length);
 
         RecordSubset uncovered = withoutCan.downsample(this.random, 0.5, selectedFeatures.size() * 50);
 
@@ -185,11 +200,11 @@ public class GreedyRuleCreation {
 
         final int maxIter = this.random.nextInt(limit) + 1;
         for (int i = 0; i < maxIter; i++) {
-            if (uncovered.getMustRecordCount() == 0 || Thread.currentThread().isInterrupted()) {
+            if (uncovered.getMustRecordCount() == 0 || deadline.isReached()) {
                 break;
             }
             final And bestRule = this.greedyTopDown(
-                    scheme, uncovered.swapMustAndNo(), selectedFeatures, totalCountReversed, restrictions);
+                    rr.getRecords(), uncovered.swapMustAndNo(), selectedFeatures, totalCountReversed, restrictions, deadline);
             if (bestRule != null) {
                 ret = ret.or(bestRule);
                 uncovered = uncovered.keepNotSatisfying(bestRule);
@@ -199,52 +214,55 @@ public class GreedyRuleCreation {
     }
 
     private RecordSubset makeBinary(RecordsAndRemarks rr, String targetStrategy) {
-        final List<Record> must = new ArrayList<>();
-        final List<Record> no = new ArrayList<>();
-        for (final Record r : rr.getRecords().getRecords()) {
-            if (r.getCorrectClass().equals(targetStrategy)) {
-                must.add(r);
+        final Record[] records = rr.getRecords().getRecords();
+        final int[] must = new int[records.length];
+        final int[] no = new int[records.length];
+        int mustCount = 0;
+        int noCount = 0;
+        for (int row = 0; row < records.length; row++) {
+            if (records[row].getCorrectClass().equals(targetStrategy)) {
+                must[mustCount++] = row;
             } else {
-                no.add(r);
+                no[noCount++] = row;
             }
         }
-        return new RecordSubset(must, no);
+        return new RecordSubset(rr.getRecords(), Arrays.copyOf(must, mustCount), Arrays.copyOf(no, noCount));
     }
 
-    private String getRandomClass(RecordsAndRemarks rr, String except) {
+    static String getRandomClass(Random random, RecordsAndRemarks rr, String except) {
         for (int i = 0; i < 10; i++) {
-            final Record record = Util.randomItem(this.random, Arrays.asList(rr.getRecords().getRecords()));
+            final Record record = Util.randomItem(random, Arrays.asList(rr.getRecords().getRecords()));
             if (!record.getCorrectClass().equals(except)) {
                 return record.getCorrectClass();
             }
         }
-        return Util.randomItem(this.random, new ArrayList<>(rr.getResultData().getAllClasses()));
+        return Util.randomItem(random, new ArrayList<>(rr.getResultData().getAllClasses()));
     }
 
     /**
      * "Random subspace selection": Select a random subset of the features.
      */
-    private Set<String> sampleFeatureSubset(RecordScheme scheme, int maxCount) {
+    static Set<String> sampleFeatureSubset(Random random, RecordScheme scheme, Set<String> rejectedColumns, int maxCount) {
     	final List<String> possibleFeatures = new ArrayList<>(scheme.getColumnNames());
-    	possibleFeatures.removeAll(this.blackboard.getRejectedColumns());
-    	Collections.shuffle(possibleFeatures, this.random);
+    	possibleFeatures.removeAll(rejectedColumns);
+    	Collections.shuffle(possibleFeatures, random);
 
     	final int countToUse =
-    			Math.min(this.random.nextInt(possibleFeatures.size()), maxCount) + 1;
+    			Math.min(random.nextInt(possibleFeatures.size()), maxCount) + 1;
     	return new LinkedHashSet<>(possibleFeatures.subList(0, countToUse));
 	}
 
-	private ToDoubleFunction<RuleQuality> getRandomQualityFunction() {
-        switch (this.random.nextInt(4)) {
+	static ToDoubleFunction<RuleQuality> getRandomQualityFunction(Random random) {
+        switch (random.nextInt(4)) {
         case 0:
             return (RuleQuality q) -> q.getPrecision();
         case 1:
             return (RuleQuality q) -> q.getLaplace();
         case 2:
-        	final double factor = this.random.nextDouble() * 0.8;
+        	final double factor = random.nextDouble() * 0.8;
             return (RuleQuality q) -> q.getRelativeCost(factor);
         case 3:
-        	final int m = this.random.nextInt(100) + 1;
+        	final int m = random.nextInt(100) + 1;
             return (RuleQuality q) -> q.getMEstimate(m);
         default:
             throw new AssertionError();
@@ -256,19 +274,21 @@ public class GreedyRuleCreation {
     }
 
     private And greedyTopDown(
-					RecordScheme scheme,
+					RecordSet records,
                     RecordSubset toCover,
                     Set<String> selectedFeatures,
                     RuleQuality totalTrainingSetCounts,
-                    RuleRestrictions restr) throws InterruptedException {
+                    RuleRestrictions restr,
+                    Deadline deadline) throws InterruptedException {
 
+        final RecordScheme scheme = records.getScheme();
         RuleQuality priorQuality = determineQuality(toCover, totalTrainingSetCounts);
         And priorRule = new And();
         RuleQuality bestQuality = priorQuality;
         And bestRule = priorRule;
-        final ToDoubleFunction<RuleQuality> qualityFunction = this.getRandomQualityFunction();
-        while (true) {
-            final RuleCreationRestriction creationRestriction = restr.toCreationRestrictions(priorRule);
+        final ToDoubleFunction<RuleQuality> qualityFunction = getRandomQualityFunction(this.random);
+        final RuleCreationRestriction creationRestriction = restr.toCreationRestrictions(priorRule);
+        while (!deadline.isReached()) {
             final ConditionResults condition;
             if (this.random.nextDouble() < 0.05) {
                 condition = this.createRandomCondition(
@@ -280,19 +300,21 @@ public class GreedyRuleCreation {
                             creationRestriction);
             } else {
                 condition = this.findBestCondition(
-                			scheme,
+                			records,
                             toCover,
                             selectedFeatures,
                             priorRule.getUsedFeatures(),
                             totalTrainingSetCounts,
                             qualityFunction,
-                            creationRestriction);
+                            creationRestriction,
+                            deadline);
             }
             if (condition == null) {
                 break;
             }
             priorRule = priorRule.and(condition.condition);
-            if (this.compare(condition.getQuality(), bestQuality, qualityFunction) > 0
+            creationRestriction.addCondition(condition.condition);
+            if (compare(condition.getQuality(), bestQuality, qualityFunction) > 0
             		|| bestRule.getChildren().length == 0) {
                 bestRule = priorRule;
                 bestQuality = condition.getQuality();
@@ -384,131 +406,212 @@ public class GreedyRuleCreation {
         }
     }
 
-    private final ConditionResults findBestCondition(
-    				RecordScheme scheme,
+    final ConditionResults findBestCondition(
+    				RecordSet records,
                     RecordSubset toCover,
                     Set<String> selectedFeatures,
                     Multiset<String> alreadyUsedFeatures,
                     RuleQuality totalTrainingSetCounts,
                     ToDoubleFunction<RuleQuality> qualityFunction,
-                    RuleCreationRestriction creationRestriction) {
-        ConditionResults best = null;
+                    RuleCreationRestriction creationRestriction,
+                    Deadline deadline) {
+        return this.findBestCondition(records, toCover, selectedFeatures, alreadyUsedFeatures, totalTrainingSetCounts,
+                qualityFunction, creationRestriction, deadline, selectedFeatures.size() >= PARALLEL_SEARCH_MIN_FEATURES);
+    }
 
-        for (int column = 0; column < scheme.getStringColumnCount(); column++) {
-            final String name = scheme.getStrName(column);
-            if (!selectedFeatures.contains(name)) {
-                continue;
+    /**
+     * Searches the best condition, with the columns searched in parallel or one after the other.
+     * Both ways give the same result.
+     */
+    final ConditionResults findBestCondition(
+    				RecordSet records,
+                    RecordSubset toCover,
+                    Set<String> selectedFeatures,
+                    Multiset<String> alreadyUsedFeatures,
+                    RuleQuality totalTrainingSetCounts,
+                    ToDoubleFunction<RuleQuality> qualityFunction,
+                    RuleCreationRestriction creationRestriction,
+                    Deadline deadline,
+                    boolean parallel) {
+        final RecordScheme scheme = records.getScheme();
+        final int stringColumnCount = scheme.getStringColumnCount();
+        //when the deadline is reached, the remaining columns are skipped
+        final IntFunction<ConditionResults> searchColumn = (int column) -> deadline.isReached() ? null
+                : column < stringColumnCount
+                ? this.findBestStringCondition(scheme, column, toCover, selectedFeatures,
+                        alreadyUsedFeatures, totalTrainingSetCounts, qualityFunction, creationRestriction)
+                : this.findBestNumericCondition(records, column - stringColumnCount, toCover, selectedFeatures,
+                        alreadyUsedFeatures, totalTrainingSetCounts, qualityFunction, creationRestriction);
+
+        //the columns are independent, so for wide data sets they are searched in parallel
+        IntStream columns = IntStream.range(0, stringColumnCount + scheme.getNumericColumnCount());
+        if (parallel) {
+            columns = columns.parallel();
+        }
+        final ConditionResults[] bestPerColumn = columns.mapToObj(searchColumn).toArray(ConditionResults[]::new);
+
+        //reduce in column order, so that ties are broken like in a sequential search
+        ConditionResults best = null;
+        for (final ConditionResults c : bestPerColumn) {
+            if (c != null && this.isImprovement(c.quality, best, qualityFunction)) {
+                best = c;
             }
+        }
+        return best;
+    }
 
-            final Multiset<String> mustCounts = this.countStringValues(toCover.getMustRecords(), column);
-            if (mustCounts.isEmpty()) {
-                continue;
-            }
-            final Multiset<String> noCounts = this.countStringValues(toCover.getNoRecords(), column);
-            if (noCounts.isEmpty()) {
-                continue;
-            }
-            if (this.noMultipleValues(mustCounts, noCounts)) {
-                continue;
-            }
-            if (alreadyUsedFeatures.get(name) == 0
-            		&& creationRestriction.canBeValid(scheme.getAbsIndexFromStr(column), Equals.class)) {
-	            for (final String value : noCounts.keySet()) {
-	                best = this.evaluateCandidate(toCover, best,
-	                            new RuleQuality(
-	                                            mustCounts.get(value),
-	                                            noCounts.get(value),
-	                                            totalTrainingSetCounts),
-	                            new Equals(scheme, scheme.getAbsIndexFromStr(column), value),
-	                            qualityFunction,
-	                            creationRestriction);
-	            }
-            }
-            if (creationRestriction.canBeValid(scheme.getAbsIndexFromStr(column), NotEquals.class)) {
-	            for (final String value : mustCounts.keySet()) {
-	                best = this.evaluateCandidate(toCover, best,
-	                            new RuleQuality(
-	                                            toCover.getMustRecordCount() - mustCounts.get(value),
-	                                            toCover.getNoRecordCount() - noCounts.get(value),
-	                                            totalTrainingSetCounts),
-	                            new NotEquals(scheme, scheme.getAbsIndexFromStr(column), value),
-	                            qualityFunction,
-	                            creationRestriction);
-	            }
-            }
+    private ConditionResults findBestStringCondition(
+                    RecordScheme scheme,
+                    int column,
+                    RecordSubset toCover,
+                    Set<String> selectedFeatures,
+                    Multiset<String> alreadyUsedFeatures,
+                    RuleQuality totalTrainingSetCounts,
+                    ToDoubleFunction<RuleQuality> qualityFunction,
+                    RuleCreationRestriction creationRestriction) {
+        final String name = scheme.getStrName(column);
+        if (!selectedFeatures.contains(name)) {
+            return null;
         }
 
-        for (int column = 0; column < scheme.getNumericColumnCount(); column++) {
-            final String name = scheme.getNumName(column);
-            if (!selectedFeatures.contains(name)) {
-                continue;
-            }
-            if (alreadyUsedFeatures.get(name) > 1) {
-                //numeric columns can be used twice to allow ranges
-                continue;
+        final Multiset<String> mustCounts = this.countStringValues(toCover.getMustRecords(), column);
+        if (mustCounts.isEmpty()) {
+            return null;
+        }
+        final Multiset<String> noCounts = this.countStringValues(toCover.getNoRecords(), column);
+        if (noCounts.isEmpty()) {
+            return null;
+        }
+        if (this.noMultipleValues(mustCounts, noCounts)) {
+            return null;
+        }
+
+        ConditionResults best = null;
+        if (alreadyUsedFeatures.get(name) == 0
+        		&& creationRestriction.canBeValid(scheme.getAbsIndexFromStr(column), Equals.class)) {
+            for (final String value : noCounts.keySet()) {
+                best = this.evaluateCandidate(toCover, best,
+                            new RuleQuality(
+                                            mustCounts.get(value),
+                                            noCounts.get(value),
+                                            totalTrainingSetCounts),
+                            new Equals(scheme, scheme.getAbsIndexFromStr(column), value),
+                            qualityFunction,
+                            creationRestriction);
             }
-            if (this.blackboard.getRejectedColumns().contains(name)) {
-                continue;
+        }
+        if (creationRestriction.canBeValid(scheme.getAbsIndexFromStr(column), NotEquals.class)) {
+            for (final String value : mustCounts.keySet()) {
+                best = this.evaluateCandidate(toCover, best,
+                            new RuleQuality(
+                                            toCover.getMustRecordCount() - mustCounts.get(value),
+                                            toCover.getNoRecordCount() - noCounts.get(value),
+                                            totalTrainingSetCounts),
+                            new NotEquals(scheme, scheme.getAbsIndexFromStr(column), value),
+                            qualityFunction,
+                            creationRestriction);
             }
+        }
+        return best;
+    }
 
-            final Multiset<Double> mustCounts = this.countNumericValues(toCover.getMustRecords(), column);
-            if (mustCounts.isEmpty()) {
-                continue;
+    private ConditionResults findBestNumericCondition(
+                    RecordSet records,
+                    int column,
+                    RecordSubset toCover,
+                    Set<String> selectedFeatures,
+                    Multiset<String> alreadyUsedFeatures,
+                    RuleQuality totalTrainingSetCounts,
+                    ToDoubleFunction<RuleQuality> qualityFunction,
+                    RuleCreationRestriction creationRestriction) {
+        final RecordScheme scheme = records.getScheme();
+        final String name = scheme.getNumName(column);
+        if (!selectedFeatures.contains(name)) {
+            return null;
+        }
+        if (alreadyUsedFeatures.get(name) > 1) {
+            //numeric columns can be used twice to allow ranges
+            return null;
+        }
+        if (this.blackboard.getRejectedColumns().contains(name)) {
+            return null;
+        }
+
+        final int[] mustRanks = this.determineSortedValueRanks(records, toCover.getMustRows(), column);
+        if (mustRanks.length == 0) {
+            return null;
+        }
+        final int[] noRanks = this.determineSortedValueRanks(records, toCover.getNoRows(), column);
+        if (noRanks.length == 0) {
+            return null;
+        }
+        final int absColumn = scheme.getAbsIndexFromNum(column);
+        final boolean tryLeq = creationRestriction.canBeValid(absColumn, Leq.class);
+        final boolean tryGeq = creationRestriction.canBeValid(absColumn, Geq.class);
+        if (!tryLeq && !tryGeq) {
+            return null;
+        }
+
+        ConditionResults best = null;
+        //sweep over the values in ascending order. As the ranks are sorted, the number of records
+        //  up to the current value is simply the position in the rank array
+        int mustSum = 0;
+        int noSum = 0;
+        int curRank = Math.min(mustRanks[0], noRanks[0]);
+        while (true) {
+            while (mustSum < mustRanks.length && mustRanks[mustSum] == curRank) {
+                mustSum++;
             }
-            final Multiset<Double> noCounts = this.countNumericValues(toCover.getNoRecords(), column);
-            if (noCounts.isEmpty()) {
-                continue;
+            while (noSum < noRanks.length && noRanks[noSum] == curRank) {
+                noSum++;
+            }
+            if (mustSum == mustRanks.length && noSum == noRanks.length) {
+                break;
             }
-            final TreeSet<Double> values = new TreeSet<>();
-            values.addAll(mustCounts.keySet());
-            values.addAll(noCounts.keySet());
-
-            final Iterator<Double> iter = values.iterator();
-            Double prevValue = iter.next();
-            final int totalMustCount = mustCounts.sum();
-            final int totalNoCount = noCounts.sum();
-            int mustSum = mustCounts.get(prevValue);
-            int noSum = noCounts.get(prevValue);
-            final boolean tryLeq = creationRestriction.canBeValid(scheme.getAbsIndexFromNum(column), Leq.class);
-            final boolean tryGeq = creationRestriction.canBeValid(scheme.getAbsIndexFromNum(column), Geq.class);
-            while (iter.hasNext()) {
-                final Double d = iter.next();
-                if (tryLeq) {
-                	best = this.evaluateCandidate(toCover, best,
-                                new RuleQuality(mustSum, noSum, totalTrainingSetCounts),
-                                new Leq(scheme,
-                                        scheme.getAbsIndexFromNum(column),
-                                        Util.determineSplitPointWithFewDigits(prevValue, d)),
-                                qualityFunction,
-                                creationRestriction);
+            final int nextRank = Math.min(
+                    mustSum < mustRanks.length ? mustRanks[mustSum] : Integer.MAX_VALUE,
+                    noSum < noRanks.length ? noRanks[noSum] : Integer.MAX_VALUE);
+            //every table entry below the ranks curRank + 1 to nextRank splits the subset in the same way. The one
+            //  in the middle keeps the threshold in the middle of the subset's gap, not at its upper end
+            final double splitPoint = records.getSplitPointBelowRank(column, (curRank + nextRank + 1) / 2);
+            if (tryLeq) {
+                final RuleQuality q = new RuleQuality(mustSum, noSum, totalTrainingSetCounts);
+                if (this.isImprovement(q, best, qualityFunction)) {
+                    best = this.evaluateCandidate(toCover, best, q,
+                            new Leq(scheme, absColumn, splitPoint),
+                            qualityFunction,
+                            creationRestriction);
                 }
-                if (tryGeq) {
-                	best = this.evaluateCandidate(toCover, best,
-                                new RuleQuality(totalMustCount - mustSum, totalNoCount - noSum, totalTrainingSetCounts),
-                                new Geq(scheme,
-                                        scheme.getAbsIndexFromNum(column),
-                                        Util.determineSplitPointWithFewDigits(prevValue, d)),
-                                qualityFunction,
-                                creationRestriction);
+            }
+            if (tryGeq) {
+                final RuleQuality q = new RuleQuality(
+                        mustRanks.length - mustSum, noRanks.length - noSum, totalTrainingSetCounts);
+                if (this.isImprovement(q, best, qualityFunction)) {
+                    best = this.evaluateCandidate(toCover, best, q,
+                            new Geq(scheme, absColumn, splitPoint),
+                            qualityFunction,
+                            creationRestriction);
                 }
-                mustSum += mustCounts.get(d);
-                noSum += noCounts.get(d);
-                prevValue = d;
             }
+            curRank = nextRank;
         }
-
         return best;
     }
 
-    private Multiset<Double> countNumericValues(Collection<Record> rs, int column) {
-        final Multiset<Double> m = new Multiset<>();
-        for (final Record r : rs) {
-            final double v = r.getValueDbl(column);
-            if (!Double.isNaN(v)) {
-                m.add(v);
+    /**
+     * Returns the ranks of the (non-NaN) values in the given rows and numeric column, in ascending order.
+     */
+    private int[] determineSortedValueRanks(RecordSet records, int[] rows, int column) {
+        final int[] ranks = new int[rows.length];
+        int count = 0;
+        for (final int row : rows) {
+            final int rank = records.getValueRankOfRow(column, row);
+            if (rank >= 0) {
+                ranks[count++] = rank;
             }
         }
-        return m;
+        Arrays.sort(ranks, 0, count);
+        return count == ranks.length ? ranks : Arrays.copyOf(ranks, count);
     }
 
     private boolean noMultipleValues(Multiset<String> mustCounts, Multiset<String> noCounts) {
@@ -538,7 +641,7 @@ public class GreedyRuleCreation {
                     SimpleRule newCandidate,
                     ToDoubleFunction<RuleQuality> qualityFunction,
                     RuleCreationRestriction creationRestriction) {
-        if ((best == null || (this.compare(qualityForCandidate, best.quality, qualityFunction) > 0))
+        if (this.isImprovement(qualityForCandidate, best, qualityFunction)
                 && creationRestriction.canBeValid(newCandidate)) {
             return new ConditionResults(newCandidate, qualityForCandidate);
         } else {
@@ -546,11 +649,15 @@ public class GreedyRuleCreation {
         }
     }
 
+    private boolean isImprovement(RuleQuality candidate, ConditionResults best, ToDoubleFunction<RuleQuality> qualityFunction) {
+        return best == null || compare(candidate, best.quality, qualityFunction) > 0;
+    }
+
     private static RuleQuality determineQuality(RecordSubset toCover, RuleQuality totalTrainingSetCounts) {
         return new RuleQuality(toCover.getMustRecordCount(), toCover.getNoRecordCount(), totalTrainingSetCounts);
     }
 
-    private int compare(RuleQuality q1, RuleQuality q2, ToDoubleFunction<RuleQuality> qualityFunction) {
+    static int compare(RuleQuality q1, RuleQuality q2, ToDoubleFunction<RuleQuality> qualityFunction) {
         final int cmp = Double.compare(qualityFunction.applyAsDouble(q1), qualityFunction.applyAsDouble(q2));
         if (cmp != 0) {
             return cmp;
@@ -16,34 +16,43 @@
 package de.unihannover.gimo_m.mining.agents;
 
 import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.Collections;
 import java.util.List;
 import java.util.Random;
-import java.util.function.Function;
+import java.util.stream.Collectors;
 
 import de.unihannover.gimo_m.mining.common.And;
 import de.unihannover.gimo_m.mining.common.Blackboard;
-import de.unihannover.gimo_m.mining.common.ConstantRule;
+import de.unihannover.gimo_m.mining.common.Geq;
+import de.unihannover.gimo_m.mining.common.Leq;
 import de.unihannover.gimo_m.mining.common.NondominatedResults;
 import de.unihannover.gimo_m.mining.common.OrdinalRule;
-import de.unihannover.gimo_m.mining.common.Record;
 import de.unihannover.gimo_m.mining.common.RecordSet;
 import de.unihannover.gimo_m.mining.common.Rule;
 import de.unihannover.gimo_m.mining.common.RuleSet;
 import de.unihannover.gimo_m.mining.common.TargetFunction;
 import de.unihannover.gimo_m.mining.common.ValuedResult;
+import de.unihannover.gimo_m.util.EventLog.Level;
 import de.unihannover.gimo_m.util.Multimap;
 
 public class LocalSearch {
 
     private static final int PLATEAU_STEP_LIMIT = 100;
 
+    /**
+     * Minimal size of a neighborhood for it to be evaluated in parallel.
+     */
+    private static final int PARALLEL_MIN_NEIGHBORHOOD_SIZE = 8;
+
     private final Blackboard blackboard;
     private final Random random;
+    private final WorkerLoad load;
 
-    public LocalSearch(Blackboard blackboard, Random random) {
+    public LocalSearch(Blackboard blackboard, Random random, WorkerLoad load) {
         this.blackboard = blackboard;
         this.random = random;
+        this.load = load;
     }
 
     private static abstract class Move {
@@ -128,6 +137,18 @@ public class LocalSearch {
     }
 
     public NondominatedResults<RuleSet> optimizeByLocalSearch(ValuedResult<RuleSet> initial, TargetFunction direction) {
+        return this.optimizeByLocalSearch(initial, direction, false, Deadline.none());
+    }
+
+    /**
+     * Performs a local search starting from the given rule set.
+     * @param parallel When true, the neighbors in each step are evaluated in parallel on the common fork/join pool.
+     *      The chosen move is the same as in the sequential search.
+     * @param deadline When it is reached, the search stops and the results found so far are returned.
+     *      The search can be continued by starting a new one from the best of them.
+     */
+    public NondominatedResults<RuleSet> optimizeByLocalSearch(
+                    ValuedResult<RuleSet> initial, TargetFunction direction, boolean parallel, Deadline deadline) {
         final NondominatedResults<RuleSet> ret = new NondominatedResults<>();
         ret.add(this.blackboard.makeValidAndEvaluate(initial.getItem()));
         final RuleSet initialStub = RuleSet.create(initial.getItem().getDefault());
@@ -149,7 +170,7 @@ public class LocalSearch {
         boolean searchInRuleChangeNeighborhood = false;
         int stepsOnPlateau = 0;
 
-        while (!Thread.currentThread().isInterrupted()) {
+        while (!deadline.isReached()) {
             final List<? extends Move> neighborhood;
             if (searchInRuleChangeNeighborhood) {
                 neighborhood = this.determineRuleChangeNeighborhood(cur.getItem(), lastAdditionStrategy, lastAddition);
@@ -157,13 +178,14 @@ public class LocalSearch {
                 neighborhood = this.determineRuleAddNeighborhood(cur.getItem(), inclusionPool);
             }
             Collections.shuffle(neighborhood, this.random);
-            //find the best neighbor
+            final List<ValuedResult<RuleSet>> evaluatedNeighborhood = this.evaluateNeighborhood(neighborhood, parallel, deadline);
+            //find the best neighbor, in the shuffled order so that the result does not depend on the evaluation order
             Move bestMove = null;
             ValuedResult<RuleSet> bestSoFar = cur;
             boolean bestIsPlateau = false;
-            for (final Move neighbor : neighborhood) {
-                final ValuedResult<RuleSet> evaluated = this.blackboard.makeValidAndEvaluate(neighbor.getNewRuleSet());
-                this.blackboard.simplifyEvaluateAndAdd(evaluated.getItem());
+            for (int i = 0; i < evaluatedNeighborhood.size(); i++) {
+                final Move neighbor = neighborhood.get(i);
+                final ValuedResult<RuleSet> evaluated = evaluatedNeighborhood.get(i);
                 final boolean couldBeAdded = ret.add(evaluated);
                 //A neighbor is better when it improves (=minimizes) the target function. We also regard it as
                 //  better if the value is the same and it has not been visited so far, to be able to traverse
@@ -180,7 +202,8 @@ public class LocalSearch {
             if (bestIsPlateau) {
             	stepsOnPlateau++;
         		if (stepsOnPlateau > PLATEAU_STEP_LIMIT) {
-            		this.blackboard.log("terminating search in neighborhood after being on plateau for " + stepsOnPlateau + " steps");
+            		final int steps = stepsOnPlateau;
+            		this.blackboard.log(Level.DEBUG, () -> "terminating search in neighborhood after being on plateau for " + steps + " steps");
             		bestMove = null;
         		}
             } else {
@@ -206,6 +229,57 @@ public class LocalSearch {
         return ret;
     }
 
+    /**
+     * Evaluates the given moves. When the deadline is reached, only a prefix of the moves is evaluated.
+     */
+    private List<ValuedResult<RuleSet>> evaluateNeighborhood(
+                    List<? extends Move> neighborhood, boolean parallel, Deadline deadline) {
+        if (parallel && neighborhood.size() >= PARALLEL_MIN_NEIGHBORHOOD_SIZE) {
+            final Thread caller = Thread.currentThread();
+            final long waitedBefore = WorkerLoad.currentThreadWaitedNanos();
+            final List<ValuedResult<RuleSet>> evaluated = neighborhood.parallelStream()
+                    .map((Move m) -> deadline.isReached() ? null : this.evaluateMoveFor(caller, m))
+                    .collect(Collectors.toList());
+            final long waitedAfter = WorkerLoad.currentThreadWaitedNanos();
+            if (waitedBefore >= 0 && waitedAfter >= 0) {
+                //waiting for the other threads of the evaluation is no contention
+                this.load.addHelperWaitTime(waitedAfter - waitedBefore);
+            }
+            final int firstMissing = evaluated.indexOf(null);
+            return firstMissing < 0 ? evaluated : evaluated.subList(0, firstMissing);
+        }
+        final List<ValuedResult<RuleSet>> ret = new ArrayList<>();
+        for (final Move m : neighborhood) {
+            if (deadline.isReached()) {
+                break;
+            }
+            ret.add(this.evaluateMove(m));
+        }
+        return ret;
+    }
+
+    /**
+     * Evaluates the move in a parallel evaluation started by the given thread. The CPU time used by other threads
+     * is recorded, so that it is counted for the load of the worker.
+     */
+    private ValuedResult<RuleSet> evaluateMoveFor(Thread caller, Move move) {
+        if (Thread.currentThread() == caller) {
+            return this.evaluateMove(move);
+        }
+        final long cpuBefore = WorkerLoad.currentThreadCpuNanos();
+        final ValuedResult<RuleSet> ret = this.evaluateMove(move);
+        if (cpuBefore >= 0) {
+            this.load.addHelperCpuTime(WorkerLoad.currentThreadCpuNanos() - cpuBefore);
+        }
+        return ret;
+    }
+
+    private ValuedResult<RuleSet> evaluateMove(Move move) {
+        final ValuedResult<RuleSet> evaluated = this.blackboard.makeValidAndEvaluate(move.getNewRuleSet());
+        this.blackboard.simplifyEvaluateAndAdd(evaluated.getItem());
+        return evaluated;
+    }
+
 	private List<? extends Move> determineRuleAddNeighborhood(
                     RuleSet cur,
                     Multimap<String, And> inclusionPool) {
@@ -245,8 +319,8 @@ public class LocalSearch {
         ret.add(and.and(records.createRandomSimpleRule(this.random)));
         for (final Rule child : and.getChildren()) {
             if (child instanceof OrdinalRule) {
-                this.findSplitPointWhereMatchedRecordsChange(ret, and, child, records, r -> r.nextLargerValue(records));
-                this.findSplitPointWhereMatchedRecordsChange(ret, and, child, records, r -> r.nextSmallerValue(records));
+                this.findSplitPointWhereMatchedRecordsChange(ret, and, (OrdinalRule) child, records, true);
+                this.findSplitPointWhereMatchedRecordsChange(ret, and, (OrdinalRule) child, records, false);
             }
         }
         return ret;
@@ -258,28 +332,16 @@ public class LocalSearch {
      * for a split point that will change the set of matched records.
      */
     private void findSplitPointWhereMatchedRecordsChange(
-    		List<And> ret, And and, Rule child, RecordSet records, Function<OrdinalRule, Rule> adjustment) {
-    	final int initialCount = this.countMatchedRecords(and, records);
-    	Rule cur = child;
-    	And newAnd;
-    	do {
-    		cur = adjustment.apply((OrdinalRule) cur);
-            if (cur instanceof ConstantRule) {
-                return;
-            }
-            newAnd = and.copyWithReplacedChild(child, cur);
-    	} while (this.countMatchedRecords(newAnd, records) == initialCount);
-    	ret.add(newAnd);
-	}
-
-	private int countMatchedRecords(And newAnd, RecordSet records) {
-		int count = 0;
-		for (final Record r : records.getRecords()) {
-			if (newAnd.test(r)) {
-				count++;
-			}
-		}
-		return count;
+    		List<And> ret, And and, OrdinalRule child, RecordSet records, boolean towardsLarger) {
+        final BitSet otherCoverage = records.getCoverage(and.copyWithoutChild(child));
+        final double newValue = records.findSplitPointWhereCoverageChanges(child, otherCoverage, towardsLarger);
+        if (Double.isNaN(newValue)) {
+            return;
+        }
+        final OrdinalRule newChild = child instanceof Leq
+                ? new Leq(child.getScheme(), child.getColumn(), newValue)
+                : new Geq(child.getScheme(), child.getColumn(), newValue);
+        ret.add(and.copyWithReplacedChild(child, newChild));
 	}
 
 }
@@ -16,59 +16,101 @@
 package de.unihannover.gimo_m.mining.agents;
 
 import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
 
+import de.unihannover.gimo_m.mining.agents.OperatorSelector.Operator;
+import de.unihannover.gimo_m.mining.agents.PathRelinking.RemainingPath;
 import de.unihannover.gimo_m.mining.common.Blackboard;
 import de.unihannover.gimo_m.mining.common.NondominatedResults;
 import de.unihannover.gimo_m.mining.common.RuleSet;
+import de.unihannover.gimo_m.mining.common.TargetFunction;
+import de.unihannover.gimo_m.mining.common.TaskScheduler;
+import de.unihannover.gimo_m.mining.common.TaskScheduler.Task;
+import de.unihannover.gimo_m.mining.common.TaskScheduler.TaskType;
 import de.unihannover.gimo_m.mining.common.ValuedResult;
+import de.unihannover.gimo_m.util.EventLog.Level;
 
-public class MiningAgent extends Thread {
+/**
+ * The state of a single mining agent: its random number generator and search operators.
+ * The agent has no thread of its own, its iterations are run by the workers of an {@link AgentPool}.
+ */
+public class MiningAgent {
 
     private static final int START_PHASE_SIZE = 5;
     private final int SLEEP_EVERY = 10000;
     private final long SLEEP_TIME = 1000;
 
+    /**
+     * Time budget for a single operation. When it is exceeded, the operation stops with a partial result
+     * and the remaining work is queued again if it made progress.
+     */
+    private static final long OPERATION_BUDGET_MS = 10_000;
+    /**
+     * Maximal number of times the remaining work of an operation is queued again.
+     */
+    private static final int MAX_CONTINUATIONS = 3;
+    /**
+     * Minimal time an operation on work that was not fed by the user runs before it gives way to user-fed work.
+     */
+    private static final long MIN_TIME_BEFORE_PREEMPTION_MS = 200;
+
+    private static final AtomicInteger AGENT_COUNTER = new AtomicInteger();
+
 	private final Blackboard blackboard;
+    private final String name;
     private final GreedyRuleCreation greedyRuleCreation;
+    private final BeamSearchRuleCreation beamSearchRuleCreation;
     private final LocalSearch localSearch;
     private final PathRelinking pathRelinking;
+    private final OperatorSelector operatorSelector;
+    private final WorkerLoad load;
     private final Random random;
     private int iterationCount;
     private int createNewCount;
 
-    public MiningAgent(Blackboard blackboard) {
+    MiningAgent(Blackboard blackboard, OperatorSelector operatorSelector, WorkerLoad load) {
         this.blackboard = blackboard;
+        this.operatorSelector = operatorSelector;
+        this.load = load;
+        this.name = "agent-" + AGENT_COUNTER.incrementAndGet();
         this.random = blackboard.createNewRandom();
         this.greedyRuleCreation = new GreedyRuleCreation(blackboard, this.random);
-        this.localSearch = new LocalSearch(blackboard, this.random);
+        this.beamSearchRuleCreation = new BeamSearchRuleCreation(blackboard, this.random);
+        this.localSearch = new LocalSearch(blackboard, this.random, load);
         this.pathRelinking = new PathRelinking(blackboard, this.random);
 
-        this.setDaemon(true);
-        blackboard.log("creating new agent " + this.getName());
+        blackboard.log("creating new agent " + this.name);
+    }
+
+    public String getName() {
+        return this.name;
     }
 
-    @Override
-    public void run() {
-        try {
-            while (!this.isInterrupted()) {
-                this.performIteration();
+    /**
+     * Performs a single iteration of the mining process.
+     */
+    public void runIteration() throws InterruptedException {
+        this.performIteration();
 
-                //Give the system some rest every now and then.
-                //  When the iterations are fast this occurs more often, when
-                //  the iterations are slow waiting here does not matter much.
-                if (this.iterationCount % this.SLEEP_EVERY == 0) {
-                    this.blackboard.log("sleeping a bit");
-                    Thread.sleep(this.SLEEP_TIME);
-                }
+        //Give the system some rest every now and then.
+        //  When the iterations are fast this occurs more often, when
+        //  the iterations are slow waiting here does not matter much.
+        //  Work fed by the user ends the rest immediately.
+        if (this.iterationCount % this.SLEEP_EVERY == 0) {
+            this.blackboard.log(Level.DEBUG, () -> "sleeping a bit");
+            this.load.beginIdle();
+            try {
+                this.blackboard.getScheduler().pauseUnlessUserFedWork(this.SLEEP_TIME);
+            } finally {
+                this.load.endIdle();
             }
-        } catch (final InterruptedException e) {
         }
-        this.blackboard.log("agent thread ended");
     }
 
 	private void performIteration() throws InterruptedException {
-		if (this.iterationCount < START_PHASE_SIZE) {
-		    this.createNewRuleSet(false);
+		if (this.iterationCount < START_PHASE_SIZE && !this.blackboard.getScheduler().hasUserFedWork()) {
+		    this.createNewRuleSet(false, this.createDeadline(TaskType.EXPLORATION));
 		} else {
 		    this.workOnHighestPriorityTask();
 		}
@@ -76,87 +118,215 @@ public class MiningAgent extends Thread {
 	}
 
     private void workOnHighestPriorityTask() throws InterruptedException {
-        ValuedResult<RuleSet> rs;
-        rs = this.blackboard.getOpenItemFromUserFedPathRelinkingQueue();
-        if (rs != null) {
-            this.blackboard.log("iteration " + this.iterationCount + ": performing path relinking with rule from user");
-            this.pathRelinking.performWith(rs);
-            return;
+        final Task task = this.blackboard.getScheduler().takeTask();
+        final ValuedResult<RuleSet> rs = task.getItem();
+        switch (task.getType()) {
+        case USER_PATH_RELINKING:
+            this.logIteration("performing path relinking with rule from user");
+            this.performPathRelinking(task);
+            break;
+        case USER_LOCAL_SEARCH:
+            this.logIteration("performing local search with rule from user");
+            this.performLocalSearch(rs, TaskType.USER_LOCAL_SEARCH, TaskType.USER_PATH_RELINKING, task.getContinuationCount());
+            break;
+        case AGENT_LOCAL_SEARCH:
+            this.logIteration("performing local search with rule from agent");
+            this.performLocalSearch(rs, TaskType.AGENT_LOCAL_SEARCH, TaskType.AGENT_PATH_RELINKING, task.getContinuationCount());
+            break;
+        case AGENT_PATH_RELINKING:
+            this.logIteration("performing path relinking with rule from agent");
+            this.performPathRelinking(task);
+            break;
+        case EXPLORATION:
+            this.explore();
+            break;
+        default:
+            throw new AssertionError("unknown task type " + task.getType());
+        }
+    }
+
+    /**
+     * Work fed by the user only stops when its time budget is used up. Other work also stops early when there is
+     * work fed by the user.
+     */
+    private Deadline createDeadline(TaskType type) {
+        final Deadline deadline = Deadline.in(OPERATION_BUDGET_MS);
+        if (type.isUserFed()) {
+            return deadline;
+        }
+        final TaskScheduler scheduler = this.blackboard.getScheduler();
+        return deadline.orWhen(scheduler::hasUserFedWork, MIN_TIME_BEFORE_PREEMPTION_MS);
+    }
+
+    private void performPathRelinking(Task task) {
+        final Deadline deadline = this.createDeadline(task.getType());
+        final RemainingPath remaining;
+        if (task.getStart() == null) {
+            remaining = this.pathRelinking.performWith(task.getItem(), deadline);
+        } else {
+            remaining = this.pathRelinking.performFrom(task.getStart(), task.getItem(), deadline);
+        }
+        this.requeueRemainingPath(task.getType(), remaining, task.getContinuationCount());
+    }
+
+    private void requeueRemainingPath(TaskType type, RemainingPath remaining, int continuationCount) {
+        if (remaining != null) {
+            this.requeue(type, remaining.getStart(), remaining.getEnd(), continuationCount);
         }
-        rs = this.blackboard.getOpenItemFromUserFedLocalSearchQueue();
-        if (rs != null) {
-            this.blackboard.log("iteration " + this.iterationCount + ": performing local search with rule from user");
-            //when there are good partial rules in the new rule set, try to get them into the current best one as fast as possible
-            final NondominatedResults<RuleSet> resultsCombined = this.localSearch.optimizeByLocalSearch(
-            		this.combine(rs, this.blackboard.getBestResultInLimits(this.random)), this.blackboard.getCurrentTargetFunction());
-            this.blackboard.addAll(resultsCombined);
-            final NondominatedResults<RuleSet> results = this.localSearch.optimizeByLocalSearch(rs, this.blackboard.getCurrentTargetFunction());
-            this.blackboard.addAll(results);
-            this.blackboard.addToUserFedPathRelinkingQueue(results.getBestItem(this.random, this.blackboard.getCurrentTargetFunction()));
-            this.blackboard.addToUserFedPathRelinkingQueue(results.getRandomItem(this.random));
+    }
+
+    private void performLocalSearch(ValuedResult<RuleSet> rs, TaskType type, TaskType followUpType, int continuationCount) {
+        final Deadline deadline = this.createDeadline(type);
+        //the user is waiting for the results of user-fed work, so use more than one core for it
+        final boolean parallel = followUpType.isUserFed();
+        //when there are good partial rules in the new rule set, try to get them into the current best one as fast as possible
+        final ValuedResult<RuleSet> combined = this.combine(rs, this.blackboard.getBestResultInLimits(this.random));
+        final NondominatedResults<RuleSet> resultsCombined = this.localSearch.optimizeByLocalSearch(
+        		combined, this.blackboard.getCurrentTargetFunction(), parallel, deadline);
+        this.blackboard.addAll(resultsCombined);
+        if (deadline.wasReached()) {
+            //the combined rule set contains the rules of the given one, so searching from it again covers both searches
+            this.requeueIfImproved(type, combined, resultsCombined, continuationCount);
             return;
         }
-        rs = this.blackboard.getOpenItemFromAgentFedLocalSearchQueue();
-        if (rs != null) {
-            this.blackboard.log("iteration " + this.iterationCount + ": performing local search with rule from agent");
-            final NondominatedResults<RuleSet> resultsCombined = this.localSearch.optimizeByLocalSearch(
-            		this.combine(rs, this.blackboard.getBestResultInLimits(this.random)), this.blackboard.getCurrentTargetFunction());
-            this.blackboard.addAll(resultsCombined);
-            final NondominatedResults<RuleSet> results = this.localSearch.optimizeByLocalSearch(rs, this.blackboard.getCurrentTargetFunction());
-            this.blackboard.addAll(results);
-            this.blackboard.addToAgentFedPathRelinkingQueue(results.getBestItem(this.random, this.blackboard.getCurrentTargetFunction()));
-            this.blackboard.addToAgentFedPathRelinkingQueue(results.getRandomItem(this.random));
+        final NondominatedResults<RuleSet> results = this.localSearch.optimizeByLocalSearch(
+                rs, this.blackboard.getCurrentTargetFunction(), parallel, deadline);
+        this.blackboard.addAll(results);
+        final TaskScheduler scheduler = this.blackboard.getScheduler();
+        scheduler.schedule(followUpType, results.getBestItem(this.random, this.blackboard.getCurrentTargetFunction()));
+        scheduler.schedule(followUpType, results.getRandomItem(this.random));
+        if (deadline.wasReached()) {
+            this.requeueIfImproved(type, rs, results, continuationCount);
+        }
+    }
+
+    /**
+     * Queues a local search from the best partial result of an interrupted local search again, but only when that
+     * result is better than the rule set the search started with. Without progress, e.g. on a plateau, a new
+     * search would only repeat the work.
+     */
+    private void requeueIfImproved(
+            TaskType type, ValuedResult<RuleSet> input, NondominatedResults<RuleSet> results, int continuationCount) {
+        final TargetFunction targetFunction = this.blackboard.getCurrentTargetFunction();
+        final ValuedResult<RuleSet> best = results.getBestItem(this.random, targetFunction);
+        if (best == null || targetFunction.applyAsDouble(best) >= targetFunction.applyAsDouble(input)) {
+            this.blackboard.countEvent("time budget exceeded without progress, remaining work dropped");
             return;
         }
-        rs = this.blackboard.getOpenItemFromAgentFedPathRelinkingQueue();
-        if (rs != null) {
-            this.blackboard.log("iteration " + this.iterationCount + ": performing path relinking with rule from agent");
-            this.pathRelinking.performWith(rs);
+        this.requeue(type, null, best, continuationCount);
+    }
+
+    /**
+     * Queues the remaining work of an operation that exceeded its time budget, unless it has already been queued
+     * again too often.
+     */
+    private void requeue(TaskType type, ValuedResult<RuleSet> start, ValuedResult<RuleSet> item, int continuationCount) {
+        if (continuationCount >= MAX_CONTINUATIONS) {
+            this.blackboard.countEvent("time budget exceeded too often, remaining work dropped");
             return;
         }
+        this.blackboard.countEvent("time budget exceeded, requeued remaining work");
+        this.blackboard.getScheduler().scheduleContinuation(type, start, item, continuationCount + 1);
+    }
 
-        final int action = this.random.nextInt(10);
-        switch (action) {
-        case 0:
-        case 1:
-        case 2:
-            this.blackboard.log("iteration " + this.iterationCount + ": performing path relinking with rule from result pool");
-            this.pathRelinking.performWith(this.blackboard.getRandomResult(this.random));
+    /**
+     * Applies one of the exploration operators and tells the operator selector how productive it was.
+     */
+    private void explore() throws InterruptedException {
+        final Operator operator = this.operatorSelector.select(this.random);
+        final long startTime = OperatorSelector.currentThreadTime();
+        final long startImprovements = this.blackboard.getImprovementCountOfCurrentThread();
+        switch (operator) {
+        case PATH_RELINKING:
+            this.logIteration("performing path relinking with rule from result pool");
+            this.requeueRemainingPath(TaskType.AGENT_PATH_RELINKING, this.pathRelinking.performWith(
+                    this.blackboard.getRandomResult(this.random), this.createDeadline(TaskType.EXPLORATION)), 0);
+            break;
+        case LOCAL_SEARCH:
+            this.logIteration("performing local search with rule from result pool");
+            this.performExplorativeLocalSearch();
             break;
-        case 3:
-        case 4:
-        case 5:
-            this.blackboard.log("iteration " + this.iterationCount + ": performing local search with rule from result pool");
-            this.blackboard.addAll(this.localSearch.optimizeByLocalSearch(this.blackboard.getRandomResult(this.random), this.blackboard.getCurrentTargetFunction()));
+        case NEW_RULE_SET:
+            this.createNewRuleSet(false, this.createDeadline(TaskType.EXPLORATION));
             break;
-        case 6:
-        case 7:
-        case 8:
-            this.createNewRuleSet(false);
+        case NEW_RULE_SET_BASED_ON_BEST:
+            this.createNewRuleSet(true, this.createDeadline(TaskType.EXPLORATION));
             break;
-        case 9:
-            this.createNewRuleSet(true);
+        case NEW_RULE_SET_BY_BEAM_SEARCH:
+            this.createNewRuleSetByBeamSearch(this.createDeadline(TaskType.EXPLORATION));
             break;
+        default:
+            throw new AssertionError("unknown operator " + operator);
         }
+        this.operatorSelector.record(operator,
+                this.blackboard.getImprovementCountOfCurrentThread() - startImprovements,
+                OperatorSelector.currentThreadTime() - startTime);
     }
 
-    private void createNewRuleSet(boolean basedOnBest) throws InterruptedException {
+    private void performExplorativeLocalSearch() {
+        final Deadline deadline = this.createDeadline(TaskType.EXPLORATION);
+        final ValuedResult<RuleSet> start = this.blackboard.getRandomResult(this.random);
+        final NondominatedResults<RuleSet> results = this.localSearch.optimizeByLocalSearch(
+                start, this.blackboard.getCurrentTargetFunction(), false, deadline);
+        this.blackboard.addAll(results);
+        if (deadline.wasReached()) {
+            this.requeueIfImproved(TaskType.AGENT_LOCAL_SEARCH, start, results, 0);
+        }
+    }
+
+    /**
+     * Creates a new rule set and queues it for local search. When the deadline is reached, the partially created
+     * rule set is used.
+     */
+    private void createNewRuleSet(boolean basedOnBest, Deadline deadline) throws InterruptedException {
     	final int limit = this.createNewCount + 5;
     	this.createNewCount++;
     	final RuleSet rs;
     	if (basedOnBest) {
     		final ValuedResult<RuleSet> bestResult = this.blackboard.getBestResultInLimits(this.random);
-    		this.blackboard.log("iteration " + this.iterationCount + ": creating new rule set with limit " + limit +  " based on " + bestResult);
-    		rs = this.greedyRuleCreation.createRuleSet(limit, bestResult.getItem());
+    		this.logIteration("creating new rule set based on best", () -> "with limit " + limit +  " based on " + bestResult);
+    		rs = this.greedyRuleCreation.createRuleSet(limit, bestResult.getItem(), deadline);
     	} else {
-    		this.blackboard.log("iteration " + this.iterationCount + ": creating new rule set with limit " + limit);
-    		rs = this.greedyRuleCreation.createRuleSet(limit);
+    		this.logIteration("creating new rule set", () -> "with limit " + limit);
+    		rs = this.greedyRuleCreation.createRuleSet(limit, null, deadline);
     	}
+    	this.addNewRuleSet(rs, deadline);
+    }
+
+    /**
+     * Creates a new rule set with several diverse rules found by beam search and queues it for local search.
+     */
+    private void createNewRuleSetByBeamSearch(Deadline deadline) {
+        final int limit = this.createNewCount + 5;
+        this.createNewCount++;
+        this.logIteration("creating new rule set by beam search", () -> "with limit " + limit);
+        this.addNewRuleSet(this.beamSearchRuleCreation.createRuleSet(limit, null, deadline), deadline);
+    }
+
+    private void addNewRuleSet(RuleSet rs, Deadline deadline) {
     	final ValuedResult<RuleSet> newRuleSet = this.blackboard.simplifyEvaluateAndAdd(rs);
-        this.blackboard.log("created new rule set " + newRuleSet);
+        this.blackboard.log(Level.DEBUG, () -> "created new rule set " + newRuleSet);
+        if (deadline.wasReached()) {
+            //the local search continues the work on the partial rule set
+            this.blackboard.countEvent("time budget exceeded, using partially created rule set");
+        }
         this.blackboard.addToAgentFedLocalSearchQueue(newRuleSet);
     }
 
+    private void logIteration(String action) {
+        this.logIteration(action, () -> "");
+    }
+
+    /**
+     * Iterations are far too frequent to log each of them normally. They are counted and only
+     * logged in detail on debug level.
+     */
+    private void logIteration(String action, Supplier<String> details) {
+        this.blackboard.countEvent(action);
+        final int iteration = this.iterationCount;
+        this.blackboard.log(Level.DEBUG, () -> "iteration " + iteration + ": " + action + " " + details.get());
+    }
+
 	private ValuedResult<RuleSet> combine(ValuedResult<RuleSet> vr1, ValuedResult<RuleSet> vr2) {
 		RuleSet ret = vr1.getItem();
 		ret = ret.addAll(vr2.getItem());
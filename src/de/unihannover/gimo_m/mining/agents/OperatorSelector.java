@@ -0,0 +1,208 @@
+/**
+ * Copyright 2019 Tobias Baum
+ *
+ * This file is part of GIMO-m.
+ *
+ * GIMO-m is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * GIMO-m is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ */
+package de.unihannover.gimo_m.mining.agents;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Chooses the operator for exploration iterations, based on how productive each operator was recently.
+ *
+ * <p>The productivity of an operator is the number of improvements of the Pareto front per CPU millisecond it caused.
+ * It is estimated with exponentially decaying sums, so that the estimate follows the changes during a session.
+ * The operators are chosen with probabilities proportional to their productivity (probability matching), but every
+ * operator keeps a minimal probability so that its estimate stays current. Until every operator has been used a
+ * few times, the fixed default odds are used.
+ *
+ * <p>The selector is shared by all agents of a pool and is thread safe.
+ */
+public class OperatorSelector {
+
+    /**
+     * The operators that can be used for exploration, with their default weights.
+     */
+    public enum Operator {
+        PATH_RELINKING(3),
+        LOCAL_SEARCH(3),
+        NEW_RULE_SET(3),
+        NEW_RULE_SET_BASED_ON_BEST(1),
+        NEW_RULE_SET_BY_BEAM_SEARCH(2);
+
+        private final int defaultWeight;
+
+        private Operator(int defaultWeight) {
+            this.defaultWeight = defaultWeight;
+        }
+    }
+
+    /**
+     * The statistics for a single operator, for monitoring.
+     */
+    public static final class Statistics {
+        private final Operator operator;
+        private final long uses;
+        private final long improvements;
+        private final double cpuMillis;
+        private final double recentImprovementsPerMilli;
+        private final double probability;
+
+        private Statistics(Operator operator, long uses, long improvements, double cpuMillis,
+                double recentImprovementsPerMilli, double probability) {
+            this.operator = operator;
+            this.uses = uses;
+            this.improvements = improvements;
+            this.cpuMillis = cpuMillis;
+            this.recentImprovementsPerMilli = recentImprovementsPerMilli;
+            this.probability = probability;
+        }
+
+        public Operator getOperator() {
+            return this.operator;
+        }
+
+        public long getUses() {
+            return this.uses;
+        }
+
+        /**
+         * Returns the total number of improvements of the Pareto front caused by the operator.
+         */
+        public long getImprovements() {
+            return this.improvements;
+        }
+
+        /**
+         * Returns the total CPU time used by the operator. When the CPU time cannot be measured, the wall clock time is used.
+         */
+        public double getCpuMillis() {
+            return this.cpuMillis;
+        }
+
+        /**
+         * Returns the estimated current productivity of the operator.
+         */
+        public double getRecentImprovementsPerMilli() {
+            return this.recentImprovementsPerMilli;
+        }
+
+        /**
+         * Returns the probability with which the operator is currently chosen.
+         */
+        public double getProbability() {
+            return this.probability;
+        }
+    }
+
+    /**
+     * Weight of the old observations in the estimates after each use of an operator.
+     */
+    static final double DECAY = 0.95;
+    static final double MIN_PROBABILITY = 0.05;
+    static final int MIN_USES = 3;
+
+    private static final ThreadMXBean THREAD_BEAN = ManagementFactory.getThreadMXBean();
+
+    private final Operator[] operators = Operator.values();
+    private final long[] uses = new long[this.operators.length];
+    private final long[] improvements = new long[this.operators.length];
+    private final double[] cpuMillis = new double[this.operators.length];
+    private final double[] recentImprovements = new double[this.operators.length];
+    private final double[] recentCpuMillis = new double[this.operators.length];
+
+    /**
+     * Chooses the operator for the next exploration iteration.
+     */
+    public synchronized Operator select(Random random) {
+        final double[] probabilities = this.determineProbabilities();
+        double r = random.nextDouble();
+        for (int i = 0; i < this.operators.length - 1; i++) {
+            r -= probabilities[i];
+            if (r < 0) {
+                return this.operators[i];
+            }
+        }
+        return this.operators[this.operators.length - 1];
+    }
+
+    /**
+     * Records the outcome of a use of the given operator.
+     * @param improvementCount The number of improvements of the Pareto front during the use.
+     * @param timeNanos The time the use took, as measured with {@link #currentThreadTime()}.
+     */
+    public synchronized void record(Operator operator, long improvementCount, long timeNanos) {
+        final int i = operator.ordinal();
+        final double millis = timeNanos / 1_000_000.0;
+        this.uses[i]++;
+        this.improvements[i] += improvementCount;
+        this.cpuMillis[i] += millis;
+        this.recentImprovements[i] = DECAY * this.recentImprovements[i] + improvementCount;
+        this.recentCpuMillis[i] = DECAY * this.recentCpuMillis[i] + millis;
+    }
+
+    /**
+     * Returns the CPU time of the current thread in nanoseconds, or the wall clock time if that cannot be measured
+     * (e.g. for virtual threads). Only the difference between two calls in the same thread is meaningful.
+     */
+    public static long currentThreadTime() {
+        final long cpuTime = THREAD_BEAN.isCurrentThreadCpuTimeSupported() ? THREAD_BEAN.getCurrentThreadCpuTime() : -1;
+        return cpuTime >= 0 ? cpuTime : System.nanoTime();
+    }
+
+    public synchronized List<Statistics> getStatistics() {
+        final double[] probabilities = this.determineProbabilities();
+        final List<Statistics> ret = new ArrayList<>();
+        for (int i = 0; i < this.operators.length; i++) {
+            ret.add(new Statistics(this.operators[i], this.uses[i], this.improvements[i], this.cpuMillis[i],
+                    this.productivity(i), probabilities[i]));
+        }
+        return ret;
+    }
+
+    private double[] determineProbabilities() {
+        final double[] ret = new double[this.operators.length];
+        boolean warmedUp = true;
+        double productivitySum = 0.0;
+        for (int i = 0; i < this.operators.length; i++) {
+            warmedUp &= this.uses[i] >= MIN_USES;
+            ret[i] = this.productivity(i);
+            productivitySum += ret[i];
+        }
+        if (!warmedUp || productivitySum <= 0.0) {
+            //no evidence yet, use the default odds
+            double weightSum = 0.0;
+            for (final Operator o : this.operators) {
+                weightSum += o.defaultWeight;
+            }
+            for (int i = 0; i < this.operators.length; i++) {
+                ret[i] = this.operators[i].defaultWeight / weightSum;
+            }
+            return ret;
+        }
+        final double share = 1.0 - this.operators.length * MIN_PROBABILITY;
+        for (int i = 0; i < this.operators.length; i++) {
+            ret[i] = MIN_PROBABILITY + share * ret[i] / productivitySum;
+        }
+        return ret;
+    }
+
+    private double productivity(int i) {
+        return this.recentCpuMillis[i] <= 0.0 ? 0.0 : this.recentImprovements[i] / this.recentCpuMillis[i];
+    }
+
+}
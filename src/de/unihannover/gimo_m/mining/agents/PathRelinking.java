@@ -16,19 +16,439 @@
 package de.unihannover.gimo_m.mining.agents;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Random;
-import java.util.function.Function;
+import java.util.Set;
 
 import de.unihannover.gimo_m.mining.common.And;
 import de.unihannover.gimo_m.mining.common.Blackboard;
+import de.unihannover.gimo_m.mining.common.ObjectiveCalculator;
+import de.unihannover.gimo_m.mining.common.ObjectiveStrategy;
+import de.unihannover.gimo_m.mining.common.Record;
+import de.unihannover.gimo_m.mining.common.RecordSet;
 import de.unihannover.gimo_m.mining.common.RuleSet;
 import de.unihannover.gimo_m.mining.common.TargetFunction;
 import de.unihannover.gimo_m.mining.common.ValuedResult;
+import de.unihannover.gimo_m.util.Multiset;
 
 public class PathRelinking {
 
+    /**
+     * The current position on a relinking path. Besides the rule set, it stores which exception decides about
+     * each record and the partial objective values, so that the effect of a single action can be determined
+     * by looking only at the records it affects.
+     */
+    static final class Position {
+        private final Record[] records;
+        private final ObjectiveStrategy objectives;
+        private RuleSet ruleSet;
+        private BitSet[] exceptionCoverage;
+        private int[] decidingException;
+        private final Map<String, Integer> defaultDecidedPerClass = new HashMap<>();
+        private ObjectiveCalculator calculator;
+        private Multiset<String> featureCounts;
+        private double complexity;
+        private int featureCount;
+        private ValuedResult<RuleSet> value;
+
+        public Position(RuleSet ruleSet, RecordSet records, ObjectiveStrategy objectives) {
+            this.records = records.getRecords();
+            this.objectives = objectives;
+            this.ruleSet = ruleSet;
+            this.decidingException = this.determineDecidingExceptions(records);
+            this.calculator = objectives.createCalculator();
+            for (int row = 0; row < this.records.length; row++) {
+                final String correctClass = this.records[row].getCorrectClass();
+                this.calculator.handleInstance(correctClass, this.getPrediction(row));
+                if (this.decidingException[row] < 0) {
+                    this.defaultDecidedPerClass.merge(correctClass, 1, Integer::sum);
+                }
+            }
+            this.updateStructure();
+        }
+
+        private int[] determineDecidingExceptions(RecordSet records) {
+            this.exceptionCoverage = new BitSet[this.ruleSet.getExceptionCount()];
+            for (int exceptionId = 0; exceptionId < this.exceptionCoverage.length; exceptionId++) {
+                final BitSet coverage = new BitSet(this.records.length);
+                for (final And rule : this.ruleSet.getRules(exceptionId)) {
+                    coverage.or(records.getCoverage(rule));
+                }
+                this.exceptionCoverage[exceptionId] = coverage;
+            }
+            final int[] ret = new int[this.records.length];
+            Arrays.fill(ret, -1);
+            for (int exceptionId = this.exceptionCoverage.length - 1; exceptionId >= 0; exceptionId--) {
+                final BitSet coverage = this.exceptionCoverage[exceptionId];
+                for (int row = coverage.nextSetBit(0); row >= 0; row = coverage.nextSetBit(row + 1)) {
+                    ret[row] = exceptionId;
+                }
+            }
+            return ret;
+        }
+
+        private void updateStructure() {
+            this.featureCounts = new Multiset<>();
+            for (int exceptionId = 0; exceptionId < this.ruleSet.getExceptionCount(); exceptionId++) {
+                for (final And rule : this.ruleSet.getRules(exceptionId)) {
+                    this.featureCounts.addAll(rule.getUsedFeatures());
+                }
+            }
+            this.complexity = this.ruleSet.getComplexity();
+            this.featureCount = this.ruleSet.getFeatureCount();
+            this.value = new ValuedResult<>(
+                    this.ruleSet, this.calculator.copy().getResult(this.complexity, this.featureCount));
+        }
+
+        private String getPrediction(int row) {
+            return this.getPrediction(this.ruleSet, this.decidingException[row]);
+        }
+
+        private String getPrediction(RuleSet rs, int exceptionId) {
+            return exceptionId < 0 ? rs.getDefault() : rs.getStrategy(exceptionId);
+        }
+
+        /**
+         * Applies the given action and returns the rows that are now decided by a different exception.
+         */
+        public BitSet moveTo(RelinkAction action, RecordSet records) {
+            final RuleSet oldRuleSet = this.ruleSet;
+            this.ruleSet = action.apply(oldRuleSet);
+            final BitSet changedRows = action.updatePosition(this, oldRuleSet, records);
+            this.updateStructure();
+            return changedRows;
+        }
+
+        /**
+         * Lets the given exception (or the default when negative) decide about the row and updates the
+         * partial objective values accordingly. The strategies of the exceptions are the same before and after
+         * adding or removing a rule, so the current rule set can be used for both predictions.
+         */
+        private void changeDecidingException(int row, int newExceptionId, BitSet changedRows) {
+            final int oldExceptionId = this.decidingException[row];
+            if (oldExceptionId == newExceptionId) {
+                return;
+            }
+            final String correctClass = this.records[row].getCorrectClass();
+            final String oldPrediction = this.getPrediction(this.ruleSet, oldExceptionId);
+            final String newPrediction = this.getPrediction(this.ruleSet, newExceptionId);
+            if (!oldPrediction.equals(newPrediction)) {
+                this.calculator.removeInstance(correctClass, oldPrediction);
+                this.calculator.handleInstance(correctClass, newPrediction);
+            }
+            if (oldExceptionId < 0) {
+                this.defaultDecidedPerClass.merge(correctClass, -1, Integer::sum);
+            }
+            if (newExceptionId < 0) {
+                this.defaultDecidedPerClass.merge(correctClass, 1, Integer::sum);
+            }
+            this.decidingException[row] = newExceptionId;
+            changedRows.set(row);
+        }
+
+        /**
+         * Returns the first exception after the given one that covers the row, or -1 if there is none.
+         */
+        private int findNextCoveringException(int row, int exceptionId) {
+            for (int j = exceptionId + 1; j < this.exceptionCoverage.length; j++) {
+                if (this.exceptionCoverage[j].get(row)) {
+                    return j;
+                }
+            }
+            return -1;
+        }
+
+        /**
+         * Moves the predictions of all records that are decided by the default from one class to another.
+         */
+        private void changeDefaultPredictions(ObjectiveCalculator c, String oldDefault, String newDefault) {
+            for (final Map.Entry<String, Integer> e : this.defaultDecidedPerClass.entrySet()) {
+                c.removeInstances(e.getKey(), oldDefault, e.getValue());
+                c.handleInstances(e.getKey(), newDefault, e.getValue());
+            }
+        }
+
+        public RuleSet getRuleSet() {
+            return this.ruleSet;
+        }
+
+        public ValuedResult<RuleSet> getValue() {
+            return this.value;
+        }
+
+        private int findException(String strategy) {
+            for (int exceptionId = 0; exceptionId < this.ruleSet.getExceptionCount(); exceptionId++) {
+                if (this.ruleSet.getStrategy(exceptionId).equals(strategy)) {
+                    return exceptionId;
+                }
+            }
+            return -1;
+        }
+
+        private ValuedResult<RelinkAction> result(
+                RelinkAction action, ObjectiveCalculator changedCalculator, double newComplexity, int newFeatureCount) {
+            return new ValuedResult<>(action, changedCalculator.getResult(newComplexity, newFeatureCount));
+        }
+    }
+
+    /**
+     * A single step on the path from the start to the end rule set.
+     */
+    abstract static class RelinkAction {
+
+        public abstract RuleSet apply(RuleSet rs);
+
+        /**
+         * Determines the objective values after applying this action to the given position.
+         */
+        public abstract ValuedResult<RelinkAction> evaluate(Position pos, RecordSet records);
+
+        /**
+         * Updates the deciding exceptions and the partial objective values of the position after this action
+         * has been applied to its rule set.
+         * @return The rows that are now decided by a different exception.
+         */
+        abstract BitSet updatePosition(Position pos, RuleSet oldRuleSet, RecordSet records);
+
+        /**
+         * Is called after the position changed, with the rows that are now decided by a different exception.
+         */
+        public void positionChanged(BitSet changedRows) {
+        }
+
+    }
+
+    static final class ChangeDefault extends RelinkAction {
+        private final String newDefault;
+
+        public ChangeDefault(String newDefault) {
+            this.newDefault = newDefault;
+        }
+
+        @Override
+        public RuleSet apply(RuleSet rs) {
+            return rs.changeDefault(this.newDefault);
+        }
+
+        @Override
+        public ValuedResult<RelinkAction> evaluate(Position pos, RecordSet records) {
+            final ObjectiveCalculator c = pos.calculator.copy();
+            pos.changeDefaultPredictions(c, pos.ruleSet.getDefault(), this.newDefault);
+            return pos.result(this, c, pos.complexity, pos.featureCount);
+        }
+
+        @Override
+        BitSet updatePosition(Position pos, RuleSet oldRuleSet, RecordSet records) {
+            pos.changeDefaultPredictions(pos.calculator, oldRuleSet.getDefault(), this.newDefault);
+            return new BitSet();
+        }
+    }
+
+    static final class AddRule extends RelinkAction {
+        private final String strategy;
+        private final And rule;
+        private final BitSet coverage;
+        private final double ruleComplexity;
+        private int[] cachedChangedRows;
+
+        public AddRule(String strategy, And rule, RecordSet records) {
+            this.strategy = strategy;
+            this.rule = rule;
+            this.coverage = records.getCoverage(rule);
+            this.ruleComplexity = 1.0 + rule.getComplexity();
+        }
+
+        @Override
+        public RuleSet apply(RuleSet rs) {
+            return rs.addRule(this.strategy, this.rule);
+        }
+
+        @Override
+        public ValuedResult<RelinkAction> evaluate(Position pos, RecordSet records) {
+            final int exceptionId = pos.findException(this.strategy);
+            if (this.cachedChangedRows == null) {
+                //the rule takes over all covered records that are decided by a later exception or the default
+                final int newIndex = exceptionId < 0 ? Integer.MAX_VALUE : exceptionId;
+                final int[] changed = new int[this.coverage.cardinality()];
+                int count = 0;
+                for (int row = this.coverage.nextSetBit(0); row >= 0; row = this.coverage.nextSetBit(row + 1)) {
+                    final int cur = pos.decidingException[row];
+                    if (cur < 0 || cur > newIndex) {
+                        changed[count++] = row;
+                    }
+                }
+                this.cachedChangedRows = Arrays.copyOf(changed, count);
+            }
+
+            final ObjectiveCalculator c = pos.calculator.copy();
+            for (final int row : this.cachedChangedRows) {
+                final String correctClass = pos.records[row].getCorrectClass();
+                c.removeInstance(correctClass, pos.getPrediction(row));
+                c.handleInstance(correctClass, this.strategy);
+            }
+            int newFeatureCount = pos.featureCount;
+            for (final String feature : this.rule.getUsedFeatures().keySet()) {
+                if (pos.featureCounts.get(feature) == 0) {
+                    newFeatureCount++;
+                }
+            }
+            //the complexity is estimated, ignoring that values that are used multiple times are cheaper
+            final double newComplexity = pos.complexity + this.ruleComplexity + (exceptionId < 0 ? 1.0 : 0.0);
+            return pos.result(this, c, newComplexity, newFeatureCount);
+        }
+
+        @Override
+        BitSet updatePosition(Position pos, RuleSet oldRuleSet, RecordSet records) {
+            final int exceptionId = pos.findException(this.strategy);
+            if (exceptionId >= pos.exceptionCoverage.length) {
+                //the rule set got a new exception at the end
+                pos.exceptionCoverage = Arrays.copyOf(pos.exceptionCoverage, exceptionId + 1);
+                pos.exceptionCoverage[exceptionId] = new BitSet(pos.records.length);
+            }
+            pos.exceptionCoverage[exceptionId].or(this.coverage);
+            final BitSet changedRows = new BitSet(pos.records.length);
+            for (int row = this.coverage.nextSetBit(0); row >= 0; row = this.coverage.nextSetBit(row + 1)) {
+                final int cur = pos.decidingException[row];
+                if (cur < 0 || cur > exceptionId) {
+                    pos.changeDecidingException(row, exceptionId, changedRows);
+                }
+            }
+            return changedRows;
+        }
+
+        @Override
+        public void positionChanged(BitSet changedRows) {
+            //the cached rows only depend on the deciding exception of the covered rows
+            if (this.cachedChangedRows != null && this.coverage.intersects(changedRows)) {
+                this.cachedChangedRows = null;
+            }
+        }
+    }
+
+    static final class RemoveRule extends RelinkAction {
+        private final String strategy;
+        private final And rule;
+        private final BitSet coverage;
+        private final double ruleComplexity;
+
+        public RemoveRule(String strategy, And rule, RecordSet records) {
+            this.strategy = strategy;
+            this.rule = rule;
+            this.coverage = records.getCoverage(rule);
+            this.ruleComplexity = 1.0 + rule.getComplexity();
+        }
+
+        @Override
+        public RuleSet apply(RuleSet rs) {
+            return rs.removeRule(this.strategy, this.rule);
+        }
+
+        /**
+         * Returns the exception the rule is removed from, as given by {@link RuleSet#removeRule}, or -1.
+         */
+        private int findException(RuleSet rs) {
+            for (int i = 0; i < rs.getExceptionCount(); i++) {
+                if (rs.getStrategy(i).equals(this.strategy) && rs.getRules(i).contains(this.rule)) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+
+        @Override
+        public ValuedResult<RelinkAction> evaluate(Position pos, RecordSet records) {
+            final int exceptionId = this.findException(pos.ruleSet);
+            if (exceptionId < 0) {
+                return pos.result(this, pos.calculator.copy(), pos.complexity, pos.featureCount);
+            }
+
+            final BitSet remainingCoverage = new BitSet(pos.records.length);
+            int occurrences = 0;
+            for (final And other : pos.ruleSet.getRules(exceptionId)) {
+                if (other.equals(this.rule)) {
+                    occurrences++;
+                } else {
+                    remainingCoverage.or(records.getCoverage(other));
+                }
+            }
+            //records that were decided by this rule fall through to the next matching exception
+            final ObjectiveCalculator c = pos.calculator.copy();
+            for (int row = this.coverage.nextSetBit(0); row >= 0; row = this.coverage.nextSetBit(row + 1)) {
+                if (pos.decidingException[row] != exceptionId || remainingCoverage.get(row)) {
+                    continue;
+                }
+                final int next = pos.findNextCoveringException(row, exceptionId);
+                final String correctClass = pos.records[row].getCorrectClass();
+                c.removeInstance(correctClass, this.strategy);
+                c.handleInstance(correctClass, pos.getPrediction(pos.ruleSet, next));
+            }
+            int newFeatureCount = pos.featureCount;
+            final Multiset<String> ruleFeatures = this.rule.getUsedFeatures();
+            for (final String feature : ruleFeatures.keySet()) {
+                if (pos.featureCounts.get(feature) == occurrences * ruleFeatures.get(feature)) {
+                    newFeatureCount--;
+                }
+            }
+            //the complexity is estimated, ignoring that values that are used multiple times are cheaper
+            return pos.result(this, c, pos.complexity - this.ruleComplexity, newFeatureCount);
+        }
+
+        @Override
+        BitSet updatePosition(Position pos, RuleSet oldRuleSet, RecordSet records) {
+            final BitSet changedRows = new BitSet(pos.records.length);
+            final int exceptionId = this.findException(oldRuleSet);
+            if (exceptionId < 0) {
+                return changedRows;
+            }
+            //exceptions are not removed when they become empty, so the indices stay the same
+            final BitSet remainingCoverage = new BitSet(pos.records.length);
+            for (final And other : pos.ruleSet.getRules(exceptionId)) {
+                remainingCoverage.or(records.getCoverage(other));
+            }
+            pos.exceptionCoverage[exceptionId] = remainingCoverage;
+            for (int row = this.coverage.nextSetBit(0); row >= 0; row = this.coverage.nextSetBit(row + 1)) {
+                if (pos.decidingException[row] == exceptionId && !remainingCoverage.get(row)) {
+                    pos.changeDecidingException(row, pos.findNextCoveringException(row, exceptionId), changedRows);
+                }
+            }
+            return changedRows;
+        }
+    }
+
+    /**
+     * The part of a relinking path that was not walked because the deadline was reached.
+     */
+    public static final class RemainingPath {
+        private final ValuedResult<RuleSet> start;
+        private final ValuedResult<RuleSet> end;
+
+        private RemainingPath(ValuedResult<RuleSet> start, ValuedResult<RuleSet> end) {
+            this.start = start;
+            this.end = end;
+        }
+
+        /**
+         * Returns the position on the path that was reached.
+         */
+        public ValuedResult<RuleSet> getStart() {
+            return this.start;
+        }
+
+        /**
+         * Returns the end of the path. It can be any of the two relinked rule sets, because the path is always
+         * walked from the better one to the worse one.
+         */
+        public ValuedResult<RuleSet> getEnd() {
+            return this.end;
+        }
+    }
+
 	private final Blackboard blackboard;
     private final Random random;
 
@@ -38,89 +458,147 @@ public class PathRelinking {
     }
 
     public void performWith(ValuedResult<RuleSet> rs) {
-        this.performPathRelinking(
+        this.performWith(rs, Deadline.none());
+    }
+
+    /**
+     * Relinks the given rule set with the best and with a random rule set.
+     * @return When the deadline was reached after at least one step, the rest of the path that was being walked.
+     *      The relinking with the random rule set is not done in that case. Otherwise null.
+     */
+    public RemainingPath performWith(ValuedResult<RuleSet> rs, Deadline deadline) {
+        final RemainingPath remaining = this.performPathRelinking(
         		this.blackboard.getBestResultInLimits(this.random).getItem(),
         		rs.getItem(),
-        		this.blackboard.getCurrentTargetFunction());
-        this.performPathRelinking(
+        		this.blackboard.getCurrentTargetFunction(),
+        		deadline);
+        if (remaining != null || deadline.wasReached()) {
+            return remaining;
+        }
+        return this.performPathRelinking(
         		this.blackboard.getRandomResult(this.random).getItem(),
         		rs.getItem(),
-        		this.blackboard.getCurrentTargetFunction());
+        		this.blackboard.getCurrentTargetFunction(),
+        		deadline);
+    }
+
+    /**
+     * Walks the path from the given start to the given end, e.g. the rest of a path returned by
+     * {@link #performWith(ValuedResult, Deadline)}.
+     * @return When the deadline was reached after at least one step, the rest of the path. Otherwise null.
+     */
+    public RemainingPath performFrom(ValuedResult<RuleSet> start, ValuedResult<RuleSet> end, Deadline deadline) {
+        return this.walkPath(start.getItem(), end.getItem(), this.blackboard.getCurrentTargetFunction(), deadline);
     }
 
-    private void performPathRelinking(final RuleSet start, final RuleSet end, TargetFunction targetFunction) {
+    private RemainingPath performPathRelinking(
+            final RuleSet start, final RuleSet end, TargetFunction targetFunction, Deadline deadline) {
 		if (this.evalTargetFunction(start, targetFunction) > this.evalTargetFunction(end, targetFunction)) {
 			//start with the better of the rules
-			this.performPathRelinking(end, start, targetFunction);
-			return;
+			return this.walkPath(end, start, targetFunction, deadline);
 		}
+		return this.walkPath(start, end, targetFunction, deadline);
+    }
 
-        final List<Function<RuleSet, RuleSet>> actions = this.determineRelinkActions(start, end);
+    private RemainingPath walkPath(RuleSet start, RuleSet end, TargetFunction targetFunction, Deadline deadline) {
+		final RecordSet records = this.blackboard.getRecords().getRecords();
+        final List<RelinkAction> actions = determineRelinkActions(start, end, records);
         Collections.shuffle(actions, this.random);
 
-        RuleSet cur = start;
+        final Position pos = new Position(start, records, this.blackboard.getObjectives());
+        ValuedResult<RuleSet> lastAdded = null;
         while (!actions.isEmpty()) {
-        	final Function<RuleSet, RuleSet> action = this.chooseGoodAction(cur, actions, targetFunction);
-        	actions.remove(action);
-            cur = action.apply(cur);
-            this.blackboard.simplifyEvaluateAndAdd(cur);
+            if (deadline.isReached()) {
+                //when no step could be made, walking the path again would only repeat the work
+                return lastAdded == null ? null : new RemainingPath(lastAdded, this.blackboard.simplifyEvaluateAndAdd(end));
+            }
+        	final RelinkAction action = actions.remove(this.chooseGoodAction(pos, actions, targetFunction, records, deadline));
+        	final BitSet changedRows = pos.moveTo(action, records);
+        	for (final RelinkAction remaining : actions) {
+        		remaining.positionChanged(changedRows);
+        	}
+            lastAdded = this.blackboard.simplifyEvaluateAndAdd(pos.getRuleSet());
         }
+        return null;
     }
 
 	private double evalTargetFunction(final RuleSet start, TargetFunction targetFunction) {
 		return targetFunction.applyAsDouble(this.blackboard.simplifyEvaluateAndAdd(start));
 	}
 
-    private Function<RuleSet, RuleSet> chooseGoodAction(
-    		RuleSet pos, List<Function<RuleSet, RuleSet>> actions, TargetFunction targetFunction) {
+    /**
+     * Returns the index of the action to perform next. When the deadline is reached, not all actions are evaluated.
+     */
+    private int chooseGoodAction(
+    		Position pos, List<RelinkAction> actions, TargetFunction targetFunction, RecordSet records, Deadline deadline) {
 
-    	final ValuedResult<RuleSet> startResult = this.blackboard.simplifyEvaluateAndAdd(pos);
-    	final double startValue = targetFunction.applyAsDouble(startResult);
+    	final double startValue = targetFunction.applyAsDouble(pos.getValue());
 
     	double bestValue = Double.POSITIVE_INFINITY;
-    	ValuedResult<RuleSet> bestResult = null;
-    	Function<RuleSet, RuleSet> bestMove = null;
-    	for (final Function<RuleSet, RuleSet> cur : actions) {
-        	final ValuedResult<RuleSet> curResult = this.blackboard.simplifyEvaluateAndAdd(cur.apply(pos));
+    	ValuedResult<RelinkAction> bestResult = null;
+    	int bestMove = -1;
+    	for (int i = 0; i < actions.size(); i++) {
+    		if (bestMove >= 0 && deadline.isReached()) {
+    			//no time left to look further, take the best action found so far
+    			break;
+    		}
+        	final ValuedResult<RelinkAction> curResult = actions.get(i).evaluate(pos, records);
     		final double curValue = targetFunction.applyAsDouble(curResult);
     		if (curValue < startValue) {
     			//if it is an improvement over the current state, just take it to keep the runtime down
-    			return cur;
+    			return i;
     		}
     		if (curValue < bestValue || (curValue == bestValue && curResult.dominates(bestResult))) {
     			bestResult = curResult;
     			bestValue = curValue;
-    			bestMove = cur;
+    			bestMove = i;
     		}
     	}
     	//we did not find a move that improves the current state, so take the least bad instead
 		return bestMove;
 	}
 
-	private List<Function<RuleSet, RuleSet>> determineRelinkActions(RuleSet start, RuleSet end) {
-        final List<Function<RuleSet, RuleSet>> ret = new ArrayList<>();
+	static List<RelinkAction> determineRelinkActions(RuleSet start, RuleSet end, RecordSet records) {
+        final List<RelinkAction> ret = new ArrayList<>();
 
         if (!start.getDefault().equals(end.getDefault())) {
-            ret.add((RuleSet rs) -> rs.changeDefault(end.getDefault()));
+            ret.add(new ChangeDefault(end.getDefault()));
         }
 
+        final Map<String, Set<And>> startRules = rulesPerStrategy(start);
+        final Map<String, Set<And>> endRules = rulesPerStrategy(end);
         for (int exceptionId = 0; exceptionId < start.getExceptionCount(); exceptionId++) {
             final String strategy = start.getStrategy(exceptionId);
+            final Set<And> inEnd = endRules.getOrDefault(strategy, Collections.emptySet());
             for (final And rule : start.getRules(exceptionId)) {
-                if (!end.getRules(strategy).contains(rule)) {
-                    ret.add((RuleSet rs) -> rs.removeRule(strategy, rule));
+                if (!inEnd.contains(rule)) {
+                    ret.add(new RemoveRule(strategy, rule, records));
                 }
             }
         }
         for (int exceptionId = 0; exceptionId < end.getExceptionCount(); exceptionId++) {
             final String strategy = end.getStrategy(exceptionId);
+            final Set<And> inStart = startRules.getOrDefault(strategy, Collections.emptySet());
             for (final And rule : end.getRules(exceptionId)) {
-                if (!start.getRules(strategy).contains(rule)) {
-                    ret.add((RuleSet rs) -> rs.addRule(strategy, rule));
+                if (!inStart.contains(rule)) {
+                    ret.add(new AddRule(strategy, rule, records));
                 }
             }
         }
         return ret;
     }
 
+    /**
+     * Returns the rules for each strategy, as given by {@link RuleSet#getRules(String)}.
+     */
+    private static Map<String, Set<And>> rulesPerStrategy(RuleSet rs) {
+        final Map<String, Set<And>> ret = new HashMap<>();
+        for (int exceptionId = 0; exceptionId < rs.getExceptionCount(); exceptionId++) {
+            if (!ret.containsKey(rs.getStrategy(exceptionId))) {
+                ret.put(rs.getStrategy(exceptionId), new HashSet<>(rs.getRules(exceptionId)));
+            }
+        }
+        return ret;
+    }
+
 }
@@ -15,78 +15,141 @@
  */
 package de.unihannover.gimo_m.mining.agents;
 
-import java.util.ArrayList;
-import java.util.Collections;
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.BitSet;
 import java.util.List;
 import java.util.Random;
-import java.util.function.Predicate;
-import java.util.stream.Collectors;
 
 import de.unihannover.gimo_m.mining.common.Record;
-import de.unihannover.gimo_m.util.Util;
+import de.unihannover.gimo_m.mining.common.RecordSet;
+import de.unihannover.gimo_m.mining.common.Rule;
 
+/**
+ * A subset of the records of a {@link RecordSet}, split into "must" and "no" records.
+ * The records are stored as row indexes into the record set. A row can be contained multiple times
+ * after downsampling.
+ */
 public final class RecordSubset {
-    private final List<Record> must;
-    private final List<Record> no;
 
-    public RecordSubset(List<Record> must, List<Record> no) {
-        this.must = must;
-        this.no = no;
+    /**
+     * Read-only list view of the records for some rows.
+     */
+    private static final class RowList extends AbstractList<Record> {
+        private final Record[] records;
+        private final int[] rows;
+
+        public RowList(Record[] records, int[] rows) {
+            this.records = records;
+            this.rows = rows;
+        }
+
+        @Override
+        public Record get(int index) {
+            return this.records[this.rows[index]];
+        }
+
+        @Override
+        public int size() {
+            return this.rows.length;
+        }
+    }
+
+    private final RecordSet records;
+    private final int[] must;
+    private final int[] no;
+
+    public RecordSubset(RecordSet records, int[] mustRows, int[] noRows) {
+        this.records = records;
+        this.must = mustRows;
+        this.no = noRows;
     }
 
     public List<Record> getMustRecords() {
-        return this.must;
+        return new RowList(this.records.getRecords(), this.must);
     }
 
     public List<Record> getNoRecords() {
+        return new RowList(this.records.getRecords(), this.no);
+    }
+
+    /**
+     * Returns the row indexes of the must records. The returned array must not be modified.
+     */
+    public int[] getMustRows() {
+        return this.must;
+    }
+
+    /**
+     * Returns the row indexes of the no records. The returned array must not be modified.
+     */
+    public int[] getNoRows() {
         return this.no;
     }
 
     public int getMustRecordCount() {
-        return this.must.size();
+        return this.must.length;
     }
 
     public int getNoRecordCount() {
-        return this.no.size();
+        return this.no.length;
+    }
+
+    public RecordSubset keepSatisfying(Rule rule) {
+        final BitSet coverage = this.records.getCoverage(rule);
+        return new RecordSubset(
+                        this.records,
+                        filter(this.must, coverage, true),
+                        filter(this.no, coverage, true));
     }
 
-    public RecordSubset keepSatisfying(Predicate<Record> rule) {
+    public RecordSubset keepNotSatisfying(Rule rule) {
+        final BitSet coverage = this.records.getCoverage(rule);
         return new RecordSubset(
-                        this.must.stream().filter(rule).collect(Collectors.toList()),
-                        this.no.stream().filter(rule).collect(Collectors.toList()));
+                        this.records,
+                        filter(this.must, coverage, false),
+                        filter(this.no, coverage, false));
     }
 
-    public RecordSubset keepNotSatisfying(Predicate<Record> rule) {
-        return this.keepSatisfying(rule.negate());
+    private static int[] filter(int[] rows, BitSet coverage, boolean keepCovered) {
+        final int[] ret = new int[rows.length];
+        int count = 0;
+        for (final int row : rows) {
+            if (coverage.get(row) == keepCovered) {
+                ret[count++] = row;
+            }
+        }
+        return count == ret.length ? ret : Arrays.copyOf(ret, count);
     }
 
     public boolean isEmpty() {
-        return this.must.isEmpty() && this.no.isEmpty();
+        return this.must.length == 0 && this.no.length == 0;
     }
 
     public RecordSubset swapMustAndNo() {
-        return new RecordSubset(this.no, this.must);
+        return new RecordSubset(this.records, this.no, this.must);
     }
 
 	public RecordSubset downsample(Random random, double factor, int minSizePerClass) {
-		int minoritySize = this.no.size();
-		if (this.must.size() > 0 && this.must.size() < minoritySize) {
-			minoritySize = this.must.size();
+		int minoritySize = this.no.length;
+		if (this.must.length > 0 && this.must.length < minoritySize) {
+			minoritySize = this.must.length;
 		}
 		final int wantedSize = Math.max(minSizePerClass, (int) (factor * minoritySize));
 
 		return new RecordSubset(
+				this.records,
 				createSample(random, this.must, wantedSize),
 				createSample(random, this.no, wantedSize));
 	}
 
-	private static List<Record> createSample(Random random, List<Record> source, int wantedSize) {
-		if (source.isEmpty()) {
-			return Collections.emptyList();
+	private static int[] createSample(Random random, int[] source, int wantedSize) {
+		if (source.length == 0) {
+			return source;
 		}
-		final List<Record> ret = new ArrayList<>(wantedSize);
+		final int[] ret = new int[wantedSize];
 		for (int i = 0; i < wantedSize; i++) {
-			ret.add(Util.randomItem(random, source));
+			ret[i] = source[random.nextInt(source.length)];
 		}
 		return ret;
 	}
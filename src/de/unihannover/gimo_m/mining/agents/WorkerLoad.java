@@ -0,0 +1,98 @@
+/**
+ * Copyright 2019 Tobias Baum
+ *
+ * This file is part of GIMO-m.
+ *
+ * GIMO-m is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * GIMO-m is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ */
+package de.unihannover.gimo_m.mining.agents;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadInfo;
+import java.lang.management.ThreadMXBean;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The parts of the load of a worker that cannot be told apart in the JMX statistics of its thread.
+ * They are recorded by the worker's thread and read by the pool when it rescales.
+ */
+final class WorkerLoad {
+
+    private static final ThreadMXBean THREAD_BEAN = ManagementFactory.getThreadMXBean();
+
+    private final LongAdder idleNanos = new LongAdder();
+    private final LongAdder helperWaitNanos = new LongAdder();
+    private final LongAdder helperCpuNanos = new LongAdder();
+    private volatile boolean idle;
+    private volatile long idleStart;
+
+    /**
+     * Is called when the worker starts to wait on purpose, e.g. while the pool is paused or to give way to the user.
+     */
+    void beginIdle() {
+        this.idleStart = System.nanoTime();
+        this.idle = true;
+    }
+
+    void endIdle() {
+        this.idle = false;
+        this.idleNanos.add(System.nanoTime() - this.idleStart);
+    }
+
+    /**
+     * Records time the worker waited for other threads that worked on its behalf, e.g. in a parallel evaluation.
+     */
+    void addHelperWaitTime(long nanos) {
+        this.helperWaitNanos.add(nanos);
+    }
+
+    /**
+     * Records CPU time that other threads used on behalf of the worker, e.g. in a parallel evaluation.
+     */
+    void addHelperCpuTime(long nanos) {
+        this.helperCpuNanos.add(nanos);
+    }
+
+    /**
+     * Returns the total time the worker waited on purpose, including the current wait.
+     */
+    long getIdleNanos() {
+        final long current = this.idle ? System.nanoTime() - this.idleStart : 0;
+        return this.idleNanos.sum() + current;
+    }
+
+    long getHelperWaitNanos() {
+        return this.helperWaitNanos.sum();
+    }
+
+    long getHelperCpuNanos() {
+        return this.helperCpuNanos.sum();
+    }
+
+    /**
+     * Returns the CPU time of the current thread, or -1 if it cannot be measured.
+     */
+    static long currentThreadCpuNanos() {
+        return THREAD_BEAN.isCurrentThreadCpuTimeSupported() ? THREAD_BEAN.getCurrentThreadCpuTime() : -1;
+    }
+
+    /**
+     * Returns the total time the current thread has been waiting, or -1 if it cannot be measured
+     * (e.g. for virtual threads or when thread contention monitoring is disabled).
+     */
+    static long currentThreadWaitedNanos() {
+        final ThreadInfo info = THREAD_BEAN.getThreadInfo(Thread.currentThread().getId());
+        final long waited = info == null ? -1 : info.getWaitedTime();
+        return waited < 0 ? -1 : TimeUnit.MILLISECONDS.toNanos(waited);
+    }
+
+}
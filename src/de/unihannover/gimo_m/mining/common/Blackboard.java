@@ -20,30 +20,37 @@ import java.io.File;
 import java.io.FileReader;
 import java.io.FileWriter;
 import java.io.IOException;
-import java.time.Instant;
+import java.io.Writer;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
-import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
-import java.util.Map.Entry;
 import java.util.Random;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.CopyOnWriteArraySet;
 import java.util.concurrent.Executor;
-import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.Executors;
 import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
 import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
 
 import javax.script.Invocable;
@@ -51,6 +58,10 @@ import javax.script.ScriptEngine;
 import javax.script.ScriptEngineManager;
 import javax.script.ScriptException;
 
+import de.unihannover.gimo_m.mining.common.TaskScheduler.TaskType;
+import de.unihannover.gimo_m.util.EventLog;
+import de.unihannover.gimo_m.util.EventLog.Level;
+
 /**
  * The central communication hub ("Blackboard") between the various (human and non-human) agents.
  * Also contains the implementation for various of the actions the user can take.
@@ -59,6 +70,19 @@ public class Blackboard {
 
     private static final int AUTO_PURGE_LIMIT = 100_000;
 
+    /**
+     * When a restriction changes, the Pareto front is only revalidated after this delay, so that a burst of user
+     * decisions results in a single revalidation. Until then, the invalid entries are removed when the front is read.
+     */
+    private static final long REVALIDATION_DELAY_MS = 300;
+    private static final long INDICATOR_SAMPLE_INTERVAL_MS = 10_000;
+    private static final int CHANGE_LOG_CAPACITY = 10_000;
+    private static final long MIGRATION_INTERVAL_MS = 5_000;
+    /**
+     * Number of rule sets that are sent to each island in addition to the best ones for each target function.
+     */
+    private static final int DIVERSE_IMMIGRANT_COUNT = 5;
+
 	public enum RestrictionClassification {
 		ACCEPTED,
 		REJECTED,
@@ -80,7 +104,7 @@ public class Blackboard {
         	Blackboard.this.log("accepting for " + this.name + ": " + acceptedRules);
             this.accepted.addAll(acceptedRules);
             this.candidates.removeAll(acceptedRules);
-            Blackboard.this.revalidateParetoSet();
+            Blackboard.this.restrictionsChanged();
         }
 
         public synchronized void reject(List<And> rejectedRules) {
@@ -88,33 +112,41 @@ public class Blackboard {
             this.rejected.addAll(rejectedRules.stream().map(RulePattern::createExact).collect(Collectors.toList()));
             this.accepted.removeAll(rejectedRules);
             this.candidates.removeAll(rejectedRules);
-            Blackboard.this.revalidateParetoSet();
+            Blackboard.this.restrictionsChanged();
         }
 
         public synchronized void reject(RulePattern pattern) {
         	Blackboard.this.log("rejecting for " + this.name + ": " + pattern);
             this.rejected.add(pattern);
-            Blackboard.this.revalidateParetoSet();
+            Blackboard.this.restrictionsChanged();
         }
 
         public synchronized void keepAsCandidate(List<And> rules) {
         	Blackboard.this.log("mark as candidate for " + this.name + ": " + rules);
             this.candidates.addAll(rules);
             this.accepted.removeAll(rules);
-            Blackboard.this.revalidateParetoSet();
+            Blackboard.this.restrictionsChanged();
         }
 
         public synchronized void remove(List<And> rules) {
         	Blackboard.this.log("removing restrictions for " + this.name + ": " + rules);
             this.accepted.removeAll(rules);
             this.candidates.removeAll(rules);
-            Blackboard.this.revalidateParetoSet();
+            Blackboard.this.restrictionsChanged();
         }
 
+		public synchronized void clear() {
+        	Blackboard.this.log("clearing restrictions for " + this.name);
+            this.accepted.clear();
+            this.candidates.clear();
+            this.rejected.clear();
+            Blackboard.this.restrictionsChanged();
+		}
+
 		public void remove(RulePattern pattern) {
         	Blackboard.this.log("removing restriction pattern for " + this.name + ": " + pattern);
             this.rejected.remove(pattern);
-            Blackboard.this.revalidateParetoSet();
+            Blackboard.this.restrictionsChanged();
 		}
 
         public synchronized List<And> getAccepted() {
@@ -147,13 +179,12 @@ public class Blackboard {
 			return RestrictionClassification.UNKNOWN;
 		}
 
-		public synchronized RuleCreationRestriction toCreationRestrictions(And priorRule) {
-			final Set<Rule> invalidRules = new HashSet<>();
-			final Set<SimpleRulePattern> invalidPatterns = new HashSet<>();
-			for (final RulePattern p : this.rejected) {
-				p.findCompletionToInvalid(priorRule, invalidRules, invalidPatterns);
-			}
-			return new RuleCreationRestriction(invalidPatterns, invalidRules);
+		/**
+		 * Returns the restrictions for extending the given rule. The result is based on the precompiled
+		 * restrictions and can be updated incrementally when the rule grows.
+		 */
+		public RuleCreationRestriction toCreationRestrictions(And priorRule) {
+			return Blackboard.this.getCompiledRestrictions().createCreationRestrictions(this.name, priorRule);
 		}
 
     }
@@ -206,6 +237,7 @@ public class Blackboard {
 			final RecordSet newRecordSet = oldRR.records.copyWithout((Record r) -> r.getId() == this.id);
 
 			Blackboard.this.recordsAndRemarks.set(new RecordsAndRemarks(newRecordSet, oldRR.resultData));
+			Blackboard.this.dataVersion.incrementAndGet();
 
 			Blackboard.this.reevaluateAfterDataChange();
 
@@ -247,6 +279,7 @@ public class Blackboard {
 				final RecordSet newRecordSet = RecordSet.addColumn(oldRR.records, this.name,
 				                (RecordScheme rs, Record r) -> this.invokeCalculation(rs, r, engine));
 				Blackboard.this.recordsAndRemarks.set(new RecordsAndRemarks(newRecordSet, oldRR.resultData));
+				Blackboard.this.dataVersion.incrementAndGet();
 
 				//no need to reevaluate, as nothing existing was changed
 
@@ -283,44 +316,172 @@ public class Blackboard {
 	private static final String PARETO_FRONT = "PARETO FRONT";
 
     private final AtomicReference<RecordsAndRemarks> recordsAndRemarks;
+    private final AtomicLong dataVersion;
 
     private final ConcurrentHashMap<RuleSet, ValuedResult<RuleSet>> cache;
     private final NondominatedResults<RuleSet> nondominatedResults;
+    private volatile ParetoSnapshot<RuleSet> publishedSnapshot;
+    private final LongAdder improvementCount = new LongAdder();
+    /**
+     * Number of additions to the front by the current thread, so that the agents can attribute improvements to their operators.
+     */
+    private final ThreadLocal<long[]> improvementCountOfThread = ThreadLocal.withInitial(() -> new long[1]);
+    private final QualityIndicators qualityIndicators;
+
+    /**
+     * Guards changes to the Pareto front and the cache that have to be atomic. A lock instead of the object's
+     * monitor, so that virtual threads waiting for it do not pin their carrier thread.
+     */
+    private final ReentrantLock resultsLock = new ReentrantLock();
 
-    private final LinkedBlockingDeque<ValuedResult<RuleSet>> userFedLocalSearchQueue = new LinkedBlockingDeque<>();
-    private final LinkedBlockingDeque<ValuedResult<RuleSet>> agentFedLocalSearchQueue = new LinkedBlockingDeque<>();
-    private final LinkedBlockingDeque<ValuedResult<RuleSet>> userFedPathRelinkingQueue = new LinkedBlockingDeque<>();
-    private final LinkedBlockingDeque<ValuedResult<RuleSet>> agentFedPathRelinkingQueue = new LinkedBlockingDeque<>();
+    private final TaskScheduler scheduler = new TaskScheduler();
 
     private final AtomicLong seedCounter;
 
-    private final Map<String, RuleRestrictions> restrictions = new LinkedHashMap<>();
-    private final CopyOnWriteArraySet<String> rejectedColumns = new CopyOnWriteArraySet<>();
-    private final List<DataCleaningAction> cleaningActionHistory = new CopyOnWriteArrayList<>();
+    private final Map<String, RuleRestrictions> restrictions;
+    private final CopyOnWriteArraySet<String> rejectedColumns;
+    private final List<DataCleaningAction> cleaningActionHistory;
+
+    private final EventLog eventLog = EventLog.getDefault();
 
     private final ObjectiveStrategy objectives;
     private final List<TargetFunction> targetFunctions;
-    private final AtomicReference<TargetFunction> targetFunction = new AtomicReference<>();
+    private final AtomicReference<TargetFunction> targetFunction;
 
     private final Executor revalidateExecutor;
+    private final ScheduledExecutorService backgroundScheduler;
 	private final NavigationLimits navigationLimits;
 
+    private final AtomicLong restrictionEpoch;
+    private final AtomicLong lastRevalidatedEpoch = new AtomicLong();
+    private final AtomicLong lastRemovalEpoch = new AtomicLong();
+    private final AtomicInteger removalPassCount = new AtomicInteger();
+    private final AtomicInteger refillCount = new AtomicInteger();
+    private final AtomicBoolean revalidationScheduled = new AtomicBoolean();
+    private final AtomicInteger restrictionBatchDepth = new AtomicInteger();
+    private final AtomicReference<CompiledRestrictions> compiledRestrictions;
+
+    /**
+     * For an island: The blackboard with the global archive. Null for the global blackboard.
+     */
+    private final Blackboard global;
+    private final List<Blackboard> islands = new CopyOnWriteArrayList<>();
+    private final AtomicInteger userTaskIslandCounter = new AtomicInteger();
+    private Random migrationRandom;
+    private long lastEmigrationVersion;
+
     public Blackboard(RecordSet records, ResultData resultData, ObjectiveStrategy objectives, long initialSeed) {
+    	this.global = null;
     	this.objectives = objectives;
         this.targetFunctions = new ArrayList<>(objectives.getTargetFunctions());
-        this.targetFunction.set(this.targetFunctions.get(0));
+        this.targetFunction = new AtomicReference<>(this.targetFunctions.get(0));
+        this.restrictions = new LinkedHashMap<>();
+        this.rejectedColumns = new CopyOnWriteArraySet<>();
+        this.cleaningActionHistory = new CopyOnWriteArrayList<>();
+        this.restrictionEpoch = new AtomicLong();
+        this.compiledRestrictions = new AtomicReference<>();
         this.recordsAndRemarks = new AtomicReference<>(new RecordsAndRemarks(records, resultData));
+        this.dataVersion = new AtomicLong();
         this.cache = new ConcurrentHashMap<>();
-        this.nondominatedResults = new NondominatedResults<>();
+        this.nondominatedResults = new NondominatedResults<>(objectives.getArchiveEpsilons());
+        this.nondominatedResults.enableChangeLog(CHANGE_LOG_CAPACITY);
         this.seedCounter = new AtomicLong(initialSeed);
         this.revalidateExecutor = new ThreadPoolExecutor(0, 1, 10, TimeUnit.SECONDS, new LinkedBlockingQueue<>());
+        this.backgroundScheduler = Executors.newSingleThreadScheduledExecutor((Runnable r) -> {
+        	final Thread t = new Thread(r, "blackboard-scheduler");
+        	t.setDaemon(true);
+        	return t;
+        });
         this.navigationLimits = new NavigationLimits();
+        this.qualityIndicators = new QualityIndicators(objectives.getReferencePoint(), this.targetFunctions, initialSeed);
+        this.backgroundScheduler.scheduleWithFixedDelay(this::sampleQualityIndicators,
+        		INDICATOR_SAMPLE_INTERVAL_MS, INDICATOR_SAMPLE_INTERVAL_MS, TimeUnit.MILLISECONDS);
         for (final String classification : resultData.getAllClasses()) {
             this.restrictions.put(classification, new RuleRestrictions(classification));
         }
         this.log("initial random seed: " + initialSeed);
     }
 
+    /**
+     * Creates an island that shares the data, the restrictions and the target function with the given
+     * global blackboard, but has its own cache, Pareto front and task queue.
+     */
+    private Blackboard(Blackboard global) {
+        this.global = global;
+        this.objectives = global.objectives;
+        this.targetFunctions = global.targetFunctions;
+        this.targetFunction = global.targetFunction;
+        this.restrictions = global.restrictions;
+        this.rejectedColumns = global.rejectedColumns;
+        this.cleaningActionHistory = global.cleaningActionHistory;
+        this.restrictionEpoch = global.restrictionEpoch;
+        this.compiledRestrictions = global.compiledRestrictions;
+        this.recordsAndRemarks = global.recordsAndRemarks;
+        this.dataVersion = global.dataVersion;
+        this.cache = new ConcurrentHashMap<>();
+        this.nondominatedResults = new NondominatedResults<>(this.objectives.getArchiveEpsilons());
+        this.nondominatedResults.enableChangeLog(CHANGE_LOG_CAPACITY);
+        this.seedCounter = global.seedCounter;
+        this.revalidateExecutor = global.revalidateExecutor;
+        this.backgroundScheduler = global.backgroundScheduler;
+        this.navigationLimits = global.navigationLimits.withSeparateCache();
+        this.qualityIndicators = global.qualityIndicators;
+        this.lastRevalidatedEpoch.set(this.restrictionEpoch.get());
+    }
+
+    /**
+     * Creates a new island: A blackboard with its own cache, Pareto front and task queue, so that the agents working
+     * on it search independently from the other islands and do not compete for the same locks.
+     * Every few seconds, the new entries of the island's front are merged into this blackboard's front, and the island
+     * receives the best and most diverse rule sets from it in return.
+     */
+    public Blackboard createIsland() {
+        if (this.global != null) {
+            throw new IllegalStateException("islands can only be created for the global blackboard");
+        }
+        final Blackboard island = new Blackboard(this);
+        island.addDefaultRulesForAllClasses();
+        this.resultsLock.lock();
+        try {
+            if (this.islands.isEmpty()) {
+                this.migrationRandom = this.createNewRandom();
+                this.backgroundScheduler.scheduleWithFixedDelay(this::migrate,
+                        MIGRATION_INTERVAL_MS, MIGRATION_INTERVAL_MS, TimeUnit.MILLISECONDS);
+            }
+            this.islands.add(island);
+        } finally {
+            this.resultsLock.unlock();
+        }
+        this.sendImmigrants(island);
+        this.log("created island " + this.islands.size());
+        return island;
+    }
+
+    /**
+     * Stops the background tasks of this blackboard and its islands, e.g. before it is replaced by a blackboard for
+     * new data. The thread for revalidations ends by itself when it is idle.
+     */
+    public void shutdown() {
+        if (this.global != null) {
+            throw new IllegalStateException("islands are shut down with the global blackboard");
+        }
+        this.backgroundScheduler.shutdownNow();
+    }
+
+    /**
+     * Runs the given task regularly in the background until the blackboard is shut down.
+     */
+    public void scheduleBackgroundTask(Runnable task, long intervalMillis) {
+        this.backgroundScheduler.scheduleWithFixedDelay(task, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Returns the islands of this blackboard. Empty when island mode is not used.
+     */
+    public List<Blackboard> getIslands() {
+        return Collections.unmodifiableList(this.islands);
+    }
+
     private static abstract class BlockParser {
     	public abstract void handleLine(Blackboard ret, String line);
     }
@@ -328,6 +489,11 @@ public class Blackboard {
     private static class RuleBlockParser extends BlockParser {
 
         private final StringBuilder curRule = new StringBuilder();
+        private final Consumer<ValuedResult<RuleSet>> consumer;
+
+        public RuleBlockParser(Consumer<ValuedResult<RuleSet>> consumer) {
+        	this.consumer = consumer;
+        }
 		@Override
 		public void handleLine(Blackboard ret, String line) {
             if (line.startsWith(END_OF_RULE_PREFIX)) {
@@ -337,10 +503,7 @@ public class Blackboard {
                                 new RuleSetParser(ret.getRecords().getRecords().getScheme()).parse(this.curRule.toString()),
                                 this.parseValues(ret, parts));
                 this.curRule.setLength(0);
-                synchronized (ret) {
-                	ret.nondominatedResults.add(vr);
-                	ret.cache.put(vr.getItem(), vr);
-                }
+                this.consumer.accept(vr);
             } else {
                 this.curRule.append(line).append('\n');
             }
@@ -432,25 +595,38 @@ public class Blackboard {
 
     }
 
+    private void addLoadedResult(ValuedResult<RuleSet> vr) {
+        this.resultsLock.lock();
+        try {
+        	this.nondominatedResults.add(vr);
+        	this.cache.put(vr.getItem(), vr);
+        } finally {
+        	this.resultsLock.unlock();
+        }
+    }
+
     public static Blackboard load(RecordSet records2, ResultData resultData2, ObjectiveStrategy objectives, File saveFile) throws IOException {
         final Blackboard ret = new Blackboard(records2, resultData2, objectives, System.currentTimeMillis());
+        ret.beginRestrictionBatch();
         try (BufferedReader r = new BufferedReader(new FileReader(saveFile))) {
             String line;
             BlockParser blockParser = null;
             while ((line = r.readLine()) != null) {
             	if (line.startsWith(BLOCK_START_PREFIX)) {
-            		blockParser = createBlockParser(line.substring(BLOCK_START_PREFIX.length()));
+            		blockParser = createBlockParser(ret, line.substring(BLOCK_START_PREFIX.length()));
             	} else {
             		blockParser.handleLine(ret, line);
             	}
             }
+        } finally {
+        	ret.endRestrictionBatch();
         }
     	ret.reevaluateAfterDataChange();
         ret.log("results loaded from " + saveFile);
         return ret;
     }
 
-    private static BlockParser createBlockParser(String blockName) {
+    private static BlockParser createBlockParser(Blackboard ret, String blockName) {
     	switch (blockName) {
     	case DATA_CLEANING:
     		return new CleaningActionParser();
@@ -463,13 +639,17 @@ public class Blackboard {
     	case REJECTED_PATTERNS:
     		return new RulePatternPerLineParser((RuleRestrictions r, RulePattern line) -> r.reject(line));
 		case PARETO_FRONT:
-			return new RuleBlockParser();
+			return new RuleBlockParser((ValuedResult<RuleSet> vr) -> ret.addLoadedResult(vr));
 		default:
 			throw new RuntimeException("invalid block name: " + blockName);
     	}
 	}
 
-	public synchronized void save(File saveFile) throws IOException {
+	/**
+	 * Saves the restrictions, data cleaning actions and the current Pareto front. Writes a snapshot of the front,
+	 * so that the agents are not blocked while writing.
+	 */
+	public void save(File saveFile) throws IOException {
     	this.log("saving results to " + saveFile);
         try (FileWriter w = new FileWriter(saveFile)) {
         	w.write(BLOCK_START_PREFIX + DATA_CLEANING + "\n");
@@ -477,38 +657,105 @@ public class Blackboard {
         		w.write(c.serialize() + "\n");
         	}
 
-        	w.write(BLOCK_START_PREFIX + REJECTED_COLUMNS + "\n");
-        	for (final String column : this.rejectedColumns) {
-        		w.write(column + "\n");
+        	this.writeRestrictions(w);
+
+        	w.write(BLOCK_START_PREFIX + PARETO_FRONT + "\n");
+            writeResults(w, this.getParetoSnapshot().getItems());
+        }
+    }
+
+    /**
+     * Writes the rejected columns and the accepted, candidate and rejected rules in the format of the save file.
+     */
+    public void writeRestrictions(Writer w) throws IOException {
+    	w.write(BLOCK_START_PREFIX + REJECTED_COLUMNS + "\n");
+    	for (final String column : this.rejectedColumns) {
+    		w.write(column + "\n");
+    	}
+
+    	w.write(BLOCK_START_PREFIX + ACCEPTED + "\n");
+    	for (final String key : this.restrictions.keySet()) {
+        	for (final And and : this.restrictions.get(key).getAccepted()) {
+        		w.write(key + ":" + and + "\n");
         	}
+    	}
 
-        	w.write(BLOCK_START_PREFIX + ACCEPTED + "\n");
-        	for (final String key : this.restrictions.keySet()) {
-            	for (final And and : this.restrictions.get(key).getAccepted()) {
-            		w.write(key + ":" + and + "\n");
-            	}
+    	w.write(BLOCK_START_PREFIX + CANDIDATE + "\n");
+        for (final String key : this.restrictions.keySet()) {
+        	for (final And and : this.restrictions.get(key).getCandidates()) {
+        		w.write(key + ":" + and + "\n");
         	}
+        }
 
-        	w.write(BLOCK_START_PREFIX + CANDIDATE + "\n");
-            for (final String key : this.restrictions.keySet()) {
-            	for (final And and : this.restrictions.get(key).getCandidates()) {
-            		w.write(key + ":" + and + "\n");
-            	}
-            }
+    	w.write(BLOCK_START_PREFIX + REJECTED_PATTERNS + "\n");
+        for (final String key : this.restrictions.keySet()) {
+        	for (final RulePattern and : this.restrictions.get(key).getRejected()) {
+        		w.write(key + ":" + and + "\n");
+        	}
+        }
+    }
 
-        	w.write(BLOCK_START_PREFIX + REJECTED_PATTERNS + "\n");
-            for (final String key : this.restrictions.keySet()) {
-            	for (final RulePattern and : this.restrictions.get(key).getRejected()) {
-            		w.write(key + ":" + and + "\n");
+    /**
+     * Replaces all restrictions with the ones read from the given reader, in the format written by
+     * {@link #writeRestrictions(Writer)}. The Pareto front is revalidated once afterwards.
+     */
+    public void replaceRestrictions(BufferedReader r) throws IOException {
+        this.beginRestrictionBatch();
+        try {
+        	this.rejectedColumns.clear();
+        	for (final RuleRestrictions restriction : this.restrictions.values()) {
+        		restriction.clear();
+        	}
+            this.restrictionsChanged();
+            String line;
+            BlockParser blockParser = null;
+            while ((line = r.readLine()) != null) {
+            	if (line.startsWith(BLOCK_START_PREFIX)) {
+            		blockParser = createBlockParser(this, line.substring(BLOCK_START_PREFIX.length()));
+            	} else {
+            		blockParser.handleLine(this, line);
             	}
             }
+        } finally {
+        	this.endRestrictionBatch();
+        }
+    }
 
-        	w.write(BLOCK_START_PREFIX + PARETO_FRONT + "\n");
-            for (final ValuedResult<RuleSet> r : this.nondominatedResults.getItems()) {
-                w.write(r.getItem().toString());
-                w.write(END_OF_RULE_PREFIX + String.join(", ", toStrings(r.getAllValues())) + "\n");
+    /**
+     * Writes the given results in the format of the save file, without block header.
+     */
+    public static void writeResults(Writer w, Collection<ValuedResult<RuleSet>> results) throws IOException {
+        for (final ValuedResult<RuleSet> r : results) {
+            w.write(r.getItem().toString());
+            w.write(END_OF_RULE_PREFIX + String.join(", ", toStrings(r.getAllValues())) + "\n");
+        }
+    }
+
+    /**
+     * Reads results in the format written by {@link #writeResults(Writer, Collection)} until the end of the input
+     * or until a line that starts a new block. That line is returned, or null when the end was reached.
+     */
+    public String readResults(BufferedReader r, Consumer<ValuedResult<RuleSet>> consumer) throws IOException {
+        final RuleBlockParser parser = new RuleBlockParser(consumer);
+        String line;
+        while ((line = r.readLine()) != null) {
+            if (line.startsWith(BLOCK_START_PREFIX)) {
+                return line;
             }
+            parser.handleLine(this, line);
         }
+        return null;
+    }
+
+    /**
+     * Returns the name of the block if the given line starts a block in the save file format, and null otherwise.
+     */
+    public static String getBlockName(String line) {
+        return line != null && line.startsWith(BLOCK_START_PREFIX) ? line.substring(BLOCK_START_PREFIX.length()) : null;
+    }
+
+    public static String startOfBlock(String blockName) {
+        return BLOCK_START_PREFIX + blockName + "\n";
     }
 
     private static List<String> toStrings(double[] allValues) {
@@ -524,23 +771,19 @@ public class Blackboard {
      * and returns the result.
      */
     public RuleSet makeValid(final RuleSet rs) {
-        RuleSet ret = rs;
-        for (int exceptionId = 0; exceptionId < rs.getExceptionCount(); exceptionId++) {
-            for (final And rule : rs.getRules(exceptionId)) {
-                if (this.containsForbiddenFeature(rule)) {
-                    ret = ret.removeRule(exceptionId, rule);
-                }
-            }
-        }
-        for (final Entry<String, RuleRestrictions> e : this.restrictions.entrySet()) {
-            for (final And incl : e.getValue().accepted) {
-                ret = ret.addRule(e.getKey(), incl);
-            }
-            for (final RulePattern incl : e.getValue().rejected) {
-                ret = ret.remove(e.getKey(), incl, e.getValue().accepted, e.getValue().candidates);
-            }
+        return this.getCompiledRestrictions().makeValid(rs);
+    }
+
+    private CompiledRestrictions getCompiledRestrictions() {
+        final CompiledRestrictions current = this.compiledRestrictions.get();
+        //read the epoch before the restrictions, so that a concurrent change leads to a recompilation next time
+        final long epoch = this.restrictionEpoch.get();
+        if (current != null && current.getEpoch() == epoch) {
+            return current;
         }
-        return ret;
+        final CompiledRestrictions compiled = new CompiledRestrictions(epoch, this.restrictions, this.rejectedColumns);
+        this.compiledRestrictions.compareAndSet(current, compiled);
+        return compiled;
     }
 
     private boolean containsForbiddenFeature(And rule) {
@@ -558,12 +801,28 @@ public class Blackboard {
 
     private ValuedResult<RuleSet> evaluateAndAdd(RuleSet rs) {
         final ValuedResult<RuleSet> r = this.makeValidAndEvaluate(rs);
-        synchronized (this) {
-            this.nondominatedResults.add(r);
-        }
+        this.addEvaluated(r);
         return r;
     }
 
+    /**
+     * Adds a rule set that was evaluated with this blackboard's data to the front.
+     * @return true iff the front changed.
+     */
+    private boolean addEvaluated(ValuedResult<RuleSet> r) {
+        this.resultsLock.lock();
+        try {
+            if (this.nondominatedResults.add(r)) {
+                this.improvementCount.increment();
+                this.improvementCountOfThread.get()[0]++;
+                return true;
+            }
+            return false;
+        } finally {
+            this.resultsLock.unlock();
+        }
+    }
+
     public ValuedResult<RuleSet> makeValidAndEvaluate(RuleSet rs) {
         final RuleSet validRuleset = this.makeValid(rs);
         return this.evaluate(validRuleset);
@@ -584,26 +843,209 @@ public class Blackboard {
         return r;
     }
 
-    private synchronized void checkAutoPurge() {
-        final int size = this.cache.size();
-        if (size > AUTO_PURGE_LIMIT) {
-            this.log("auto-purge triggered at cache size " + this.cache.size());
-            this.purgeRules(100);
+    private void checkAutoPurge() {
+        this.resultsLock.lock();
+        try {
+            final int size = this.cache.size();
+            if (size > AUTO_PURGE_LIMIT) {
+                this.log("auto-purge triggered at cache size " + this.cache.size());
+                this.purgeRules(100);
+            }
+        } finally {
+            this.resultsLock.unlock();
+        }
+    }
+
+    /**
+     * Returns an immutable snapshot of the current Pareto front. When the front did not change since the last call,
+     * the published snapshot is returned without locking or copying.
+     */
+    public ParetoSnapshot<RuleSet> getParetoSnapshot() {
+        this.removeInvalidEntriesIfOutdated();
+        final ParetoSnapshot<RuleSet> published = this.publishedSnapshot;
+        if (published != null && published.getVersion() == this.nondominatedResults.getVersion()) {
+            return published;
+        }
+        this.resultsLock.lock();
+        try {
+            final ParetoSnapshot<RuleSet> current = this.nondominatedResults.snapshot();
+            this.publishedSnapshot = current;
+            return current;
+        } finally {
+            this.resultsLock.unlock();
+        }
+    }
+
+    public void addAll(NondominatedResults<RuleSet> results) {
+        this.resultsLock.lock();
+        try {
+            for (final ValuedResult<RuleSet> r : results.getItems()) {
+            	this.simplifyEvaluateAndAdd(r.getItem());
+            }
+        } finally {
+            this.resultsLock.unlock();
+        }
+    }
+
+    /**
+     * Returns the changes to the Pareto front since the given version, oldest first, or null when they are not known
+     * anymore and the full snapshot has to be used instead.
+     */
+    public List<ParetoChange<RuleSet>> getParetoChangesSince(long version) {
+        this.removeInvalidEntriesIfOutdated();
+        this.resultsLock.lock();
+        try {
+            return this.nondominatedResults.getChangesSince(version);
+        } finally {
+            this.resultsLock.unlock();
+        }
+    }
+
+    void migrate() {
+        try {
+            for (final Blackboard island : this.islands) {
+                island.removeInvalidResults();
+                this.takeEmigrants(island);
+                this.sendImmigrants(island);
+            }
+        } catch (final RuntimeException e) {
+            //an exception would stop the periodic migration
+            this.log(Level.WARN, () -> "error during migration: " + e);
         }
     }
 
-    public synchronized NondominatedResults<RuleSet> getNondominatedResultsSnapshot() {
-        final NondominatedResults<RuleSet> copy = new NondominatedResults<>();
-        copy.addAll(this.nondominatedResults);
-        return copy;
+    /**
+     * Merges the entries that were added to the island's front since the last migration into this front.
+     */
+    private void takeEmigrants(Blackboard island) {
+        final List<ParetoChange<RuleSet>> changes = island.getParetoChangesSince(island.lastEmigrationVersion);
+        final List<ValuedResult<RuleSet>> emigrants = new ArrayList<>();
+        if (changes == null) {
+            final ParetoSnapshot<RuleSet> snapshot = island.getParetoSnapshot();
+            emigrants.addAll(snapshot.getItems());
+            island.lastEmigrationVersion = snapshot.getVersion();
+        } else if (!changes.isEmpty()) {
+            for (final ParetoChange<RuleSet> change : changes) {
+                if (change.getType() == ParetoChange.Type.ADDED) {
+                    emigrants.add(change.getItem());
+                }
+            }
+            island.lastEmigrationVersion = changes.get(changes.size() - 1).getVersion();
+        }
+        for (final ValuedResult<RuleSet> r : emigrants) {
+            this.addMigrant(r);
+        }
+        if (this.cache.size() > AUTO_PURGE_LIMIT) {
+            this.checkAutoPurge();
+        }
     }
 
-    public synchronized void addAll(NondominatedResults<RuleSet> results) {
-        for (final ValuedResult<RuleSet> r : results.getItems()) {
-        	this.simplifyEvaluateAndAdd(r.getItem());
+    /**
+     * Sends the best rule set for each target function and the most diverse ones from this front to the island.
+     * They are queued for local search on the island.
+     */
+    private void sendImmigrants(Blackboard island) {
+        final ParetoSnapshot<RuleSet> front = this.getParetoSnapshot();
+        if (front.size() == 0) {
+            return;
+        }
+        final Set<ValuedResult<RuleSet>> immigrants = new LinkedHashSet<>();
+        for (final TargetFunction f : this.targetFunctions) {
+            immigrants.add(front.getIndex(f).getBestItem(this.migrationRandom));
+        }
+        immigrants.addAll(selectMostDiverse(front, this.targetFunctions, DIVERSE_IMMIGRANT_COUNT));
+        for (final ValuedResult<RuleSet> r : immigrants) {
+            if (island.addMigrant(r)) {
+                island.addToAgentFedLocalSearchQueue(r);
+            }
         }
     }
 
+    /**
+     * Adds an already evaluated rule set from another blackboard to the front.
+     * @return true iff the front changed.
+     */
+    private boolean addMigrant(ValuedResult<RuleSet> r) {
+        if (this.isInvalid(r.getItem())) {
+            //restrictions changed in the meantime
+            this.simplifyEvaluateAndAdd(r.getItem());
+            return false;
+        }
+        final ValuedResult<RuleSet> cached = this.cache.putIfAbsent(r.getItem(), r);
+        this.resultsLock.lock();
+        try {
+            final boolean added = this.nondominatedResults.add(cached != null ? cached : r);
+            if (added) {
+                this.improvementCount.increment();
+            }
+            return added;
+        } finally {
+            this.resultsLock.unlock();
+        }
+    }
+
+    /**
+     * Returns the given number of items of the front that have the largest crowding distance, i.e. whose
+     * neighbors are farthest away in terms of the target functions.
+     */
+    private static List<ValuedResult<RuleSet>> selectMostDiverse(
+            ParetoSnapshot<RuleSet> front, List<TargetFunction> targets, int count) {
+        final Map<ValuedResult<RuleSet>, Double> distances = new IdentityHashMap<>();
+        for (final TargetFunction f : targets) {
+            final List<ValuedResult<RuleSet>> sorted = front.getIndex(f).getItemsWithValueAtMost(Double.POSITIVE_INFINITY);
+            if (sorted.isEmpty()) {
+                continue;
+            }
+            final double range = f.applyAsDouble(sorted.get(sorted.size() - 1)) - f.applyAsDouble(sorted.get(0));
+            for (int i = 0; i < sorted.size(); i++) {
+                final double d;
+                if (i == 0 || i == sorted.size() - 1) {
+                    d = Double.POSITIVE_INFINITY;
+                } else if (range <= 0.0) {
+                    d = 0.0;
+                } else {
+                    d = (f.applyAsDouble(sorted.get(i + 1)) - f.applyAsDouble(sorted.get(i - 1))) / range;
+                }
+                distances.merge(sorted.get(i), d, Double::sum);
+            }
+        }
+        final List<ValuedResult<RuleSet>> ret = new ArrayList<>(distances.keySet());
+        ret.sort(Comparator.comparingDouble((ValuedResult<RuleSet> r) -> distances.get(r)).reversed());
+        return ret.subList(0, Math.min(count, ret.size()));
+    }
+
+    /**
+     * Removes the entries that became invalid because of restriction changes from an island's front.
+     * The global front is revalidated when the restrictions change, the islands only when they migrate.
+     */
+    private void removeInvalidResults() {
+        final long epoch = this.restrictionEpoch.get();
+        if (this.lastRevalidatedEpoch.getAndSet(epoch) == epoch) {
+            return;
+        }
+        this.removeInvalidEntries();
+    }
+
+    private void sampleQualityIndicators() {
+        try {
+            this.qualityIndicators.update(this.getParetoSnapshot(), this.improvementCount.sum(), System.currentTimeMillis());
+        } catch (final RuntimeException e) {
+            //an exception would stop the periodic sampling
+            this.log(Level.WARN, () -> "error while sampling quality indicators: " + e);
+        }
+    }
+
+    /**
+     * Returns the number of rule sets that the current thread added to this blackboard's front so far.
+     */
+    public long getImprovementCountOfCurrentThread() {
+        return this.improvementCountOfThread.get()[0];
+    }
+
+    public QualityIndicators getQualityIndicators() {
+        return this.qualityIndicators;
+    }
+
     public RecordsAndRemarks getRecords() {
         return this.recordsAndRemarks.get();
     }
@@ -612,52 +1054,51 @@ public class Blackboard {
         return this.cache.size();
     }
 
-    public synchronized ValuedResult<RuleSet> getRandomResult(Random random) {
-        return this.nondominatedResults.getRandomItem(random);
+    public ValuedResult<RuleSet> getRandomResult(Random random) {
+        return this.getParetoSnapshot().getRandomItem(random);
     }
 
-    public synchronized ValuedResult<RuleSet> getBestResultInLimits(Random random) {
-        return this.getNavigationLimits().filter(this.nondominatedResults)
+    public ValuedResult<RuleSet> getBestResultInLimits(Random random) {
+        return this.getNavigationLimits().filter(this.getParetoSnapshot())
         		.getBestItem(random, this.getCurrentTargetFunction());
     }
 
     public void addToUserFedLocalSearchQueue(ValuedResult<RuleSet> rs) {
-        //in the user queues we add to the front to favor the most recent items
-        this.userFedLocalSearchQueue.addFirst(rs);
+        this.userTaskScheduler().schedule(TaskType.USER_LOCAL_SEARCH, rs);
     }
 
     public void addToUserFedPathRelinkingQueue(ValuedResult<RuleSet> rs) {
-        //in the user queues we add to the front to favor the most recent items
-        this.userFedPathRelinkingQueue.addFirst(rs);
-    }
-
-    public void addToAgentFedLocalSearchQueue(ValuedResult<RuleSet> rs) {
-        this.agentFedLocalSearchQueue.addLast(rs);
-    }
-
-    public void addToAgentFedPathRelinkingQueue(ValuedResult<RuleSet> rs) {
-        this.agentFedPathRelinkingQueue.addLast(rs);
+        this.userTaskScheduler().schedule(TaskType.USER_PATH_RELINKING, rs);
     }
 
-    public ValuedResult<RuleSet> getOpenItemFromUserFedLocalSearchQueue() {
-        return this.userFedLocalSearchQueue.pollFirst();
+    /**
+     * In island mode, the work fed by the user is distributed round robin to the islands.
+     */
+    private TaskScheduler userTaskScheduler() {
+        final List<Blackboard> currentIslands = this.islands;
+        if (currentIslands.isEmpty()) {
+            return this.scheduler;
+        }
+        final int index = Math.floorMod(this.userTaskIslandCounter.getAndIncrement(), currentIslands.size());
+        return currentIslands.get(index).scheduler;
     }
 
-    public ValuedResult<RuleSet> getOpenItemFromUserFedPathRelinkingQueue() {
-        return this.userFedPathRelinkingQueue.pollFirst();
+    public void addToAgentFedLocalSearchQueue(ValuedResult<RuleSet> rs) {
+        this.scheduler.schedule(TaskType.AGENT_LOCAL_SEARCH, rs);
     }
 
-    public ValuedResult<RuleSet> getOpenItemFromAgentFedLocalSearchQueue() {
-        return this.agentFedLocalSearchQueue.pollFirst();
+    public void addToAgentFedPathRelinkingQueue(ValuedResult<RuleSet> rs) {
+        this.scheduler.schedule(TaskType.AGENT_PATH_RELINKING, rs);
     }
 
-    public ValuedResult<RuleSet> getOpenItemFromAgentFedPathRelinkingQueue() {
-        return this.agentFedPathRelinkingQueue.pollFirst();
+    public TaskScheduler getScheduler() {
+        return this.scheduler;
     }
 
     public Random createNewRandom() {
         final long seed = this.nextRandomSeed();
-        this.log("creating new random with seed " + seed);
+        this.countEvent("createNewRandom");
+        this.log(Level.DEBUG, () -> "creating new random with seed " + seed);
 		return new Random(seed);
     }
 
@@ -665,6 +1106,10 @@ public class Blackboard {
 		return this.seedCounter.getAndIncrement();
 	}
 
+    public ObjectiveStrategy getObjectives() {
+        return this.objectives;
+    }
+
     public RuleRestrictions restrictionsFor(String classification) {
         return this.restrictions.get(classification);
     }
@@ -676,23 +1121,154 @@ public class Blackboard {
     public void addRejectedColumns(Collection<String> columns) {
     	this.log("adding rejected columns " + columns);
         this.rejectedColumns.addAll(columns);
-        this.revalidateParetoSet();
+        this.restrictionsChanged();
     }
 
     public void removeColumnRejection(String column) {
     	this.log("undoing rejection of column " + column);
         this.rejectedColumns.remove(column);
-        this.revalidateParetoSet();
+        this.restrictionsChanged();
+    }
+
+    /**
+     * Returns the current restriction epoch. The epoch is increased whenever a restriction
+     * (accepted/rejected/candidate rules or rejected columns) changes.
+     */
+    public long getRestrictionEpoch() {
+        return this.restrictionEpoch.get();
+    }
+
+    /**
+     * Returns the number of passes that removed invalid entries from the Pareto front so far.
+     */
+    int getRemovalPassCount() {
+        return this.removalPassCount.get();
     }
 
-    private void revalidateParetoSet() {
-        //first remove all invalid entries from the pareto set. this should be pretty fast
-        synchronized (this) {
+    /**
+     * Returns the number of times that refilling the Pareto front from the cache was started so far.
+     */
+    int getRefillCount() {
+        return this.refillCount.get();
+    }
+
+    /**
+     * Returns the current data version. It is increased by each data cleaning action that changes the records.
+     */
+    public long getDataVersion() {
+        return this.dataVersion.get();
+    }
+
+    /**
+     * Adds results that were found by a remote worker. They are rejected as a whole when the worker
+     * used outdated data or restrictions. The objective values sent by the worker are not trusted, the rule
+     * sets are evaluated again.
+     * @return The number of results that changed the front, or -1 when the results are stale.
+     */
+    public int addRemoteResults(long resultDataVersion, long resultRestrictionEpoch, List<ValuedResult<RuleSet>> results) {
+        if (resultDataVersion != this.dataVersion.get() || resultRestrictionEpoch != this.restrictionEpoch.get()) {
+            return -1;
+        }
+        int count = 0;
+        for (final ValuedResult<RuleSet> r : results) {
+            if (this.addEvaluated(this.makeValidAndEvaluate(r.getItem()))) {
+                count++;
+            }
+        }
+        if (this.cache.size() > AUTO_PURGE_LIMIT) {
+            this.checkAutoPurge();
+        }
+        return count;
+    }
+
+    /**
+     * Applies several restriction changes at once. The Pareto front is revalidated only once, right after
+     * all changes have been applied.
+     */
+    public void applyRestrictionChanges(Runnable changes) {
+        this.beginRestrictionBatch();
+        try {
+            changes.run();
+        } finally {
+            this.endRestrictionBatch();
+        }
+    }
+
+    private void beginRestrictionBatch() {
+        this.restrictionBatchDepth.incrementAndGet();
+    }
+
+    private void endRestrictionBatch() {
+        if (this.restrictionBatchDepth.decrementAndGet() == 0) {
+            this.revalidate();
+        }
+    }
+
+    private void restrictionsChanged() {
+        this.restrictionEpoch.incrementAndGet();
+        if (this.restrictionBatchDepth.get() > 0) {
+            //will be revalidated at the end of the batch
+            return;
+        }
+        if (this.revalidationScheduled.compareAndSet(false, true)) {
+            this.backgroundScheduler.schedule(() -> {
+                this.revalidationScheduled.set(false);
+                this.revalidate();
+            }, REVALIDATION_DELAY_MS, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private void revalidate() {
+        this.removeInvalidEntriesIfOutdated();
+        this.startRefill();
+    }
+
+    /**
+     * Removes the entries that became invalid since the last removal from the global Pareto front. This is done
+     * before the front is read, so that no one sees results that violate a restriction, even when the revalidation
+     * is still pending. An island's front is only revalidated when it migrates.
+     */
+    private void removeInvalidEntriesIfOutdated() {
+        if (this.global != null) {
+            return;
+        }
+        final long epoch = this.restrictionEpoch.get();
+        if (this.lastRemovalEpoch.get() == epoch) {
+            return;
+        }
+        this.resultsLock.lock();
+        try {
+            if (this.lastRemovalEpoch.getAndSet(epoch) != epoch) {
+                this.removeInvalidEntries();
+            }
+        } finally {
+            this.resultsLock.unlock();
+        }
+    }
+
+    /**
+     * Removes the entries that are invalid under the current restrictions from the Pareto front.
+     */
+    private void removeInvalidEntries() {
+        this.removalPassCount.incrementAndGet();
+        this.resultsLock.lock();
+        try {
             this.nondominatedResults.removeIf((RuleSet rs) -> this.isInvalid(rs));
             //ensure that there is at least one entry in the set
             this.addDefaultRulesForAllClasses();
+        } finally {
+            this.resultsLock.unlock();
         }
+    }
 
+    private void startRefill() {
+        final long epoch = this.restrictionEpoch.get();
+        if (this.lastRevalidatedEpoch.getAndSet(epoch) == epoch) {
+            //nothing changed since the last refill
+            return;
+        }
+        this.log("revalidating pareto set for restriction epoch " + epoch);
+        this.refillCount.incrementAndGet();
         //revalidating the old entries can take a long time, do so in the background
         this.revalidateExecutor.execute(() -> this.refillParetoSet(new ArrayList<>(this.cache.values())));
     }
@@ -725,27 +1301,44 @@ public class Blackboard {
         return this.targetFunction.get();
     }
 
-    public synchronized void log(String string) {
-        System.out.println(String.format("===LOG=== %s, %s, %s",
-                        Thread.currentThread().getName(),
-                        Instant.now().toString(),
-                        string));
+    public void log(String string) {
+        this.eventLog.log(Level.INFO, string);
+    }
+
+    /**
+     * Logs a message with the given level. The message is only created when the level is enabled,
+     * and it is created asynchronously, so it may only depend on immutable state.
+     */
+    public void log(Level level, Supplier<String> message) {
+        this.eventLog.log(level, message);
+    }
+
+    /**
+     * Counts an event that occurs too often to be logged individually.
+     */
+    public void countEvent(String eventName) {
+        this.eventLog.count(eventName);
     }
 
-	public synchronized String removeRecord(int id) {
+	public String removeRecord(int id) {
 		return this.executeDataCleaningAction(new RemoveRecordAction(id));
 	}
 
-	public synchronized String addComputedColumn(String name, String computationScript) {
+	public String addComputedColumn(String name, String computationScript) {
 		return this.executeDataCleaningAction(new AddComputedColumnAction(name, computationScript));
 	}
 
 	private String executeDataCleaningAction(DataCleaningAction action) {
-		this.log(action.getUserString());
-		final String resultMessage = action.execute();
-		this.log(resultMessage);
-		this.cleaningActionHistory.add(action);
-		return resultMessage;
+		this.resultsLock.lock();
+		try {
+			this.log(action.getUserString());
+			final String resultMessage = action.execute();
+			this.log(resultMessage);
+			this.cleaningActionHistory.add(action);
+			return resultMessage;
+		} finally {
+			this.resultsLock.unlock();
+		}
 	}
 
 	public List<DataCleaningAction> getCleaningActionHistory() {
@@ -758,9 +1351,23 @@ public class Blackboard {
 		this.cache.clear();
 		this.nondominatedResults.clear();
         this.addDefaultRulesForAllClasses();
+        for (final Blackboard island : this.islands) {
+        	island.clearResults();
+        }
         this.revalidateExecutor.execute(() -> this.refillParetoSet(oldCacheContent));
 	}
 
+	private void clearResults() {
+		this.resultsLock.lock();
+		try {
+			this.cache.clear();
+			this.nondominatedResults.clear();
+			this.addDefaultRulesForAllClasses();
+		} finally {
+			this.resultsLock.unlock();
+		}
+	}
+
 	public NavigationLimits getNavigationLimits() {
 		return this.navigationLimits;
 	}
@@ -771,23 +1378,31 @@ public class Blackboard {
 	 * Tries to keep all best results in the limits for the given target functions and also tries to keep the variety
 	 * of rules (in terms of matched records) to a maximum.
 	 */
-	public synchronized void purgeRules(int countToKeep) {
-		this.log("purging all but ~" + countToKeep + " rules");
-		final Set<ValuedResult<RuleSet>> rulesToKeep = PurgeSelectionAlgorithm.determineRulesToKeep(
-				this.getNondominatedResultsSnapshot(),
-				this.getNavigationLimits(),
-				countToKeep,
-				this.targetFunctions,
-				Arrays.asList(this.getRecords().records.getRecords()),
-				this.createNewRandom());
-
-		this.nondominatedResults.clear();
-		this.cache.clear();
-		for(final ValuedResult<RuleSet> e : rulesToKeep) {
-			this.nondominatedResults.add(e);
-			this.cache.put(e.getItem(), e);
+	public void purgeRules(int countToKeep) {
+		this.resultsLock.lock();
+		try {
+			this.log("purging all but ~" + countToKeep + " rules");
+			final Set<ValuedResult<RuleSet>> rulesToKeep = PurgeSelectionAlgorithm.determineRulesToKeep(
+					this.getParetoSnapshot(),
+					this.getNavigationLimits(),
+					countToKeep,
+					this.targetFunctions,
+					Arrays.asList(this.getRecords().records.getRecords()),
+					this.createNewRandom());
+
+			this.nondominatedResults.clear();
+			this.cache.clear();
+			for(final ValuedResult<RuleSet> e : rulesToKeep) {
+				this.nondominatedResults.add(e);
+				this.cache.put(e.getItem(), e);
+			}
+			this.log("purging done, " + this.nondominatedResults.getItems().size() + " rules remaining in Pareto front");
+		} finally {
+			this.resultsLock.unlock();
+		}
+		for (final Blackboard island : this.islands) {
+			island.purgeRules(countToKeep);
 		}
-		this.log("purging done, " + this.nondominatedResults.getItems().size() + " rules remaining in Pareto front");
 	}
 
     public void addDefaultRulesForAllClasses() {
@@ -0,0 +1,199 @@
+/**
+ * Copyright 2019 Tobias Baum
+ *
+ * This file is part of GIMO-m.
+ *
+ * GIMO-m is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * GIMO-m is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ */
+package de.unihannover.gimo_m.mining.common;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+
+/**
+ * An immutable snapshot of all restrictions for one restriction epoch, compiled into indexes
+ * so that {@link #makeValid(RuleSet)} does not have to check every rejected pattern for every rule.
+ */
+final class CompiledRestrictions {
+
+	/**
+	 * The restrictions for a single class.
+	 * Rejected patterns are indexed by one of the conditions (or columns) that a rule needs to contain for the pattern to
+	 * match, so that only the patterns that can match a given rule need to be checked.
+	 */
+	private static final class ClassRestrictions {
+		private final List<And> accepted;
+		private final Set<And> whitelist;
+		private final Map<Rule, List<RulePattern>> rejectedByCondition = new HashMap<>();
+		private final Map<Integer, List<RulePattern>> rejectedByColumn = new HashMap<>();
+		private final List<RulePattern> rejectedUnconditional = new ArrayList<>();
+		private final CreationRestrictionIndex creationIndex;
+
+		public ClassRestrictions(List<And> accepted, List<And> candidates, List<RulePattern> rejected) {
+			this.accepted = new ArrayList<>(accepted);
+			this.whitelist = new HashSet<>(accepted);
+			this.whitelist.addAll(candidates);
+			for (final RulePattern p : rejected) {
+				if (!p.getFullyQualified().isEmpty()) {
+					add(this.rejectedByCondition, p.getFullyQualified().get(0), p);
+				} else if (!p.getValueWildcards().isEmpty()) {
+					add(this.rejectedByColumn, p.getValueWildcards().get(0).getColumn(), p);
+				} else {
+					this.rejectedUnconditional.add(p);
+				}
+			}
+			this.creationIndex = new CreationRestrictionIndex(rejected);
+		}
+
+		private static<K> void add(Map<K, List<RulePattern>> map, K key, RulePattern p) {
+			List<RulePattern> list = map.get(key);
+			if (list == null) {
+				list = new ArrayList<>();
+				map.put(key, list);
+			}
+			list.add(p);
+		}
+
+		public boolean isRejected(And rule) {
+			if (this.whitelist.contains(rule)) {
+				return false;
+			}
+			if (matchesAny(this.rejectedUnconditional, rule)) {
+				return true;
+			}
+			if (this.rejectedByCondition.isEmpty() && this.rejectedByColumn.isEmpty()) {
+				return false;
+			}
+			for (final Rule child : rule.getChildren()) {
+				if (matchesAny(this.rejectedByCondition.get(child), rule)) {
+					return true;
+				}
+				if (child instanceof SimpleRule
+						&& matchesAny(this.rejectedByColumn.get(((SimpleRule) child).getColumn()), rule)) {
+					return true;
+				}
+			}
+			return false;
+		}
+
+		private static boolean matchesAny(List<RulePattern> patterns, And rule) {
+			if (patterns == null) {
+				return false;
+			}
+			for (final RulePattern p : patterns) {
+				if (p.matches(rule)) {
+					return true;
+				}
+			}
+			return false;
+		}
+
+		public boolean hasRejections() {
+			return !this.rejectedUnconditional.isEmpty()
+				|| !this.rejectedByCondition.isEmpty()
+				|| !this.rejectedByColumn.isEmpty();
+		}
+	}
+
+	private final long epoch;
+	private final Set<String> rejectedColumns;
+	private final Map<String, ClassRestrictions> perClass = new LinkedHashMap<>();
+	private final boolean anyRejections;
+
+	CompiledRestrictions(long epoch, Map<String, Blackboard.RuleRestrictions> restrictions, Collection<String> rejectedColumns) {
+		this.epoch = epoch;
+		this.rejectedColumns = rejectedColumns.isEmpty() ? Collections.emptySet() : new HashSet<>(rejectedColumns);
+		boolean anyRejections = false;
+		for (final Entry<String, Blackboard.RuleRestrictions> e : restrictions.entrySet()) {
+			final ClassRestrictions cr = new ClassRestrictions(
+					e.getValue().getAccepted(), e.getValue().getCandidates(), e.getValue().getRejected());
+			this.perClass.put(e.getKey(), cr);
+			anyRejections |= cr.hasRejections();
+		}
+		this.anyRejections = anyRejections || !this.rejectedColumns.isEmpty();
+	}
+
+	public long getEpoch() {
+		return this.epoch;
+	}
+
+	/**
+	 * Changes the given rule so that it satisfies all restrictions and returns the result.
+	 * When the rule set is already valid, it is returned unchanged. The result is marked as valid for
+	 * this epoch, so that validating it again is free.
+	 */
+	public RuleSet makeValid(RuleSet rs) {
+		if (rs.isValidatedBy(this)) {
+			return rs;
+		}
+
+		RuleSet ret = rs;
+		if (this.anyRejections) {
+			for (int exceptionId = 0; exceptionId < rs.getExceptionCount(); exceptionId++) {
+				final ClassRestrictions cr = this.perClass.get(rs.getStrategy(exceptionId));
+				for (final And rule : rs.getRules(exceptionId)) {
+					if (this.containsForbiddenFeature(rule) || (cr != null && cr.isRejected(rule))) {
+						ret = ret.removeRule(exceptionId, rule);
+					}
+				}
+			}
+		}
+		for (final Entry<String, ClassRestrictions> e : this.perClass.entrySet()) {
+			if (e.getValue().accepted.isEmpty()) {
+				continue;
+			}
+			final List<And> existing = ret.getRules(e.getKey());
+			for (final And incl : e.getValue().accepted) {
+				if (!existing.contains(incl)) {
+					ret = ret.addRule(e.getKey(), incl);
+				}
+			}
+		}
+		ret.markValidatedBy(this);
+		return ret;
+	}
+
+	/**
+	 * Returns the restrictions for creating new rules for the given class, starting from the given prior rule.
+	 */
+	public RuleCreationRestriction createCreationRestrictions(String classification, And priorRule) {
+		final ClassRestrictions cr = this.perClass.get(classification);
+		final RuleCreationRestriction ret = new RuleCreationRestriction(
+				cr == null ? CreationRestrictionIndex.EMPTY : cr.creationIndex);
+		for (final Rule child : priorRule.getChildren()) {
+			if (child instanceof SimpleRule) {
+				ret.addCondition((SimpleRule) child);
+			}
+		}
+		return ret;
+	}
+
+	public boolean containsForbiddenFeature(And rule) {
+		if (this.rejectedColumns.isEmpty()) {
+			return false;
+		}
+		for (final Rule r : rule.getChildren()) {
+			if (!Collections.disjoint(r.getUsedFeatures().keySet(), this.rejectedColumns)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+}
@@ -0,0 +1,146 @@
+/**
+ * Copyright 2019 Tobias Baum
+ *
+ * This file is part of GIMO-m.
+ *
+ * GIMO-m is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * GIMO-m is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ */
+package de.unihannover.gimo_m.mining.common;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The rejected patterns of one class that are relevant for rule creation, compiled into flat arrays.
+ * Each condition or value wildcard of a pattern is a "slot". Slots are indexed by the condition and by the
+ * (column, operator) combination they need, so that {@link RuleCreationRestriction} can track incrementally
+ * which patterns are nearly complete.
+ */
+final class CreationRestrictionIndex {
+
+	static final CreationRestrictionIndex EMPTY = new CreationRestrictionIndex(new ArrayList<>());
+
+	private static final int[] NO_SLOTS = new int[0];
+	private static final int OPERATOR_COUNT = 4;
+
+	final int patternCount;
+	final int[] patternStart;
+	final int[] patternOfSlot;
+	final int[] conditionOfSlot;
+	final int[] keyOfSlot;
+	final Map<Rule, Integer> conditionIds = new HashMap<>();
+	private final Map<Rule, int[]> slotsByCondition = new HashMap<>();
+	private final int[][] slotsByKey;
+	final int keyCount;
+
+	CreationRestrictionIndex(List<RulePattern> rejected) {
+		final List<RulePattern> relevant = new ArrayList<>();
+		int slotCount = 0;
+		int maxColumn = -1;
+		for (final RulePattern p : rejected) {
+			//when there is no wildcard in the pattern, it is always possible to make the
+			//  rule valid again by adding more conditions
+			if (p.hasOtherConditionWildcard()) {
+				relevant.add(p);
+				slotCount += p.getFullyQualified().size() + p.getValueWildcards().size();
+				for (final SimpleRulePattern w : p.getValueWildcards()) {
+					maxColumn = Math.max(maxColumn, w.getColumn());
+				}
+			}
+		}
+
+		this.patternCount = relevant.size();
+		this.patternStart = new int[relevant.size() + 1];
+		this.patternOfSlot = new int[slotCount];
+		this.conditionOfSlot = new int[slotCount];
+		this.keyOfSlot = new int[slotCount];
+		this.keyCount = (maxColumn + 1) * OPERATOR_COUNT;
+		final Map<Rule, List<Integer>> conditionSlots = new HashMap<>();
+		final List<List<Integer>> keySlots = new ArrayList<>();
+		for (int i = 0; i < this.keyCount; i++) {
+			keySlots.add(new ArrayList<>());
+		}
+
+		int slot = 0;
+		for (int p = 0; p < relevant.size(); p++) {
+			this.patternStart[p] = slot;
+			for (final Rule r : relevant.get(p).getFullyQualified()) {
+				Integer id = this.conditionIds.get(r);
+				if (id == null) {
+					id = this.conditionIds.size();
+					this.conditionIds.put(r, id);
+					conditionSlots.put(r, new ArrayList<>());
+				}
+				conditionSlots.get(r).add(slot);
+				this.patternOfSlot[slot] = p;
+				this.conditionOfSlot[slot] = id;
+				this.keyOfSlot[slot] = -1;
+				slot++;
+			}
+			for (final SimpleRulePattern w : relevant.get(p).getValueWildcards()) {
+				final int key = key(w.getColumn(), w.getRuleType());
+				keySlots.get(key).add(slot);
+				this.patternOfSlot[slot] = p;
+				this.conditionOfSlot[slot] = -1;
+				this.keyOfSlot[slot] = key;
+				slot++;
+			}
+		}
+		this.patternStart[relevant.size()] = slot;
+
+		for (final Map.Entry<Rule, List<Integer>> e : conditionSlots.entrySet()) {
+			this.slotsByCondition.put(e.getKey(), toArray(e.getValue()));
+		}
+		this.slotsByKey = new int[this.keyCount][];
+		for (int i = 0; i < this.keyCount; i++) {
+			this.slotsByKey[i] = toArray(keySlots.get(i));
+		}
+	}
+
+	private static int[] toArray(List<Integer> list) {
+		final int[] ret = new int[list.size()];
+		for (int i = 0; i < ret.length; i++) {
+			ret[i] = list.get(i);
+		}
+		return ret;
+	}
+
+	/**
+	 * Returns the key for the given column and rule type, or -1 if the rule type cannot be restricted.
+	 */
+	static int key(int column, Class<? extends SimpleRule> ruleType) {
+		final int operator;
+		if (ruleType == Leq.class) {
+			operator = 0;
+		} else if (ruleType == Geq.class) {
+			operator = 1;
+		} else if (ruleType == Equals.class) {
+			operator = 2;
+		} else if (ruleType == NotEquals.class) {
+			operator = 3;
+		} else {
+			return -1;
+		}
+		return column * OPERATOR_COUNT + operator;
+	}
+
+	int[] getSlotsForCondition(Rule condition) {
+		final int[] ret = this.slotsByCondition.get(condition);
+		return ret == null ? NO_SLOTS : ret;
+	}
+
+	int[] getSlotsForKey(int key) {
+		return key < 0 || key >= this.keyCount ? NO_SLOTS : this.slotsByKey[key];
+	}
+
+}
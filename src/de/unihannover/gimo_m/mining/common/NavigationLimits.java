@@ -15,35 +15,118 @@
  */
 package de.unihannover.gimo_m.mining.common;
 
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.concurrent.atomic.AtomicReference;
 
+/**
+ * Upper limits for target functions, to restrict the navigation to the interesting part of the Pareto front.
+ * The filtered view of the front is cached until the front or the limits change.
+ */
 public class NavigationLimits {
 
-	private final AtomicReference<Map<TargetFunction, Double>> limits =
-			new AtomicReference<>(Collections.emptyMap());
+	private static final class Limits {
+		private final Map<TargetFunction, Double> map;
+		private final long version;
+
+		public Limits(Map<TargetFunction, Double> map, long version) {
+			this.map = map;
+			this.version = version;
+		}
+	}
+
+	private static final class FilteredView {
+		private final ParetoSnapshot<?> source;
+		private final long limitsVersion;
+		private final ParetoSnapshot<?> filtered;
+
+		public FilteredView(ParetoSnapshot<?> source, long limitsVersion, ParetoSnapshot<?> filtered) {
+			this.source = source;
+			this.limitsVersion = limitsVersion;
+			this.filtered = filtered;
+		}
+	}
+
+	private final AtomicReference<Limits> limits;
+	private final AtomicReference<FilteredView> cachedView = new AtomicReference<>();
+
+	public NavigationLimits() {
+		this(new AtomicReference<>(new Limits(Collections.emptyMap(), 0)));
+	}
+
+	private NavigationLimits(AtomicReference<Limits> limits) {
+		this.limits = limits;
+	}
+
+	/**
+	 * Returns an object that shares the limits with this one, but caches its own filtered view.
+	 * Is needed when several fronts are filtered, e.g. one per island, so that they do not replace each
+	 * other's cache entry.
+	 */
+	NavigationLimits withSeparateCache() {
+		return new NavigationLimits(this.limits);
+	}
 
 	public double getLimit(TargetFunction target) {
-		final Double limit = this.limits.get().get(target);
+		final Double limit = this.limits.get().map.get(target);
 		return limit != null ? limit : Double.POSITIVE_INFINITY;
 	}
 
-	public<T> NondominatedResults<T> filter(NondominatedResults<T> snapshot) {
-		final NondominatedResults<T> ret = new NondominatedResults<>();
-		final Map<TargetFunction, Double> map = this.limits.get();
-		for (final ValuedResult<T> v : snapshot.getItems()) {
+	/**
+	 * Returns a counter that is increased whenever the limits change.
+	 */
+	public long getVersion() {
+		return this.limits.get().version;
+	}
+
+	/**
+	 * Returns a snapshot with the same version that contains only the items within the limits.
+	 * The result is cached per (snapshot, limits version).
+	 */
+	@SuppressWarnings("unchecked")
+	public<T> ParetoSnapshot<T> filter(ParetoSnapshot<T> snapshot) {
+		final Limits cur = this.limits.get();
+		if (cur.map.isEmpty()) {
+			return snapshot;
+		}
+		final FilteredView cached = this.cachedView.get();
+		if (cached != null && cached.source == snapshot && cached.limitsVersion == cur.version) {
+			return (ParetoSnapshot<T>) cached.filtered;
+		}
+		final ParetoSnapshot<T> filtered = new ParetoSnapshot<>(snapshot.getVersion(), filter(snapshot, cur.map));
+		this.cachedView.set(new FilteredView(snapshot, cur.version, filtered));
+		return filtered;
+	}
+
+	/**
+	 * Uses the index of the most restrictive limit to find the candidates, so that only these have to be checked
+	 * against the other limits.
+	 */
+	private static<T> List<ValuedResult<T>> filter(ParetoSnapshot<T> snapshot, Map<TargetFunction, Double> map) {
+		List<ValuedResult<T>> candidates = null;
+		for (final Entry<TargetFunction, Double> l : map.entrySet()) {
+			final List<ValuedResult<T>> inLimit = snapshot.getIndex(l.getKey()).getItemsWithValueAtMost(l.getValue());
+			if (candidates == null || inLimit.size() < candidates.size()) {
+				candidates = inLimit;
+			}
+		}
+		final List<ValuedResult<T>> ret = new ArrayList<>();
+		for (final ValuedResult<T> v : candidates) {
 			if (isWithinLimits(v, map)) {
 				ret.add(v);
 			}
 		}
+		//keep the order of the snapshot
+		ret.sort(ValuedResult.LEXICOGRAPHIC_COMPARATOR);
 		return ret;
 	}
 
 	public boolean isInLimits(ValuedResult<?> item) {
-		return isWithinLimits(item, this.limits.get());
+		return isWithinLimits(item, this.limits.get().map);
 	}
 
 	private static boolean isWithinLimits(ValuedResult<?> v, Map<TargetFunction, Double> map) {
@@ -57,23 +140,25 @@ public class NavigationLimits {
 	}
 
 	public void removeLimit(TargetFunction f) {
-		Map<TargetFunction, Double> oldMap;
-		Map<TargetFunction, Double> newMap;
+		Limits oldLimits;
+		Limits newLimits;
 		do {
-			oldMap = this.limits.get();
-			newMap = new HashMap<>(oldMap);
+			oldLimits = this.limits.get();
+			final Map<TargetFunction, Double> newMap = new HashMap<>(oldLimits.map);
 			newMap.remove(f);
-		} while (!this.limits.compareAndSet(oldMap, newMap));
+			newLimits = new Limits(newMap, oldLimits.version + 1);
+		} while (!this.limits.compareAndSet(oldLimits, newLimits));
 	}
 
 	public void setLimit(TargetFunction target, double limit) {
-		Map<TargetFunction, Double> oldMap;
-		Map<TargetFunction, Double> newMap;
+		Limits oldLimits;
+		Limits newLimits;
 		do {
-			oldMap = this.limits.get();
-			newMap = new HashMap<>(oldMap);
+			oldLimits = this.limits.get();
+			final Map<TargetFunction, Double> newMap = new HashMap<>(oldLimits.map);
 			newMap.put(target, limit);
-		} while (!this.limits.compareAndSet(oldMap, newMap));
+			newLimits = new Limits(newMap, oldLimits.version + 1);
+		} while (!this.limits.compareAndSet(oldLimits, newLimits));
 	}
 
 }
@@ -15,8 +15,10 @@
  */
 package de.unihannover.gimo_m.mining.common;
 
+import java.util.ArrayDeque;
 import java.util.ArrayList;
-import java.util.Collections;
+import java.util.Arrays;
+import java.util.Deque;
 import java.util.Iterator;
 import java.util.LinkedHashSet;
 import java.util.List;
@@ -26,9 +28,50 @@ import java.util.function.Predicate;
 
 import de.unihannover.gimo_m.util.Util;
 
+/**
+ * The set of nondominated results.
+ * The entries are kept sorted lexicographically by their values. An entry that dominates a candidate is
+ * lexicographically smaller than it, an entry that is dominated by it is larger, so only one side has
+ * to be checked for each. Furthermore, the value sums are cached to skip most of the dominance checks.
+ *
+ * <p>Optionally, the set can use epsilon-dominance: The objective space is divided into boxes with the given size
+ * per objective, and at most one value vector is kept per box. Items whose box is dominated are discarded. This
+ * bounds the size of the set, while every discarded item is still epsilon-dominated by an item in the set.
+ */
 public class NondominatedResults<R> {
 
-    private final List<ValuedResult<Set<R>>> items = new ArrayList<>();
+    private static final class Entry<R> {
+        private final ValuedResult<Set<R>> result;
+        private final double valueSum;
+        private final double[] box;
+
+        public Entry(ValuedResult<Set<R>> result, double[] box) {
+            this.result = result;
+            this.valueSum = sum(result.getAllValues());
+            this.box = box;
+        }
+    }
+
+    private final List<Entry<R>> items = new ArrayList<>();
+    private final double[] epsilons;
+    private volatile long version;
+    private ParetoSnapshot<R> snapshot;
+
+    private Deque<ParetoChange<R>> changeLog;
+    private int changeLogCapacity;
+    private long lastDroppedChangeVersion;
+
+    public NondominatedResults() {
+        this(null);
+    }
+
+    /**
+     * Creates a set that uses epsilon-dominance with the given box size per objective.
+     * When the given array is null, normal dominance is used.
+     */
+    public NondominatedResults(double[] epsilons) {
+        this.epsilons = epsilons == null ? null : epsilons.clone();
+    }
 
     /**
      * Adds an item to the set when it is not dominated by an already existing item.
@@ -36,28 +79,262 @@ public class NondominatedResults<R> {
      * @return true when the item was added
      */
     public boolean add(ValuedResult<R> candidate) {
-        final Iterator<ValuedResult<Set<R>>> iter = this.items.iterator();
-        while (iter.hasNext()) {
-            final ValuedResult<Set<R>> cur = iter.next();
-            if (cur.dominates(candidate)) {
+        if (this.epsilons != null) {
+            return this.addWithEpsilonDominance(candidate);
+        }
+        final int searchResult = this.binarySearch(candidate);
+        if (searchResult >= 0) {
+            //an entry with the same values exists, and therefore neither dominates nor is dominated
+            return this.changedIf(this.addToGroup(this.items.get(searchResult).result, candidate));
+        }
+        final int insertionPoint = -searchResult - 1;
+        final double candidateSum = sum(candidate.getAllValues());
+
+        //only lexicographically smaller entries with a sum that is not larger can dominate the candidate
+        for (int i = 0; i < insertionPoint; i++) {
+            final Entry<R> cur = this.items.get(i);
+            if (cur.valueSum <= candidateSum && cur.result.dominates(candidate)) {
                 return false;
             }
-            if (cur.hasSameValues(candidate)) {
-                return cur.getItem().add(candidate.getItem());
-            }
-            if (candidate.dominates(cur)) {
-                iter.remove();
+        }
+
+        //only lexicographically larger entries with a sum that is not smaller can be dominated by the candidate
+        int writeIndex = insertionPoint;
+        for (int readIndex = insertionPoint; readIndex < this.items.size(); readIndex++) {
+            final Entry<R> cur = this.items.get(readIndex);
+            if (cur.valueSum >= candidateSum && candidate.dominates(cur.result)) {
+                this.logRemoval(cur);
+            } else {
+                this.items.set(writeIndex++, cur);
             }
         }
+        this.removeTail(writeIndex);
+
+        this.insert(insertionPoint, candidate, null);
+        return this.changedIf(true);
+    }
+
+    private void insert(int insertionPoint, ValuedResult<R> candidate, double[] box) {
         final Set<R> newSet = new LinkedHashSet<>();
         newSet.add(candidate.getItem());
-        this.items.add(candidate.copyWithNewItem(newSet));
+        this.items.add(insertionPoint, new Entry<>(candidate.copyWithNewItem(newSet), box));
+        this.logChange(ParetoChange.Type.ADDED, candidate);
+    }
+
+    private boolean addToGroup(ValuedResult<Set<R>> group, ValuedResult<R> candidate) {
+        if (!group.getItem().add(candidate.getItem())) {
+            return false;
+        }
+        this.logChange(ParetoChange.Type.ADDED, candidate);
+        return true;
+    }
+
+    /**
+     * Adds an item when its box is not dominated. The set is small in this mode, so it is simply scanned.
+     */
+    private boolean addWithEpsilonDominance(ValuedResult<R> candidate) {
+        final double[] candidateBox = box(candidate.getAllValues(), this.epsilons);
+        int sameBoxIndex = -1;
+        for (int i = 0; i < this.items.size(); i++) {
+            final Entry<R> cur = this.items.get(i);
+            if (Arrays.equals(cur.box, candidateBox)) {
+                sameBoxIndex = i;
+            } else if (dominates(cur.box, candidateBox)) {
+                return false;
+            }
+        }
+
+        if (sameBoxIndex >= 0) {
+            final ValuedResult<Set<R>> cur = this.items.get(sameBoxIndex).result;
+            if (cur.hasSameValues(candidate)) {
+                return this.changedIf(this.addToGroup(cur, candidate));
+            }
+            if (cur.dominates(candidate)) {
+                return false;
+            }
+            //when neither dominates the other, keep the one closer to the box's corner
+            if (!candidate.dominates(cur)
+                    && distanceToBoxCorner(cur.getAllValues(), candidateBox, this.epsilons)
+                        <= distanceToBoxCorner(candidate.getAllValues(), candidateBox, this.epsilons)) {
+                return false;
+            }
+            this.logRemoval(this.items.remove(sameBoxIndex));
+        }
+
+        this.items.removeIf((Entry<R> e) -> {
+            if (dominates(candidateBox, e.box)) {
+                this.logRemoval(e);
+                return true;
+            }
+            return false;
+        });
+        this.insert(-this.binarySearch(candidate) - 1, candidate, candidateBox);
+        return this.changedIf(true);
+    }
+
+    /**
+     * Returns true iff the candidate would be added to a set with the given epsilons that contains the given items.
+     * Uses the same rules as {@link #add} in epsilon-dominance mode.
+     */
+    static boolean isEpsilonNondominated(double[] epsilons, List<? extends ValuedResult<?>> items, ValuedResult<?> candidate) {
+        final double[] candidateBox = box(candidate.getAllValues(), epsilons);
+        for (final ValuedResult<?> cur : items) {
+            final double[] curBox = box(cur.getAllValues(), epsilons);
+            if (Arrays.equals(curBox, candidateBox)) {
+                if (cur.hasSameValues(candidate)) {
+                    continue;
+                }
+                if (cur.dominates(candidate)) {
+                    return false;
+                }
+                if (!candidate.dominates(cur)
+                        && distanceToBoxCorner(cur.getAllValues(), candidateBox, epsilons)
+                            <= distanceToBoxCorner(candidate.getAllValues(), candidateBox, epsilons)) {
+                    return false;
+                }
+            } else if (dominates(curBox, candidateBox)) {
+                return false;
+            }
+        }
         return true;
     }
 
+    private static double[] box(double[] values, double[] epsilons) {
+        final double[] ret = new double[values.length];
+        for (int i = 0; i < values.length; i++) {
+            ret[i] = Math.floor(values[i] / epsilons[i]);
+        }
+        return ret;
+    }
+
+    private static double distanceToBoxCorner(double[] values, double[] box, double[] epsilons) {
+        double ret = 0.0;
+        for (int i = 0; i < values.length; i++) {
+            final double d = values[i] / epsilons[i] - box[i];
+            ret += d * d;
+        }
+        return ret;
+    }
+
+    private static boolean dominates(double[] v1, double[] v2) {
+        boolean oneBetter = false;
+        for (int i = 0; i < v1.length; i++) {
+            if (v1[i] > v2[i]) {
+                return false;
+            }
+            oneBetter |= v1[i] < v2[i];
+        }
+        return oneBetter;
+    }
+
+    private boolean changedIf(boolean changed) {
+        if (changed) {
+            this.version++;
+        }
+        return changed;
+    }
+
+    /**
+     * Starts to record the changes to this set, keeping at most the given number of changes.
+     */
+    public void enableChangeLog(int capacity) {
+        this.changeLog = new ArrayDeque<>();
+        this.changeLogCapacity = capacity;
+        //the changes until now are unknown
+        this.lastDroppedChangeVersion = this.version;
+    }
+
+    private void logRemoval(Entry<R> e) {
+        for (final R item : e.result.getItem()) {
+            this.logChange(ParetoChange.Type.REMOVED, e.result.copyWithNewItem(item));
+        }
+    }
+
+    private void logChange(ParetoChange.Type type, ValuedResult<R> item) {
+        if (this.changeLog == null) {
+            return;
+        }
+        //all changes are logged before the version is increased
+        this.changeLog.addLast(new ParetoChange<>(this.version + 1, type, item));
+        if (this.changeLog.size() > this.changeLogCapacity) {
+            this.lastDroppedChangeVersion = this.changeLog.removeFirst().getVersion();
+        }
+    }
+
+    /**
+     * Returns the changes that lead from the given version to the current version, oldest first.
+     * Returns null when these changes are not known (anymore).
+     */
+    public List<ParetoChange<R>> getChangesSince(long sinceVersion) {
+        if (this.changeLog == null || sinceVersion < this.lastDroppedChangeVersion || sinceVersion > this.version) {
+            return null;
+        }
+        final List<ParetoChange<R>> ret = new ArrayList<>();
+        for (final ParetoChange<R> c : this.changeLog) {
+            if (c.getVersion() > sinceVersion) {
+                ret.add(c);
+            }
+        }
+        return ret;
+    }
+
+    /**
+     * Returns the version of this set. The version is increased whenever the content changes.
+     */
+    public long getVersion() {
+        return this.version;
+    }
+
+    /**
+     * Returns an immutable snapshot of the current content. When nothing changed since the last
+     * call, the same snapshot is returned.
+     */
+    public ParetoSnapshot<R> snapshot() {
+        final ParetoSnapshot<R> cur = this.snapshot;
+        if (cur != null && cur.getVersion() == this.version) {
+            return cur;
+        }
+        final ParetoSnapshot<R> ret = new ParetoSnapshot<>(this.version, this.getItems(), this.epsilons,
+                cur, cur == null ? null : this.getChangesSince(cur.getVersion()));
+        this.snapshot = ret;
+        return ret;
+    }
+
+    private int binarySearch(ValuedResult<?> candidate) {
+        int low = 0;
+        int high = this.items.size() - 1;
+        while (low <= high) {
+            final int mid = (low + high) >>> 1;
+            final int cmp = ValuedResult.LEXICOGRAPHIC_COMPARATOR.compare(this.items.get(mid).result, candidate);
+            if (cmp < 0) {
+                low = mid + 1;
+            } else if (cmp > 0) {
+                high = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -(low + 1);
+    }
+
+    private void removeTail(int newSize) {
+        if (newSize < this.items.size()) {
+            this.items.subList(newSize, this.items.size()).clear();
+        }
+    }
+
+    private static double sum(double[] values) {
+        double ret = 0.0;
+        for (final double v : values) {
+            ret += v;
+        }
+        return ret;
+    }
+
     public boolean addAll(NondominatedResults<R> candidates) {
         boolean hadSomeImprovement = false;
-        for (final ValuedResult<Set<R>> c : candidates.items) {
+        for (final Entry<R> e : candidates.items) {
+            final ValuedResult<Set<R>> c = e.result;
             for (final R rule : c.getItem()) {
                 hadSomeImprovement |= this.add(c.copyWithNewItem(rule));
             }
@@ -67,7 +344,8 @@ public class NondominatedResults<R> {
 
     public List<ValuedResult<R>> getItems() {
         final List<ValuedResult<R>> ret = new ArrayList<>();
-        for (final ValuedResult<Set<R>> v : this.items) {
+        for (final Entry<R> e : this.items) {
+            final ValuedResult<Set<R>> v = e.result;
             for (final R rule : v.getItem()) {
                 ret.add(v.copyWithNewItem(rule));
             }
@@ -76,8 +354,11 @@ public class NondominatedResults<R> {
     }
 
     public List<ValuedResult<Set<R>>> getItemsSorted() {
-        Collections.sort(this.items, ValuedResult.LEXICOGRAPHIC_COMPARATOR);
-        return this.items;
+        final List<ValuedResult<Set<R>>> ret = new ArrayList<>(this.items.size());
+        for (final Entry<R> e : this.items) {
+            ret.add(e.result);
+        }
+        return ret;
     }
 
     public boolean isEmpty() {
@@ -86,7 +367,7 @@ public class NondominatedResults<R> {
 
     @Override
     public String toString() {
-        return this.items.toString();
+        return this.getItemsSorted().toString();
     }
 
     public ValuedResult<R> getRandomItem(Random random) {
@@ -111,14 +392,30 @@ public class NondominatedResults<R> {
 	}
 
     public void clear() {
-        this.items.clear();
+        if (!this.items.isEmpty()) {
+            for (final Entry<R> e : this.items) {
+                this.logRemoval(e);
+            }
+            this.items.clear();
+            this.version++;
+        }
     }
 
     public void removeIf(Predicate<? super R> rulePredicate) {
-        for (final ValuedResult<Set<R>> e : this.items) {
-            e.getItem().removeIf(rulePredicate);
+        boolean changed = false;
+        for (final Entry<R> e : this.items) {
+            final Iterator<R> iter = e.result.getItem().iterator();
+            while (iter.hasNext()) {
+                final R item = iter.next();
+                if (rulePredicate.test(item)) {
+                    iter.remove();
+                    this.logChange(ParetoChange.Type.REMOVED, e.result.copyWithNewItem(item));
+                    changed = true;
+                }
+            }
         }
-        this.items.removeIf((ValuedResult<Set<R>> e) -> e.getItem().isEmpty());
+        this.items.removeIf((Entry<R> e) -> e.result.getItem().isEmpty());
+        this.changedIf(changed);
     }
 
 }
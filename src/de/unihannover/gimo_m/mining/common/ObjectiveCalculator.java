@@ -22,6 +22,35 @@ public interface ObjectiveCalculator {
 	 */
 	public abstract void handleInstance(String correctClass, String predictedClass);
 
+	/**
+	 * Removes the results for an instance that was added before with {@link #handleInstance}.
+	 * Together with {@link #copy()}, this allows to evaluate small changes of a ruleset without looking at all instances.
+	 */
+	public abstract void removeInstance(String correctClass, String predictedClass);
+
+	/**
+	 * Adds the results for several instances with the same correct and predicted class at once.
+	 */
+	public default void handleInstances(String correctClass, String predictedClass, int count) {
+		for (int i = 0; i < count; i++) {
+			this.handleInstance(correctClass, predictedClass);
+		}
+	}
+
+	/**
+	 * Removes the results for several instances with the same correct and predicted class at once.
+	 */
+	public default void removeInstances(String correctClass, String predictedClass, int count) {
+		for (int i = 0; i < count; i++) {
+			this.removeInstance(correctClass, predictedClass);
+		}
+	}
+
+	/**
+	 * Returns an independent calculator with the same state.
+	 */
+	public abstract ObjectiveCalculator copy();
+
 	/**
 	 * Is called after all instances have been processed to determine the final objective vector.
 	 */
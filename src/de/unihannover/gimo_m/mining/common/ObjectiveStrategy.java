@@ -35,4 +35,16 @@ public interface ObjectiveStrategy {
 	 */
 	public abstract ObjectiveCalculator createCalculator();
 
+	/**
+	 * Returns the box size per objective when the Pareto front shall be bounded by using epsilon-dominance,
+	 * or null when normal dominance shall be used.
+	 */
+	public abstract double[] getArchiveEpsilons();
+
+	/**
+	 * Returns the reference point (the worst value per objective that is still of interest) for the hypervolume
+	 * calculation.
+	 */
+	public abstract double[] getReferencePoint();
+
 }
@@ -0,0 +1,56 @@
+/**
+ * Copyright 2019 Tobias Baum
+ *
+ * This file is part of GIMO-m.
+ *
+ * GIMO-m is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * GIMO-m is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ */
+package de.unihannover.gimo_m.mining.common;
+
+/**
+ * An item that was added to or removed from a {@link NondominatedResults}, together with the version
+ * of the set after the change.
+ */
+public final class ParetoChange<R> {
+
+    public enum Type {
+        ADDED,
+        REMOVED
+    }
+
+    private final long version;
+    private final Type type;
+    private final ValuedResult<R> item;
+
+    ParetoChange(long version, Type type, ValuedResult<R> item) {
+        this.version = version;
+        this.type = type;
+        this.item = item;
+    }
+
+    public long getVersion() {
+        return this.version;
+    }
+
+    public Type getType() {
+        return this.type;
+    }
+
+    public ValuedResult<R> getItem() {
+        return this.item;
+    }
+
+    @Override
+    public String toString() {
+        return this.version + " " + this.type + " " + this.item;
+    }
+
+}
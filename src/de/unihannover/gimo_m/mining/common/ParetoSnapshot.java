@@ -0,0 +1,127 @@
+/**
+ * Copyright 2019 Tobias Baum
+ *
+ * This file is part of GIMO-m.
+ *
+ * GIMO-m is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * GIMO-m is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ */
+package de.unihannover.gimo_m.mining.common;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+
+import de.unihannover.gimo_m.util.Util;
+
+/**
+ * An immutable view of a {@link NondominatedResults} at a certain version.
+ * A snapshot is created at most once per version and can then be shared by all readers without copying.
+ * The items are sorted lexicographically by their values.
+ */
+public final class ParetoSnapshot<R> {
+
+    private final long version;
+    private final List<ValuedResult<R>> items;
+    private final double[] epsilons;
+    private final ConcurrentHashMap<TargetFunction, TargetIndex<R>> indexes = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<TargetFunction, TargetIndex<R>> previousIndexes;
+    private final List<ParetoChange<R>> changesSincePrevious;
+
+    ParetoSnapshot(long version, List<ValuedResult<R>> items) {
+        this(version, items, null, null, null);
+    }
+
+    /**
+     * Creates a snapshot whose indexes are derived from the ones of the previous snapshot when the changes
+     * in between are known. Only the previous indexes are kept, not the previous snapshot itself.
+     * When the snapshot is taken from a set with epsilon-dominance, its epsilons have to be given, otherwise null.
+     */
+    ParetoSnapshot(long version, List<ValuedResult<R>> items, double[] epsilons,
+            ParetoSnapshot<R> previous, List<ParetoChange<R>> changesSincePrevious) {
+        this.version = version;
+        this.items = Collections.unmodifiableList(items);
+        this.epsilons = epsilons;
+        //when most of the front changed, creating the indexes anew is cheaper
+        final boolean canUpdate = previous != null && changesSincePrevious != null
+                && changesSincePrevious.size() < items.size();
+        this.previousIndexes = canUpdate ? previous.indexes : null;
+        this.changesSincePrevious = canUpdate ? changesSincePrevious : null;
+    }
+
+    public long getVersion() {
+        return this.version;
+    }
+
+    /**
+     * Returns the items in this snapshot. The returned list must not be modified.
+     */
+    public List<ValuedResult<R>> getItems() {
+        return this.items;
+    }
+
+    public int size() {
+        return this.items.size();
+    }
+
+    public boolean isEmpty() {
+        return this.items.isEmpty();
+    }
+
+    /**
+     * Returns true iff the given item is in the snapshot or would be added to it, i.e. if it is not dominated
+     * by one of the items. For a set with epsilon-dominance, the item has to be accepted by its box rules.
+     */
+    public boolean isNondominated(ValuedResult<R> item) {
+        if (this.epsilons != null) {
+            return NondominatedResults.isEpsilonNondominated(this.epsilons, this.items, item);
+        }
+        for (final ValuedResult<R> cur : this.items) {
+            if (cur.dominates(item)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public ValuedResult<R> getRandomItem(Random random) {
+        return Util.randomItem(random, this.items);
+    }
+
+    public ValuedResult<R> getBestItem(Random random, TargetFunction functionToMinimize) {
+        return this.getIndex(functionToMinimize).getBestItem(random);
+    }
+
+    /**
+     * Returns the items sorted by the given target function. The index is created on first use.
+     */
+    public TargetIndex<R> getIndex(TargetFunction target) {
+        TargetIndex<R> index = this.indexes.get(target);
+        if (index == null) {
+            index = this.indexes.computeIfAbsent(target, this::createIndex);
+        }
+        return index;
+    }
+
+    private TargetIndex<R> createIndex(TargetFunction target) {
+        final TargetIndex<R> previous = this.previousIndexes == null ? null : this.previousIndexes.get(target);
+        if (previous != null) {
+            return previous.update(this.changesSincePrevious);
+        }
+        return TargetIndex.create(this.items, target);
+    }
+
+    @Override
+    public String toString() {
+        return "v" + this.version + " " + this.items;
+    }
+
+}
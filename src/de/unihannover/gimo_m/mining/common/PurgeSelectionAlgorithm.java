@@ -39,14 +39,14 @@ public class PurgeSelectionAlgorithm {
 	 * Furthermore, the rules are clustered based on the records matched by them, to keep the variety of rules up.
 	 */
 	static Set<ValuedResult<RuleSet>> determineRulesToKeep(
-			NondominatedResults<RuleSet> paretoFront,
+			ParetoSnapshot<RuleSet> paretoFront,
 			NavigationLimits navigationLimits,
 			int countToKeep,
 			List<TargetFunction> targetFunctions,
 			List<Record> records,
 			Random random) {
 
-		final NondominatedResults<RuleSet> inLimits = navigationLimits.filter(paretoFront);
+		final ParetoSnapshot<RuleSet> inLimits = navigationLimits.filter(paretoFront);
 		final Set<ValuedResult<RuleSet>> toKeep = new LinkedHashSet<>();
 		for (final TargetFunction f : targetFunctions) {
 			toKeep.add(inLimits.getBestItem(random, f));
@@ -56,7 +56,7 @@ public class PurgeSelectionAlgorithm {
 			return toKeep;
 		}
 
-		if (inLimits.getItems().size() <= countToKeep) {
+		if (inLimits.size() <= countToKeep) {
 			toKeep.addAll(inLimits.getItems());
 			toKeep.addAll(getOneRulePerCluster(countToKeep - toKeep.size(), paretoFront.getItems(), records, random));
 		} else {
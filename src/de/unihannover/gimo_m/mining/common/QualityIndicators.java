@@ -0,0 +1,223 @@
+/**
+ * Copyright 2019 Tobias Baum
+ *
+ * This file is part of GIMO-m.
+ *
+ * GIMO-m is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * GIMO-m is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ */
+package de.unihannover.gimo_m.mining.common;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+/**
+ * Indicators for the quality of the Pareto front, sampled over time to see how fast the search converges.
+ *
+ * <p>The hypervolume is estimated with a fixed set of random points in the box between zero and the reference point.
+ * For each of these points, the number of front entries dominating it is kept, so that adding and removing entries
+ * only needs to look at the changed entries and not at the whole front.
+ */
+public class QualityIndicators {
+
+    /**
+     * The indicator values at a certain point in time.
+     */
+    public static final class Sample {
+        private final long time;
+        private final long version;
+        private final int paretoSize;
+        private final double hypervolume;
+        private final double improvementsPerMinute;
+        private final Map<String, Double> bestValues;
+
+        private Sample(long time, long version, int paretoSize, double hypervolume,
+                double improvementsPerMinute, Map<String, Double> bestValues) {
+            this.time = time;
+            this.version = version;
+            this.paretoSize = paretoSize;
+            this.hypervolume = hypervolume;
+            this.improvementsPerMinute = improvementsPerMinute;
+            this.bestValues = Collections.unmodifiableMap(bestValues);
+        }
+
+        public long getTime() {
+            return this.time;
+        }
+
+        public long getVersion() {
+            return this.version;
+        }
+
+        public int getParetoSize() {
+            return this.paretoSize;
+        }
+
+        /**
+         * Returns the estimated share of the box between zero and the reference point that is dominated by the front.
+         */
+        public double getHypervolume() {
+            return this.hypervolume;
+        }
+
+        public double getImprovementsPerMinute() {
+            return this.improvementsPerMinute;
+        }
+
+        public Map<String, Double> getBestValues() {
+            return this.bestValues;
+        }
+    }
+
+    /**
+     * Wrapper for a value vector, to be able to use it in hash sets.
+     */
+    private static final class ValueVector {
+        private final double[] values;
+
+        public ValueVector(double[] values) {
+            this.values = values;
+        }
+
+        @Override
+        public int hashCode() {
+            return Arrays.hashCode(this.values);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof ValueVector && Arrays.equals(this.values, ((ValueVector) o).values);
+        }
+    }
+
+    private static final int SAMPLE_POINT_COUNT = 10_000;
+    private static final int MAX_TIME_SERIES_LENGTH = 2_000;
+
+    private final List<TargetFunction> targetFunctions;
+    private final double[][] samplePoints;
+    private final int[] dominatorCounts;
+    private int dominatedSampleCount;
+    private Set<ValueVector> currentVectors = new HashSet<>();
+
+    private long lastImprovementCount;
+    private long lastSampleTime;
+    private final Deque<Sample> timeSeries = new ArrayDeque<>();
+
+    public QualityIndicators(double[] referencePoint, List<TargetFunction> targetFunctions, long seed) {
+        this.targetFunctions = targetFunctions;
+        final Random random = new Random(seed);
+        this.samplePoints = new double[SAMPLE_POINT_COUNT][];
+        for (int i = 0; i < SAMPLE_POINT_COUNT; i++) {
+            final double[] p = new double[referencePoint.length];
+            for (int j = 0; j < p.length; j++) {
+                p[j] = random.nextDouble() * referencePoint[j];
+            }
+            this.samplePoints[i] = p;
+        }
+        this.dominatorCounts = new int[SAMPLE_POINT_COUNT];
+    }
+
+    /**
+     * Updates the indicators for the given state of the front and adds a sample to the time series.
+     * @param improvementCount The total number of successful additions to the front so far.
+     */
+    public synchronized Sample update(ParetoSnapshot<?> snapshot, long improvementCount, long now) {
+        this.updateHypervolume(snapshot);
+
+        final Map<String, Double> bestValues = new LinkedHashMap<>();
+        for (final TargetFunction f : this.targetFunctions) {
+            bestValues.put(f.getId(), snapshot.getIndex(f).getMin());
+        }
+
+        final double minutes = (now - this.lastSampleTime) / 60_000.0;
+        final double improvementsPerMinute = this.lastSampleTime == 0 || minutes <= 0.0
+                ? 0.0 : (improvementCount - this.lastImprovementCount) / minutes;
+        this.lastSampleTime = now;
+        this.lastImprovementCount = improvementCount;
+
+        final Sample sample = new Sample(now, snapshot.getVersion(), snapshot.size(),
+                ((double) this.dominatedSampleCount) / SAMPLE_POINT_COUNT, improvementsPerMinute, bestValues);
+        this.timeSeries.addLast(sample);
+        if (this.timeSeries.size() > MAX_TIME_SERIES_LENGTH) {
+            this.timeSeries.removeFirst();
+        }
+        return sample;
+    }
+
+    private void updateHypervolume(ParetoSnapshot<?> snapshot) {
+        final Set<ValueVector> newVectors = new HashSet<>();
+        for (final ValuedResult<?> v : snapshot.getItems()) {
+            newVectors.add(new ValueVector(v.getAllValues()));
+        }
+
+        final List<ValueVector> removed = new ArrayList<>();
+        for (final ValueVector v : this.currentVectors) {
+            if (!newVectors.contains(v)) {
+                removed.add(v);
+            }
+        }
+        if (removed.size() > newVectors.size()) {
+            //after a purge or data change, starting from scratch is cheaper
+            Arrays.fill(this.dominatorCounts, 0);
+            this.dominatedSampleCount = 0;
+            this.currentVectors = new HashSet<>();
+        } else {
+            for (final ValueVector v : removed) {
+                this.changeDominatorCounts(v.values, -1);
+            }
+        }
+        for (final ValueVector v : newVectors) {
+            if (!this.currentVectors.contains(v)) {
+                this.changeDominatorCounts(v.values, 1);
+            }
+        }
+        this.currentVectors = newVectors;
+    }
+
+    private void changeDominatorCounts(double[] vector, int delta) {
+        for (int i = 0; i < SAMPLE_POINT_COUNT; i++) {
+            if (weaklyDominates(vector, this.samplePoints[i])) {
+                final int oldCount = this.dominatorCounts[i];
+                this.dominatorCounts[i] = oldCount + delta;
+                if (oldCount == 0) {
+                    this.dominatedSampleCount++;
+                } else if (oldCount + delta == 0) {
+                    this.dominatedSampleCount--;
+                }
+            }
+        }
+    }
+
+    private static boolean weaklyDominates(double[] vector, double[] point) {
+        for (int i = 0; i < vector.length; i++) {
+            if (vector[i] > point[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns the samples taken so far (or the latest ones, if there were too many), oldest first.
+     */
+    public synchronized List<Sample> getTimeSeries() {
+        return new ArrayList<>(this.timeSeries);
+    }
+
+}
@@ -19,8 +19,10 @@ import java.io.BufferedReader;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStreamReader;
+import java.io.Writer;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.BitSet;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
@@ -30,6 +32,7 @@ import java.util.Random;
 import java.util.Set;
 import java.util.TreeMap;
 import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.function.Predicate;
 import java.util.function.ToDoubleBiFunction;
 
@@ -40,12 +43,22 @@ public final class RecordSet {
 
     private static final String NA = "?";
 
+    private static final int COVERAGE_CACHE_BITS = 1 << 28;
+    private static final int MIN_CACHED_COVERAGES = 64;
+
 	private final RecordScheme scheme;
     private final Record[] records;
 
     private final double[][] numericSplitValues;
+    private final double[][] distinctNumericValues;
+    private final double[][] splitPointsBetweenDistinctValues;
+    private final int[][] valueRanks;
+    private final int[][] rowsSortedByValue;
     private final String[][] stringValues;
 
+    private final int maxCachedCoverages;
+    private final ConcurrentHashMap<Rule, BitSet> coverageCache = new ConcurrentHashMap<>();
+
     public RecordSet(RecordScheme scheme, Record[] records) {
         this.scheme = scheme;
         this.records = records;
@@ -53,6 +66,32 @@ public final class RecordSet {
         for (int numericColumnIndex = 0; numericColumnIndex < scheme.getNumericColumnCount(); numericColumnIndex++) {
             this.numericSplitValues[numericColumnIndex] = this.determineNumericSplitValues(numericColumnIndex);
         }
+        this.distinctNumericValues = new double[scheme.getNumericColumnCount()][];
+        this.splitPointsBetweenDistinctValues = new double[scheme.getNumericColumnCount()][];
+        for (int numericColumnIndex = 0; numericColumnIndex < scheme.getNumericColumnCount(); numericColumnIndex++) {
+            final double[] distinct = this.determineDistinctValues(numericColumnIndex);
+            this.distinctNumericValues[numericColumnIndex] = distinct;
+            final double[] splits = new double[Math.max(0, distinct.length - 1)];
+            for (int i = 0; i < splits.length; i++) {
+                splits[i] = Util.determineSplitPointWithFewDigits(distinct[i], distinct[i + 1]);
+            }
+            this.splitPointsBetweenDistinctValues[numericColumnIndex] = splits;
+        }
+        this.valueRanks = new int[scheme.getNumericColumnCount()][];
+        for (int numericColumnIndex = 0; numericColumnIndex < scheme.getNumericColumnCount(); numericColumnIndex++) {
+            final int[] ranks = new int[records.length];
+            for (int row = 0; row < records.length; row++) {
+                final double val = records[row].getValueDbl(numericColumnIndex);
+                ranks[row] = Double.isNaN(val) ? -1 : this.getValueRank(numericColumnIndex, val);
+            }
+            this.valueRanks[numericColumnIndex] = ranks;
+        }
+        this.rowsSortedByValue = new int[scheme.getNumericColumnCount()][];
+        for (int numericColumnIndex = 0; numericColumnIndex < scheme.getNumericColumnCount(); numericColumnIndex++) {
+            this.rowsSortedByValue[numericColumnIndex] = this.sortRowsByRank(
+                    this.valueRanks[numericColumnIndex], this.distinctNumericValues[numericColumnIndex].length);
+        }
+        this.maxCachedCoverages = Math.max(MIN_CACHED_COVERAGES, COVERAGE_CACHE_BITS / Math.max(1, records.length));
         this.stringValues = new String[scheme.getStringColumnCount()][];
         for (int stringColumnIndex = 0; stringColumnIndex < scheme.getStringColumnCount(); stringColumnIndex++) {
             this.stringValues[stringColumnIndex] = this.extractStringValues(stringColumnIndex);
@@ -92,6 +131,47 @@ public final class RecordSet {
         return Record.toArray(splitValues);
     }
 
+    private double[] determineDistinctValues(int columnIndex) {
+        final double[] values = new double[this.records.length];
+        int count = 0;
+        for (final Record r : this.records) {
+            final double val = r.getValueDbl(columnIndex);
+            if (!Double.isNaN(val)) {
+                values[count++] = val;
+            }
+        }
+        Arrays.sort(values, 0, count);
+        int distinctCount = 0;
+        for (int i = 0; i < count; i++) {
+            if (distinctCount == 0 || Double.compare(values[distinctCount - 1], values[i]) != 0) {
+                values[distinctCount++] = values[i];
+            }
+        }
+        return Arrays.copyOf(values, distinctCount);
+    }
+
+    /**
+     * Counting sort of the rows by rank. Rows with a missing value are left out.
+     */
+    private int[] sortRowsByRank(int[] ranks, int rankCount) {
+        final int[] starts = new int[rankCount + 1];
+        for (final int rank : ranks) {
+            if (rank >= 0) {
+                starts[rank + 1]++;
+            }
+        }
+        for (int i = 0; i < rankCount; i++) {
+            starts[i + 1] += starts[i];
+        }
+        final int[] ret = new int[starts[rankCount]];
+        for (int row = 0; row < ranks.length; row++) {
+            if (ranks[row] >= 0) {
+                ret[starts[ranks[row]]++] = row;
+            }
+        }
+        return ret;
+    }
+
     private String[] extractStringValues(int columnIndex) {
         final Set<String> values = new TreeSet<>();
         for (final Record r : this.records) {
@@ -140,6 +220,173 @@ public final class RecordSet {
         }
     }
 
+    /**
+     * Returns the smallest split point that is larger than the given value (or equal to it, if orEqual is set),
+     * or NaN if there is none.
+     */
+    public double getFirstSplitPointAbove(int numericColumnIndex, double value, boolean orEqual) {
+        final double[] vals = this.numericSplitValues[numericColumnIndex];
+        final int i = Arrays.binarySearch(vals, value);
+        final int index;
+        if (i >= 0) {
+            index = orEqual ? i : i + 1;
+        } else {
+            index = -(i + 1);
+        }
+        return index < vals.length ? vals[index] : Double.NaN;
+    }
+
+    /**
+     * Returns the largest split point that is smaller than the given value (or equal to it, if orEqual is set),
+     * or NaN if there is none.
+     */
+    public double getFirstSplitPointBelow(int numericColumnIndex, double value, boolean orEqual) {
+        final double[] vals = this.numericSplitValues[numericColumnIndex];
+        final int i = Arrays.binarySearch(vals, value);
+        final int index;
+        if (i >= 0) {
+            index = orEqual ? i : i - 1;
+        } else {
+            index = -(i + 1) - 1;
+        }
+        return index >= 0 ? vals[index] : Double.NaN;
+    }
+
+    /**
+     * Returns the nearest split point (towards larger or smaller values) for the given rule that changes the rows
+     * it covers among the given ones, or NaN if there is none.
+     * Moving the split point changes the covered rows when it passes the value of one of the given rows, so the
+     * closest such row is searched in the column's sort order.
+     */
+    public double findSplitPointWhereCoverageChanges(OrdinalRule rule, BitSet consideredRows, boolean towardsLarger) {
+        final int numericColumn = this.scheme.toNumericIndex(rule.getColumn());
+        final int[] sortedRows = this.rowsSortedByValue[numericColumn];
+        final boolean isLeq = rule instanceof Leq;
+        final int firstAbove = this.firstIndexWithValueAbove(sortedRows, numericColumn, rule.getValue(), !isLeq);
+
+        if (towardsLarger) {
+            //Leq: records with a value above the split point get included, Geq: records with the split point value get excluded
+            int i = firstAbove;
+            while (i < sortedRows.length && !consideredRows.get(sortedRows[i])) {
+                i++;
+            }
+            if (i >= sortedRows.length) {
+                return Double.NaN;
+            }
+            return this.getFirstSplitPointAbove(numericColumn, this.valueOf(sortedRows[i], numericColumn), isLeq);
+        } else {
+            //Leq: records with the split point value get excluded, Geq: records with a value below the split point get included
+            int i = firstAbove - 1;
+            while (i >= 0 && !consideredRows.get(sortedRows[i])) {
+                i--;
+            }
+            if (i < 0) {
+                return Double.NaN;
+            }
+            return this.getFirstSplitPointBelow(numericColumn, this.valueOf(sortedRows[i], numericColumn), !isLeq);
+        }
+    }
+
+    private double valueOf(int row, int numericColumn) {
+        return this.records[row].getValueDbl(numericColumn);
+    }
+
+    /**
+     * Returns the first index in the sorted rows with a value larger than (or equal to, if orEqual is set) the given one.
+     */
+    private int firstIndexWithValueAbove(int[] sortedRows, int numericColumn, double value, boolean orEqual) {
+        int low = 0;
+        int high = sortedRows.length;
+        while (low < high) {
+            final int mid = (low + high) >>> 1;
+            final double midValue = this.valueOf(sortedRows[mid], numericColumn);
+            if (midValue < value || (!orEqual && midValue == value)) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Returns the rows with a value in the given numeric column, sorted ascending by that value.
+     * The returned array must not be modified.
+     */
+    public int[] getRowsSortedByValue(int numericColumnIndex) {
+        return this.rowsSortedByValue[numericColumnIndex];
+    }
+
+    /**
+     * Returns the rank of the given value among the distinct (non-NaN) values in the given numeric column,
+     * starting from zero for the smallest value. The value must occur in the column.
+     */
+    public int getValueRank(int numericColumnIndex, double value) {
+        final int rank = Arrays.binarySearch(this.distinctNumericValues[numericColumnIndex], value);
+        assert rank >= 0 : "value " + value + " not contained in column " + numericColumnIndex;
+        return rank;
+    }
+
+    /**
+     * Returns the rank of the value in the given row and numeric column (see {@link #getValueRank}),
+     * or -1 if the value is missing.
+     */
+    public int getValueRankOfRow(int numericColumnIndex, int row) {
+        return this.valueRanks[numericColumnIndex][row];
+    }
+
+    /**
+     * Returns a split point with few digits between the distinct value with the given rank and the next smaller one.
+     */
+    public double getSplitPointBelowRank(int numericColumnIndex, int rank) {
+        return this.splitPointsBetweenDistinctValues[numericColumnIndex][rank - 1];
+    }
+
+    /**
+     * Returns the set of rows (indexes into {@link #getRecords()}) that satisfy the given rule.
+     * The coverage of simple rules is cached, the coverage of composite rules is combined from the coverage of
+     * their children. The returned set must not be modified.
+     */
+    public BitSet getCoverage(Rule rule) {
+        if (rule instanceof And) {
+            final BitSet ret = new BitSet(this.records.length);
+            ret.set(0, this.records.length);
+            for (final Rule child : ((And) rule).getChildren()) {
+                ret.and(this.getCoverage(child));
+            }
+            return ret;
+        } else if (rule instanceof Or) {
+            final BitSet ret = new BitSet(this.records.length);
+            for (final Rule child : ((Or) rule).getChildren()) {
+                ret.or(this.getCoverage(child));
+            }
+            return ret;
+        } else if (rule instanceof SimpleRule) {
+            final BitSet cached = this.coverageCache.get(rule);
+            if (cached != null) {
+                return cached;
+            }
+            final BitSet coverage = this.determineCoverage(rule);
+            if (this.coverageCache.size() >= this.maxCachedCoverages) {
+                this.coverageCache.clear();
+            }
+            this.coverageCache.put(rule, coverage);
+            return coverage;
+        } else {
+            return this.determineCoverage(rule);
+        }
+    }
+
+    private BitSet determineCoverage(Rule rule) {
+        final BitSet ret = new BitSet(this.records.length);
+        for (int row = 0; row < this.records.length; row++) {
+            if (rule.test(this.records[row])) {
+                ret.set(row);
+            }
+        }
+        return ret;
+    }
+
     private boolean isNumeric(int absoluteColumnIndex) {
         return this.scheme.isNumeric(absoluteColumnIndex);
     }
@@ -193,6 +440,37 @@ public final class RecordSet {
 		return new BufferedReader(new InputStreamReader(new FileInputStream(filename), "UTF-8"));
 	}
 
+    /**
+     * Writes the records in the format read by {@link #loadCsv(String)}, leaving out the given columns.
+     */
+    public void writeCsv(Writer w, Set<String> excludedColumns) throws IOException {
+        for (int i = 0; i < this.scheme.getAllColumnCount(); i++) {
+            final String name = this.scheme.getName(i);
+            if (!excludedColumns.contains(name)) {
+                w.write(name + ";");
+            }
+        }
+        w.write(CLASSIFICATION_COLUMN_NAME + "\n");
+
+        for (final Record r : this.records) {
+            for (int i = 0; i < this.scheme.getAllColumnCount(); i++) {
+                final String name = this.scheme.getName(i);
+                if (!excludedColumns.contains(name)) {
+                    final String val;
+                    if (this.scheme.isNumeric(i)) {
+                        final double d = r.getValueDbl(this.scheme.toNumericIndex(i));
+                        val = Double.isNaN(d) ? NA : Double.toString(d);
+                    } else {
+                        final String s = r.getValueStr(this.scheme.toStringIndex(i));
+                        val = s == null ? NA : s;
+                    }
+                    w.write(val + ";");
+                }
+            }
+            w.write(r.getCorrectClass() + "\n");
+        }
+    }
+
     private static String parseStr(String string) {
         return string.equals(NA) ? null : string.intern();
     }
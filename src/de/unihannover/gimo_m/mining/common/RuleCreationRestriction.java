@@ -15,24 +15,90 @@
  */
 package de.unihannover.gimo_m.mining.common;
 
-import java.util.Set;
-
+/**
+ * Determines which conditions must not be added to a rule under construction, because the rule would then
+ * match a rejected pattern that can not be made valid by adding more conditions.
+ *
+ * <p>The state is updated incrementally with {@link #addCondition(SimpleRule)} while the rule grows. The checks
+ * are simple array lookups and do not allocate. An instance is not meant to be modified concurrently.
+ */
 public class RuleCreationRestriction {
 
-	private final Set<SimpleRulePattern> invalidPatterns;
-	private final Set<Rule> invalidRules;
+	private final CreationRestrictionIndex index;
+	private final int[] missingCounts;
+	private final boolean[] matchedSlots;
+	private final int[] lastMatchingStep;
+	private final int[] forbiddenConditionCounts;
+	private final int[] forbiddenKeyCounts;
+	private int step;
+
+	RuleCreationRestriction(CreationRestrictionIndex index) {
+		this.index = index;
+		this.missingCounts = new int[index.patternCount];
+		this.matchedSlots = new boolean[index.patternOfSlot.length];
+		this.lastMatchingStep = new int[index.patternCount];
+		this.forbiddenConditionCounts = new int[index.conditionIds.size()];
+		this.forbiddenKeyCounts = new int[index.keyCount];
+		for (int p = 0; p < index.patternCount; p++) {
+			this.missingCounts[p] = index.patternStart[p + 1] - index.patternStart[p];
+			if (this.missingCounts[p] == 1) {
+				this.changeForbidden(index.patternStart[p], 1);
+			}
+		}
+	}
+
+	/**
+	 * Updates the restrictions after the given condition has been added to the rule.
+	 */
+	public void addCondition(SimpleRule condition) {
+		this.step++;
+		for (final int slot : this.index.getSlotsForCondition(condition)) {
+			this.match(slot);
+		}
+		for (final int slot : this.index.getSlotsForKey(CreationRestrictionIndex.key(condition.getColumn(), condition.getClass()))) {
+			this.match(slot);
+		}
+	}
+
+	private void match(int slot) {
+		final int p = this.index.patternOfSlot[slot];
+		if (this.matchedSlots[slot] || this.lastMatchingStep[p] == this.step) {
+			//every condition of the rule can only satisfy one part of a pattern
+			return;
+		}
+		this.matchedSlots[slot] = true;
+		this.lastMatchingStep[p] = this.step;
+		final int missing = --this.missingCounts[p];
+		if (missing == 0) {
+			//this slot was the missing one, the pattern now matches and will be handled by the validation
+			this.changeForbidden(slot, -1);
+		} else if (missing == 1) {
+			for (int s = this.index.patternStart[p]; s < this.index.patternStart[p + 1]; s++) {
+				if (!this.matchedSlots[s]) {
+					this.changeForbidden(s, 1);
+					break;
+				}
+			}
+		}
+	}
 
-	public RuleCreationRestriction(Set<SimpleRulePattern> invalidPatterns, Set<Rule> invalidRules) {
-		this.invalidPatterns = invalidPatterns;
-		this.invalidRules = invalidRules;
+	private void changeForbidden(int slot, int delta) {
+		final int condition = this.index.conditionOfSlot[slot];
+		if (condition >= 0) {
+			this.forbiddenConditionCounts[condition] += delta;
+		} else {
+			this.forbiddenKeyCounts[this.index.keyOfSlot[slot]] += delta;
+		}
 	}
 
 	public boolean canBeValid(int columnIndex, Class<? extends SimpleRule> ruleType) {
-		return !this.invalidPatterns.contains(new SimpleRulePattern(null, columnIndex, ruleType));
+		final int key = CreationRestrictionIndex.key(columnIndex, ruleType);
+		return key < 0 || key >= this.forbiddenKeyCounts.length || this.forbiddenKeyCounts[key] == 0;
 	}
 
 	public boolean canBeValid(SimpleRule rule) {
-		return !this.invalidRules.contains(rule)
+		final Integer id = this.index.conditionIds.get(rule);
+		return (id == null || this.forbiddenConditionCounts[id] == 0)
 			&& this.canBeValid(rule.getColumn(), rule.getClass());
 	}
 
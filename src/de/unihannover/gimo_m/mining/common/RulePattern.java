@@ -17,7 +17,6 @@ package de.unihannover.gimo_m.mining.common;
 
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Collection;
 import java.util.Collections;
 import java.util.HashSet;
 import java.util.Iterator;
@@ -65,6 +64,18 @@ public class RulePattern {
 		return false;
 	}
 
+	List<Rule> getFullyQualified() {
+		return this.fullyQualified;
+	}
+
+	List<SimpleRulePattern> getValueWildcards() {
+		return this.valueWildcards;
+	}
+
+	boolean hasOtherConditionWildcard() {
+		return this.otherConditionWildcard;
+	}
+
 	public static RulePattern createExact(And and) {
 		return new RulePattern(Arrays.asList(and.getChildren()), Collections.emptyList(), false);
 	}
@@ -148,46 +159,4 @@ public class RulePattern {
 		return ret.toString();
 	}
 
-	public void findCompletionToInvalid(
-			And priorRule, Collection<Rule> ruleBuffer, Collection<SimpleRulePattern> patternBuffer) {
-		if (!this.otherConditionWildcard) {
-			//when there is no wildcard in the pattern, it is always possible to make the
-			//  rule valid again by adding more conditions
-			return;
-		}
-
-		final Set<Rule> notMatched = new HashSet<>(Arrays.asList(priorRule.getChildren()));
-		int missingCount = 0;
-		Rule missingRule = null;
-		for (final Rule r : this.fullyQualified) {
-			final boolean couldRemove = notMatched.remove(r);
-			if (!couldRemove) {
-				missingCount++;
-				if (missingCount > 1) {
-					return;
-				}
-				missingRule = r;
-			}
-		}
-		SimpleRulePattern missingPattern = null;
-		for (final SimpleRulePattern p : this.valueWildcards) {
-			final boolean foundMatch = this.removeMatching(notMatched, p);
-			if (!foundMatch) {
-				missingCount++;
-				if (missingCount > 1) {
-					return;
-				}
-				missingPattern = p;
-			}
-		}
-
-		if (missingCount == 1) {
-			if (missingPattern != null) {
-				patternBuffer.add(missingPattern);
-			} else {
-				ruleBuffer.add(missingRule);
-			}
-		}
-	}
-
 }
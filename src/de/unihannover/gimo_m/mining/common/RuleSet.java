@@ -39,6 +39,12 @@ public class RuleSet extends ItemWithComplexity implements Function<Record, Stri
     private final Or[] exceptionConditions;
     private final int hash;
 
+    /**
+     * The restrictions that this rule set is known to satisfy. Not part of the rule set's identity,
+     * only used to avoid validating the same rule set again and again.
+     */
+    private volatile CompiledRestrictions validatedBy;
+
     private RuleSet(final String defaultValue, final Or[] exceptionConditions, final String[] exceptionValues) {
         this.defaultValue = defaultValue;
         this.exceptionConditions = exceptionConditions;
@@ -388,6 +394,14 @@ public class RuleSet extends ItemWithComplexity implements Function<Record, Stri
     }
 
 
+    boolean isValidatedBy(final CompiledRestrictions restrictions) {
+        return this.validatedBy == restrictions;
+    }
+
+    void markValidatedBy(final CompiledRestrictions restrictions) {
+        this.validatedBy = restrictions;
+    }
+
     public String getDefault() {
         return this.defaultValue;
     }
@@ -32,6 +32,14 @@ public class SimpleRulePattern {
 			&& cur.getClass().equals(this.ruleType);
 	}
 
+	int getColumn() {
+		return this.absIndex;
+	}
+
+	Class<? extends SimpleRule> getRuleType() {
+		return this.ruleType;
+	}
+
 	@Override
 	public int hashCode() {
 		return this.absIndex + this.ruleType.hashCode();
@@ -0,0 +1,261 @@
+/**
+ * Copyright 2019 Tobias Baum
+ *
+ * This file is part of GIMO-m.
+ *
+ * GIMO-m is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * GIMO-m is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ */
+package de.unihannover.gimo_m.mining.common;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import de.unihannover.gimo_m.util.Util;
+
+/**
+ * The items of a {@link ParetoSnapshot}, sorted by the value of one target function.
+ * The value of each item is computed only once, queries for the best items, the value range and neighbors
+ * are answered by binary search. Items with the same value keep the snapshot's (lexicographic) order.
+ */
+public final class TargetIndex<R> {
+
+    private final TargetFunction target;
+    private final List<ValuedResult<R>> sortedItems;
+    private final double[] values;
+
+    private TargetIndex(TargetFunction target, List<ValuedResult<R>> sortedItems, double[] values) {
+        this.target = target;
+        this.sortedItems = Collections.unmodifiableList(sortedItems);
+        this.values = values;
+    }
+
+    /**
+     * Creates the index for the given items, which have to be in the snapshot's order.
+     */
+    static<R> TargetIndex<R> create(List<ValuedResult<R>> items, TargetFunction target) {
+        final int size = items.size();
+        final double[] unsortedValues = new double[size];
+        for (int i = 0; i < size; i++) {
+            unsortedValues[i] = target.applyAsDouble(items.get(i));
+        }
+        final double[] sortedValues = unsortedValues.clone();
+        Arrays.sort(sortedValues);
+        //place each item after the ones with the same value that came before it, so that the order is stable
+        final ValuedResult<R>[] sorted = newArray(size);
+        final int[] nextFree = new int[size];
+        for (int i = 0; i < size; i++) {
+            final int first = firstIndexNotSmaller(sortedValues, size, unsortedValues[i]);
+            sorted[first + nextFree[first]++] = items.get(i);
+        }
+        return new TargetIndex<>(target, Arrays.asList(sorted), sortedValues);
+    }
+
+    /**
+     * Returns the index for the snapshot that results from applying the given changes to this index's snapshot.
+     * Only the changed items are evaluated and sorted, the rest is merged in linear time.
+     */
+    TargetIndex<R> update(List<ParetoChange<R>> changes) {
+        //an item that is removed and added again is moved to its new position
+        final Set<ValuedResult<R>> added = new LinkedHashSet<>();
+        final List<ValuedResult<R>> removed = new ArrayList<>();
+        for (final ParetoChange<R> change : changes) {
+            if (change.getType() == ParetoChange.Type.ADDED) {
+                added.add(change.getItem());
+            } else if (!added.remove(change.getItem())) {
+                removed.add(change.getItem());
+            }
+        }
+
+        final boolean[] isRemoved = new boolean[this.values.length];
+        int removedCount = 0;
+        for (final ValuedResult<R> item : removed) {
+            final double value = this.target.applyAsDouble(item);
+            int i = firstIndexNotSmaller(this.values, this.values.length, value);
+            while (i < this.values.length && Double.compare(this.values[i], value) == 0
+                    && (isRemoved[i] || !this.sortedItems.get(i).equals(item))) {
+                i++;
+            }
+            if (i < this.values.length && Double.compare(this.values[i], value) == 0) {
+                isRemoved[i] = true;
+                removedCount++;
+            }
+        }
+        //the added items are brought into the snapshot's order first, the sort is stable for items with the same values
+        final List<ValuedResult<R>> addedItems = new ArrayList<>(added);
+        addedItems.sort(ValuedResult.LEXICOGRAPHIC_COMPARATOR);
+        final TargetIndex<R> addedIndex = create(addedItems, this.target);
+
+        final int size = this.values.length - removedCount + added.size();
+        final ValuedResult<R>[] merged = newArray(size);
+        final double[] mergedValues = new double[size];
+        int oldIndex = 0;
+        int addedIndexPos = 0;
+        int count = 0;
+        while (true) {
+            while (oldIndex < this.values.length && isRemoved[oldIndex]) {
+                oldIndex++;
+            }
+            final boolean hasOld = oldIndex < this.values.length;
+            final boolean hasAdded = addedIndexPos < addedIndex.values.length;
+            if (!hasOld && !hasAdded) {
+                break;
+            }
+            if (hasOld && (!hasAdded || this.comesBefore(oldIndex, addedIndex, addedIndexPos))) {
+                merged[count] = this.sortedItems.get(oldIndex);
+                mergedValues[count++] = this.values[oldIndex++];
+            } else {
+                merged[count] = addedIndex.sortedItems.get(addedIndexPos);
+                mergedValues[count++] = addedIndex.values[addedIndexPos++];
+            }
+        }
+        return new TargetIndex<>(this.target, Arrays.asList(merged), mergedValues);
+    }
+
+    /**
+     * Returns true iff the given old item comes before the given added item. For the same value, the snapshot's
+     * order is kept, i.e. the lexicographic order, and an added item comes after an old item with the same values.
+     */
+    private boolean comesBefore(int oldIndex, TargetIndex<R> addedIndex, int addedIndexPos) {
+        final int cmp = Double.compare(this.values[oldIndex], addedIndex.values[addedIndexPos]);
+        if (cmp != 0) {
+            return cmp < 0;
+        }
+        return ValuedResult.LEXICOGRAPHIC_COMPARATOR.compare(
+                this.sortedItems.get(oldIndex), addedIndex.sortedItems.get(addedIndexPos)) <= 0;
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private static<R> ValuedResult<R>[] newArray(int size) {
+        return new ValuedResult[size];
+    }
+
+    /**
+     * Returns the index of the first value that is not smaller than the given one, in the order of {@link Arrays#sort}.
+     */
+    private static int firstIndexNotSmaller(double[] sortedValues, int size, double value) {
+        int low = 0;
+        int high = size;
+        while (low < high) {
+            final int mid = (low + high) >>> 1;
+            if (Double.compare(sortedValues[mid], value) < 0) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    public double getMin() {
+        return this.values.length == 0 ? Double.POSITIVE_INFINITY : this.values[0];
+    }
+
+    public double getMax() {
+        return this.values.length == 0 ? Double.NEGATIVE_INFINITY : this.values[this.values.length - 1];
+    }
+
+    /**
+     * Returns all items with the minimal value.
+     */
+    public List<ValuedResult<R>> getBestItems() {
+        if (this.values.length == 0) {
+            return Collections.emptyList();
+        }
+        return this.sortedItems.subList(0, this.upperBound(this.values[0]));
+    }
+
+    public ValuedResult<R> getBestItem(Random random) {
+        return Util.randomItem(random, this.getBestItems());
+    }
+
+    /**
+     * Returns all items with a value that is not larger than the given limit, sorted by value.
+     */
+    public List<ValuedResult<R>> getItemsWithValueAtMost(double limit) {
+        return this.sortedItems.subList(0, this.upperBound(limit));
+    }
+
+    /**
+     * Returns the item with the next smaller value than the given one, or null if there is none.
+     * When there are several items with this value, the one closest to the given item is chosen.
+     */
+    public ValuedResult<R> getNextBetter(ValuedResult<?> cur) {
+        final int end = this.lowerBound(this.target.applyAsDouble(cur));
+        if (end == 0) {
+            return null;
+        }
+        return this.closestTo(cur, this.lowerBound(this.values[end - 1]), end);
+    }
+
+    /**
+     * Returns the item with the next larger value than the given one, or null if there is none.
+     * When there are several items with this value, the one closest to the given item is chosen.
+     */
+    public ValuedResult<R> getNextWorse(ValuedResult<?> cur) {
+        final int start = this.upperBound(this.target.applyAsDouble(cur));
+        if (start == this.values.length) {
+            return null;
+        }
+        return this.closestTo(cur, start, this.upperBound(this.values[start]));
+    }
+
+    private ValuedResult<R> closestTo(ValuedResult<?> cur, int start, int end) {
+        if (end - start == 1) {
+            return this.sortedItems.get(start);
+        }
+        //determine the pareto front of closest items
+        final NondominatedResults<ValuedResult<R>> closestFront = new NondominatedResults<>();
+        for (final ValuedResult<R> v : this.sortedItems.subList(start, end)) {
+            closestFront.add(v.distanceVectorTo(cur).copyWithNewItem(v));
+        }
+        return closestFront.getItems().get(0).getItem();
+    }
+
+    /**
+     * Returns the index of the first item with a value not smaller than the given one.
+     */
+    private int lowerBound(double value) {
+        int low = 0;
+        int high = this.values.length;
+        while (low < high) {
+            final int mid = (low + high) >>> 1;
+            if (this.values[mid] < value) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Returns the index of the first item with a value larger than the given one.
+     */
+    private int upperBound(double value) {
+        int low = 0;
+        int high = this.values.length;
+        while (low < high) {
+            final int mid = (low + high) >>> 1;
+            if (this.values[mid] <= value) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+}
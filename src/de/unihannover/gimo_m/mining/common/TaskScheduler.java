@@ -0,0 +1,278 @@
+/**
+ * Copyright 2019 Tobias Baum
+ *
+ * This file is part of GIMO-m.
+ *
+ * GIMO-m is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * GIMO-m is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ */
+package de.unihannover.gimo_m.mining.common;
+
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.Objects;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.LongSupplier;
+
+/**
+ * The queue of pending mining tasks, shared by all mining agents.
+ * Tasks are ordered by a "virtual deadline": the time they were scheduled plus a delay depending on the
+ * task type. Tasks fed by the user have no delay and are therefore preferred. Because the delay is fixed,
+ * tasks fed by agents age and are taken before newer user tasks once they have waited long enough.
+ * Scheduling a task that is already waiting has no effect.
+ * Work that was interrupted can be queued again as a continuation. Continuations are delayed further with
+ * every interruption, so that they cannot keep more urgent work waiting.
+ */
+public class TaskScheduler {
+
+    public enum TaskType {
+        USER_PATH_RELINKING(0, true),
+        USER_LOCAL_SEARCH(500, true),
+        AGENT_LOCAL_SEARCH(60_000, false),
+        AGENT_PATH_RELINKING(90_000, false),
+        /**
+         * Not queued, returned when there is nothing else to do.
+         */
+        EXPLORATION(Long.MAX_VALUE, false);
+
+        private final long delayMillis;
+        private final boolean userFed;
+
+        private TaskType(long delayMillis, boolean userFed) {
+            this.delayMillis = delayMillis;
+            this.userFed = userFed;
+        }
+
+        public boolean isUserFed() {
+            return this.userFed;
+        }
+    }
+
+    public static final class Task {
+        private final TaskType type;
+        private final ValuedResult<RuleSet> start;
+        private final ValuedResult<RuleSet> item;
+        private final int continuationCount;
+        private final long virtualDeadline;
+        private final long sequence;
+
+        private Task(TaskType type, ValuedResult<RuleSet> start, ValuedResult<RuleSet> item, int continuationCount,
+                long virtualDeadline, long sequence) {
+            this.type = type;
+            this.start = start;
+            this.item = item;
+            this.continuationCount = continuationCount;
+            this.virtualDeadline = virtualDeadline;
+            this.sequence = sequence;
+        }
+
+        public TaskType getType() {
+            return this.type;
+        }
+
+        /**
+         * Returns the position from which an interrupted path relinking towards the item shall be continued.
+         * Null for all other tasks.
+         */
+        public ValuedResult<RuleSet> getStart() {
+            return this.start;
+        }
+
+        public ValuedResult<RuleSet> getItem() {
+            return this.item;
+        }
+
+        /**
+         * Returns how often the work on this task has been interrupted and queued again.
+         */
+        public int getContinuationCount() {
+            return this.continuationCount;
+        }
+
+        private TaskKey getKey() {
+            return new TaskKey(this.type, this.start == null ? null : this.start.getItem(), this.item.getItem());
+        }
+
+        @Override
+        public String toString() {
+            return this.type + " " + this.item;
+        }
+    }
+
+    private static final class TaskKey {
+        private final TaskType type;
+        private final RuleSet start;
+        private final RuleSet ruleSet;
+
+        public TaskKey(TaskType type, RuleSet start, RuleSet ruleSet) {
+            this.type = type;
+            this.start = start;
+            this.ruleSet = ruleSet;
+        }
+
+        @Override
+        public int hashCode() {
+            return this.type.hashCode() + 31 * this.ruleSet.hashCode() + Objects.hashCode(this.start);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof TaskKey)) {
+                return false;
+            }
+            final TaskKey k = (TaskKey) o;
+            return this.type == k.type
+                && this.ruleSet.equals(k.ruleSet)
+                && Objects.equals(this.start, k.start);
+        }
+    }
+
+    /**
+     * Additional delay of a continuation per previous interruption.
+     */
+    private static final long CONTINUATION_DELAY_MILLIS = 10_000;
+
+    private static final Task EXPLORATION_TASK = new Task(TaskType.EXPLORATION, null, null, 0, Long.MAX_VALUE, 0);
+
+    private final LongSupplier clock;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition userWorkAdded = this.lock.newCondition();
+    private final PriorityQueue<Task> queue = new PriorityQueue<>(
+            Comparator.comparingLong((Task t) -> t.virtualDeadline).thenComparingLong((Task t) -> t.sequence));
+    private final Set<TaskKey> pending = new HashSet<>();
+    private long sequenceCounter;
+    private int userFedCount;
+
+    public TaskScheduler() {
+        this(System::currentTimeMillis);
+    }
+
+    /**
+     * Creates a scheduler that uses the given clock (in milliseconds) for the virtual deadlines.
+     */
+    TaskScheduler(LongSupplier clock) {
+        this.clock = clock;
+    }
+
+    /**
+     * Adds a task to the queue, unless an identical task is already waiting.
+     * @return true iff the task was added
+     */
+    public boolean schedule(TaskType type, ValuedResult<RuleSet> item) {
+        return this.schedule(type, null, item, 0);
+    }
+
+    /**
+     * Queues the remaining work of an interrupted task again, unless an identical task is already waiting.
+     * @param start For path relinking, the position from which to continue. Null otherwise.
+     * @param continuationCount The number of interruptions so far, including the current one.
+     * @return true iff the task was added
+     */
+    public boolean scheduleContinuation(
+            TaskType type, ValuedResult<RuleSet> start, ValuedResult<RuleSet> item, int continuationCount) {
+        return this.schedule(type, start, item, continuationCount);
+    }
+
+    private boolean schedule(
+            TaskType type, ValuedResult<RuleSet> start, ValuedResult<RuleSet> item, int continuationCount) {
+        if (type == TaskType.EXPLORATION) {
+            throw new IllegalArgumentException("exploration tasks are not queued");
+        }
+        if (item == null) {
+            return false;
+        }
+        this.lock.lock();
+        try {
+            final long delay = type.delayMillis + continuationCount * CONTINUATION_DELAY_MILLIS;
+            final Task task = new Task(type, start, item, continuationCount,
+                    this.clock.getAsLong() + delay, this.sequenceCounter++);
+            if (!this.pending.add(task.getKey())) {
+                return false;
+            }
+            this.queue.add(task);
+            if (type.isUserFed()) {
+                this.userFedCount++;
+                this.userWorkAdded.signalAll();
+            }
+            return true;
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    /**
+     * Returns the most urgent task. When there is no queued task, an exploration task is returned.
+     */
+    public Task takeTask() {
+        this.lock.lock();
+        try {
+            final Task task = this.queue.poll();
+            if (task == null) {
+                return EXPLORATION_TASK;
+            }
+            this.pending.remove(task.getKey());
+            if (task.type.isUserFed()) {
+                this.userFedCount--;
+            }
+            return task;
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    public boolean hasUserFedWork() {
+        this.lock.lock();
+        try {
+            return this.userFedCount > 0;
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    /**
+     * Waits for the given time, but returns early as soon as there is work fed by the user.
+     */
+    public void pauseUnlessUserFedWork(long millis) throws InterruptedException {
+        long remaining = TimeUnit.MILLISECONDS.toNanos(millis);
+        this.lock.lock();
+        try {
+            while (this.userFedCount == 0 && remaining > 0) {
+                remaining = this.userWorkAdded.awaitNanos(remaining);
+            }
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    public int size() {
+        this.lock.lock();
+        try {
+            return this.queue.size();
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    public void clear() {
+        this.lock.lock();
+        try {
+            this.queue.clear();
+            this.pending.clear();
+            this.userFedCount = 0;
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+}
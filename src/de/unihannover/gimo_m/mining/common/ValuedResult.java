@@ -105,7 +105,7 @@ public class ValuedResult<R> {
         return Arrays.equals(this.values, v.values);
     }
 
-    public ValuedResult<R> distanceVectorTo(ValuedResult<RuleSet> cur) {
+    public ValuedResult<R> distanceVectorTo(ValuedResult<?> cur) {
         final double[] dist = new double[this.values.length];
         for (int i = 0; i < dist.length; i++) {
             dist[i] = Math.abs(this.values[i] - cur.values[i]);
@@ -26,22 +26,27 @@ import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Map.Entry;
 import java.util.Objects;
 import java.util.Random;
 import java.util.Set;
-import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ThreadFactory;
 import java.util.function.Predicate;
-import java.util.stream.Collectors;
 
-import de.unihannover.gimo_m.mining.agents.MiningAgent;
+import org.eclipse.jetty.util.thread.QueuedThreadPool;
+
+import de.unihannover.gimo_m.mining.agents.AgentPool;
+import de.unihannover.gimo_m.mining.agents.OperatorSelector;
 import de.unihannover.gimo_m.mining.common.And;
 import de.unihannover.gimo_m.mining.common.Blackboard;
 import de.unihannover.gimo_m.mining.common.Blackboard.RecordsAndRemarks;
 import de.unihannover.gimo_m.mining.common.Blackboard.RuleRestrictions;
 import de.unihannover.gimo_m.mining.common.NavigationLimits;
-import de.unihannover.gimo_m.mining.common.NondominatedResults;
 import de.unihannover.gimo_m.mining.common.ObjectiveStrategy;
 import de.unihannover.gimo_m.mining.common.Or;
+import de.unihannover.gimo_m.mining.common.ParetoChange;
+import de.unihannover.gimo_m.mining.common.ParetoSnapshot;
+import de.unihannover.gimo_m.mining.common.QualityIndicators;
 import de.unihannover.gimo_m.mining.common.Record;
 import de.unihannover.gimo_m.mining.common.RecordScheme;
 import de.unihannover.gimo_m.mining.common.RecordSet;
@@ -55,20 +60,25 @@ import de.unihannover.gimo_m.mining.common.ValuedResult;
 import de.unihannover.gimo_m.objectives.StandardObjectiveStrategy;
 import de.unihannover.gimo_m.util.Multimap;
 import de.unihannover.gimo_m.util.Multiset;
+import de.unihannover.gimo_m.util.Util;
+import de.unihannover.gimo_m.util.VirtualThreads;
 import spark.ModelAndView;
 import spark.Request;
 import spark.Response;
 import spark.Spark;
+import spark.embeddedserver.EmbeddedServers;
+import spark.embeddedserver.jetty.EmbeddedJettyFactory;
 import spark.template.thymeleaf.ThymeleafTemplateEngine;
 
 public class GimoMServer {
 
     private static final File DEFAULT_SAVE_FILE = new File("ruleToolSession.txt");
+    private static final int MAX_VIRTUAL_REQUEST_THREADS = 1000;
 
     private static List<TargetFunction> targetFunctions;
 
     private static Blackboard blackboard;
-    private static List<MiningAgent> agents;
+    private static AgentPool agentPool;
 
     public static void main(String[] args) throws Exception {
     	if (args.length != 1) {
@@ -94,10 +104,36 @@ public class GimoMServer {
 
         System.out.println("Found " + resultData.getClassCount() + " classes: " + resultData.getAllClasses());
 
-        agents = new CopyOnWriteArrayList<>();
+        final int islandCount = Integer.getInteger("gimo.islands", 0);
+        if (islandCount > 0) {
+            System.out.println("Creating " + islandCount + " islands...");
+            for (int i = 0; i < islandCount; i++) {
+                blackboard.createIsland();
+            }
+        }
+
+        agentPool = new AgentPool(blackboard);
 
         System.out.println("Starting server...");
+        if (VirtualThreads.isEnabled()) {
+            //long running requests (purge, save, statistics) shall not block a scarce platform thread
+            System.out.println("Using virtual threads for agents and requests");
+            EmbeddedServers.add(EmbeddedServers.Identifiers.JETTY,
+                    new EmbeddedJettyFactory().withThreadPool(new VirtualThreadPool()));
+        }
         Spark.staticFileLocation("/public");
+        //let the agents yield while interactive requests are handled
+        Spark.before((Request req, Response res) -> {
+            if (!WorkerEndpoints.isWorkerRequest(req)) {
+                agentPool.beginInteractiveRequest();
+            }
+        });
+        Spark.afterAfter((Request req, Response res) -> {
+            if (!WorkerEndpoints.isWorkerRequest(req)) {
+                agentPool.endInteractiveRequest();
+            }
+        });
+        WorkerEndpoints.register(blackboard);
         Spark.get("/statusAndNav.html", GimoMServer::statusAndNavPage, new ThymeleafTemplateEngine());
         Spark.get("/curRule.html", GimoMServer::getCurRule);
         Spark.post("/goToRule.html", GimoMServer::goToRule);
@@ -105,6 +141,8 @@ public class GimoMServer {
         Spark.post("/evaluateRule.html", GimoMServer::evaluateRule);
         Spark.post("/startAgent.html", GimoMServer::startAgent);
         Spark.post("/stopAgent.html", GimoMServer::stopAgent);
+        Spark.post("/pauseAgents.html", GimoMServer::pauseAgents);
+        Spark.post("/resumeAgents.html", GimoMServer::resumeAgents);
         Spark.post("/saveResults.html", GimoMServer::saveResults);
         Spark.post("/purgeRules.html", GimoMServer::purgeRules);
         Spark.post("/statisticsForWholeDataset.html", GimoMServer::statisticsForWholeDataset, new ThymeleafTemplateEngine());
@@ -124,9 +162,30 @@ public class GimoMServer {
         Spark.post("/saveData.html", GimoMServer::saveData);
         Spark.post("/ruleStyling.json", GimoMServer::determineRuleStyling);
         Spark.post("/ruleSizes.json", GimoMServer::determineRuleSizes);
+        Spark.get("/indicators.json", GimoMServer::qualityIndicators);
+        Spark.get("/operators.json", GimoMServer::operatorStatistics);
+        Spark.get("/paretoChanges.json", GimoMServer::paretoChanges);
     }
 
-    private static Map<String, Integer> countPerClass(RecordSet records) {
+    /**
+     * Jetty's thread pool, but with virtual threads, so that there can be many of them.
+     */
+    private static final class VirtualThreadPool extends QueuedThreadPool {
+        private final ThreadFactory threadFactory = VirtualThreads.createThreadFactory("request-");
+
+        public VirtualThreadPool() {
+            super(MAX_VIRTUAL_REQUEST_THREADS);
+            //virtual threads are always daemon threads, Jetty would fail when trying to change that
+            this.setDaemon(true);
+        }
+
+        @Override
+        protected Thread newThread(Runnable runnable) {
+            return this.threadFactory.newThread(runnable);
+        }
+    }
+
+    static Map<String, Integer> countPerClass(RecordSet records) {
     	final Multiset<String> counts = new Multiset<String>();
     	for (final Record r : records.getRecords()) {
     		counts.add(r.getCorrectClass());
@@ -140,19 +199,18 @@ public class GimoMServer {
 
     public static ModelAndView statusAndNavPage(Request req, Response res) {
         final Map<String, Object> params = new HashMap<>();
-        final NondominatedResults<RuleSet> snapshot = blackboard.getNondominatedResultsSnapshot();
+        final ParetoSnapshot<RuleSet> snapshot = blackboard.getParetoSnapshot();
         final NavigationLimits limits = blackboard.getNavigationLimits();
-        final NondominatedResults<RuleSet> filteredSnapshot = limits.filter(snapshot);
-        final List<ValuedResult<RuleSet>> snapshotItems = snapshot.getItems();
-		params.put("paretoSize", snapshotItems.size());
-        params.put("withinLimitsSize", filteredSnapshot.getItems().size());
+        final ParetoSnapshot<RuleSet> filteredSnapshot = limits.filter(snapshot);
+		params.put("paretoSize", snapshot.size());
+        params.put("withinLimitsSize", filteredSnapshot.size());
         params.put("currentTarget", blackboard.getCurrentTargetFunction().getId());
         params.put("targets", createTargetStats(req, snapshot, limits, filteredSnapshot));
 
         final ValuedResult<RuleSet> currentRule = blackboard.evaluate(getCurrentRule(req));
         final String currentRuleStatus;
         final String currentRuleStatusClass;
-        if (snapshotItems.contains(currentRule) || snapshot.add(currentRule)) {
+        if (snapshot.isNondominated(currentRule)) {
         	if (limits.isInLimits(currentRule)) {
         		currentRuleStatus = "Current rule is on Pareto front";
         		currentRuleStatusClass = "ruleIsOn";
@@ -167,29 +225,25 @@ public class GimoMServer {
         params.put("currentRuleStatus", currentRuleStatus);
         params.put("currentRuleStatusClass", currentRuleStatusClass);
 
-        removeDeadAgents();
-        params.put("agentCount", agents.size());
+        params.put("agentCount", agentPool.getWorkerCount());
+        params.put("agentsPaused", agentPool.isPaused());
         return new ModelAndView(params, "statusAndNav");
     }
 
-    private static void removeDeadAgents() {
-    	agents.removeIf((MiningAgent a) -> !a.isAlive());
-	}
-
-	public static final class TargetStats {
+    public static final class TargetStats {
 
         private final TargetFunction target;
-        private final NondominatedResults<RuleSet> snapshot;
-        private final NondominatedResults<RuleSet> filteredSnapshot;
+        private final ParetoSnapshot<RuleSet> snapshot;
+        private final ParetoSnapshot<RuleSet> filteredSnapshot;
         private final ValuedResult<RuleSet> cur;
         private final NavigationLimits limits;
 
         public TargetStats(
         		TargetFunction f,
-        		NondominatedResults<RuleSet> snapshot,
+        		ParetoSnapshot<RuleSet> snapshot,
         		ValuedResult<RuleSet> currentRule,
         		NavigationLimits limits,
-        		NondominatedResults<RuleSet> filteredSnapshot) {
+        		ParetoSnapshot<RuleSet> filteredSnapshot) {
             this.target = f;
             this.snapshot = snapshot;
             this.limits = limits;
@@ -206,52 +260,24 @@ public class GimoMServer {
         }
 
         public double getMin() {
-            double min = Double.POSITIVE_INFINITY;
-            for (final ValuedResult<?> r : this.snapshot.getItemsSorted()) {
-                final double val = this.target.applyAsDouble(r);
-                min = Math.min(min, val);
-            }
-            return min;
+            return this.snapshot.getIndex(this.target).getMin();
         }
 
         public double getMinFiltered() {
-            double min = Double.POSITIVE_INFINITY;
-            for (final ValuedResult<?> r : this.filteredSnapshot.getItemsSorted()) {
-                final double val = this.target.applyAsDouble(r);
-                min = Math.min(min, val);
-            }
-            return min;
+            return this.filteredSnapshot.getIndex(this.target).getMin();
         }
 
         public ValuedResult<RuleSet> determineMinFilteredResult() {
-            double min = Double.POSITIVE_INFINITY;
-            ValuedResult<RuleSet> minResult = null;
-            for (final ValuedResult<RuleSet> r : this.filteredSnapshot.getItems()) {
-                final double val = this.target.applyAsDouble(r);
-                if (val < min) {
-                    min = val;
-                    minResult = r;
-                }
-            }
-            return minResult;
+            final List<ValuedResult<RuleSet>> best = this.filteredSnapshot.getIndex(this.target).getBestItems();
+            return best.isEmpty() ? null : best.get(0);
         }
 
         public double getMax() {
-            double max = Double.NEGATIVE_INFINITY;
-            for (final ValuedResult<?> r : this.snapshot.getItemsSorted()) {
-                final double val = this.target.applyAsDouble(r);
-                max = Math.max(max, val);
-            }
-            return max;
+            return this.snapshot.getIndex(this.target).getMax();
         }
 
         public double getMaxFiltered() {
-            double max = Double.NEGATIVE_INFINITY;
-            for (final ValuedResult<?> r : this.filteredSnapshot.getItemsSorted()) {
-                final double val = this.target.applyAsDouble(r);
-                max = Math.max(max, val);
-            }
-            return max;
+            return this.filteredSnapshot.getIndex(this.target).getMax();
         }
 
         public double getCurValue() {
@@ -273,39 +299,11 @@ public class GimoMServer {
         }
 
         private ValuedResult<RuleSet> determineLeftNeighbor() {
-            final double curValue = this.target.applyAsDouble(this.cur);
-            return this.determineClosestNeighbor(
-                            this.filteredSnapshot.getItems().stream()
-                            .filter((ValuedResult<RuleSet> r) -> this.target.applyAsDouble(r) < curValue)
-                            .collect(Collectors.toList()));
+            return this.filteredSnapshot.getIndex(this.target).getNextBetter(this.cur);
         }
 
         private ValuedResult<RuleSet> determineRightNeighbor() {
-            final double curValue = this.target.applyAsDouble(this.cur);
-            return this.determineClosestNeighbor(
-                            this.filteredSnapshot.getItems().stream()
-                            .filter((ValuedResult<RuleSet> r) -> this.target.applyAsDouble(r) > curValue)
-                            .collect(Collectors.toList()));
-        }
-
-        private ValuedResult<RuleSet> determineClosestNeighbor(List<ValuedResult<RuleSet>> filter) {
-            //determine the pareto front of closest items
-            final NondominatedResults<RuleSet> closestFront = new NondominatedResults<>();
-            for (final ValuedResult<RuleSet> v : filter) {
-                final ValuedResult<RuleSet> distanceVector = v.distanceVectorTo(this.cur);
-                closestFront.add(distanceVector);
-            };
-
-            if (closestFront.isEmpty()) {
-                return null;
-            }
-            final RuleSet chosen = closestFront.getItems().get(0).getItem();
-            for (final ValuedResult<RuleSet> cur : filter) {
-                if (cur.getItem().equals(chosen)) {
-                    return cur;
-                }
-            }
-            throw new AssertionError("should not happen");
+            return this.filteredSnapshot.getIndex(this.target).getNextWorse(this.cur);
         }
 
         public boolean isLimited() {
@@ -320,9 +318,9 @@ public class GimoMServer {
 
     private static List<TargetStats> createTargetStats(
     		Request request,
-    		NondominatedResults<RuleSet> snapshot,
+    		ParetoSnapshot<RuleSet> snapshot,
     		NavigationLimits limits,
-    		NondominatedResults<RuleSet> filteredSnapshot) {
+    		ParetoSnapshot<RuleSet> filteredSnapshot) {
         final List<TargetStats> ret = new ArrayList<>();
         final ValuedResult<RuleSet> currentRule = blackboard.evaluate(getCurrentRule(request));
         for (final TargetFunction f : targetFunctions) {
@@ -333,7 +331,7 @@ public class GimoMServer {
 
     private static RuleSet getCurrentRule(Request request) {
         final RuleSet attribute = request.session().attribute("curRule");
-        return attribute == null ? blackboard.getNondominatedResultsSnapshot().getItems().get(0).getItem() : attribute;
+        return attribute == null ? blackboard.getParetoSnapshot().getItems().get(0).getItem() : attribute;
     }
 
     private static void setCurrentRule(Request request, ValuedResult<RuleSet> r) {
@@ -382,7 +380,7 @@ public class GimoMServer {
         final RuleSet rs = new RuleSetParser(getScheme()).parse(curRule);
         final ValuedResult<RuleSet> v = blackboard.evaluate(rs);
     	final List<ValuedResult<RuleSet>> allRules =
-    			blackboard.getNavigationLimits().filter(blackboard.getNondominatedResultsSnapshot()).getItems();
+    			blackboard.getNavigationLimits().filter(blackboard.getParetoSnapshot()).getItems();
     	final int oldIndex = allRules.indexOf(v);
     	int newIndex = oldIndex + move;
     	if (newIndex < 0) {
@@ -422,7 +420,7 @@ public class GimoMServer {
 	}
 
 	private static TargetStats getTargetStatsWithId(Request req, String target) {
-        final NondominatedResults<RuleSet> snapshot = blackboard.getNondominatedResultsSnapshot();
+        final ParetoSnapshot<RuleSet> snapshot = blackboard.getParetoSnapshot();
         final NavigationLimits limits = blackboard.getNavigationLimits();
 		for (final TargetStats f : createTargetStats(req, snapshot, limits, limits.filter(snapshot))) {
             if (f.getName().equals(target)) {
@@ -454,30 +452,31 @@ public class GimoMServer {
     }
 
     private static String startAgent(Request req, Response res) {
-        final MiningAgent agent = new MiningAgent(blackboard);
-        agents.add(agent);
-        agent.start();
-        return String.format("Agent started. %d agents now running.", agents.size());
+        final boolean wasRunning = agentPool.getWorkerCount() > 0;
+        final int count = agentPool.start();
+        if (wasRunning) {
+            return String.format("Agent added. %d agents now running.", count);
+        } else {
+            return String.format("Agents started. %d agents now running, adjusted automatically to the system load.", count);
+        }
     }
 
     private static String stopAgent(Request req, Response res) {
-        MiningAgent toStop;
-        try {
-            toStop = agents.remove(0);
-        } catch (final IndexOutOfBoundsException e) {
+        if (agentPool.getWorkerCount() == 0) {
             return "No agents running.";
         }
-        toStop.interrupt();
-        try {
-            toStop.join(30000);
-        } catch (final InterruptedException e) {
-            return "Interrupted while waiting for agent to end.";
-        }
-        if (toStop.isAlive()) {
-            return "Agent could not be stopped in time. Retrying in the background.";
-        } else {
-            return String.format("Agent stopped. %d agents now running.", agents.size());
-        }
+        final int count = agentPool.stopOne();
+        return String.format("Agent stops after its current iteration. %d agents now running.", count);
+    }
+
+    private static String pauseAgents(Request req, Response res) {
+        agentPool.pause();
+        return "Agents paused after their current iteration.";
+    }
+
+    private static String resumeAgents(Request req, Response res) {
+        agentPool.resume();
+        return "Agents resumed.";
     }
 
     private static String saveResults(Request req, Response res) {
@@ -502,33 +501,8 @@ public class GimoMServer {
 
     private static void saveData(String filename, RecordSet records, Set<String> rejectedColumns) throws IOException {
     	blackboard.log("user saves current data as " + filename);
-    	final RecordScheme scheme = records.getScheme();
     	try (Writer w = new OutputStreamWriter(new FileOutputStream(filename), "UTF-8")) {
-    		for (int i = 0; i < scheme.getAllColumnCount(); i++) {
-    			final String name = scheme.getName(i);
-    			if (!rejectedColumns.contains(name)) {
-    				w.write(name + ";");
-    			}
-    		}
-    		w.write("classification\n");
-
-    		for (final Record r : records.getRecords()) {
-        		for (int i = 0; i < scheme.getAllColumnCount(); i++) {
-        			final String name = scheme.getName(i);
-        			if (!rejectedColumns.contains(name)) {
-        				String val;
-        				if (scheme.isNumeric(i)) {
-        					final double d = r.getValueDbl(scheme.toNumericIndex(i));
-        					val = Double.isNaN(d) ? "?" : Double.toString(d);
-        				} else {
-        					final String s = r.getValueStr(scheme.toStringIndex(i));
-        					val = s == null ? "?" : s;
-        				}
-        				w.write(val + ";");
-        			}
-        		}
-        		w.write(r.getCorrectClass() + "\n");
-    		}
+    		records.writeCsv(w, rejectedColumns);
     	}
 	}
 
@@ -1231,6 +1205,89 @@ public class GimoMServer {
         return ret.toString();
     }
 
+    private static String qualityIndicators(Request req, Response res) {
+        res.type("application/json");
+        final StringBuilder ret = new StringBuilder();
+        ret.append('[');
+        for (final QualityIndicators.Sample s : blackboard.getQualityIndicators().getTimeSeries()) {
+            final StringBuilder best = new StringBuilder();
+            best.append('{');
+            for (final Entry<String, Double> e : s.getBestValues().entrySet()) {
+                appendToJson(best, String.format("\"%s\": %s", e.getKey(), toJsonNumber(e.getValue())));
+            }
+            best.append('}');
+            appendToJson(ret, String.format(
+                    "{\"time\": %d, \"version\": %d, \"paretoSize\": %d, \"hypervolume\": %s, \"improvementsPerMinute\": %s, \"best\": %s}",
+                    s.getTime(), s.getVersion(), s.getParetoSize(), toJsonNumber(s.getHypervolume()),
+                    toJsonNumber(s.getImprovementsPerMinute()), best));
+        }
+        ret.append(']');
+        return ret.toString();
+    }
+
+    /**
+     * Returns the statistics on the productivity of the agents' exploration operators.
+     */
+    private static String operatorStatistics(Request req, Response res) {
+        res.type("application/json");
+        final StringBuilder ret = new StringBuilder();
+        ret.append('[');
+        for (final OperatorSelector.Statistics s : agentPool.getOperatorSelector().getStatistics()) {
+            appendToJson(ret, String.format(
+                    "{\"operator\": \"%s\", \"uses\": %d, \"improvements\": %d, \"cpuMillis\": %s, \"improvementsPerMilli\": %s, \"probability\": %s}",
+                    s.getOperator(), s.getUses(), s.getImprovements(), toJsonNumber(s.getCpuMillis()),
+                    toJsonNumber(s.getRecentImprovementsPerMilli()), toJsonNumber(s.getProbability())));
+        }
+        ret.append(']');
+        return ret.toString();
+    }
+
+    /**
+     * Returns the changes to the Pareto front since the version given in the "since" parameter. When these are not
+     * known (anymore), all current items are returned as additions and "reset" is true.
+     */
+    private static String paretoChanges(Request req, Response res) {
+        res.type("application/json");
+        final String sinceParam = req.queryParams("since");
+        final long since = sinceParam == null ? -1 : Long.parseLong(sinceParam);
+        final List<ParetoChange<RuleSet>> changes = since < 0 ? null : blackboard.getParetoChangesSince(since);
+        final StringBuilder items = new StringBuilder();
+        items.append('[');
+        final boolean reset;
+        final long version;
+        if (changes == null) {
+            reset = true;
+            final ParetoSnapshot<RuleSet> snapshot = blackboard.getParetoSnapshot();
+            version = snapshot.getVersion();
+            for (final ValuedResult<RuleSet> item : snapshot.getItems()) {
+                appendToJson(items, createChangeObject(version, ParetoChange.Type.ADDED, item));
+            }
+        } else {
+            reset = false;
+            version = changes.isEmpty() ? since : changes.get(changes.size() - 1).getVersion();
+            for (final ParetoChange<RuleSet> c : changes) {
+                appendToJson(items, createChangeObject(c.getVersion(), c.getType(), c.getItem()));
+            }
+        }
+        items.append(']');
+        return String.format("{\"version\": %d, \"reset\": %b, \"changes\": %s}", version, reset, items);
+    }
+
+    private static String createChangeObject(long version, ParetoChange.Type type, ValuedResult<RuleSet> item) {
+        final StringBuilder values = new StringBuilder();
+        values.append('[');
+        for (final double d : item.getAllValues()) {
+            appendToJson(values, toJsonNumber(d));
+        }
+        values.append(']');
+        return String.format("{\"version\": %d, \"type\": \"%s\", \"values\": %s, \"rule\": %s}",
+                version, type, values, Util.toJsonString(item.getItem().toString()));
+    }
+
+    private static String toJsonNumber(double d) {
+        return Double.isFinite(d) ? Double.toString(d) : "null";
+    }
+
     private static void appendToJson(StringBuilder ret, String item) {
         if (ret.length() > 1) {
             ret.append(',');
@@ -0,0 +1,257 @@
+/**
+ * Copyright 2019 Tobias Baum
+ *
+ * This file is part of GIMO-m.
+ *
+ * GIMO-m is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * GIMO-m is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ */
+package de.unihannover.gimo_m.mining.interaction;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import de.unihannover.gimo_m.mining.agents.AgentPool;
+import de.unihannover.gimo_m.mining.common.Blackboard;
+import de.unihannover.gimo_m.mining.common.ParetoChange;
+import de.unihannover.gimo_m.mining.common.ParetoSnapshot;
+import de.unihannover.gimo_m.mining.common.RecordSet;
+import de.unihannover.gimo_m.mining.common.ResultData;
+import de.unihannover.gimo_m.mining.common.RuleSet;
+import de.unihannover.gimo_m.mining.common.TaskScheduler.TaskType;
+import de.unihannover.gimo_m.mining.common.ValuedResult;
+import de.unihannover.gimo_m.objectives.StandardObjectiveStrategy;
+
+/**
+ * A mining worker in a separate JVM, possibly on another machine, that helps a {@link GimoMServer}.
+ * It keeps a local copy of the session's data and restrictions and lets its own agents work on tasks taken
+ * from the server. New entries of its local Pareto front are sent back to the server regularly.
+ * See {@link WorkerEndpoints} for the protocol.
+ *
+ * <p>The objectives are configured by system properties; the worker has to use the same ones as the server.
+ */
+public class RemoteWorker {
+
+    private static final long SYNC_INTERVAL_MS = 2_000;
+
+    private final String serverUrl;
+    private final int agentCount;
+    private final String id = UUID.randomUUID().toString();
+
+    private Blackboard blackboard;
+    private AgentPool agentPool;
+    private long dataVersion = -1;
+    private long restrictionEpoch = -1;
+    private long lastSentVersion;
+    private boolean tasksUnconfirmed;
+
+    public RemoteWorker(String serverUrl, int agentCount) {
+        this.serverUrl = serverUrl.endsWith("/") ? serverUrl.substring(0, serverUrl.length() - 1) : serverUrl;
+        this.agentCount = agentCount;
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 1 || args.length > 2) {
+            System.out.println("Needed command line arguments: <server url, e.g. http://localhost:4567> [agent count]");
+            return;
+        }
+        final int agentCount = args.length > 1 ? Integer.parseInt(args[1]) : Runtime.getRuntime().availableProcessors();
+        new RemoteWorker(args[0], agentCount).run();
+    }
+
+    public void run() throws InterruptedException {
+        System.out.println("Working for " + this.serverUrl + " with " + this.agentCount + " agents");
+        while (!Thread.currentThread().isInterrupted()) {
+            try {
+                this.synchronize();
+            } catch (final IOException e) {
+                //the server may be restarting, try again later
+                System.out.println("Communication with server failed: " + e);
+            } catch (final RuntimeException e) {
+                //e.g. a task that refers to a column that was removed by a concurrent data change
+                System.out.println("Synchronization with server failed: " + e);
+            }
+            Thread.sleep(SYNC_INTERVAL_MS);
+        }
+    }
+
+    /**
+     * Sends the new results to the server and takes new tasks.
+     * @return The server's answer to the results, or null when there was nothing to send.
+     */
+    String synchronize() throws IOException {
+        final String answer = this.sendResults();
+        this.fetchTasks();
+        return answer;
+    }
+
+    /**
+     * Stops the agents and the background tasks of the local blackboard.
+     */
+    void stop() {
+        if (this.agentPool != null) {
+            this.agentPool.stopAll();
+            this.blackboard.shutdown();
+        }
+    }
+
+    /**
+     * Sends the entries that were added to the local front since the last call. When tasks were taken since then,
+     * this is done even without new entries, so that the server does not queue the tasks again.
+     * @return The server's answer, or null when there was nothing to send.
+     */
+    private String sendResults() throws IOException {
+        if (this.blackboard == null) {
+            return null;
+        }
+        final List<ValuedResult<RuleSet>> results = new ArrayList<>();
+        final List<ParetoChange<RuleSet>> changes = this.blackboard.getParetoChangesSince(this.lastSentVersion);
+        final long newVersion;
+        if (changes == null) {
+            final ParetoSnapshot<RuleSet> snapshot = this.blackboard.getParetoSnapshot();
+            results.addAll(snapshot.getItems());
+            newVersion = snapshot.getVersion();
+        } else if (!changes.isEmpty()) {
+            for (final ParetoChange<RuleSet> change : changes) {
+                if (change.getType() == ParetoChange.Type.ADDED) {
+                    results.add(change.getItem());
+                }
+            }
+            newVersion = changes.get(changes.size() - 1).getVersion();
+        } else if (this.tasksUnconfirmed) {
+            newVersion = this.lastSentVersion;
+        } else {
+            return null;
+        }
+
+        final StringWriter w = new StringWriter();
+        w.write(WorkerEndpoints.VERSION_PREFIX + this.dataVersion + " " + this.restrictionEpoch + "\n");
+        Blackboard.writeResults(w, results);
+        final String answer = this.readAll(this.request("POST", "results.txt?worker=" + this.id, w.toString())).trim();
+        this.lastSentVersion = newVersion;
+        this.tasksUnconfirmed = false;
+        if (answer.equals(WorkerEndpoints.STALE)) {
+            //the results were computed for outdated restrictions, fetch the new ones with the next tasks
+            this.blackboard.log("results rejected as stale");
+        } else {
+            this.blackboard.log("sent " + results.size() + " results, answer " + answer);
+        }
+        return answer;
+    }
+
+    /**
+     * Takes tasks from the server and queues them locally. When the data or the restrictions changed
+     * on the server, the local copy is updated first.
+     */
+    private void fetchTasks() throws IOException {
+        final BufferedReader r = new BufferedReader(new StringReader(
+                this.readAll(this.request("POST", "tasks.txt?count=" + this.agentCount + "&worker=" + this.id, null))));
+        final String[] versions = r.readLine().substring(WorkerEndpoints.VERSION_PREFIX.length()).split(" ");
+        if (Long.parseLong(versions[0]) != this.dataVersion) {
+            this.loadData();
+        }
+        if (Long.parseLong(versions[1]) != this.restrictionEpoch) {
+            this.loadRestrictions();
+        }
+
+        String blockStart = r.readLine();
+        while (blockStart != null) {
+            final TaskType type = TaskType.valueOf(Blackboard.getBlockName(blockStart));
+            this.tasksUnconfirmed = true;
+            blockStart = this.blackboard.readResults(r, (ValuedResult<RuleSet> item) -> this.scheduleLocally(type, item));
+        }
+    }
+
+    private void scheduleLocally(TaskType type, ValuedResult<RuleSet> item) {
+        //make the rule set valid for the local restrictions, as they could be newer than the task
+        final ValuedResult<RuleSet> local = this.blackboard.simplifyEvaluateAndAdd(item.getItem());
+        this.blackboard.getScheduler().schedule(type, local);
+    }
+
+    private void loadData() throws IOException {
+        final HttpURLConnection c = this.request("GET", "data.csv", null);
+        final long newDataVersion = Long.parseLong(c.getHeaderField(WorkerEndpoints.DATA_VERSION_HEADER));
+        final File tempFile = File.createTempFile("gimoWorkerData", ".csv");
+        try {
+            try (InputStream in = c.getInputStream()) {
+                Files.copy(in, tempFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            }
+            final RecordSet records = RecordSet.loadCsv(tempFile.getPath());
+            this.stop();
+            this.blackboard = new Blackboard(records, new ResultData(records),
+                    new StandardObjectiveStrategy(GimoMServer.countPerClass(records)), System.currentTimeMillis());
+            this.blackboard.addDefaultRulesForAllClasses();
+            this.agentPool = new AgentPool(this.blackboard, this.agentCount);
+            this.agentPool.start();
+            this.dataVersion = newDataVersion;
+            this.restrictionEpoch = -1;
+            this.lastSentVersion = 0;
+            this.blackboard.log("loaded data version " + newDataVersion + " with " + records.getRecords().length + " records");
+        } finally {
+            tempFile.delete();
+        }
+    }
+
+    private void loadRestrictions() throws IOException {
+        final BufferedReader r = new BufferedReader(new StringReader(
+                this.readAll(this.request("GET", "restrictions.txt", null))));
+        final String[] versions = r.readLine().substring(WorkerEndpoints.VERSION_PREFIX.length()).split(" ");
+        if (Long.parseLong(versions[0]) != this.dataVersion) {
+            //data changed in the meantime, the restrictions are loaded again after the data
+            return;
+        }
+        this.blackboard.replaceRestrictions(r);
+        this.restrictionEpoch = Long.parseLong(versions[1]);
+        this.blackboard.log("loaded restriction epoch " + this.restrictionEpoch);
+    }
+
+    private HttpURLConnection request(String method, String path, String body) throws IOException {
+        final HttpURLConnection c = (HttpURLConnection) new URL(this.serverUrl + WorkerEndpoints.PATH_PREFIX + path).openConnection();
+        c.setRequestMethod(method);
+        if (body != null) {
+            c.setDoOutput(true);
+            c.setRequestProperty("Content-Type", "text/plain; charset=UTF-8");
+            try (Writer w = new OutputStreamWriter(c.getOutputStream(), StandardCharsets.UTF_8)) {
+                w.write(body);
+            }
+        }
+        if (c.getResponseCode() != HttpURLConnection.HTTP_OK) {
+            throw new IOException("server answered " + c.getResponseCode() + " for " + path);
+        }
+        return c;
+    }
+
+    private String readAll(HttpURLConnection c) throws IOException {
+        final StringBuilder ret = new StringBuilder();
+        try (BufferedReader r = new BufferedReader(new InputStreamReader(c.getInputStream(), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = r.readLine()) != null) {
+                ret.append(line).append('\n');
+            }
+        }
+        return ret.toString();
+    }
+
+}
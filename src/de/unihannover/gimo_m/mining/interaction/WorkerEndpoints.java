@@ -0,0 +1,294 @@
+/**
+ * Copyright 2019 Tobias Baum
+ *
+ * This file is part of GIMO-m.
+ *
+ * GIMO-m is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * GIMO-m is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ */
+package de.unihannover.gimo_m.mining.interaction;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.function.LongSupplier;
+
+import de.unihannover.gimo_m.mining.common.Blackboard;
+import de.unihannover.gimo_m.mining.common.RuleSet;
+import de.unihannover.gimo_m.mining.common.TaskScheduler;
+import de.unihannover.gimo_m.mining.common.TaskScheduler.Task;
+import de.unihannover.gimo_m.mining.common.TaskScheduler.TaskType;
+import de.unihannover.gimo_m.mining.common.ValuedResult;
+import spark.Request;
+import spark.Response;
+import spark.Spark;
+
+/**
+ * The server side of the protocol for remote mining workers (see {@link RemoteWorker}).
+ *
+ * <p>All messages are plain text. Rules, restrictions and results use the format of the save file.
+ * Answers that depend on the state of the session start with a line "VERSION &lt;data version&gt; &lt;restriction epoch&gt;",
+ * and results have to be sent with the versions they were computed for. When the data or the restrictions changed
+ * in the meantime, the results are rejected and the worker has to fetch the current state.
+ * <ul>
+ * <li>GET /worker/data.csv: The current records as csv, the data version is in the header {@value #DATA_VERSION_HEADER}.</li>
+ * <li>GET /worker/restrictions.txt: The current restrictions.</li>
+ * <li>POST /worker/tasks.txt?count=n&amp;worker=id: Takes up to n tasks from the queue, or from the queues of the
+ *      islands in island mode. Each task is a block named by its type that contains the rule set to work on.</li>
+ * <li>POST /worker/results.txt?worker=id: Adds the results in the body, which starts with the version line. Answers
+ *      with "ACCEPTED &lt;number of results that changed the front&gt;" or "STALE".</li>
+ * </ul>
+ * Malformed requests are answered with status 400.
+ *
+ * <p>The tasks sent to a worker are leased to it until it sends results the next time. When this does not happen
+ * within {@value #LEASE_TIMEOUT_MS} ms, e.g. because the worker crashed, the tasks are queued again.
+ */
+final class WorkerEndpoints {
+
+    static final String PATH_PREFIX = "/worker/";
+    static final String DATA_VERSION_HEADER = "X-Gimo-Data-Version";
+    static final String VERSION_PREFIX = "VERSION ";
+    static final String STALE = "STALE";
+    static final String ACCEPTED = "ACCEPTED ";
+    static final long LEASE_TIMEOUT_MS = 60_000;
+
+    private static final int MAX_TASKS_PER_REQUEST = 100;
+    private static final long LEASE_CHECK_INTERVAL_MS = 5_000;
+
+    /**
+     * A task that was sent to a worker and has to be queued again when the worker does not answer in time.
+     */
+    private static final class Lease {
+        private final TaskScheduler scheduler;
+        private final TaskType type;
+        private final ValuedResult<RuleSet> item;
+        private final long dataVersion;
+        private final long deadline;
+
+        public Lease(TaskScheduler scheduler, TaskType type, ValuedResult<RuleSet> item, long dataVersion, long deadline) {
+            this.scheduler = scheduler;
+            this.type = type;
+            this.item = item;
+            this.dataVersion = dataVersion;
+            this.deadline = deadline;
+        }
+    }
+
+    private final Blackboard blackboard;
+    private final LongSupplier clock;
+    private final Map<String, List<Lease>> leasesPerWorker = new HashMap<>();
+
+    private WorkerEndpoints(Blackboard blackboard, LongSupplier clock) {
+        this.blackboard = blackboard;
+        this.clock = clock;
+    }
+
+    static void register(Blackboard blackboard) {
+        final WorkerEndpoints e = register(blackboard, System::currentTimeMillis);
+        blackboard.scheduleBackgroundTask(e::requeueExpiredTasks, LEASE_CHECK_INTERVAL_MS);
+    }
+
+    /**
+     * Registers the endpoints with a clock (in milliseconds) for the lease deadlines. Expired leases are only
+     * queued again by {@link #requeueExpiredTasks()}.
+     */
+    static WorkerEndpoints register(Blackboard blackboard, LongSupplier clock) {
+        final WorkerEndpoints e = new WorkerEndpoints(blackboard, clock);
+        Spark.get(PATH_PREFIX + "data.csv", e::data);
+        Spark.get(PATH_PREFIX + "restrictions.txt", e::restrictions);
+        Spark.post(PATH_PREFIX + "tasks.txt", e::tasks);
+        Spark.post(PATH_PREFIX + "results.txt", e::results);
+        return e;
+    }
+
+    static boolean isWorkerRequest(Request req) {
+        return req.pathInfo().startsWith(PATH_PREFIX);
+    }
+
+    private String versionLine() {
+        //the versions are read before the state, so that a concurrent change makes the answer look outdated, not current
+        return VERSION_PREFIX + this.blackboard.getDataVersion() + " " + this.blackboard.getRestrictionEpoch() + "\n";
+    }
+
+    private String data(Request req, Response res) throws IOException {
+        res.header(DATA_VERSION_HEADER, Long.toString(this.blackboard.getDataVersion()));
+        res.type("text/csv; charset=UTF-8");
+        final StringWriter w = new StringWriter();
+        this.blackboard.getRecords().getRecords().writeCsv(w, Collections.emptySet());
+        return w.toString();
+    }
+
+    private String restrictions(Request req, Response res) throws IOException {
+        res.type("text/plain; charset=UTF-8");
+        final StringWriter w = new StringWriter();
+        w.write(this.versionLine());
+        this.blackboard.writeRestrictions(w);
+        return w.toString();
+    }
+
+    private String tasks(Request req, Response res) throws IOException {
+        res.type("text/plain; charset=UTF-8");
+        final String worker = workerId(req);
+        final int count = Math.min(MAX_TASKS_PER_REQUEST, parseCount(req));
+        final long dataVersion = this.blackboard.getDataVersion();
+        final long deadline = this.clock.getAsLong() + LEASE_TIMEOUT_MS;
+        final StringWriter w = new StringWriter();
+        w.write(this.versionLine());
+        final List<Lease> leases = new ArrayList<>();
+        final List<TaskScheduler> schedulers = this.taskSchedulers();
+        int written = 0;
+        int next = 0;
+        while (written < count && !schedulers.isEmpty()) {
+            final int index = next % schedulers.size();
+            final Task task = schedulers.get(index).takeTask();
+            if (task.getType() == TaskType.EXPLORATION) {
+                schedulers.remove(index);
+                next = index;
+                continue;
+            }
+            written++;
+            next = index + 1;
+            leases.add(new Lease(schedulers.get(index), task.getType(), task.getItem(), dataVersion, deadline));
+            //only the target is sent, so a worker treats a continued path relinking like a new one
+            w.write(Blackboard.startOfBlock(task.getType().name()));
+            Blackboard.writeResults(w, Collections.singletonList(task.getItem()));
+        }
+        if (!leases.isEmpty()) {
+            synchronized (this.leasesPerWorker) {
+                this.leasesPerWorker.computeIfAbsent(worker, (String k) -> new ArrayList<>()).addAll(leases);
+            }
+        }
+        this.blackboard.countEvent("tasks sent to remote worker");
+        return w.toString();
+    }
+
+    /**
+     * Returns the number of tasks that were sent to workers and not confirmed yet.
+     */
+    int getLeasedTaskCount() {
+        int ret = 0;
+        synchronized (this.leasesPerWorker) {
+            for (final List<Lease> leases : this.leasesPerWorker.values()) {
+                ret += leases.size();
+            }
+        }
+        return ret;
+    }
+
+    private static String workerId(Request req) {
+        final String worker = req.queryParams("worker");
+        if (worker == null || worker.isEmpty()) {
+            throw Spark.halt(400, "missing worker id");
+        }
+        return worker;
+    }
+
+    private static int parseCount(Request req) {
+        final String count = req.queryParams("count");
+        try {
+            final int ret = Integer.parseInt(count);
+            if (ret >= 0) {
+                return ret;
+            }
+        } catch (final NumberFormatException e) {
+            //answered below
+        }
+        throw Spark.halt(400, "invalid task count: " + count);
+    }
+
+    /**
+     * Queues the tasks again whose worker did not send results before the lease's deadline. Tasks for
+     * outdated data are dropped.
+     */
+    void requeueExpiredTasks() {
+        final long now = this.clock.getAsLong();
+        final List<Lease> expired = new ArrayList<>();
+        synchronized (this.leasesPerWorker) {
+            final Iterator<List<Lease>> iter = this.leasesPerWorker.values().iterator();
+            while (iter.hasNext()) {
+                final List<Lease> leases = iter.next();
+                //the leases of a worker are ordered by deadline
+                while (!leases.isEmpty() && leases.get(0).deadline <= now) {
+                    expired.add(leases.remove(0));
+                }
+                if (leases.isEmpty()) {
+                    iter.remove();
+                }
+            }
+        }
+        int requeued = 0;
+        for (final Lease lease : expired) {
+            if (lease.dataVersion == this.blackboard.getDataVersion()
+                    && lease.scheduler.schedule(lease.type, lease.item)) {
+                requeued++;
+            }
+        }
+        if (requeued > 0) {
+            this.blackboard.log("queued " + requeued + " tasks of unresponsive remote workers again");
+        }
+    }
+
+    /**
+     * In island mode, the work fed by the user is queued on the islands, so the tasks are taken round robin from
+     * the global blackboard and all islands.
+     */
+    private List<TaskScheduler> taskSchedulers() {
+        final List<TaskScheduler> ret = new ArrayList<>();
+        ret.add(this.blackboard.getScheduler());
+        for (final Blackboard island : this.blackboard.getIslands()) {
+            ret.add(island.getScheduler());
+        }
+        return ret;
+    }
+
+    private String results(Request req, Response res) throws IOException {
+        res.type("text/plain; charset=UTF-8");
+        final String worker = workerId(req);
+        final BufferedReader r = new BufferedReader(new StringReader(req.body()));
+        final long[] versions = parseVersionLine(r.readLine());
+        final long dataVersion = versions[0];
+        final long restrictionEpoch = versions[1];
+        //the worker is alive and its results include the work on the leased tasks
+        synchronized (this.leasesPerWorker) {
+            this.leasesPerWorker.remove(worker);
+        }
+        if (dataVersion != this.blackboard.getDataVersion()) {
+            //the rules could refer to columns that do not exist anymore
+            return STALE;
+        }
+        final List<ValuedResult<RuleSet>> results = new ArrayList<>();
+        this.blackboard.readResults(r, results::add);
+        final int added = this.blackboard.addRemoteResults(dataVersion, restrictionEpoch, results);
+        this.blackboard.countEvent("results received from remote worker");
+        return added < 0 ? STALE : ACCEPTED + added;
+    }
+
+    private static long[] parseVersionLine(String line) {
+        if (line != null && line.startsWith(VERSION_PREFIX)) {
+            final String[] parts = line.substring(VERSION_PREFIX.length()).split(" ");
+            if (parts.length == 2) {
+                try {
+                    return new long[] {Long.parseLong(parts[0]), Long.parseLong(parts[1])};
+                } catch (final NumberFormatException e) {
+                    //answered below
+                }
+            }
+        }
+        throw Spark.halt(400, "invalid version line: " + line);
+    }
+
+}
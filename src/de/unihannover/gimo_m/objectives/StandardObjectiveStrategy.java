@@ -91,6 +91,43 @@ public class StandardObjectiveStrategy implements ObjectiveStrategy {
 		return new StandardCalculator(this.classIndices);
 	}
 
+	/**
+	 * Epsilon-dominance is enabled with the system property "gimo.archiveEpsilon". Its value is the resolution
+	 * for the misclassifications, relative to the size of the class (e.g. 0.01 for one percent). Complexity and feature
+	 * count use a resolution of 1.
+	 */
+	@Override
+	public double[] getArchiveEpsilons() {
+		final String relativeEpsilon = System.getProperty("gimo.archiveEpsilon");
+		if (relativeEpsilon == null) {
+			return null;
+		}
+		final double rel = Double.parseDouble(relativeEpsilon);
+		final double[] ret = new double[this.classes.size() + 2];
+		for (int i = 0; i < this.classes.size(); i++) {
+			ret[i] = Math.max(1.0, rel * this.countsPerClass.get(this.classes.get(i)));
+		}
+		ret[this.classes.size()] = 1.0;
+		ret[this.classes.size() + 1] = 1.0;
+		return ret;
+	}
+
+	/**
+	 * The reference point has the size of each class for the misclassifications. Complexity and feature count
+	 * are unbounded, so their reference values are given by the system properties "gimo.hvReferenceComplexity"
+	 * (default 50) and "gimo.hvReferenceFeatureCount" (default 20).
+	 */
+	@Override
+	public double[] getReferencePoint() {
+		final double[] ret = new double[this.classes.size() + 2];
+		for (int i = 0; i < this.classes.size(); i++) {
+			ret[i] = this.countsPerClass.get(this.classes.get(i));
+		}
+		ret[this.classes.size()] = Double.parseDouble(System.getProperty("gimo.hvReferenceComplexity", "50"));
+		ret[this.classes.size() + 1] = Double.parseDouble(System.getProperty("gimo.hvReferenceFeatureCount", "20"));
+		return ret;
+	}
+
 	private static final class StandardCalculator implements ObjectiveCalculator {
 
 		private final Map<String, Integer> classIndices;
@@ -108,6 +145,34 @@ public class StandardObjectiveStrategy implements ObjectiveStrategy {
 			}
 		}
 
+		@Override
+		public void removeInstance(final String correctClass, final String predictedClass) {
+			if (!correctClass.equals(predictedClass)) {
+				this.vector[this.classIndices.get(correctClass)]--;
+			}
+		}
+
+		@Override
+		public void handleInstances(final String correctClass, final String predictedClass, final int count) {
+			if (!correctClass.equals(predictedClass)) {
+				this.vector[this.classIndices.get(correctClass)] += count;
+			}
+		}
+
+		@Override
+		public void removeInstances(final String correctClass, final String predictedClass, final int count) {
+			if (!correctClass.equals(predictedClass)) {
+				this.vector[this.classIndices.get(correctClass)] -= count;
+			}
+		}
+
+		@Override
+		public ObjectiveCalculator copy() {
+			final StandardCalculator ret = new StandardCalculator(this.classIndices);
+			System.arraycopy(this.vector, 0, ret.vector, 0, this.vector.length);
+			return ret;
+		}
+
 		@Override
 		public double[] getResult(final double rulesetComplexity, final double rulesetFeatureCount) {
 			this.vector[this.classIndices.size()] = rulesetComplexity;
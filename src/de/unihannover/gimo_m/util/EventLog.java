@@ -0,0 +1,249 @@
+/**
+ * Copyright 2019 Tobias Baum
+ *
+ * This file is part of GIMO-m.
+ *
+ * GIMO-m is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * GIMO-m is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ */
+package de.unihannover.gimo_m.util;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintStream;
+import java.io.Writer;
+import java.time.Instant;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.TreeMap;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * An asynchronous logger. Log calls only put an event into a bounded ring buffer, formatting and writing
+ * is done by a background thread. Events are written in human readable form to the console and optionally
+ * as JSON lines to a rotating file.
+ * Events that occur very often should not be logged individually, but counted with {@link #count}. The counts
+ * are written periodically.
+ *
+ * <p>Configuration is done with system properties: "gimo.log.level" (DEBUG, INFO or WARN, default INFO),
+ * "gimo.log.file" (base name of the JSON lines file, default none) and "gimo.log.fileSize" (maximal size of a
+ * log file in bytes before it is rotated).
+ */
+public final class EventLog {
+
+    public enum Level {
+        DEBUG,
+        INFO,
+        WARN
+    }
+
+    private static final class Event {
+        private final long time;
+        private final String thread;
+        private final Level level;
+        private final Supplier<String> message;
+
+        public Event(Level level, Supplier<String> message) {
+            this.time = System.currentTimeMillis();
+            this.thread = Thread.currentThread().getName();
+            this.level = level;
+            this.message = message;
+        }
+    }
+
+    static final int BUFFER_SIZE = 8192;
+    private static final long COUNTER_FLUSH_INTERVAL_MS = 30_000;
+    static final int MAX_ROTATED_FILES = 5;
+
+    private static EventLog defaultInstance;
+
+    private final Level minLevel;
+    private final PrintStream console;
+    private final String logFileBase;
+    private final long maxFileSize;
+
+    private final BlockingQueue<Event> buffer = new ArrayBlockingQueue<>(BUFFER_SIZE);
+    private final LongAdder droppedEvents = new LongAdder();
+    private final Map<String, LongAdder> counters = new ConcurrentHashMap<>();
+
+    private Writer fileWriter;
+    private long currentFileSize;
+    private long lastCounterFlush = System.currentTimeMillis();
+
+    public EventLog(Level minLevel, PrintStream console, String logFileBase, long maxFileSize) {
+        this.minLevel = minLevel;
+        this.console = console;
+        this.logFileBase = logFileBase;
+        this.maxFileSize = maxFileSize;
+
+        final Thread writer = new Thread(this::writeEvents, "event-log-writer");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    /**
+     * Returns the shared log instance, configured by system properties.
+     */
+    public static synchronized EventLog getDefault() {
+        if (defaultInstance == null) {
+            defaultInstance = new EventLog(
+                    Level.valueOf(System.getProperty("gimo.log.level", Level.INFO.name())),
+                    System.out,
+                    System.getProperty("gimo.log.file"),
+                    Long.parseLong(System.getProperty("gimo.log.fileSize", "50000000")));
+        }
+        return defaultInstance;
+    }
+
+    public boolean isEnabled(Level level) {
+        return level.compareTo(this.minLevel) >= 0;
+    }
+
+    public void log(Level level, String message) {
+        if (this.isEnabled(level)) {
+            this.enqueue(new Event(level, () -> message));
+        }
+    }
+
+    /**
+     * Logs a message that is only created (on the writer thread) when it is really written.
+     * The supplier must therefore only access immutable state.
+     */
+    public void log(Level level, Supplier<String> message) {
+        if (this.isEnabled(level)) {
+            this.enqueue(new Event(level, message));
+        }
+    }
+
+    /**
+     * Counts an occurrence of the given event instead of logging it individually.
+     */
+    public void count(String eventName) {
+        LongAdder counter = this.counters.get(eventName);
+        if (counter == null) {
+            counter = this.counters.computeIfAbsent(eventName, (String k) -> new LongAdder());
+        }
+        counter.increment();
+    }
+
+    /**
+     * Returns the number of events that were dropped because the buffer was full and that were not reported yet.
+     */
+    long getDroppedEventCount() {
+        return this.droppedEvents.sum();
+    }
+
+    private void enqueue(Event event) {
+        if (!this.buffer.offer(event)) {
+            this.droppedEvents.increment();
+        }
+    }
+
+    private void writeEvents() {
+        while (true) {
+            try {
+                final Event e = this.buffer.poll(1, TimeUnit.SECONDS);
+                if (e != null) {
+                    this.write(e);
+                }
+                if (this.buffer.isEmpty()) {
+                    this.flushCountersIfDue();
+                    this.flushFile();
+                }
+            } catch (final InterruptedException ex) {
+                return;
+            } catch (final RuntimeException ex) {
+                //a broken message supplier must not stop the logging
+                this.console.println("===LOG=== error while logging: " + ex);
+            }
+        }
+    }
+
+    private void flushCountersIfDue() {
+        final long now = System.currentTimeMillis();
+        if (now - this.lastCounterFlush < COUNTER_FLUSH_INTERVAL_MS) {
+            return;
+        }
+        this.lastCounterFlush = now;
+        final Map<String, Long> counts = new TreeMap<>();
+        for (final Entry<String, LongAdder> c : this.counters.entrySet()) {
+            final long count = c.getValue().sumThenReset();
+            if (count > 0) {
+                counts.put(c.getKey(), count);
+            }
+        }
+        final long dropped = this.droppedEvents.sumThenReset();
+        if (dropped > 0) {
+            counts.put("droppedLogEvents", dropped);
+        }
+        if (!counts.isEmpty()) {
+            this.write(new Event(Level.INFO, () -> "event counts in the last "
+                    + (COUNTER_FLUSH_INTERVAL_MS / 1000) + " seconds: " + counts));
+        }
+    }
+
+    private void write(Event e) {
+        final String message = e.message.get();
+        final String time = Instant.ofEpochMilli(e.time).toString();
+        this.console.println(String.format("===LOG=== %s, %s, %s", e.thread, time, message));
+        if (this.logFileBase != null) {
+            this.writeToFile("{\"time\":\"" + time
+                    + "\",\"level\":\"" + e.level
+                    + "\",\"thread\":" + Util.toJsonString(e.thread)
+                    + ",\"message\":" + Util.toJsonString(message) + "}\n");
+        }
+    }
+
+    private void writeToFile(String line) {
+        try {
+            if (this.fileWriter == null || this.currentFileSize > this.maxFileSize) {
+                this.rotate();
+            }
+            this.fileWriter.write(line);
+            this.currentFileSize += line.length();
+        } catch (final IOException ex) {
+            this.console.println("===LOG=== error while writing log file: " + ex);
+        }
+    }
+
+    private void rotate() throws IOException {
+        if (this.fileWriter != null) {
+            this.fileWriter.close();
+        }
+        for (int i = MAX_ROTATED_FILES - 1; i >= 1; i--) {
+            final File older = new File(this.logFileBase + "." + i);
+            final File newer = i == 1 ? new File(this.logFileBase) : new File(this.logFileBase + "." + (i - 1));
+            if (newer.exists()) {
+                older.delete();
+                newer.renameTo(older);
+            }
+        }
+        this.fileWriter = new OutputStreamWriter(new FileOutputStream(this.logFileBase), "UTF-8");
+        this.currentFileSize = 0;
+    }
+
+    private void flushFile() {
+        if (this.fileWriter != null) {
+            try {
+                this.fileWriter.flush();
+            } catch (final IOException ex) {
+                this.console.println("===LOG=== error while writing log file: " + ex);
+            }
+        }
+    }
+
+}
@@ -24,6 +24,42 @@ public class Util {
         return list.get(random.nextInt(list.size()));
     }
 
+    /**
+     * Returns the given string as a quoted and escaped JSON string.
+     */
+    public static String toJsonString(String s) {
+        final StringBuilder ret = new StringBuilder(s.length() + 2);
+        ret.append('"');
+        for (int i = 0; i < s.length(); i++) {
+            final char c = s.charAt(i);
+            switch (c) {
+            case '"':
+                ret.append("\\\"");
+                break;
+            case '\\':
+                ret.append("\\\\");
+                break;
+            case '\n':
+                ret.append("\\n");
+                break;
+            case '\r':
+                ret.append("\\r");
+                break;
+            case '\t':
+                ret.append("\\t");
+                break;
+            default:
+                if (c < 0x20) {
+                    ret.append(String.format("\\u%04x", (int) c));
+                } else {
+                    ret.append(c);
+                }
+            }
+        }
+        ret.append('"');
+        return ret.toString();
+    }
+
 	public static double determineSplitPointWithFewDigits(double lower, double upper) {
 		final double middle = (lower + upper) / 2.0;
 		final double bl = (2.0 * lower + upper) / 3.0;
@@ -0,0 +1,88 @@
+/**
+ * Copyright 2019 Tobias Baum
+ *
+ * This file is part of GIMO-m.
+ *
+ * GIMO-m is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * GIMO-m is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ */
+package de.unihannover.gimo_m.util;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Access to virtual threads (Java 21+), which can be enabled with the system property "gimo.virtualThreads".
+ * The code base is still compiled for Java 8, therefore the API is accessed by reflection. On older runtimes,
+ * or when the property is not set, platform threads are used.
+ */
+public final class VirtualThreads {
+
+    private static final Method OF_VIRTUAL;
+    private static final Method BUILDER_NAME;
+    private static final Method BUILDER_FACTORY;
+
+    static {
+        Method ofVirtual = null;
+        Method builderName = null;
+        Method builderFactory = null;
+        try {
+            final Class<?> builder = Class.forName("java.lang.Thread$Builder");
+            ofVirtual = Thread.class.getMethod("ofVirtual");
+            builderName = builder.getMethod("name", String.class, long.class);
+            builderFactory = builder.getMethod("factory");
+        } catch (final ReflectiveOperationException e) {
+            //runtime without virtual threads
+        }
+        OF_VIRTUAL = ofVirtual;
+        BUILDER_NAME = builderName;
+        BUILDER_FACTORY = builderFactory;
+    }
+
+    private VirtualThreads() {
+    }
+
+    public static boolean isSupported() {
+        return BUILDER_FACTORY != null;
+    }
+
+    /**
+     * Returns true iff virtual threads have been requested and are supported by the runtime.
+     */
+    public static boolean isEnabled() {
+        return Boolean.getBoolean("gimo.virtualThreads") && isSupported();
+    }
+
+    /**
+     * Returns a factory for virtual threads when they are enabled, and for platform daemon threads otherwise.
+     * The threads are named with the given prefix and a running number.
+     */
+    public static ThreadFactory createThreadFactory(String namePrefix) {
+        if (isEnabled()) {
+            try {
+                final Object builder = BUILDER_NAME.invoke(OF_VIRTUAL.invoke(null), namePrefix, 0L);
+                return (ThreadFactory) BUILDER_FACTORY.invoke(builder);
+            } catch (final ReflectiveOperationException e) {
+                throw new RuntimeException(e);
+            }
+        }
+        final ThreadFactory defaultFactory = Executors.defaultThreadFactory();
+        final AtomicLong counter = new AtomicLong();
+        return (Runnable r) -> {
+            final Thread t = defaultFactory.newThread(r);
+            t.setName(namePrefix + counter.getAndIncrement());
+            t.setDaemon(true);
+            return t;
+        };
+    }
+
+}
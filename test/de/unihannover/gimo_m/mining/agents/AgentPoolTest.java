@@ -0,0 +1,140 @@
+/**
+ * Copyright 2019 Tobias Baum
+ *
+ * This file is part of GIMO-m.
+ *
+ * GIMO-m is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * GIMO-m is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ */
+package de.unihannover.gimo_m.mining.agents;
+
+import static de.unihannover.gimo_m.mining.common.TestUtil.waitUntil;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import de.unihannover.gimo_m.mining.common.Blackboard;
+import de.unihannover.gimo_m.mining.common.Record;
+import de.unihannover.gimo_m.mining.common.RecordScheme;
+import de.unihannover.gimo_m.mining.common.RecordSet;
+import de.unihannover.gimo_m.mining.common.TestUtil;
+
+public class AgentPoolTest {
+
+    /**
+     * An agent that only counts its iterations.
+     */
+    private static final class StubAgent extends MiningAgent {
+        private final AtomicInteger iterations;
+
+        public StubAgent(Blackboard blackboard, OperatorSelector operatorSelector, WorkerLoad load, AtomicInteger iterations) {
+            super(blackboard, operatorSelector, load);
+            this.iterations = iterations;
+        }
+
+        @Override
+        public void runIteration() throws InterruptedException {
+            this.iterations.incrementAndGet();
+            Thread.sleep(2);
+        }
+    }
+
+    private final AtomicInteger iterations = new AtomicInteger();
+    private Blackboard blackboard;
+    private AgentPool pool;
+
+    @Before
+    public void setUp() {
+        final RecordScheme scheme = new RecordScheme(Arrays.asList("nA"), Arrays.asList("sA"));
+        final RecordSet records = new RecordSet(scheme, new Record[] {
+                new Record(1, Arrays.asList(0.1), Arrays.asList("a"), "x"),
+                new Record(2, Arrays.asList(0.2), Arrays.asList("b"), "y")
+        });
+        this.blackboard = TestUtil.createBlackboard(records);
+        this.pool = new AgentPool(this.blackboard, 2,
+                (Blackboard b, OperatorSelector s, WorkerLoad l) -> new StubAgent(b, s, l, this.iterations));
+    }
+
+    @After
+    public void tearDown() {
+        this.pool.stopAll();
+        this.blackboard.shutdown();
+    }
+
+    @Test
+    public void testStartUsesDefaultSizeAndThenAddsOneWorker() throws InterruptedException {
+        assertEquals(2, this.pool.start());
+        waitUntil(() -> this.iterations.get() > 0);
+        assertEquals(2, this.pool.getWorkerCount());
+        assertEquals(3, this.pool.start());
+        assertEquals(3, this.pool.getWorkerCount());
+    }
+
+    @Test
+    public void testSizeIsLimitedToTwiceTheDefault() {
+        this.pool.start();
+        this.pool.start();
+        this.pool.start();
+        assertEquals(4, this.pool.start());
+        assertEquals(4, this.pool.start());
+        assertEquals(4, this.pool.getWorkerCount());
+    }
+
+    @Test
+    public void testStopOneAndStopAll() throws InterruptedException {
+        this.pool.start();
+        assertEquals(1, this.pool.stopOne());
+        //the stopped worker is not counted anymore, even when it has not ended yet
+        assertEquals(1, this.pool.getWorkerCount());
+        waitUntil(() -> this.pool.getRunningWorkerCount() == 1);
+        this.pool.stopAll();
+        assertEquals(0, this.pool.getWorkerCount());
+        waitUntil(() -> this.pool.getRunningWorkerCount() == 0);
+        final int count = this.iterations.get();
+        Thread.sleep(50);
+        assertEquals(count, this.iterations.get());
+    }
+
+    @Test
+    public void testPauseAndResume() throws InterruptedException {
+        this.pool.start();
+        waitUntil(() -> this.iterations.get() > 0);
+        this.pool.pause();
+        assertTrue(this.pool.isPaused());
+        waitUntil(() -> this.pool.getPausedWorkerCount() == 2);
+        final int count = this.iterations.get();
+        Thread.sleep(50);
+        assertEquals(count, this.iterations.get());
+        assertEquals(2, this.pool.getWorkerCount());
+
+        this.pool.resume();
+        assertFalse(this.pool.isPaused());
+        waitUntil(() -> this.iterations.get() > count);
+    }
+
+    @Test
+    public void testInteractiveRequestsOnlyDelayTheWorkers() throws InterruptedException {
+        this.pool.beginInteractiveRequest();
+        this.pool.start();
+        Thread.sleep(50);
+        assertEquals(0, this.iterations.get());
+        //the workers yield only for a limited time, even when the request does not end
+        waitUntil(() -> this.iterations.get() > 0);
+        this.pool.endInteractiveRequest();
+    }
+
+}
@@ -0,0 +1,156 @@
+/**
+ * Copyright 2019 Tobias Baum
+ *
+ * This file is part of GIMO-m.
+ *
+ * GIMO-m is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * GIMO-m is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ */
+package de.unihannover.gimo_m.mining.agents;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.function.ToDoubleFunction;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import de.unihannover.gimo_m.mining.agents.BeamSearchRuleCreation.PartialRule;
+import de.unihannover.gimo_m.mining.agents.GreedyRuleCreation.RuleQuality;
+import de.unihannover.gimo_m.mining.common.And;
+import de.unihannover.gimo_m.mining.common.Blackboard;
+import de.unihannover.gimo_m.mining.common.Leq;
+import de.unihannover.gimo_m.mining.common.Record;
+import de.unihannover.gimo_m.mining.common.RecordScheme;
+import de.unihannover.gimo_m.mining.common.RecordSet;
+import de.unihannover.gimo_m.mining.common.TestUtil;
+
+public class BeamSearchRuleCreationTest {
+
+    private static final ToDoubleFunction<RuleQuality> LAPLACE = (RuleQuality q) -> q.getLaplace();
+
+    private RecordScheme scheme;
+    private RecordSet records;
+    private Blackboard blackboard;
+    private int[] positiveRows;
+    private int[] negativeRows;
+
+    /**
+     * The target class is exactly "nA >= 3 and sA == 'x'" or "nA <= 0 and sA == 'y'". Neither condition alone
+     * separates it well, and nB is noise.
+     */
+    @Before
+    public void setUp() {
+        this.scheme = new RecordScheme(Arrays.asList("nA", "nB"), Arrays.asList("sA"));
+        final Record[] data = new Record[120];
+        final List<Integer> positives = new ArrayList<>();
+        final List<Integer> negatives = new ArrayList<>();
+        for (int i = 0; i < data.length; i++) {
+            final double a = (i / 2) % 6;
+            final double b = (i * 7) % 5;
+            final String s = i % 2 == 0 ? "x" : "y";
+            final boolean isTarget = (a >= 3 && s.equals("x")) || (a <= 0 && s.equals("y"));
+            data[i] = new Record(i, Arrays.asList(a, b), Arrays.asList(s), isTarget ? "T" : "F");
+            (isTarget ? positives : negatives).add(i);
+        }
+        this.records = new RecordSet(this.scheme, data);
+        this.positiveRows = positives.stream().mapToInt(Integer::intValue).toArray();
+        this.negativeRows = negatives.stream().mapToInt(Integer::intValue).toArray();
+        this.blackboard = TestUtil.createBlackboard(this.records);
+    }
+
+    @After
+    public void tearDown() {
+        this.blackboard.shutdown();
+    }
+
+    private List<PartialRule> findRules() {
+        final BeamSearchRuleCreation creation = new BeamSearchRuleCreation(this.blackboard, new Random(42));
+        return creation.findRules(
+                this.blackboard.restrictionsFor("T"),
+                this.records,
+                new HashSet<>(this.scheme.getColumnNames()),
+                this.positiveRows,
+                this.negativeRows,
+                LAPLACE,
+                Deadline.none());
+    }
+
+    private BitSet positiveCoverage(And rule) {
+        final BitSet ret = (BitSet) this.records.getCoverage(rule).clone();
+        for (final int row : this.negativeRows) {
+            ret.clear(row);
+        }
+        return ret;
+    }
+
+    @Test
+    public void testBeamFindsTheKnownBestRule() {
+        final List<PartialRule> found = this.findRules();
+        //the larger of the two parts of the target class
+        final BitSet target = new BitSet();
+        for (final int row : this.positiveRows) {
+            if (this.records.getRecords()[row].getValueDbl(0) >= 3) {
+                target.set(row);
+            }
+        }
+        final List<And> best = BeamSearchRuleCreation.selectDiverseRules(new ArrayList<>(found), 1, LAPLACE);
+        assertEquals(1, best.size());
+        assertEquals(target, this.records.getCoverage(best.get(0)));
+    }
+
+    @Test
+    public void testSelectedRulesFromTheBeamRespectTheMaximalOverlap() {
+        final List<And> selected = BeamSearchRuleCreation.selectDiverseRules(this.findRules(), 10, LAPLACE);
+        //the two parts of the target class do not overlap, so there are at least two rules
+        assertTrue(selected.size() > 1);
+        final BitSet covered = new BitSet();
+        for (final And rule : selected) {
+            final BitSet coverage = this.positiveCoverage(rule);
+            final BitSet overlap = (BitSet) coverage.clone();
+            overlap.and(covered);
+            assertTrue(rule.toString(),
+                    overlap.cardinality() <= BeamSearchRuleCreation.MAX_OVERLAP * coverage.cardinality());
+            covered.or(coverage);
+        }
+    }
+
+    private PartialRule partialRule(int id, int... positives) {
+        final long[] bits = new long[1];
+        for (final int p : positives) {
+            bits[0] |= 1L << p;
+        }
+        final RuleQuality total = new RuleQuality(0, 20, null);
+        return new PartialRule(new And(new Leq(this.scheme, this.scheme.getAbsIndex("nB"), id)),
+                bits, new long[1], new RuleQuality(0, positives.length, total));
+    }
+
+    @Test
+    public void testRulesThatMostlyOverlapWithBetterOnesAreSkipped() {
+        final PartialRule a = this.partialRule(1, 0, 1, 2, 3, 4, 5, 6, 7, 8, 9);
+        final PartialRule b = this.partialRule(2, 0, 1, 2, 3, 4, 5, 6, 7, 10);
+        final PartialRule c = this.partialRule(3, 10, 11, 12, 13, 14, 15);
+        final PartialRule d = this.partialRule(4, 16, 17);
+        assertEquals(Arrays.asList(a.getRule(), c.getRule(), d.getRule()),
+                BeamSearchRuleCreation.selectDiverseRules(new ArrayList<>(Arrays.asList(d, c, b, a)), 3, LAPLACE));
+        //the number of rules is limited
+        assertEquals(Arrays.asList(a.getRule(), c.getRule()),
+                BeamSearchRuleCreation.selectDiverseRules(new ArrayList<>(Arrays.asList(d, c, b, a)), 2, LAPLACE));
+    }
+
+}
@@ -0,0 +1,303 @@
+/**
+ * Copyright 2019 Tobias Baum
+ *
+ * This file is part of GIMO-m.
+ *
+ * GIMO-m is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * GIMO-m is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ */
+package de.unihannover.gimo_m.mining.agents;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map.Entry;
+import java.util.Random;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.function.ToDoubleFunction;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import de.unihannover.gimo_m.mining.agents.GreedyRuleCreation.ConditionResults;
+import de.unihannover.gimo_m.mining.agents.GreedyRuleCreation.RuleQuality;
+import de.unihannover.gimo_m.mining.common.And;
+import de.unihannover.gimo_m.mining.common.Blackboard;
+import de.unihannover.gimo_m.mining.common.Geq;
+import de.unihannover.gimo_m.mining.common.Leq;
+import de.unihannover.gimo_m.mining.common.OrdinalRule;
+import de.unihannover.gimo_m.mining.common.Record;
+import de.unihannover.gimo_m.mining.common.RecordScheme;
+import de.unihannover.gimo_m.mining.common.RecordSet;
+import de.unihannover.gimo_m.mining.common.TestUtil;
+import de.unihannover.gimo_m.util.Multiset;
+import de.unihannover.gimo_m.util.Util;
+
+public class GreedyRuleCreationTest {
+
+    /**
+     * The best numeric condition as determined by the search over boxed values that was used before the
+     * search over value ranks.
+     */
+    private static final class ReferenceCondition {
+        private final int column;
+        private final boolean leq;
+        private final RuleQuality quality;
+        private final double lowerValue;
+        private final double upperValue;
+
+        public ReferenceCondition(int column, boolean leq, RuleQuality quality, double lowerValue, double upperValue) {
+            this.column = column;
+            this.leq = leq;
+            this.quality = quality;
+            this.lowerValue = lowerValue;
+            this.upperValue = upperValue;
+        }
+    }
+
+    private RecordScheme scheme;
+    private RecordSet records;
+    private Blackboard blackboard;
+
+    @Before
+    public void setUp() {
+        this.scheme = new RecordScheme(Arrays.asList("nA", "nB", "nC"), Arrays.asList());
+        final Random random = new Random(42);
+        final Record[] data = new Record[400];
+        for (int i = 0; i < data.length; i++) {
+            final double a = random.nextInt(30);
+            final double b = random.nextInt(8) == 0 ? Double.NaN : random.nextInt(200) / 10.0;
+            final double c = random.nextInt(3);
+            final boolean isTarget = a + b / 2 + random.nextInt(10) > 25;
+            data[i] = new Record(i, Arrays.asList(a, b, c), Arrays.asList(), isTarget ? "T" : "F");
+        }
+        this.records = new RecordSet(this.scheme, data);
+        this.blackboard = TestUtil.createBlackboard(this.records);
+    }
+
+    @After
+    public void tearDown() {
+        this.blackboard.shutdown();
+    }
+
+    /**
+     * Returns a random part of the records, so that the values in the subset are only some of the values
+     * in the data set.
+     */
+    private static RecordSubset randomSubset(RecordSet records, Random random) {
+        final int[] must = new int[records.getRecords().length];
+        final int[] no = new int[records.getRecords().length];
+        int mustCount = 0;
+        int noCount = 0;
+        for (int row = 0; row < records.getRecords().length; row++) {
+            if (random.nextInt(4) != 0) {
+                continue;
+            }
+            if (records.getRecords()[row].getCorrectClass().equals("T")) {
+                must[mustCount++] = row;
+            } else {
+                no[noCount++] = row;
+            }
+        }
+        return new RecordSubset(records, Arrays.copyOf(must, mustCount), Arrays.copyOf(no, noCount));
+    }
+
+    private static RuleQuality totalCounts(RecordSubset subset) {
+        return new RuleQuality(subset.getMustRecordCount(), subset.getNoRecordCount(),
+                new RuleQuality(subset.getMustRecordCount(), subset.getNoRecordCount(), null));
+    }
+
+    private static ConditionResults findBestCondition(Blackboard blackboard, RecordSet records,
+            RecordSubset subset, ToDoubleFunction<RuleQuality> qualityFunction, boolean parallel) {
+        final GreedyRuleCreation creation = new GreedyRuleCreation(blackboard, new Random(1));
+        return creation.findBestCondition(
+                records,
+                subset,
+                new HashSet<>(records.getScheme().getColumnNames()),
+                new Multiset<>(),
+                totalCounts(subset),
+                qualityFunction,
+                blackboard.restrictionsFor("T").toCreationRestrictions(new And()),
+                Deadline.none(),
+                parallel);
+    }
+
+    private ConditionResults findBestCondition(RecordSubset subset, ToDoubleFunction<RuleQuality> qualityFunction) {
+        return findBestCondition(this.blackboard, this.records, subset, qualityFunction, false);
+    }
+
+    private static TreeMap<Double, Integer> countValues(Iterable<Record> records, int column) {
+        final TreeMap<Double, Integer> ret = new TreeMap<>();
+        for (final Record r : records) {
+            final double v = r.getValueDbl(column);
+            if (!Double.isNaN(v)) {
+                ret.merge(v, 1, Integer::sum);
+            }
+        }
+        return ret;
+    }
+
+    /**
+     * The numeric part of the search in GreedyRuleCreation before the value ranks were used.
+     */
+    private ReferenceCondition findBestConditionWithBoxedValues(
+            RecordSubset subset, ToDoubleFunction<RuleQuality> qualityFunction) {
+        final RuleQuality total = totalCounts(subset);
+        ReferenceCondition best = null;
+        for (int column = 0; column < this.scheme.getNumericColumnCount(); column++) {
+            final TreeMap<Double, Integer> mustCounts = countValues(subset.getMustRecords(), column);
+            final TreeMap<Double, Integer> noCounts = countValues(subset.getNoRecords(), column);
+            if (mustCounts.isEmpty() || noCounts.isEmpty()) {
+                continue;
+            }
+            final TreeMap<Double, Integer> values = new TreeMap<>(mustCounts);
+            for (final Double v : noCounts.keySet()) {
+                values.putIfAbsent(v, 0);
+            }
+            final int totalMust = mustCounts.values().stream().mapToInt(Integer::intValue).sum();
+            final int totalNo = noCounts.values().stream().mapToInt(Integer::intValue).sum();
+            int mustSum = 0;
+            int noSum = 0;
+            Double prevValue = null;
+            for (final Entry<Double, Integer> e : values.entrySet()) {
+                final double d = e.getKey();
+                if (prevValue != null) {
+                    final RuleQuality leq = new RuleQuality(mustSum, noSum, total);
+                    if (best == null || GreedyRuleCreation.compare(leq, best.quality, qualityFunction) > 0) {
+                        best = new ReferenceCondition(column, true, leq, prevValue, d);
+                    }
+                    final RuleQuality geq = new RuleQuality(totalMust - mustSum, totalNo - noSum, total);
+                    if (GreedyRuleCreation.compare(geq, best.quality, qualityFunction) > 0) {
+                        best = new ReferenceCondition(column, false, geq, prevValue, d);
+                    }
+                }
+                mustSum += mustCounts.getOrDefault(d, 0);
+                noSum += noCounts.getOrDefault(d, 0);
+                prevValue = d;
+            }
+        }
+        return best;
+    }
+
+    @Test
+    public void testNumericConditionMatchesTheSearchWithBoxedValues() {
+        final Random random = new Random(123);
+        for (int i = 0; i < 200; i++) {
+            final RecordSubset subset = randomSubset(this.records, random);
+            final ToDoubleFunction<RuleQuality> qualityFunction = GreedyRuleCreation.getRandomQualityFunction(random);
+
+            final ReferenceCondition expected = this.findBestConditionWithBoxedValues(subset, qualityFunction);
+            final ConditionResults actual = this.findBestCondition(subset, qualityFunction);
+            assertNotNull(actual);
+            final String msg = "run " + i + ": " + actual;
+            assertEquals(msg, expected.quality, actual.getQuality());
+            assertEquals(msg, expected.leq ? Leq.class : Geq.class, actual.getCondition().getClass());
+            assertEquals(msg, this.scheme.getAbsIndexFromNum(expected.column), actual.getCondition().getColumn());
+            //the threshold lies in the same gap between the subset's values
+            final double threshold = ((OrdinalRule) actual.getCondition()).getValue();
+            assertTrue(msg, threshold > expected.lowerValue);
+            assertTrue(msg, threshold < expected.upperValue);
+        }
+    }
+
+    @Test
+    public void testThresholdIsInTheMiddleOfTheSubsetGap() {
+        //only the values 0 and 29 of nA are in the subset, so the split table has many entries in between
+        final int[] must = new int[] {this.rowWithValue(0, 29.0)};
+        final int[] no = new int[] {this.rowWithValue(0, 0.0)};
+        final RecordSubset subset = new RecordSubset(this.records, must, no);
+        final ConditionResults actual = this.findBestCondition(subset, (RuleQuality q) -> q.getLaplace());
+        assertEquals(Leq.class, actual.getCondition().getClass());
+        assertEquals(this.scheme.getAbsIndexFromNum(0), actual.getCondition().getColumn());
+        final double threshold = ((OrdinalRule) actual.getCondition()).getValue();
+        assertEquals(Util.determineSplitPointWithFewDigits(14.0, 15.0), threshold, 0.0);
+    }
+
+    /**
+     * Creates a data set with many columns. Some of the columns are copies of others, so that their
+     * conditions tie.
+     */
+    private static RecordSet createWideRecords(Random random) {
+        final List<String> numericColumns = new ArrayList<>();
+        for (int i = 0; i < 24; i++) {
+            numericColumns.add("n" + i);
+        }
+        final List<String> stringColumns = new ArrayList<>();
+        for (int i = 0; i < 12; i++) {
+            stringColumns.add("s" + i);
+        }
+        final RecordScheme wideScheme = new RecordScheme(numericColumns, stringColumns);
+        final Record[] data = new Record[300];
+        for (int i = 0; i < data.length; i++) {
+            final List<Double> numbers = new ArrayList<>();
+            for (int c = 0; c < numericColumns.size(); c++) {
+                numbers.add((double) random.nextInt(c + 2));
+            }
+            numbers.set(5, numbers.get(3));
+            final List<String> strings = new ArrayList<>();
+            for (int c = 0; c < stringColumns.size(); c++) {
+                strings.add("v" + random.nextInt(c % 4 + 2));
+            }
+            strings.set(7, strings.get(2));
+            final boolean isTarget = numbers.get(3) + (strings.get(2).equals("v0") ? 2 : 0) + random.nextInt(4) > 4;
+            data[i] = new Record(i, numbers, strings, isTarget ? "T" : "F");
+        }
+        return new RecordSet(wideScheme, data);
+    }
+
+    @Test
+    public void testParallelColumnSearchMatchesSequentialSearch() {
+        final Random random = new Random(321);
+        final RecordSet wideRecords = createWideRecords(random);
+        final RecordScheme wideScheme = wideRecords.getScheme();
+        final Blackboard wideBlackboard = TestUtil.createBlackboard(wideRecords);
+        try {
+            final Set<Integer> tiedColumns = new HashSet<>(Arrays.asList(
+                    wideScheme.getAbsIndex("n3"), wideScheme.getAbsIndex("s2")));
+            int tieCount = 0;
+            for (int i = 0; i < 200; i++) {
+                final RecordSubset subset = randomSubset(wideRecords, random);
+                final ToDoubleFunction<RuleQuality> qualityFunction = GreedyRuleCreation.getRandomQualityFunction(random);
+                final ConditionResults sequential =
+                        findBestCondition(wideBlackboard, wideRecords, subset, qualityFunction, false);
+                final ConditionResults parallel =
+                        findBestCondition(wideBlackboard, wideRecords, subset, qualityFunction, true);
+                assertEquals("run " + i, sequential, parallel);
+                //the copies come later in the column order and therefore always lose the tie
+                assertNotEquals(wideScheme.getAbsIndex("n5"), parallel.getCondition().getColumn());
+                assertNotEquals(wideScheme.getAbsIndex("s7"), parallel.getCondition().getColumn());
+                if (tiedColumns.contains(parallel.getCondition().getColumn())) {
+                    tieCount++;
+                }
+            }
+            assertTrue(tieCount > 0);
+        } finally {
+            wideBlackboard.shutdown();
+        }
+    }
+
+    private int rowWithValue(int column, double value) {
+        for (int row = 0; row < this.records.getRecords().length; row++) {
+            if (this.records.getRecords()[row].getValueDbl(column) == value) {
+                return row;
+            }
+        }
+        throw new AssertionError("no row with value " + value);
+    }
+
+}
@@ -0,0 +1,129 @@
+/**
+ * Copyright 2019 Tobias Baum
+ *
+ * This file is part of GIMO-m.
+ *
+ * GIMO-m is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * GIMO-m is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ */
+package de.unihannover.gimo_m.mining.agents;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import de.unihannover.gimo_m.mining.common.And;
+import de.unihannover.gimo_m.mining.common.Blackboard;
+import de.unihannover.gimo_m.mining.common.Equals;
+import de.unihannover.gimo_m.mining.common.Geq;
+import de.unihannover.gimo_m.mining.common.Leq;
+import de.unihannover.gimo_m.mining.common.NondominatedResults;
+import de.unihannover.gimo_m.mining.common.Record;
+import de.unihannover.gimo_m.mining.common.RecordScheme;
+import de.unihannover.gimo_m.mining.common.RecordSet;
+import de.unihannover.gimo_m.mining.common.Rule;
+import de.unihannover.gimo_m.mining.common.RuleSet;
+import de.unihannover.gimo_m.mining.common.TargetFunction;
+import de.unihannover.gimo_m.mining.common.TestUtil;
+import de.unihannover.gimo_m.mining.common.ValuedResult;
+
+public class LocalSearchTest {
+
+    private RecordScheme scheme;
+    private RecordSet records;
+    private Blackboard sequentialBlackboard;
+    private Blackboard parallelBlackboard;
+
+    @Before
+    public void setUp() {
+        this.scheme = new RecordScheme(Arrays.asList("nA", "nB", "nC"), Arrays.asList("sA"));
+        final Random random = new Random(42);
+        final Record[] data = new Record[200];
+        for (int i = 0; i < data.length; i++) {
+            final double a = random.nextInt(10);
+            final double b = random.nextInt(10);
+            final double c = random.nextInt(3);
+            final String s = "v" + random.nextInt(3);
+            final boolean isTarget = (a > 5 && !s.equals("v0")) || (b < 2 && random.nextInt(3) != 0);
+            data[i] = new Record(i, Arrays.asList(a, b, c), Arrays.asList(s), isTarget ? "T" : "F");
+        }
+        this.records = new RecordSet(this.scheme, data);
+        this.sequentialBlackboard = TestUtil.createBlackboard(this.records);
+        this.parallelBlackboard = TestUtil.createBlackboard(this.records);
+    }
+
+    @After
+    public void tearDown() {
+        this.sequentialBlackboard.shutdown();
+        this.parallelBlackboard.shutdown();
+    }
+
+    private Rule randomCondition(Random random) {
+        //the values are integers, so conditions with different fractions often cover the same records and tie
+        final double value = random.nextInt(10) + random.nextInt(3) * 0.25;
+        switch (random.nextInt(4)) {
+        case 0:
+            return new Leq(this.scheme, this.scheme.getAbsIndex("nA"), value);
+        case 1:
+            return new Geq(this.scheme, this.scheme.getAbsIndex("nA"), value);
+        case 2:
+            return new Leq(this.scheme, this.scheme.getAbsIndex("nB"), value);
+        default:
+            return new Equals(this.scheme, this.scheme.getAbsIndex("sA"), "v" + random.nextInt(3));
+        }
+    }
+
+    /**
+     * Creates a rule set with enough rules that the neighborhood for adding a rule is evaluated in parallel.
+     */
+    private RuleSet randomRuleSet(Random random) {
+        RuleSet ret = RuleSet.create("F");
+        for (int i = 0; i < 12; i++) {
+            final And rule = random.nextBoolean()
+                    ? new And(this.randomCondition(random))
+                    : new And(this.randomCondition(random), this.randomCondition(random));
+            ret = ret.addRule("T", rule);
+        }
+        return ret;
+    }
+
+    private List<ValuedResult<RuleSet>> search(
+            Blackboard blackboard, RuleSet initial, TargetFunction target, int seed, boolean parallel) {
+        final LocalSearch search = new LocalSearch(blackboard, new Random(seed), new WorkerLoad());
+        final NondominatedResults<RuleSet> result = search.optimizeByLocalSearch(
+                blackboard.makeValidAndEvaluate(initial), target, parallel, Deadline.none());
+        return result.getItems();
+    }
+
+    @Test
+    public void testParallelSearchChoosesTheSameMovesAsSequentialSearch() {
+        final List<TargetFunction> targets = this.sequentialBlackboard.getObjectives().getTargetFunctions();
+        for (int seed = 0; seed < 20; seed++) {
+            final RuleSet initial = this.randomRuleSet(new Random(seed));
+            final TargetFunction target = targets.get(seed % targets.size());
+            final List<ValuedResult<RuleSet>> sequential =
+                    this.search(this.sequentialBlackboard, initial, target, seed, false);
+            final List<ValuedResult<RuleSet>> parallel =
+                    this.search(this.parallelBlackboard, initial, target, seed, true);
+            //the results contain every neighbor that was not dominated when it was evaluated, so they only
+            //  match when the same best neighbor was chosen in every step
+            assertTrue(sequential.size() > 1);
+            assertEquals("seed " + seed + ", " + target.getId(), sequential, parallel);
+        }
+    }
+
+}
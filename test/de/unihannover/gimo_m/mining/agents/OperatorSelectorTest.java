@@ -0,0 +1,168 @@
+/**
+ * Copyright 2019 Tobias Baum
+ *
+ * This file is part of GIMO-m.
+ *
+ * GIMO-m is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * GIMO-m is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ */
+package de.unihannover.gimo_m.mining.agents;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Test;
+
+import de.unihannover.gimo_m.mining.agents.OperatorSelector.Operator;
+import de.unihannover.gimo_m.mining.agents.OperatorSelector.Statistics;
+
+public class OperatorSelectorTest {
+
+    private static final long MILLI = 1_000_000;
+    private static final double EPSILON = 1e-9;
+
+    private static Map<Operator, Double> probabilities(OperatorSelector selector) {
+        final Map<Operator, Double> ret = new EnumMap<>(Operator.class);
+        for (final Statistics s : selector.getStatistics()) {
+            ret.put(s.getOperator(), s.getProbability());
+        }
+        return ret;
+    }
+
+    private static void useAll(OperatorSelector selector, int times, Operator productive) {
+        for (int i = 0; i < times; i++) {
+            for (final Operator o : Operator.values()) {
+                selector.record(o, o == productive ? 1 : 0, MILLI);
+            }
+        }
+    }
+
+    @Test
+    public void testDefaultOddsDuringWarmUp() {
+        final OperatorSelector selector = new OperatorSelector();
+        assertEquals(0.25, probabilities(selector).get(Operator.PATH_RELINKING), EPSILON);
+        assertEquals(1.0 / 12, probabilities(selector).get(Operator.NEW_RULE_SET_BASED_ON_BEST), EPSILON);
+
+        //one operator is very productive, but the others have not been used often enough yet
+        useAll(selector, OperatorSelector.MIN_USES - 1, Operator.LOCAL_SEARCH);
+        selector.record(Operator.LOCAL_SEARCH, 10, MILLI);
+        assertEquals(0.25, probabilities(selector).get(Operator.LOCAL_SEARCH), EPSILON);
+        assertEquals(2.0 / 12, probabilities(selector).get(Operator.NEW_RULE_SET_BY_BEAM_SEARCH), EPSILON);
+
+        //the default odds are also used when no operator has caused an improvement
+        final OperatorSelector unproductive = new OperatorSelector();
+        useAll(unproductive, OperatorSelector.MIN_USES, null);
+        assertEquals(0.25, probabilities(unproductive).get(Operator.NEW_RULE_SET), EPSILON);
+    }
+
+    @Test
+    public void testProbabilityMatchingAfterWarmUp() {
+        final OperatorSelector selector = new OperatorSelector();
+        useAll(selector, OperatorSelector.MIN_USES, Operator.LOCAL_SEARCH);
+        final Map<Operator, Double> p = probabilities(selector);
+        final double share = 1.0 - Operator.values().length * OperatorSelector.MIN_PROBABILITY;
+        assertEquals(OperatorSelector.MIN_PROBABILITY + share, p.get(Operator.LOCAL_SEARCH), EPSILON);
+        for (final Operator o : Operator.values()) {
+            if (o != Operator.LOCAL_SEARCH) {
+                assertEquals(OperatorSelector.MIN_PROBABILITY, p.get(o), EPSILON);
+            }
+        }
+
+        //the odds depend on the improvements per time, not per use
+        final OperatorSelector other = new OperatorSelector();
+        for (int i = 0; i < OperatorSelector.MIN_USES; i++) {
+            for (final Operator o : Operator.values()) {
+                if (o == Operator.LOCAL_SEARCH) {
+                    other.record(o, 1, MILLI);
+                } else if (o == Operator.NEW_RULE_SET) {
+                    other.record(o, 2, 2 * MILLI);
+                } else {
+                    other.record(o, 0, MILLI);
+                }
+            }
+        }
+        final Map<Operator, Double> p2 = probabilities(other);
+        assertEquals(OperatorSelector.MIN_PROBABILITY + share / 2, p2.get(Operator.LOCAL_SEARCH), EPSILON);
+        assertEquals(OperatorSelector.MIN_PROBABILITY + share / 2, p2.get(Operator.NEW_RULE_SET), EPSILON);
+        assertEquals(1.0, p2.values().stream().mapToDouble(Double::doubleValue).sum(), EPSILON);
+    }
+
+    @Test
+    public void testOldObservationsDecay() {
+        final OperatorSelector selector = new OperatorSelector();
+        useAll(selector, 20, Operator.PATH_RELINKING);
+        assertTrue(probabilities(selector).get(Operator.PATH_RELINKING) > 0.5);
+
+        //now another operator is the productive one. the estimates follow, because old observations lose weight
+        double lastPathRelinking = probabilities(selector).get(Operator.PATH_RELINKING);
+        for (int i = 0; i < 30; i++) {
+            useAll(selector, 1, Operator.NEW_RULE_SET_BY_BEAM_SEARCH);
+            final double cur = probabilities(selector).get(Operator.PATH_RELINKING);
+            assertTrue(cur < lastPathRelinking);
+            lastPathRelinking = cur;
+        }
+        final Map<Operator, Double> p = probabilities(selector);
+        assertTrue(p.get(Operator.NEW_RULE_SET_BY_BEAM_SEARCH) > 0.5);
+        assertTrue(p.get(Operator.PATH_RELINKING) < 0.3);
+
+        //the totals are not decayed
+        for (final Statistics s : selector.getStatistics()) {
+            assertEquals(50, s.getUses());
+        }
+        //the recent productivity weights each use with DECAY^(number of later uses)
+        double recentImprovements = 0.0;
+        double recentMillis = 0.0;
+        for (int age = 0; age < 50; age++) {
+            final double weight = Math.pow(OperatorSelector.DECAY, age);
+            recentImprovements += age >= 30 ? weight : 0.0;
+            recentMillis += weight;
+        }
+        assertEquals(recentImprovements / recentMillis,
+                statisticsFor(selector, Operator.PATH_RELINKING).getRecentImprovementsPerMilli(), EPSILON);
+    }
+
+    private static Statistics statisticsFor(OperatorSelector selector, Operator operator) {
+        for (final Statistics s : selector.getStatistics()) {
+            if (s.getOperator() == operator) {
+                return s;
+            }
+        }
+        throw new AssertionError("no statistics for " + operator);
+    }
+
+    @Test
+    public void testSelectionShiftsTowardsProductiveOperator() {
+        final OperatorSelector selector = new OperatorSelector();
+        final Random random = new Random(42);
+        final Map<Operator, Integer> counts = new EnumMap<>(Operator.class);
+        for (int i = 0; i < 3000; i++) {
+            final Operator o = selector.select(random);
+            counts.merge(o, 1, Integer::sum);
+            final double successRate = o == Operator.NEW_RULE_SET_BASED_ON_BEST ? 0.5 : 0.05;
+            selector.record(o, random.nextDouble() < successRate ? 1 : 0, MILLI);
+            for (final double p : probabilities(selector).values()) {
+                assertTrue(p >= OperatorSelector.MIN_PROBABILITY - EPSILON);
+            }
+        }
+        //by default, this operator has the lowest odds
+        for (final Operator o : Operator.values()) {
+            if (o != Operator.NEW_RULE_SET_BASED_ON_BEST) {
+                assertTrue(o.toString(), counts.get(Operator.NEW_RULE_SET_BASED_ON_BEST) > counts.get(o));
+                //but the others are still used from time to time
+                assertTrue(o.toString(), counts.get(o) > 3000 * OperatorSelector.MIN_PROBABILITY / 2);
+            }
+        }
+    }
+
+}
@@ -0,0 +1,133 @@
+/**
+ * Copyright 2019 Tobias Baum
+ *
+ * This file is part of GIMO-m.
+ *
+ * GIMO-m is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * GIMO-m is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ */
+package de.unihannover.gimo_m.mining.agents;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Test;
+
+import de.unihannover.gimo_m.mining.agents.PathRelinking.Position;
+import de.unihannover.gimo_m.mining.agents.PathRelinking.RelinkAction;
+import de.unihannover.gimo_m.mining.common.And;
+import de.unihannover.gimo_m.mining.common.Equals;
+import de.unihannover.gimo_m.mining.common.Geq;
+import de.unihannover.gimo_m.mining.common.Leq;
+import de.unihannover.gimo_m.mining.common.ObjectiveStrategy;
+import de.unihannover.gimo_m.mining.common.Record;
+import de.unihannover.gimo_m.mining.common.RecordScheme;
+import de.unihannover.gimo_m.mining.common.RecordSet;
+import de.unihannover.gimo_m.mining.common.ResultData;
+import de.unihannover.gimo_m.mining.common.Rule;
+import de.unihannover.gimo_m.mining.common.RuleSet;
+import de.unihannover.gimo_m.mining.common.ValuedResult;
+import de.unihannover.gimo_m.objectives.StandardObjectiveStrategy;
+
+public class PathRelinkingTest {
+
+    private static final String[] CLASSES = {"a", "b", "c"};
+    private static final RecordScheme SCHEME = new RecordScheme(Arrays.asList("nA", "nB"), Arrays.asList("sA"));
+
+    private static RecordSet createRecords(Random random) {
+        final Record[] records = new Record[80];
+        for (int i = 0; i < records.length; i++) {
+            final double a = random.nextInt(10) == 0 ? Double.NaN : random.nextInt(5) - 2;
+            final double b = random.nextInt(5) - 2;
+            final String s = random.nextInt(10) == 0 ? null : "v" + random.nextInt(3);
+            records[i] = new Record(i, Arrays.asList(a, b), Arrays.asList(s), CLASSES[random.nextInt(CLASSES.length)]);
+        }
+        return new RecordSet(SCHEME, records);
+    }
+
+    private static Rule createCondition(Random random) {
+        switch (random.nextInt(5)) {
+        case 0:
+            return new Leq(SCHEME, SCHEME.getAbsIndex("nA"), random.nextInt(5) - 2);
+        case 1:
+            return new Geq(SCHEME, SCHEME.getAbsIndex("nA"), random.nextInt(5) - 2);
+        case 2:
+            return new Leq(SCHEME, SCHEME.getAbsIndex("nB"), random.nextInt(5) - 2);
+        case 3:
+            return new Geq(SCHEME, SCHEME.getAbsIndex("nB"), random.nextInt(5) - 2);
+        default:
+            return new Equals(SCHEME, SCHEME.getAbsIndex("sA"), "v" + random.nextInt(3));
+        }
+    }
+
+    private static RuleSet createRuleSet(Random random) {
+        RuleSet ret = RuleSet.create(CLASSES[random.nextInt(CLASSES.length)]);
+        final int ruleCount = random.nextInt(6);
+        for (int i = 0; i < ruleCount; i++) {
+            final And rule = random.nextBoolean()
+                    ? new And(createCondition(random))
+                    : new And(createCondition(random), createCondition(random));
+            ret = ret.addRule(CLASSES[random.nextInt(CLASSES.length)], rule);
+        }
+        return ret;
+    }
+
+    private static void assertSameMisclassificationsAndFeatures(ValuedResult<?> expected, ValuedResult<?> actual) {
+        for (int i = 0; i < CLASSES.length; i++) {
+            assertEquals("misclassifications for " + CLASSES[i], expected.getValue(i), actual.getValue(i), 0.0);
+        }
+        assertEquals("feature count", expected.getValue(CLASSES.length + 1), actual.getValue(CLASSES.length + 1), 0.0);
+    }
+
+    @Test
+    public void testDeltaEvaluationMatchesFullEvaluationOnRandomPaths() {
+        final Map<String, Integer> counts = new LinkedHashMap<>();
+        for (final String cls : CLASSES) {
+            counts.put(cls, 1);
+        }
+        final ObjectiveStrategy objectives = new StandardObjectiveStrategy(counts);
+        for (int seed = 0; seed < 200; seed++) {
+            final Random random = new Random(seed);
+            final RecordSet records = createRecords(random);
+            final ResultData resultData = new ResultData(records);
+            final RuleSet start = createRuleSet(random);
+            final RuleSet end = createRuleSet(random);
+
+            final List<RelinkAction> actions = PathRelinking.determineRelinkActions(start, end, records);
+            final Position pos = new Position(start, records, objectives);
+            while (!actions.isEmpty()) {
+                for (final RelinkAction action : actions) {
+                    final ValuedResult<RuleSet> expected =
+                            ValuedResult.create(action.apply(pos.getRuleSet()), records, resultData, objectives);
+                    assertSameMisclassificationsAndFeatures(expected, action.evaluate(pos, records));
+                }
+                final RelinkAction chosen = actions.remove(random.nextInt(actions.size()));
+                final RuleSet expectedRuleSet = chosen.apply(pos.getRuleSet());
+                final BitSet changedRows = pos.moveTo(chosen, records);
+                for (final RelinkAction remaining : actions) {
+                    remaining.positionChanged(changedRows);
+                }
+                assertEquals(expectedRuleSet, pos.getRuleSet());
+                assertArrayEquals(
+                        ValuedResult.create(pos.getRuleSet(), records, resultData, objectives).getAllValues(),
+                        pos.getValue().getAllValues(),
+                        0.0);
+            }
+        }
+    }
+
+}
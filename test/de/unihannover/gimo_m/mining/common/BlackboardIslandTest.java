@@ -0,0 +1,113 @@
+/**
+ * Copyright 2019 Tobias Baum
+ *
+ * This file is part of GIMO-m.
+ *
+ * GIMO-m is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * GIMO-m is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ */
+package de.unihannover.gimo_m.mining.common;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class BlackboardIslandTest {
+
+    private RecordScheme scheme;
+    private Blackboard global;
+    private Blackboard island;
+    private RuleSet perfectRuleSet;
+
+    /**
+     * The class is "T" exactly when sA is "x", so a rule on sA classifies every record correctly.
+     */
+    @Before
+    public void setUp() {
+        this.scheme = new RecordScheme(Arrays.asList("nA"), Arrays.asList("sA"));
+        final Record[] records = new Record[30];
+        for (int i = 0; i < records.length; i++) {
+            final String s = i % 3 == 0 ? "x" : "y";
+            records[i] = new Record(i, Arrays.asList((double) (i % 7)), Arrays.asList(s), s.equals("x") ? "T" : "F");
+        }
+        this.global = TestUtil.createBlackboard(new RecordSet(this.scheme, records));
+        this.global.addDefaultRulesForAllClasses();
+        this.island = this.global.createIsland();
+        this.perfectRuleSet = RuleSet.create("F").addRule("T",
+                new And(new Equals(this.scheme, this.scheme.getAbsIndex("sA"), "x")));
+    }
+
+    @After
+    public void tearDown() {
+        this.global.shutdown();
+    }
+
+    private static boolean frontContains(Blackboard blackboard, RuleSet rs) {
+        for (final ValuedResult<RuleSet> r : blackboard.getParetoSnapshot().getItems()) {
+            if (r.getItem().equals(rs)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Test
+    public void testEmigrantsArriveInTheGlobalFront() {
+        this.island.simplifyEvaluateAndAdd(this.perfectRuleSet);
+        assertTrue(frontContains(this.island, this.perfectRuleSet));
+        assertFalse(frontContains(this.global, this.perfectRuleSet));
+
+        this.global.migrate();
+        assertTrue(frontContains(this.global, this.perfectRuleSet));
+    }
+
+    @Test
+    public void testImmigrantsArriveOnTheIslands() {
+        this.global.simplifyEvaluateAndAdd(this.perfectRuleSet);
+        assertFalse(frontContains(this.island, this.perfectRuleSet));
+
+        this.global.migrate();
+        assertTrue(frontContains(this.island, this.perfectRuleSet));
+    }
+
+    @Test
+    public void testInvalidEmigrantsAreDroppedOnArrival() {
+        this.island.simplifyEvaluateAndAdd(this.perfectRuleSet);
+        //the island's front is only revalidated during the migration, and its change log still contains the rule set
+        this.global.addRejectedColumns(Collections.singleton("sA"));
+        assertTrue(frontContains(this.island, this.perfectRuleSet));
+
+        this.global.migrate();
+        assertFalse(frontContains(this.island, this.perfectRuleSet));
+        assertFalse(frontContains(this.global, this.perfectRuleSet));
+        for (final ValuedResult<RuleSet> r : this.global.getParetoSnapshot().getItems()) {
+            assertFalse(r.toString(), r.getItem().toString().contains("sA"));
+        }
+    }
+
+    @Test
+    public void testIslandsShareTheLimitsButNotTheFilteredView() {
+        final Blackboard island2 = this.global.createIsland();
+        assertNotSame(this.island.getNavigationLimits(), island2.getNavigationLimits());
+        final TargetFunction target = this.global.getCurrentTargetFunction();
+        this.global.getNavigationLimits().setLimit(target, 1000.0);
+        assertEquals(1000.0, this.island.getNavigationLimits().getLimit(target), 0.0);
+        assertEquals(1000.0, island2.getNavigationLimits().getLimit(target), 0.0);
+    }
+
+}
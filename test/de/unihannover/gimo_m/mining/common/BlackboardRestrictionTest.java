@@ -0,0 +1,117 @@
+/**
+ * Copyright 2019 Tobias Baum
+ *
+ * This file is part of GIMO-m.
+ *
+ * GIMO-m is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * GIMO-m is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ */
+package de.unihannover.gimo_m.mining.common;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class BlackboardRestrictionTest {
+
+    private RecordScheme scheme;
+    private Blackboard blackboard;
+
+    /**
+     * The class is "T" when sA is "x" or nA is at most 1, so rules on both columns are in the front.
+     */
+    @Before
+    public void setUp() throws InterruptedException {
+        this.scheme = new RecordScheme(Arrays.asList("nA", "nB"), Arrays.asList("sA"));
+        final Record[] records = new Record[30];
+        for (int i = 0; i < records.length; i++) {
+            final String s = i % 3 == 0 ? "x" : "y";
+            final double a = i % 7;
+            records[i] = new Record(i, Arrays.asList(a, (double) (i % 4)), Arrays.asList(s),
+                    s.equals("x") || a <= 1.0 ? "T" : "F");
+        }
+        this.blackboard = TestUtil.createBlackboard(new RecordSet(this.scheme, records));
+        this.blackboard.addDefaultRulesForAllClasses();
+        this.blackboard.simplifyEvaluateAndAdd(RuleSet.create("F").addRule("T",
+                new And(new Equals(this.scheme, this.scheme.getAbsIndex("sA"), "x"))));
+        this.blackboard.simplifyEvaluateAndAdd(RuleSet.create("F").addRule("T",
+                new And(new Leq(this.scheme, this.scheme.getAbsIndex("nA"), 1.0))));
+        assertTrue(this.frontMentions("sA"));
+        assertTrue(this.frontMentions("nA"));
+    }
+
+    @After
+    public void tearDown() {
+        this.blackboard.shutdown();
+    }
+
+    private boolean frontMentions(String column) {
+        for (final ValuedResult<RuleSet> r : this.blackboard.getParetoSnapshot().getItems()) {
+            if (r.getItem().toString().contains(column)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void decideABurst() {
+        final Blackboard.RuleRestrictions restrictions = this.blackboard.restrictionsFor("T");
+        restrictions.keepAsCandidate(Collections.singletonList(
+                new And(new Leq(this.scheme, this.scheme.getAbsIndex("nB"), 1.0))));
+        restrictions.reject(Collections.singletonList(
+                new And(new Leq(this.scheme, this.scheme.getAbsIndex("nB"), 0.0))));
+        this.blackboard.addRejectedColumns(Collections.singleton("sA"));
+        this.blackboard.addRejectedColumns(Collections.singleton("nA"));
+    }
+
+    @Test
+    public void testBatchRevalidatesOnceAfterAllChanges() {
+        final int removalPasses = this.blackboard.getRemovalPassCount();
+        final int refills = this.blackboard.getRefillCount();
+        this.blackboard.applyRestrictionChanges(this::decideABurst);
+        assertEquals(removalPasses + 1, this.blackboard.getRemovalPassCount());
+        assertEquals(refills + 1, this.blackboard.getRefillCount());
+
+        assertFalse(this.frontMentions("sA"));
+        assertFalse(this.frontMentions("nA"));
+        assertEquals(removalPasses + 1, this.blackboard.getRemovalPassCount());
+    }
+
+    @Test
+    public void testBurstOfSingleChangesIsRevalidatedOnce() throws InterruptedException {
+        final int removalPasses = this.blackboard.getRemovalPassCount();
+        final int refills = this.blackboard.getRefillCount();
+        this.decideABurst();
+        TestUtil.waitUntil(() -> this.blackboard.getRefillCount() > refills);
+        assertEquals(removalPasses + 1, this.blackboard.getRemovalPassCount());
+        assertEquals(refills + 1, this.blackboard.getRefillCount());
+        assertFalse(this.frontMentions("sA"));
+        assertFalse(this.frontMentions("nA"));
+    }
+
+    @Test
+    public void testReadsDoNotSeeInvalidEntriesBeforeTheRevalidation() {
+        final int refills = this.blackboard.getRefillCount();
+        this.blackboard.addRejectedColumns(Collections.singleton("sA"));
+        assertFalse(this.frontMentions("sA"));
+        assertTrue(this.frontMentions("nA"));
+        this.blackboard.addRejectedColumns(Collections.singleton("nA"));
+        assertFalse(this.frontMentions("nA"));
+        assertEquals(refills, this.blackboard.getRefillCount());
+    }
+
+}
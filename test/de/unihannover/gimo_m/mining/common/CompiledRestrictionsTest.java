@@ -0,0 +1,86 @@
+/**
+ * Copyright 2019 Tobias Baum
+ *
+ * This file is part of GIMO-m.
+ *
+ * GIMO-m is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * GIMO-m is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ */
+package de.unihannover.gimo_m.mining.common;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class CompiledRestrictionsTest {
+
+    private RecordScheme scheme;
+    private Blackboard blackboard;
+
+    @Before
+    public void setUp() {
+        this.scheme = new RecordScheme(Arrays.asList("nA", "nB"), Arrays.asList("sA"));
+        final RecordSet records = new RecordSet(this.scheme, new Record[] {
+                new Record(1, Arrays.asList(0.1, 0.1), Arrays.asList("a"), "x"),
+                new Record(2, Arrays.asList(0.2, 0.2), Arrays.asList("b"), "y"),
+                new Record(3, Arrays.asList(0.3, 0.3), Arrays.asList("c"), "y")
+        });
+        this.blackboard = TestUtil.createBlackboard(records);
+    }
+
+    private Leq leq(String column, double val) {
+        return new Leq(this.scheme, this.scheme.getAbsIndex(column), val);
+    }
+
+    private Equals eq(String column, String val) {
+        return new Equals(this.scheme, this.scheme.getAbsIndex(column), val);
+    }
+
+    @Test
+    public void testUnaffectedRuleSetIsReturnedUnchanged() {
+        final RuleSet rs = RuleSet.create("y").addRule("x", new And(this.leq("nA", 0.15)));
+        assertSame(rs, this.blackboard.makeValid(rs));
+    }
+
+    @Test
+    public void testRejectedPatternIsRemoved() {
+        this.blackboard.restrictionsFor("x").reject(RulePattern.parse(this.scheme, "nA <= * and *"));
+        final RuleSet rs = RuleSet.create("y")
+                .addRule("x", new And(this.leq("nA", 0.15)))
+                .addRule("x", new And(this.eq("sA", "a")));
+        assertEquals(RuleSet.create("y").addRule("x", new And(this.eq("sA", "a"))), this.blackboard.makeValid(rs));
+    }
+
+    @Test
+    public void testAcceptedRuleIsAddedOnlyOnce() {
+        final And accepted = new And(this.eq("sA", "a"));
+        this.blackboard.restrictionsFor("x").accept(Collections.singletonList(accepted));
+        final RuleSet expected = RuleSet.create("y").addRule("x", accepted);
+        final RuleSet valid = this.blackboard.makeValid(RuleSet.create("y"));
+        assertEquals(expected, valid);
+        assertSame(valid, this.blackboard.makeValid(valid));
+        assertSame(expected, this.blackboard.makeValid(expected));
+    }
+
+    @Test
+    public void testRuleWithRejectedColumnIsRemoved() {
+        this.blackboard.addRejectedColumns(Collections.singleton("nB"));
+        final RuleSet rs = RuleSet.create("y")
+                .addRule("x", new And(this.leq("nB", 0.15)))
+                .addRule("x", new And(this.leq("nA", 0.15)));
+        assertEquals(RuleSet.create("y").addRule("x", new And(this.leq("nA", 0.15))), this.blackboard.makeValid(rs));
+    }
+
+}
@@ -0,0 +1,70 @@
+/**
+ * Copyright 2019 Tobias Baum
+ *
+ * This file is part of GIMO-m.
+ *
+ * GIMO-m is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * GIMO-m is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ */
+package de.unihannover.gimo_m.mining.common;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import java.util.Arrays;
+
+import org.junit.Test;
+
+public class NavigationLimitsTest {
+
+    private static final TargetFunction FIRST = new TargetFunction("first", (ValuedResult<?> r) -> r.getValue(0), "");
+
+    private static final ValuedResult<String> A = new ValuedResult<>("a", 1, 5);
+    private static final ValuedResult<String> B = new ValuedResult<>("b", 3, 3);
+    private static final ValuedResult<String> C = new ValuedResult<>("c", 5, 1);
+
+    @Test
+    public void testFilterKeepsItemsWithinTheLimitsAndCachesTheView() {
+        final NavigationLimits limits = new NavigationLimits();
+        final ParetoSnapshot<String> snapshot = new ParetoSnapshot<>(1, Arrays.asList(A, B, C));
+        assertSame(snapshot, limits.filter(snapshot));
+
+        limits.setLimit(FIRST, 3);
+        final ParetoSnapshot<String> filtered = limits.filter(snapshot);
+        assertEquals(Arrays.asList(A, B), filtered.getItems());
+        assertSame(filtered, limits.filter(snapshot));
+
+        limits.setLimit(FIRST, 2);
+        assertEquals(Arrays.asList(A), limits.filter(snapshot).getItems());
+    }
+
+    @Test
+    public void testSeparateCachesShareTheLimits() {
+        final NavigationLimits global = new NavigationLimits();
+        final NavigationLimits island1 = global.withSeparateCache();
+        final NavigationLimits island2 = global.withSeparateCache();
+        final ParetoSnapshot<String> front1 = new ParetoSnapshot<>(1, Arrays.asList(A, B, C));
+        final ParetoSnapshot<String> front2 = new ParetoSnapshot<>(1, Arrays.asList(B, C));
+
+        global.setLimit(FIRST, 3);
+        final ParetoSnapshot<String> filtered1 = island1.filter(front1);
+        final ParetoSnapshot<String> filtered2 = island2.filter(front2);
+        assertEquals(Arrays.asList(A, B), filtered1.getItems());
+        assertEquals(Arrays.asList(B), filtered2.getItems());
+        //filtering the other front did not replace the cached view
+        assertSame(filtered1, island1.filter(front1));
+        assertSame(filtered2, island2.filter(front2));
+
+        island1.removeLimit(FIRST);
+        assertSame(front2, island2.filter(front2));
+        assertSame(front1, global.filter(front1));
+    }
+
+}
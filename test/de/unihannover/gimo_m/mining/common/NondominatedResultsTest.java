@@ -0,0 +1,216 @@
+/**
+ * Copyright 2019 Tobias Baum
+ *
+ * This file is part of GIMO-m.
+ *
+ * GIMO-m is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * GIMO-m is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ */
+package de.unihannover.gimo_m.mining.common;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.Test;
+
+public class NondominatedResultsTest {
+
+    private static ValuedResult<String> vr(String item, double... values) {
+        return new ValuedResult<>(item, values);
+    }
+
+    @Test
+    public void testDominatedItemIsNotAdded() {
+        final NondominatedResults<String> r = new NondominatedResults<>();
+        assertTrue(r.add(vr("a", 1, 1, 1)));
+        assertFalse(r.add(vr("b", 1, 2, 1)));
+        assertEquals(Arrays.asList(vr("a", 1, 1, 1)), r.getItems());
+    }
+
+    @Test
+    public void testDominatedItemsAreRemoved() {
+        final NondominatedResults<String> r = new NondominatedResults<>();
+        assertTrue(r.add(vr("a", 2, 1, 3)));
+        assertTrue(r.add(vr("b", 1, 3, 3)));
+        assertTrue(r.add(vr("c", 3, 0, 3)));
+        assertTrue(r.add(vr("d", 1, 1, 3)));
+        assertEquals(Arrays.asList(vr("d", 1, 1, 3), vr("c", 3, 0, 3)), r.getItems());
+    }
+
+    @Test
+    public void testItemsWithSameValuesAreGrouped() {
+        final NondominatedResults<String> r = new NondominatedResults<>();
+        assertTrue(r.add(vr("a", 1, 2)));
+        assertTrue(r.add(vr("b", 2, 1)));
+        assertTrue(r.add(vr("c", 1, 2)));
+        assertFalse(r.add(vr("a", 1, 2)));
+        assertEquals(2, r.getItemsSorted().size());
+        assertEquals(Arrays.asList(vr("a", 1, 2), vr("c", 1, 2), vr("b", 2, 1)), r.getItems());
+    }
+
+    @Test
+    public void testSnapshotIsOnlyRecreatedAfterChange() {
+        final NondominatedResults<String> r = new NondominatedResults<>();
+        r.add(vr("a", 1, 2));
+        final ParetoSnapshot<String> s1 = r.snapshot();
+        assertFalse(r.add(vr("b", 2, 3)));
+        assertFalse(r.add(vr("a", 1, 2)));
+        assertSame(s1, r.snapshot());
+        assertTrue(r.add(vr("c", 2, 1)));
+        final ParetoSnapshot<String> s2 = r.snapshot();
+        assertTrue(s2.getVersion() > s1.getVersion());
+        assertEquals(Arrays.asList(vr("a", 1, 2)), s1.getItems());
+        assertEquals(Arrays.asList(vr("a", 1, 2), vr("c", 2, 1)), s2.getItems());
+    }
+
+    @Test
+    public void testReplayingChangesGivesCurrentContent() {
+        final Random random = new Random(7);
+        final NondominatedResults<String> r = new NondominatedResults<>();
+        r.enableChangeLog(100_000);
+        final Set<ValuedResult<String>> replayed = new HashSet<>();
+        long version = r.getVersion();
+        for (int i = 0; i < 500; i++) {
+            r.add(vr("i" + (i % 300), random.nextInt(6), random.nextInt(6), random.nextInt(6)));
+            if (i % 50 == 0) {
+                final String suffix = Integer.toString(i % 7);
+                r.removeIf((String s) -> s.endsWith(suffix));
+            }
+            if (i % 10 == 0) {
+                for (final ParetoChange<String> c : r.getChangesSince(version)) {
+                    if (c.getType() == ParetoChange.Type.ADDED) {
+                        assertTrue(replayed.add(c.getItem()));
+                    } else {
+                        assertTrue(replayed.remove(c.getItem()));
+                    }
+                    version = c.getVersion();
+                }
+                assertEquals(r.getVersion(), version);
+                assertEquals(new HashSet<>(r.getItems()), replayed);
+            }
+        }
+    }
+
+    @Test
+    public void testTooOldChangesAreUnknown() {
+        final NondominatedResults<String> r = new NondominatedResults<>();
+        r.add(vr("a", 5, 5));
+        r.enableChangeLog(2);
+        assertNull(r.getChangesSince(0));
+        r.add(vr("b", 4, 6));
+        r.add(vr("c", 6, 4));
+        assertEquals(2, r.getChangesSince(1).size());
+        //removes three and adds one, so that the capacity is exceeded even for a single version
+        r.add(vr("d", 3, 3));
+        assertNull(r.getChangesSince(1));
+        assertNull(r.getChangesSince(3));
+        assertEquals(0, r.getChangesSince(4).size());
+    }
+
+    @Test
+    public void testSameResultAsNaiveImplementation() {
+        final Random random = new Random(123);
+        for (int run = 0; run < 20; run++) {
+            final NondominatedResults<String> r = new NondominatedResults<>();
+            final List<ValuedResult<String>> naive = new ArrayList<>();
+            for (int i = 0; i < 300; i++) {
+                final ValuedResult<String> c = vr("i" + i, random.nextInt(8), random.nextInt(8), random.nextInt(8), random.nextInt(8));
+                assertEquals(addNaive(naive, c), r.add(c));
+            }
+            assertEquals(new HashSet<>(naive), new HashSet<>(r.getItems()));
+        }
+    }
+
+    @Test
+    public void testEpsilonDominanceKeepsOneItemPerBox() {
+        final NondominatedResults<String> r = new NondominatedResults<>(new double[] {10, 10});
+        assertTrue(r.add(vr("a", 15, 50)));
+        assertTrue(r.add(vr("b", 12, 51)));
+        assertTrue(r.add(vr("c", 12, 51)));
+        assertFalse(r.add(vr("d", 18, 52)));
+        assertFalse(r.add(vr("e", 25, 55)));
+        assertTrue(r.add(vr("f", 25, 45)));
+        assertEquals(Arrays.asList(vr("b", 12, 51), vr("c", 12, 51), vr("f", 25, 45)), r.getItems());
+        assertTrue(r.add(vr("g", 9, 40)));
+        assertEquals(Arrays.asList(vr("g", 9, 40)), r.getItems());
+    }
+
+    @Test
+    public void testEpsilonDominanceCoversDiscardedItems() {
+        final Random random = new Random(42);
+        final double[] epsilons = {5, 5, 5};
+        final NondominatedResults<String> r = new NondominatedResults<>(epsilons);
+        final List<ValuedResult<String>> all = new ArrayList<>();
+        for (int i = 0; i < 2000; i++) {
+            final ValuedResult<String> c = vr("i" + i, random.nextInt(100), random.nextInt(100), random.nextInt(100));
+            all.add(c);
+            r.add(c);
+        }
+        //at most one item per box on the front of a 20x20x20 grid
+        assertTrue(r.getItemsSorted().size() <= 3 * 20 * 20);
+        for (final ValuedResult<String> c : all) {
+            boolean covered = false;
+            for (final ValuedResult<String> kept : r.getItems()) {
+                covered |= isEpsilonDominated(c, kept, epsilons);
+            }
+            assertTrue(c.toString(), covered);
+        }
+    }
+
+    @Test
+    public void testSnapshotIsNondominatedMatchesAdd() {
+        final Random random = new Random(123);
+        final NondominatedResults<String> plain = new NondominatedResults<>();
+        final NondominatedResults<String> epsilon = new NondominatedResults<>(new double[] {5, 5, 5});
+        for (int i = 0; i < 2000; i++) {
+            final ValuedResult<String> c = vr("i" + i, random.nextInt(40), random.nextInt(40), random.nextInt(40));
+            assertEquals(c.toString(), plain.snapshot().isNondominated(c), plain.add(c));
+            assertEquals(c.toString(), epsilon.snapshot().isNondominated(c), epsilon.add(c));
+        }
+    }
+
+    private static boolean isEpsilonDominated(ValuedResult<String> item, ValuedResult<String> by, double[] epsilons) {
+        for (int i = 0; i < epsilons.length; i++) {
+            if (by.getValue(i) - epsilons[i] >= item.getValue(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean addNaive(List<ValuedResult<String>> items, ValuedResult<String> candidate) {
+        for (final ValuedResult<String> cur : items) {
+            if (cur.dominates(candidate)) {
+                return false;
+            }
+        }
+        final Iterator<ValuedResult<String>> iter = items.iterator();
+        while (iter.hasNext()) {
+            final ValuedResult<String> cur = iter.next();
+            if (candidate.dominates(cur)) {
+                iter.remove();
+            }
+        }
+        items.add(candidate);
+        return true;
+    }
+
+}
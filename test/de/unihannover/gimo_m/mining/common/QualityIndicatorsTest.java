@@ -0,0 +1,61 @@
+/**
+ * Copyright 2019 Tobias Baum
+ *
+ * This file is part of GIMO-m.
+ *
+ * GIMO-m is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * GIMO-m is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ */
+package de.unihannover.gimo_m.mining.common;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Test;
+
+public class QualityIndicatorsTest {
+
+    private static final double EPSILON = 0.02;
+
+    private static final TargetFunction FIRST = new TargetFunction("first", (ValuedResult<?> r) -> r.getValue(0), "");
+
+    private static ParetoSnapshot<String> snapshot(long version, List<ValuedResult<String>> items) {
+        return new ParetoSnapshot<>(version, items);
+    }
+
+    @Test
+    public void testHypervolumeIsUpdatedOnAddAndRemove() {
+        final QualityIndicators qi = new QualityIndicators(new double[] {10, 10}, Collections.singletonList(FIRST), 1);
+        assertEquals(0.0, qi.update(snapshot(0, Collections.emptyList()), 0, 1000).getHypervolume(), EPSILON);
+
+        final ValuedResult<String> a = new ValuedResult<>("a", 5, 5);
+        assertEquals(0.25, qi.update(snapshot(1, Arrays.asList(a)), 1, 2000).getHypervolume(), EPSILON);
+
+        final ValuedResult<String> b = new ValuedResult<>("b", 0, 8);
+        assertEquals(0.35, qi.update(snapshot(2, Arrays.asList(b, a)), 2, 3000).getHypervolume(), EPSILON);
+
+        assertEquals(0.2, qi.update(snapshot(3, Arrays.asList(b)), 2, 4000).getHypervolume(), EPSILON);
+    }
+
+    @Test
+    public void testBestValuesAndImprovementRate() {
+        final QualityIndicators qi = new QualityIndicators(new double[] {10, 10}, Collections.singletonList(FIRST), 1);
+        qi.update(snapshot(0, Collections.emptyList()), 0, 60_000);
+        final QualityIndicators.Sample s = qi.update(snapshot(1, Arrays.asList(
+                new ValuedResult<>("a", 3, 5), new ValuedResult<>("b", 4, 2))), 6, 90_000);
+        assertEquals(3.0, s.getBestValues().get("first"), 0.0);
+        assertEquals(12.0, s.getImprovementsPerMinute(), 0.0);
+        assertEquals(2, qi.getTimeSeries().size());
+    }
+
+}
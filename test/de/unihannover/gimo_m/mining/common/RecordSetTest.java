@@ -0,0 +1,171 @@
+/**
+ * Copyright 2019 Tobias Baum
+ *
+ * This file is part of GIMO-m.
+ *
+ * GIMO-m is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * GIMO-m is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ */
+package de.unihannover.gimo_m.mining.common;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class RecordSetTest {
+
+    private static final RecordScheme SCHEME = new RecordScheme(Arrays.asList("n"), Arrays.asList("s"));
+
+    private static RecordSet createRecords() {
+        return new RecordSet(SCHEME, new Record[] {
+                new Record(1, Arrays.asList(3.0), Arrays.asList("a"), "cl"),
+                new Record(2, Arrays.asList(1.0), Arrays.asList("b"), "cl"),
+                new Record(3, Arrays.asList(Double.NaN), Arrays.asList("a"), "cl"),
+                new Record(4, Arrays.asList(3.0), Arrays.asList("b"), "cl"),
+                new Record(5, Arrays.asList(2.0), Arrays.asList("a"), "cl")
+        });
+    }
+
+    private static RecordSet createAlternatingRecords() {
+        return new RecordSet(SCHEME, new Record[] {
+                new Record(1, Arrays.asList(1.0), Arrays.asList("a"), "x"),
+                new Record(2, Arrays.asList(2.0), Arrays.asList("a"), "y"),
+                new Record(3, Arrays.asList(3.0), Arrays.asList("a"), "x"),
+                new Record(4, Arrays.asList(4.0), Arrays.asList("a"), "y"),
+                new Record(5, Arrays.asList(Double.NaN), Arrays.asList("a"), "x")
+        });
+    }
+
+    private static BitSet bits(int... rows) {
+        final BitSet ret = new BitSet();
+        for (final int row : rows) {
+            ret.set(row);
+        }
+        return ret;
+    }
+
+    @Test
+    public void testValueRanksAndSplitPoints() {
+        final RecordSet records = createRecords();
+        assertEquals(2, records.getValueRankOfRow(0, 0));
+        assertEquals(0, records.getValueRankOfRow(0, 1));
+        assertEquals(-1, records.getValueRankOfRow(0, 2));
+        assertEquals(2, records.getValueRankOfRow(0, 3));
+        assertEquals(1, records.getValueRankOfRow(0, 4));
+        final double split = records.getSplitPointBelowRank(0, 2);
+        assertTrue(split > 2.0 && split < 3.0);
+    }
+
+    @Test
+    public void testCoverageOfCompositeRules() {
+        final RecordSet records = createRecords();
+        final Leq leq = new Leq(SCHEME, SCHEME.getAbsIndexFromNum(0), 2.5);
+        final Equals eq = new Equals(SCHEME, SCHEME.getAbsIndexFromStr(0), "a");
+        assertEquals(bits(1, 4), records.getCoverage(leq));
+        assertEquals(bits(0, 2, 4), records.getCoverage(eq));
+        assertEquals(bits(4), records.getCoverage(new And(leq, eq)));
+        assertEquals(bits(0, 1, 2, 4), records.getCoverage(new Or(new And(leq), new And(eq))));
+    }
+
+    @Test
+    public void testSplitPointWhereCoverageChangesForLeq() {
+        final RecordSet records = createAlternatingRecords();
+        final Leq leq = new Leq(SCHEME, SCHEME.getAbsIndexFromNum(0), 2.5);
+        final BitSet all = bits(0, 1, 2, 3, 4);
+        assertEquals(3.5, records.findSplitPointWhereCoverageChanges(leq, all, true), 0.0);
+        assertEquals(1.5, records.findSplitPointWhereCoverageChanges(leq, all, false), 0.0);
+        //rows that are not considered are skipped
+        assertEquals(1.5, records.findSplitPointWhereCoverageChanges(new Leq(SCHEME, 0, 3.5), bits(0, 1), false), 0.0);
+        assertEquals(3.5, records.findSplitPointWhereCoverageChanges(new Leq(SCHEME, 0, 1.5), bits(0, 2), true), 0.0);
+    }
+
+    @Test
+    public void testSplitPointWhereCoverageChangesForGeq() {
+        final RecordSet records = createAlternatingRecords();
+        final Geq geq = new Geq(SCHEME, SCHEME.getAbsIndexFromNum(0), 2.5);
+        final BitSet all = bits(0, 1, 2, 3, 4);
+        assertEquals(3.5, records.findSplitPointWhereCoverageChanges(geq, all, true), 0.0);
+        assertEquals(1.5, records.findSplitPointWhereCoverageChanges(geq, all, false), 0.0);
+        assertEquals(3.5, records.findSplitPointWhereCoverageChanges(new Geq(SCHEME, 0, 1.5), bits(2, 3), true), 0.0);
+    }
+
+    @Test
+    public void testNoSplitPointWhereCoverageChanges() {
+        final RecordSet records = createAlternatingRecords();
+        final BitSet all = bits(0, 1, 2, 3, 4);
+        //there is no split point beyond the smallest and the largest value
+        assertTrue(Double.isNaN(records.findSplitPointWhereCoverageChanges(new Leq(SCHEME, 0, 3.5), all, true)));
+        assertTrue(Double.isNaN(records.findSplitPointWhereCoverageChanges(new Leq(SCHEME, 0, 1.5), all, false)));
+        assertTrue(Double.isNaN(records.findSplitPointWhereCoverageChanges(new Geq(SCHEME, 0, 3.5), all, true)));
+        assertTrue(Double.isNaN(records.findSplitPointWhereCoverageChanges(new Geq(SCHEME, 0, 1.5), all, false)));
+        //no considered row in that direction
+        assertTrue(Double.isNaN(records.findSplitPointWhereCoverageChanges(new Leq(SCHEME, 0, 2.5), bits(0, 1), true)));
+        //records with a missing value are never covered, so they do not matter
+        assertTrue(Double.isNaN(records.findSplitPointWhereCoverageChanges(new Leq(SCHEME, 0, 2.5), bits(4), true)));
+        assertTrue(Double.isNaN(records.findSplitPointWhereCoverageChanges(new Geq(SCHEME, 0, 2.5), bits(4), false)));
+    }
+
+    /**
+     * Finds the split point by stepping through the split points until the covered rows change.
+     */
+    private static double findSplitPointByStepping(
+            RecordSet records, OrdinalRule rule, BitSet consideredRows, boolean towardsLarger) {
+        final int initialCount = countCovered(records, rule, consideredRows);
+        Rule cur = rule;
+        do {
+            cur = towardsLarger
+                    ? ((OrdinalRule) cur).nextLargerValue(records)
+                    : ((OrdinalRule) cur).nextSmallerValue(records);
+            if (cur instanceof ConstantRule) {
+                return Double.NaN;
+            }
+        } while (countCovered(records, cur, consideredRows) == initialCount);
+        return ((OrdinalRule) cur).getValue();
+    }
+
+    private static int countCovered(RecordSet records, Rule rule, BitSet consideredRows) {
+        final BitSet covered = (BitSet) records.getCoverage(rule).clone();
+        covered.and(consideredRows);
+        return covered.cardinality();
+    }
+
+    @Test
+    public void testSplitPointWhereCoverageChangesMatchesStepping() {
+        final Random random = new Random(123);
+        for (int iteration = 0; iteration < 500; iteration++) {
+            final Record[] data = new Record[30];
+            for (int i = 0; i < data.length; i++) {
+                final double value = random.nextInt(10) == 0 ? Double.NaN : random.nextInt(12);
+                data[i] = new Record(i, Arrays.asList(value), Arrays.asList("a"), random.nextBoolean() ? "x" : "y");
+            }
+            final RecordSet records = new RecordSet(SCHEME, data);
+            final BitSet considered = new BitSet();
+            for (int i = 0; i < data.length; i++) {
+                if (random.nextInt(3) == 0) {
+                    considered.set(i);
+                }
+            }
+            final double value = random.nextBoolean() ? random.nextInt(12) : random.nextInt(24) / 2.0 - 0.25;
+            final OrdinalRule rule = random.nextBoolean() ? new Leq(SCHEME, 0, value) : new Geq(SCHEME, 0, value);
+            for (final boolean towardsLarger : new boolean[] {true, false}) {
+                assertEquals(rule + " " + towardsLarger,
+                        findSplitPointByStepping(records, rule, considered, towardsLarger),
+                        records.findSplitPointWhereCoverageChanges(rule, considered, towardsLarger),
+                        0.0);
+            }
+        }
+    }
+
+}
@@ -0,0 +1,78 @@
+/**
+ * Copyright 2019 Tobias Baum
+ *
+ * This file is part of GIMO-m.
+ *
+ * GIMO-m is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * GIMO-m is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ */
+package de.unihannover.gimo_m.mining.common;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+
+import org.junit.Test;
+
+public class RuleCreationRestrictionTest {
+
+	private static final RecordScheme SCHEME = new RecordScheme(Arrays.asList("n1", "n2"), Arrays.asList("s1", "s2"));
+
+	private static RuleCreationRestriction create(String... patterns) {
+		final RulePattern[] parsed = new RulePattern[patterns.length];
+		for (int i = 0; i < patterns.length; i++) {
+			parsed[i] = RulePattern.parse(SCHEME, patterns[i]);
+		}
+		return new RuleCreationRestriction(new CreationRestrictionIndex(Arrays.asList(parsed)));
+	}
+
+	@Test
+	public void testSingleConditionPatternIsForbiddenFromTheStart() {
+		final RuleCreationRestriction r = create("n1 <= 3.0 and *", "s1 == * and *");
+		assertFalse(r.canBeValid(new Leq(SCHEME, SCHEME.getAbsIndex("n1"), 3.0)));
+		assertTrue(r.canBeValid(new Leq(SCHEME, SCHEME.getAbsIndex("n1"), 2.0)));
+		assertFalse(r.canBeValid(SCHEME.getAbsIndex("s1"), Equals.class));
+		assertTrue(r.canBeValid(SCHEME.getAbsIndex("s1"), NotEquals.class));
+		assertTrue(r.canBeValid(SCHEME.getAbsIndex("s2"), Equals.class));
+	}
+
+	@Test
+	public void testPatternWithoutWildcardIsIgnored() {
+		final RuleCreationRestriction r = create("n1 <= 3.0");
+		assertTrue(r.canBeValid(new Leq(SCHEME, SCHEME.getAbsIndex("n1"), 3.0)));
+	}
+
+	@Test
+	public void testLastMissingPartIsForbiddenAfterAddingConditions() {
+		final RuleCreationRestriction r = create("n1 <= 3.0 and s1 == * and n2 >= * and *");
+		final Geq geq = new Geq(SCHEME, SCHEME.getAbsIndex("n2"), 1.0);
+		assertTrue(r.canBeValid(geq));
+
+		r.addCondition(new Leq(SCHEME, SCHEME.getAbsIndex("n1"), 3.0));
+		assertTrue(r.canBeValid(geq));
+		assertTrue(r.canBeValid(SCHEME.getAbsIndex("s1"), Equals.class));
+
+		r.addCondition(new Equals(SCHEME, SCHEME.getAbsIndex("s1"), "x"));
+		assertFalse(r.canBeValid(geq));
+		assertFalse(r.canBeValid(SCHEME.getAbsIndex("n2"), Geq.class));
+		assertTrue(r.canBeValid(SCHEME.getAbsIndex("n2"), Leq.class));
+	}
+
+	@Test
+	public void testOneConditionOnlySatisfiesOnePartOfAPattern() {
+		final RuleCreationRestriction r = create("n1 <= * and n1 <= * and *");
+		r.addCondition(new Leq(SCHEME, SCHEME.getAbsIndex("n1"), 3.0));
+		assertFalse(r.canBeValid(SCHEME.getAbsIndex("n1"), Leq.class));
+		r.addCondition(new Leq(SCHEME, SCHEME.getAbsIndex("n1"), 2.0));
+		assertTrue(r.canBeValid(SCHEME.getAbsIndex("n1"), Leq.class));
+	}
+
+}
@@ -0,0 +1,76 @@
+/**
+ * Copyright 2019 Tobias Baum
+ *
+ * This file is part of GIMO-m.
+ *
+ * GIMO-m is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * GIMO-m is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ */
+package de.unihannover.gimo_m.mining.common;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class TargetIndexTest {
+
+    private static final TargetFunction SUM = new TargetFunction("sum", (ValuedResult<?> r) -> r.getValue(0) + r.getValue(1), "");
+
+    @Test
+    public void testSortingIsStable() {
+        final ValuedResult<String> a = new ValuedResult<>("a", 1, 4, 0);
+        final ValuedResult<String> b = new ValuedResult<>("b", 2, 1, 0);
+        final ValuedResult<String> c = new ValuedResult<>("c", 3, 2, 0);
+        final ValuedResult<String> d = new ValuedResult<>("d", 4, 1, 0);
+        final TargetIndex<String> index = TargetIndex.create(Arrays.asList(a, b, c, d), SUM);
+        assertEquals(Arrays.asList(b, a, c, d), index.getItemsWithValueAtMost(Double.POSITIVE_INFINITY));
+        assertEquals(Arrays.asList(b), index.getBestItems());
+        assertEquals(3.0, index.getMin(), 0.0);
+        assertEquals(5.0, index.getMax(), 0.0);
+        //of the two items with the next larger value, c is closer to b
+        assertSame(c, index.getNextWorse(b));
+        assertNull(index.getNextBetter(b));
+    }
+
+    private static void checkIncrementalIndexMatchesNewIndex(int changeLogCapacity, long seed) {
+        final Random random = new Random(seed);
+        final NondominatedResults<String> front = new NondominatedResults<>();
+        front.enableChangeLog(changeLogCapacity);
+        for (int i = 0; i < 1000; i++) {
+            front.add(new ValuedResult<>("r" + random.nextInt(400), random.nextInt(8), random.nextInt(8), random.nextInt(8)));
+            if (random.nextInt(5) == 0) {
+                final ParetoSnapshot<String> snapshot = front.snapshot();
+                assertEquals(
+                        TargetIndex.create(snapshot.getItems(), SUM).getItemsWithValueAtMost(Double.POSITIVE_INFINITY),
+                        snapshot.getIndex(SUM).getItemsWithValueAtMost(Double.POSITIVE_INFINITY));
+            }
+        }
+    }
+
+    @Test
+    public void testIncrementalIndexMatchesNewIndex() {
+        for (long seed = 0; seed < 20; seed++) {
+            checkIncrementalIndexMatchesNewIndex(1000, seed);
+        }
+    }
+
+    @Test
+    public void testIndexIsCreatedAnewWhenChangesAreUnknown() {
+        for (long seed = 0; seed < 20; seed++) {
+            checkIncrementalIndexMatchesNewIndex(3, seed);
+        }
+    }
+
+}
@@ -0,0 +1,170 @@
+/**
+ * Copyright 2019 Tobias Baum
+ *
+ * This file is part of GIMO-m.
+ *
+ * GIMO-m is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * GIMO-m is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ */
+package de.unihannover.gimo_m.mining.common;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import de.unihannover.gimo_m.mining.common.TaskScheduler.Task;
+import de.unihannover.gimo_m.mining.common.TaskScheduler.TaskType;
+
+public class TaskSchedulerTest {
+
+    private final AtomicLong now = new AtomicLong(1_000_000);
+    private TaskScheduler scheduler;
+
+    @Before
+    public void setUp() {
+        this.scheduler = new TaskScheduler(this.now::get);
+    }
+
+    private static ValuedResult<RuleSet> item(String defaultClass) {
+        return new ValuedResult<>(RuleSet.create(defaultClass), 1.0, 2.0);
+    }
+
+    private void assertNextTask(TaskType expectedType, ValuedResult<RuleSet> expectedItem) {
+        final Task task = this.scheduler.takeTask();
+        assertEquals(expectedType, task.getType());
+        assertSame(expectedItem, task.getItem());
+    }
+
+    @Test
+    public void testTasksAreOrderedByTypeAndAge() {
+        final ValuedResult<RuleSet> a = item("a");
+        final ValuedResult<RuleSet> b = item("b");
+        final ValuedResult<RuleSet> c = item("c");
+        final ValuedResult<RuleSet> d = item("d");
+        final ValuedResult<RuleSet> e = item("e");
+        assertTrue(this.scheduler.schedule(TaskType.AGENT_PATH_RELINKING, a));
+        assertTrue(this.scheduler.schedule(TaskType.AGENT_LOCAL_SEARCH, b));
+        assertTrue(this.scheduler.schedule(TaskType.USER_LOCAL_SEARCH, c));
+        assertTrue(this.scheduler.schedule(TaskType.USER_PATH_RELINKING, d));
+        //tasks with the same virtual deadline are taken in the order they were scheduled
+        assertTrue(this.scheduler.schedule(TaskType.USER_PATH_RELINKING, e));
+        assertEquals(5, this.scheduler.size());
+
+        this.assertNextTask(TaskType.USER_PATH_RELINKING, d);
+        this.assertNextTask(TaskType.USER_PATH_RELINKING, e);
+        this.assertNextTask(TaskType.USER_LOCAL_SEARCH, c);
+        this.assertNextTask(TaskType.AGENT_LOCAL_SEARCH, b);
+        this.assertNextTask(TaskType.AGENT_PATH_RELINKING, a);
+        assertEquals(0, this.scheduler.size());
+    }
+
+    @Test
+    public void testAgentTasksAreTakenBeforeNewerUserTasksWhenTheyWaitedLongEnough() {
+        final ValuedResult<RuleSet> agentTask = item("a");
+        final ValuedResult<RuleSet> userTask = item("b");
+        this.scheduler.schedule(TaskType.AGENT_LOCAL_SEARCH, agentTask);
+        this.now.addAndGet(60_001);
+        this.scheduler.schedule(TaskType.USER_PATH_RELINKING, userTask);
+        this.assertNextTask(TaskType.AGENT_LOCAL_SEARCH, agentTask);
+        this.assertNextTask(TaskType.USER_PATH_RELINKING, userTask);
+    }
+
+    @Test
+    public void testIdenticalWaitingTasksAreScheduledOnlyOnce() {
+        final ValuedResult<RuleSet> a = item("a");
+        assertTrue(this.scheduler.schedule(TaskType.AGENT_LOCAL_SEARCH, a));
+        assertFalse(this.scheduler.schedule(TaskType.AGENT_LOCAL_SEARCH, a));
+        //equal rule sets are identical tasks, even with other objective values
+        assertFalse(this.scheduler.schedule(TaskType.AGENT_LOCAL_SEARCH, new ValuedResult<>(RuleSet.create("a"), 3.0, 4.0)));
+        //but not for another task type
+        assertTrue(this.scheduler.schedule(TaskType.USER_LOCAL_SEARCH, a));
+        assertEquals(2, this.scheduler.size());
+
+        this.scheduler.takeTask();
+        this.scheduler.takeTask();
+        //once taken, the task can be scheduled again
+        assertTrue(this.scheduler.schedule(TaskType.AGENT_LOCAL_SEARCH, a));
+        this.scheduler.clear();
+        assertTrue(this.scheduler.schedule(TaskType.AGENT_LOCAL_SEARCH, a));
+    }
+
+    @Test
+    public void testContinuationsAreIdentifiedByTheirStart() {
+        final ValuedResult<RuleSet> start1 = item("s1");
+        final ValuedResult<RuleSet> start2 = item("s2");
+        final ValuedResult<RuleSet> end = item("e");
+        assertTrue(this.scheduler.schedule(TaskType.AGENT_PATH_RELINKING, end));
+        assertTrue(this.scheduler.scheduleContinuation(TaskType.AGENT_PATH_RELINKING, start1, end, 1));
+        assertFalse(this.scheduler.scheduleContinuation(TaskType.AGENT_PATH_RELINKING, start1, end, 2));
+        assertTrue(this.scheduler.scheduleContinuation(TaskType.AGENT_PATH_RELINKING, start2, end, 1));
+        assertEquals(3, this.scheduler.size());
+
+        final Task first = this.scheduler.takeTask();
+        assertNull(first.getStart());
+        assertEquals(0, first.getContinuationCount());
+        final Task second = this.scheduler.takeTask();
+        assertSame(start1, second.getStart());
+        assertSame(end, second.getItem());
+        assertEquals(1, second.getContinuationCount());
+        assertSame(start2, this.scheduler.takeTask().getStart());
+    }
+
+    @Test
+    public void testContinuationsAreDelayedWithEveryInterruption() {
+        final ValuedResult<RuleSet> continued = item("a");
+        final ValuedResult<RuleSet> oftenContinued = item("b");
+        final ValuedResult<RuleSet> fresh = item("c");
+        //60s + 2 * 10s < 90s < 60s + 4 * 10s
+        this.scheduler.scheduleContinuation(TaskType.AGENT_LOCAL_SEARCH, null, oftenContinued, 4);
+        this.scheduler.schedule(TaskType.AGENT_PATH_RELINKING, fresh);
+        this.scheduler.scheduleContinuation(TaskType.AGENT_LOCAL_SEARCH, null, continued, 2);
+        this.assertNextTask(TaskType.AGENT_LOCAL_SEARCH, continued);
+        this.assertNextTask(TaskType.AGENT_PATH_RELINKING, fresh);
+        this.assertNextTask(TaskType.AGENT_LOCAL_SEARCH, oftenContinued);
+    }
+
+    @Test
+    public void testExplorationWhenThereIsNothingElseToDo() {
+        final Task task = this.scheduler.takeTask();
+        assertEquals(TaskType.EXPLORATION, task.getType());
+        assertNull(task.getItem());
+        assertFalse(this.scheduler.schedule(TaskType.AGENT_LOCAL_SEARCH, null));
+        assertEquals(TaskType.EXPLORATION, this.scheduler.takeTask().getType());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testExplorationIsNotQueued() {
+        this.scheduler.schedule(TaskType.EXPLORATION, item("a"));
+    }
+
+    @Test
+    public void testUserFedWorkEndsAPause() throws InterruptedException {
+        assertFalse(this.scheduler.hasUserFedWork());
+        this.scheduler.schedule(TaskType.AGENT_LOCAL_SEARCH, item("a"));
+        assertFalse(this.scheduler.hasUserFedWork());
+        this.scheduler.schedule(TaskType.USER_LOCAL_SEARCH, item("b"));
+        assertTrue(this.scheduler.hasUserFedWork());
+
+        final long before = System.nanoTime();
+        this.scheduler.pauseUnlessUserFedWork(10_000);
+        assertTrue(System.nanoTime() - before < 5_000_000_000L);
+
+        this.scheduler.takeTask();
+        assertFalse(this.scheduler.hasUserFedWork());
+    }
+
+}
@@ -0,0 +1,65 @@
+/**
+ * Copyright 2019 Tobias Baum
+ *
+ * This file is part of GIMO-m.
+ *
+ * GIMO-m is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * GIMO-m is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ */
+package de.unihannover.gimo_m.mining.common;
+
+import static org.junit.Assert.fail;
+
+import java.util.function.BooleanSupplier;
+
+import de.unihannover.gimo_m.objectives.StandardObjectiveStrategy;
+import de.unihannover.gimo_m.util.Multiset;
+
+/**
+ * Helper methods that are shared by several tests.
+ */
+public final class TestUtil {
+
+    private TestUtil() {
+    }
+
+    /**
+     * Creates a blackboard for the given records with the standard objectives and a fixed seed.
+     * It has to be shut down at the end of the test.
+     */
+    public static Blackboard createBlackboard(RecordSet records) {
+        final Multiset<String> counts = new Multiset<>();
+        for (final Record r : records.getRecords()) {
+            counts.add(r.getCorrectClass());
+        }
+        return new Blackboard(records, new ResultData(records), new StandardObjectiveStrategy(counts.toOrderedMap()), 42);
+    }
+
+    /**
+     * Waits until the given condition holds and fails when this takes more than five seconds.
+     */
+    public static void waitUntil(BooleanSupplier condition) throws InterruptedException {
+        waitUntil(condition, 5_000);
+    }
+
+    /**
+     * Waits until the given condition holds and fails when this takes more than the given time.
+     */
+    public static void waitUntil(BooleanSupplier condition, long timeoutMillis) throws InterruptedException {
+        final long end = System.currentTimeMillis() + timeoutMillis;
+        while (!condition.getAsBoolean()) {
+            if (System.currentTimeMillis() > end) {
+                fail("condition not reached in time");
+            }
+            Thread.sleep(5);
+        }
+    }
+
+}
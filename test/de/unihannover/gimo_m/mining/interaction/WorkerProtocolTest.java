@@ -0,0 +1,202 @@
+/**
+ * Copyright 2019 Tobias Baum
+ *
+ * This file is part of GIMO-m.
+ *
+ * GIMO-m is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * GIMO-m is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ */
+package de.unihannover.gimo_m.mining.interaction;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.HttpURLConnection;
+import java.net.ServerSocket;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import de.unihannover.gimo_m.mining.common.And;
+import de.unihannover.gimo_m.mining.common.Blackboard;
+import de.unihannover.gimo_m.mining.common.Leq;
+import de.unihannover.gimo_m.mining.common.Record;
+import de.unihannover.gimo_m.mining.common.RecordScheme;
+import de.unihannover.gimo_m.mining.common.RecordSet;
+import de.unihannover.gimo_m.mining.common.RuleSet;
+import de.unihannover.gimo_m.mining.common.TestUtil;
+import spark.Spark;
+
+public class WorkerProtocolTest {
+
+    private RecordScheme scheme;
+    private Blackboard blackboard;
+    private WorkerEndpoints endpoints;
+    private long now;
+    private String serverUrl;
+    private RemoteWorker worker1;
+    private RemoteWorker worker2;
+
+    @Before
+    public void setUp() throws IOException, InterruptedException {
+        this.scheme = new RecordScheme(Arrays.asList("nA", "nB"), Arrays.asList("sA"));
+        final Record[] records = new Record[40];
+        for (int i = 0; i < records.length; i++) {
+            final double a = i % 5 - 2;
+            final double b = i % 7 - 3;
+            records[i] = new Record(i, Arrays.asList(a, b), Arrays.asList(i % 2 == 0 ? "e" : "o"),
+                    a * b < 0 ? "DIFFERENT" : "SAME");
+        }
+        final RecordSet recordSet = new RecordSet(this.scheme, records);
+        this.blackboard = TestUtil.createBlackboard(recordSet);
+        this.blackboard.addDefaultRulesForAllClasses();
+
+        final int port;
+        try (ServerSocket s = new ServerSocket(0)) {
+            port = s.getLocalPort();
+        }
+        //Spark stops asynchronously, so the server of the previous test could still be shutting down
+        TestUtil.waitUntil(() -> setPort(port));
+        this.endpoints = WorkerEndpoints.register(this.blackboard, () -> this.now);
+        Spark.awaitInitialization();
+        this.serverUrl = "http://localhost:" + port;
+        this.worker1 = new RemoteWorker(this.serverUrl + "/", 1);
+        this.worker2 = new RemoteWorker(this.serverUrl + "/", 1);
+    }
+
+    @After
+    public void tearDown() {
+        this.worker1.stop();
+        this.worker2.stop();
+        Spark.stop();
+        this.blackboard.shutdown();
+    }
+
+    @Test
+    public void testResultsAreAcceptedUntilRestrictionsChange() throws IOException {
+        this.addUserTask();
+        this.blackboard.addToUserFedPathRelinkingQueue(this.blackboard.simplifyEvaluateAndAdd(
+                RuleSet.create("DIFFERENT")));
+
+        //the first synchronization loads the data and takes one task each, there are no results yet
+        assertNull(this.worker1.synchronize());
+        assertNull(this.worker2.synchronize());
+        assertEquals(0, this.blackboard.getScheduler().size());
+
+        //the workers' fronts contain at least the default rule sets, so there is something to send
+        assertTrue(this.worker1.synchronize().startsWith(WorkerEndpoints.ACCEPTED));
+
+        this.blackboard.addRejectedColumns(Collections.singleton("sA"));
+        assertEquals(WorkerEndpoints.STALE, this.worker2.synchronize());
+    }
+
+    private static boolean setPort(int port) {
+        try {
+            Spark.port(port);
+            return true;
+        } catch (final IllegalStateException e) {
+            return false;
+        }
+    }
+
+    private void addUserTask() {
+        this.blackboard.addToUserFedLocalSearchQueue(this.blackboard.simplifyEvaluateAndAdd(
+                RuleSet.create("SAME").addRule("DIFFERENT", new And(new Leq(this.scheme, this.scheme.getAbsIndex("nA"), -1.0)))));
+    }
+
+    private int post(String path, String body) throws IOException {
+        final HttpURLConnection c = (HttpURLConnection) new URL(this.serverUrl + WorkerEndpoints.PATH_PREFIX + path).openConnection();
+        c.setRequestMethod("POST");
+        c.setDoOutput(true);
+        c.setRequestProperty("Content-Type", "text/plain; charset=UTF-8");
+        try (Writer w = new OutputStreamWriter(c.getOutputStream(), StandardCharsets.UTF_8)) {
+            w.write(body);
+        }
+        return c.getResponseCode();
+    }
+
+    @Test
+    public void testMalformedRequestsAreRejected() throws IOException {
+        assertEquals(200, this.post("tasks.txt?count=1&worker=w", ""));
+        assertEquals(400, this.post("tasks.txt?worker=w", ""));
+        assertEquals(400, this.post("tasks.txt?count=many&worker=w", ""));
+        assertEquals(400, this.post("tasks.txt?count=-1&worker=w", ""));
+        assertEquals(400, this.post("tasks.txt?count=1", ""));
+
+        final String versionLine = WorkerEndpoints.VERSION_PREFIX + this.blackboard.getDataVersion() + " "
+                + this.blackboard.getRestrictionEpoch() + "\n";
+        assertEquals(200, this.post("results.txt?worker=w", versionLine));
+        assertEquals(400, this.post("results.txt?worker=w", ""));
+        assertEquals(400, this.post("results.txt?worker=w", "no version\n"));
+        assertEquals(400, this.post("results.txt?worker=w", WorkerEndpoints.VERSION_PREFIX + "1\n"));
+        assertEquals(400, this.post("results.txt?worker=w", WorkerEndpoints.VERSION_PREFIX + "x y\n"));
+        assertEquals(400, this.post("results.txt", versionLine));
+    }
+
+    @Test
+    public void testTasksOfUnresponsiveWorkersAreQueuedAgain() throws IOException {
+        this.addUserTask();
+        assertNull(this.worker1.synchronize());
+        assertEquals(0, this.blackboard.getScheduler().size());
+        assertEquals(1, this.endpoints.getLeasedTaskCount());
+
+        //worker 1 crashed and does not send results
+        this.now += WorkerEndpoints.LEASE_TIMEOUT_MS - 1;
+        this.endpoints.requeueExpiredTasks();
+        assertEquals(0, this.blackboard.getScheduler().size());
+        this.now += 1;
+        this.endpoints.requeueExpiredTasks();
+        assertEquals(1, this.blackboard.getScheduler().size());
+        assertTrue(this.blackboard.getScheduler().hasUserFedWork());
+        assertEquals(0, this.endpoints.getLeasedTaskCount());
+
+        //worker 2 takes the task and confirms it with the next synchronization
+        assertNull(this.worker2.synchronize());
+        assertEquals(1, this.endpoints.getLeasedTaskCount());
+        assertTrue(this.worker2.synchronize().startsWith(WorkerEndpoints.ACCEPTED));
+        assertEquals(0, this.endpoints.getLeasedTaskCount());
+        this.now += WorkerEndpoints.LEASE_TIMEOUT_MS;
+        this.endpoints.requeueExpiredTasks();
+        assertFalse(this.blackboard.getScheduler().hasUserFedWork());
+    }
+
+    @Test
+    public void testWorkerInSeparateProcess() throws Exception {
+        this.addUserTask();
+        final String java = System.getProperty("java.home") + File.separator + "bin" + File.separator + "java";
+        final Process process = new ProcessBuilder(java, "-cp", System.getProperty("java.class.path"),
+                RemoteWorker.class.getName(), this.serverUrl, "1")
+                .redirectErrorStream(true)
+                .redirectOutput(ProcessBuilder.Redirect.INHERIT)
+                .start();
+        try {
+            //the worker takes the task and confirms it when it sends its results after the sync interval
+            TestUtil.waitUntil(() -> this.endpoints.getLeasedTaskCount() == 1, 60_000);
+            assertEquals(0, this.blackboard.getScheduler().size());
+            TestUtil.waitUntil(() -> this.endpoints.getLeasedTaskCount() == 0, 60_000);
+            assertFalse(this.blackboard.getScheduler().hasUserFedWork());
+        } finally {
+            process.destroy();
+            process.waitFor();
+        }
+    }
+
+}
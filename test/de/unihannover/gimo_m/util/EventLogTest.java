@@ -0,0 +1,175 @@
+/**
+ * Copyright 2019 Tobias Baum
+ *
+ * This file is part of GIMO-m.
+ *
+ * GIMO-m is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * GIMO-m is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ */
+package de.unihannover.gimo_m.util;
+
+import static de.unihannover.gimo_m.mining.common.TestUtil.waitUntil;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import de.unihannover.gimo_m.util.EventLog.Level;
+
+public class EventLogTest {
+
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    private ByteArrayOutputStream consoleBytes;
+    private PrintStream console;
+
+    @Before
+    public void setUp() throws IOException {
+        this.consoleBytes = new ByteArrayOutputStream();
+        this.console = new PrintStream(this.consoleBytes, true, "UTF-8");
+    }
+
+    private String consoleOutput() {
+        return new String(this.consoleBytes.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+    private static String line(String message) {
+        return ", " + message + System.lineSeparator();
+    }
+
+    private static List<String> readLines(File file) {
+        try {
+            return Files.readAllLines(file.toPath(), StandardCharsets.UTF_8);
+        } catch (final IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    @Test
+    public void testEventsBelowTheLevelAreNotWritten() throws InterruptedException {
+        final EventLog log = new EventLog(Level.INFO, this.console, null, Long.MAX_VALUE);
+        assertFalse(log.isEnabled(Level.DEBUG));
+        assertTrue(log.isEnabled(Level.INFO));
+        assertTrue(log.isEnabled(Level.WARN));
+
+        final AtomicInteger supplierCalls = new AtomicInteger();
+        log.log(Level.DEBUG, () -> {
+            supplierCalls.incrementAndGet();
+            return "lazyDebug";
+        });
+        log.log(Level.DEBUG, "debug");
+        log.log(Level.WARN, "warn");
+        log.log(Level.INFO, "info");
+        waitUntil(() -> this.consoleOutput().contains(line("info")));
+
+        final String output = this.consoleOutput();
+        assertTrue(output.indexOf(line("warn")) < output.indexOf(line("info")));
+        assertFalse(output.contains("debug"));
+        assertFalse(output.contains("lazyDebug"));
+        assertEquals(0, supplierCalls.get());
+    }
+
+    @Test
+    public void testMessagesAreCreatedOnTheWriterThread() throws InterruptedException {
+        final EventLog log = new EventLog(Level.DEBUG, this.console, null, Long.MAX_VALUE);
+        final AtomicReference<String> supplierThread = new AtomicReference<>();
+        log.log(Level.DEBUG, () -> {
+            supplierThread.set(Thread.currentThread().getName());
+            return "lazy";
+        });
+        waitUntil(() -> this.consoleOutput().contains(line("lazy")));
+        assertEquals("event-log-writer", supplierThread.get());
+    }
+
+    @Test
+    public void testBrokenSupplierDoesNotStopTheLogging() throws InterruptedException {
+        final EventLog log = new EventLog(Level.INFO, this.console, null, Long.MAX_VALUE);
+        log.log(Level.INFO, () -> {
+            throw new IllegalStateException("broken");
+        });
+        log.log(Level.INFO, "after");
+        waitUntil(() -> this.consoleOutput().contains(line("after")));
+        assertTrue(this.consoleOutput().contains("error while logging"));
+    }
+
+    @Test
+    public void testEventsAreDroppedWhenTheBufferIsFull() throws InterruptedException {
+        final EventLog log = new EventLog(Level.INFO, this.console, null, Long.MAX_VALUE);
+        final CountDownLatch writerBlocked = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        log.log(Level.INFO, () -> {
+            writerBlocked.countDown();
+            try {
+                release.await();
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return "blocking";
+        });
+        assertTrue(writerBlocked.await(5, TimeUnit.SECONDS));
+
+        //the writer has taken the blocking event, so the whole buffer is free
+        final int dropped = 10;
+        for (int i = 0; i < EventLog.BUFFER_SIZE + dropped; i++) {
+            log.log(Level.INFO, "e" + i);
+        }
+        assertEquals(dropped, log.getDroppedEventCount());
+
+        release.countDown();
+        final String lastKept = line("e" + (EventLog.BUFFER_SIZE - 1));
+        waitUntil(() -> this.consoleOutput().contains(lastKept));
+        final String output = this.consoleOutput();
+        assertTrue(output.contains(line("e0")));
+        assertFalse(output.contains(line("e" + EventLog.BUFFER_SIZE)));
+    }
+
+    @Test
+    public void testLogFileIsRotatedWhenItGetsTooLarge() throws InterruptedException {
+        final File base = new File(this.folder.getRoot(), "events.jsonl");
+        //every event makes the file too large, so every following event starts a new file
+        final EventLog log = new EventLog(Level.INFO, this.console, base.getPath(), 1);
+        final int eventCount = EventLog.MAX_ROTATED_FILES + 5;
+        for (int i = 0; i < eventCount; i++) {
+            log.log(Level.INFO, "m" + i);
+        }
+        final String lastMessage = "\"message\":\"m" + (eventCount - 1) + "\"";
+        waitUntil(() -> base.exists() && readLines(base).stream().anyMatch((String l) -> l.contains(lastMessage)));
+
+        final List<String> current = readLines(base);
+        assertEquals(1, current.size());
+        assertTrue(current.get(0).startsWith("{\"time\":\""));
+        assertTrue(current.get(0).contains(",\"level\":\"INFO\","));
+        assertTrue(current.get(0).endsWith(lastMessage + "}"));
+        for (int i = 1; i < EventLog.MAX_ROTATED_FILES; i++) {
+            final List<String> rotated = readLines(new File(base.getPath() + "." + i));
+            assertEquals(1, rotated.size());
+            assertTrue(rotated.get(0).contains("\"message\":\"m" + (eventCount - 1 - i) + "\""));
+        }
+        assertFalse(new File(base.getPath() + "." + EventLog.MAX_ROTATED_FILES).exists());
+    }
+
+}